@@ -0,0 +1,314 @@
+package com.yscope.clp.appenders.log4j2;
+
+import com.yscope.clp.irstream.AbstractClpIrOutputStream;
+import com.yscope.clp.irstream.EightByteClpIrOutputStream;
+import com.yscope.clp.irstream.FourByteClpIrOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.logging.log4j.core.Appender;
+import org.apache.logging.log4j.core.AppenderLoggingException;
+import org.apache.logging.log4j.core.Core;
+import org.apache.logging.log4j.core.Filter;
+import org.apache.logging.log4j.core.Layout;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Property;
+import org.apache.logging.log4j.core.config.plugins.Plugin;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderAttribute;
+import org.apache.logging.log4j.core.config.plugins.PluginBuilderFactory;
+import org.apache.logging.log4j.core.config.plugins.validation.constraints.Required;
+import org.apache.logging.log4j.core.layout.ByteBufferDestination;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+
+/**
+ * A Log4j 2 appender that writes log events to a file as a CLP IR stream.
+ * <p></p>
+ * The appender is its own {@link ByteBufferDestination}, so the layout encodes
+ * each event's message directly into a reusable batch buffer, and the event's
+ * timestamp is taken from {@link LogEvent#getTimeMillis()}. With Log4j's
+ * garbage-free mode enabled (the default for standalone applications), and a
+ * garbage-free layout such as {@link PatternLayout}, appending an event
+ * doesn't allocate any objects. Batches are encoded with a single call to
+ * {@link AbstractClpIrOutputStream#writeLogEvents} when:
+ * <ul>
+ *   <li>the batch is full;</li>
+ *   <li>the event is the last in a batch from an asynchronous logger (see
+ *   {@link LogEvent#isEndOfBatch()});</li>
+ *   <li>{@code immediateFlush} is enabled;</li>
+ *   <li>the appender is stopped.</li>
+ * </ul>
+ * Like Log4j's file appenders, {@code immediateFlush} is enabled by default,
+ * so every event is written and flushed to the file as it's appended. This
+ * keeps the file's tail readable while it's being written and means no events
+ * are lost if the process crashes. Disabling it batches events for higher
+ * throughput, at the cost of losing the unwritten batch (and anything still
+ * buffered) on a crash; events from asynchronous loggers are still flushed at
+ * the end of each of their batches.
+ * <p></p>
+ * Since the timestamp is stored separately from the message, the layout
+ * shouldn't include the date.
+ * <p></p>
+ * Example configuration:
+ * <pre>{@code
+ * <ClpIrFile name="clp" fileName="logs/app.clp" batchSize="256" immediateFlush="false">
+ *   <PatternLayout pattern=" %p [%t] %c - %m%n"/>
+ * </ClpIrFile>
+ * }</pre>
+ */
+@Plugin(name = "ClpIrFile", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE,
+    printObject = true)
+public final class ClpIrFileAppender extends AbstractAppender implements ByteBufferDestination {
+  public static final String DEFAULT_PATTERN = " %p [%t] %c - %m%n";
+  public static final String DEFAULT_TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss,SSS";
+  public static final int DEFAULT_BATCH_SIZE = 256;
+
+  private static final int INITIAL_BATCH_MESSAGES_CAPACITY_PER_EVENT = 128;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final AbstractClpIrOutputStream irOutputStream;
+  private final boolean immediateFlush;
+
+  private final long[] batchTimestamps;
+  private final int[] batchMessageEndOffsets;
+  // A buffer wrapping the batch's messages, positioned at the end of the last
+  // message
+  private ByteBuffer batchMessages;
+  private int numBatchedEvents = 0;
+
+  @PluginBuilderFactory
+  public static <B extends Builder<B>> B newBuilder () {
+    return new Builder<B>().asBuilder();
+  }
+
+  private ClpIrFileAppender (String name, Filter filter, Layout<? extends Serializable> layout,
+                             boolean ignoreExceptions, Property[] properties,
+                             AbstractClpIrOutputStream irOutputStream, int batchSize,
+                             boolean immediateFlush)
+  {
+    super(name, filter, layout, ignoreExceptions, properties);
+    this.irOutputStream = irOutputStream;
+    this.immediateFlush = immediateFlush;
+    batchTimestamps = new long[batchSize];
+    batchMessageEndOffsets = new int[batchSize];
+    batchMessages = ByteBuffer.wrap(
+        new byte[batchSize * INITIAL_BATCH_MESSAGES_CAPACITY_PER_EVENT]);
+  }
+
+  @Override
+  public void append (LogEvent event) {
+    lock.lock();
+    try {
+      int messageBeginOffset = batchMessages.position();
+      try {
+        getLayout().encode(event, this);
+      } catch (RuntimeException e) {
+        // Discard the partially encoded message
+        batchMessages.position(messageBeginOffset);
+        throw e;
+      }
+      batchTimestamps[numBatchedEvents] = event.getTimeMillis();
+      batchMessageEndOffsets[numBatchedEvents] = batchMessages.position();
+      ++numBatchedEvents;
+
+      if (immediateFlush || event.isEndOfBatch()) {
+        writeBatch();
+        irOutputStream.flush();
+      } else if (batchTimestamps.length == numBatchedEvents) {
+        writeBatch();
+      }
+    } catch (IOException e) {
+      error("Failed to write log event to CLP IR stream for appender " + getName(), event, e);
+      if (false == ignoreExceptions()) {
+        throw new AppenderLoggingException(e);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean stop (long timeout, TimeUnit timeUnit) {
+    setStopping();
+    boolean stopped = super.stop(timeout, timeUnit, false);
+    lock.lock();
+    try {
+      writeBatch();
+      irOutputStream.close();
+    } catch (IOException e) {
+      error("Failed to close CLP IR stream for appender " + getName(), e);
+      stopped = false;
+    } finally {
+      lock.unlock();
+    }
+    setStopped();
+    return stopped;
+  }
+
+  /**
+   * NOTE: Only called by the layout while the lock is held
+   * @return The buffer the layout should encode the current event into
+   */
+  @Override
+  public ByteBuffer getByteBuffer () {
+    return batchMessages;
+  }
+
+  /**
+   * Grows the batch buffer since a message can't be split across writes
+   * @param buf
+   * @return The grown buffer
+   */
+  @Override
+  public ByteBuffer drain (ByteBuffer buf) {
+    ensureBatchMessagesCapacity(batchMessages.capacity() + 1);
+    return batchMessages;
+  }
+
+  @Override
+  public void writeBytes (ByteBuffer data) {
+    ensureBatchMessagesCapacity(batchMessages.position() + data.remaining());
+    batchMessages.put(data);
+  }
+
+  @Override
+  public void writeBytes (byte[] data, int offset, int length) {
+    ensureBatchMessagesCapacity(batchMessages.position() + length);
+    batchMessages.put(data, offset, length);
+  }
+
+  /**
+   * Encodes and writes the current batch. The lock must be held.
+   * @throws IOException on failure to encode the batch or I/O error
+   */
+  private void writeBatch () throws IOException {
+    if (0 == numBatchedEvents) {
+      return;
+    }
+    try {
+      irOutputStream.writeLogEvents(batchTimestamps, batchMessages.array(),
+                                    batchMessageEndOffsets, numBatchedEvents);
+    } finally {
+      numBatchedEvents = 0;
+      batchMessages.clear();
+    }
+  }
+
+  private void ensureBatchMessagesCapacity (int capacity) {
+    if (capacity <= batchMessages.capacity()) {
+      return;
+    }
+    int newCapacity = Math.max(capacity, batchMessages.capacity() * 2);
+    ByteBuffer newBatchMessages = ByteBuffer.wrap(new byte[newCapacity]);
+    batchMessages.flip();
+    newBatchMessages.put(batchMessages);
+    batchMessages = newBatchMessages;
+  }
+
+  /**
+   * Builds {@link ClpIrFileAppender} instances. The output file is
+   * overwritten if it exists.
+   * @param <B> The type to build
+   */
+  public static class Builder<B extends Builder<B>> extends AbstractAppender.Builder<B>
+      implements org.apache.logging.log4j.core.util.Builder<ClpIrFileAppender>
+  {
+    @PluginBuilderAttribute
+    @Required(message = "No file name provided for ClpIrFileAppender")
+    private String fileName;
+
+    @PluginBuilderAttribute
+    private boolean useFourByteEncoding = true;
+
+    @PluginBuilderAttribute
+    private String timestampPattern = DEFAULT_TIMESTAMP_PATTERN;
+
+    @PluginBuilderAttribute
+    private String timeZoneId = TimeZone.getDefault().getID();
+
+    @PluginBuilderAttribute
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    @PluginBuilderAttribute
+    private boolean immediateFlush = true;
+
+    public B withFileName (String fileName) {
+      this.fileName = fileName;
+      return asBuilder();
+    }
+
+    public B withUseFourByteEncoding (boolean useFourByteEncoding) {
+      this.useFourByteEncoding = useFourByteEncoding;
+      return asBuilder();
+    }
+
+    public B withTimestampPattern (String timestampPattern) {
+      this.timestampPattern = timestampPattern;
+      return asBuilder();
+    }
+
+    public B withTimeZoneId (String timeZoneId) {
+      this.timeZoneId = timeZoneId;
+      return asBuilder();
+    }
+
+    public B withBatchSize (int batchSize) {
+      this.batchSize = batchSize;
+      return asBuilder();
+    }
+
+    public B withImmediateFlush (boolean immediateFlush) {
+      this.immediateFlush = immediateFlush;
+      return asBuilder();
+    }
+
+    @Override
+    public ClpIrFileAppender build () {
+      if (batchSize <= 0) {
+        LOGGER.error("batchSize must be positive for ClpIrFileAppender {}", getName());
+        return null;
+      }
+
+      Layout<? extends Serializable> layout = getLayout();
+      if (null == layout) {
+        layout = PatternLayout.newBuilder()
+            .withPattern(DEFAULT_PATTERN)
+            .withConfiguration(getConfiguration())
+            .build();
+      }
+
+      AbstractClpIrOutputStream irOutputStream;
+      try {
+        Path path = Paths.get(fileName);
+        Path parent = path.toAbsolutePath().getParent();
+        if (null != parent) {
+          Files.createDirectories(parent);
+        }
+        OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(path.toFile()));
+        if (useFourByteEncoding) {
+          irOutputStream = new FourByteClpIrOutputStream(timestampPattern, timeZoneId,
+                                                         outputStream);
+        } else {
+          irOutputStream = new EightByteClpIrOutputStream(timestampPattern, timeZoneId,
+                                                          outputStream);
+        }
+      } catch (IOException e) {
+        LOGGER.error("Failed to open {} for ClpIrFileAppender {}", fileName, getName(), e);
+        return null;
+      }
+
+      return new ClpIrFileAppender(getName(), getFilter(), layout, isIgnoreExceptions(),
+                                   getPropertyArray(), irOutputStream, batchSize,
+                                   immediateFlush);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package com.yscope.clp.appenders.log4j2;
+
+import com.yscope.clp.irstream.AbstractClpIrInputStream;
+import com.yscope.clp.irstream.ClpIrInputStreamFactory;
+import com.yscope.clp.irstream.LogEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
+import org.apache.logging.log4j.core.layout.PatternLayout;
+import org.apache.logging.log4j.message.SimpleMessage;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+public class TestClpIrFileAppender {
+  @Test
+  void testAppending () {
+    int batchSize = 16;
+    // Not a multiple of the batch size so that the last batch is only written
+    // when the appender is stopped
+    int numEvents = 1000;
+    long firstTimestamp = 1700000000000L;
+
+    Path irPath = null;
+    try {
+      irPath = Files.createTempFile("log4j2-appender-test", ".clp");
+      ClpIrFileAppender appender = ClpIrFileAppender.newBuilder()
+          .setName("clp")
+          .setLayout(PatternLayout.newBuilder().withPattern(" %p %c - %m%n").build())
+          .withFileName(irPath.toString())
+          .withBatchSize(batchSize)
+          .withImmediateFlush(false)
+          .build();
+      assertNotNull(appender);
+      appender.start();
+      for (int i = 0; i < numEvents; ++i) {
+        appender.append(Log4jLogEvent.newBuilder()
+            .setLoggerName("test")
+            .setLevel(Level.INFO)
+            .setMessage(new SimpleMessage("Event " + i + " took " + (i * 0.5) + " ms"))
+            .setTimeMillis(firstTimestamp + i)
+            .setEndOfBatch(0 == (i + 1) % 100)
+            .build());
+      }
+      assertTrue(appender.stop(1, TimeUnit.SECONDS));
+
+      AbstractClpIrInputStream inputStream =
+          ClpIrInputStreamFactory.fromInputStream(Files.newInputStream(irPath));
+      LogEvent logEvent = new LogEvent();
+      for (int i = 0; i < numEvents; ++i) {
+        assertTrue(inputStream.readNextLogEvent(logEvent));
+        assertEquals(firstTimestamp + i, logEvent.getTimestamp());
+        assertEquals(" INFO test - Event " + i + " took " + (i * 0.5) + " ms"
+                         + System.lineSeparator(), logEvent.getMessageAsString());
+      }
+      assertFalse(inputStream.readNextLogEvent(logEvent));
+      inputStream.close();
+    } catch (Exception e) {
+      fail(e.getMessage());
+    } finally {
+      if (null != irPath) {
+        try {
+          Files.deleteIfExists(irPath);
+        } catch (IOException e) {
+          // Ignore since the file is in a temporary directory
+        }
+      }
+    }
+  }
+
+  @Test
+  void testImmediateFlushByDefault () {
+    int numEvents = 10;
+    Path irPath = null;
+    try {
+      irPath = Files.createTempFile("log4j2-appender-test", ".clp");
+      ClpIrFileAppender appender = ClpIrFileAppender.newBuilder()
+          .setName("clp")
+          .setLayout(PatternLayout.newBuilder().withPattern(" %p %c - %m%n").build())
+          .withFileName(irPath.toString())
+          .build();
+      assertNotNull(appender);
+      appender.start();
+      for (int i = 0; i < numEvents; ++i) {
+        appender.append(Log4jLogEvent.newBuilder()
+            .setLoggerName("test")
+            .setLevel(Level.INFO)
+            .setMessage(new SimpleMessage("Event " + i))
+            .setTimeMillis(1700000000000L + i)
+            .build());
+      }
+
+      // Every event should be readable before the appender is stopped
+      AbstractClpIrInputStream inputStream =
+          ClpIrInputStreamFactory.fromInputStream(Files.newInputStream(irPath));
+      LogEvent logEvent = new LogEvent();
+      for (int i = 0; i < numEvents; ++i) {
+        assertTrue(inputStream.readNextLogEvent(logEvent));
+        assertEquals(" INFO test - Event " + i + System.lineSeparator(),
+                     logEvent.getMessageAsString());
+      }
+      inputStream.close();
+      assertTrue(appender.stop(1, TimeUnit.SECONDS));
+    } catch (Exception e) {
+      fail(e.getMessage());
+    } finally {
+      if (null != irPath) {
+        try {
+          Files.deleteIfExists(irPath);
+        } catch (IOException e) {
+          // Ignore since the file is in a temporary directory
+        }
+      }
+    }
+  }
+}
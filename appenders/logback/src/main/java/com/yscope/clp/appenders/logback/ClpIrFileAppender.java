@@ -0,0 +1,257 @@
+package com.yscope.clp.appenders.logback;
+
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Layout;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import com.yscope.clp.irstream.AbstractClpIrOutputStream;
+import com.yscope.clp.irstream.EightByteClpIrOutputStream;
+import com.yscope.clp.irstream.FourByteClpIrOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A Logback appender that writes log events to a file as a CLP IR stream.
+ * <p></p>
+ * Each event's message is formatted with the appender's layout and then
+ * encoded as UTF-8 directly into a reusable batch buffer, and the event's
+ * timestamp is taken from {@link ILoggingEvent#getTimeStamp()}. Logback
+ * doesn't have a garbage-free mode, so the string returned by the layout is
+ * the only per-event allocation. Batches are encoded with a single call to
+ * {@link AbstractClpIrOutputStream#writeLogEvents} when:
+ * <ul>
+ *   <li>the batch is full;</li>
+ *   <li>{@code immediateFlush} is enabled;</li>
+ *   <li>the appender is stopped.</li>
+ * </ul>
+ * Like Logback's file appenders, {@code immediateFlush} is enabled by default,
+ * so every event is written and flushed to the file as it's appended. This
+ * keeps the file's tail readable while it's being written and means no events
+ * are lost if the process crashes. Disabling it batches events for higher
+ * throughput, at the cost of losing the unwritten batch (and anything still
+ * buffered) on a crash.
+ * <p></p>
+ * Since the timestamp is stored separately from the message, the layout
+ * shouldn't include the date. The output file is overwritten if it exists.
+ * <p></p>
+ * Example configuration:
+ * <pre>{@code
+ * <appender name="clp" class="com.yscope.clp.appenders.logback.ClpIrFileAppender">
+ *   <file>logs/app.clp</file>
+ *   <batchSize>256</batchSize>
+ *   <immediateFlush>false</immediateFlush>
+ *   <layout class="ch.qos.logback.classic.PatternLayout">
+ *     <pattern> %level [%thread] %logger - %msg%n</pattern>
+ *   </layout>
+ * </appender>
+ * }</pre>
+ */
+public class ClpIrFileAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+  public static final String DEFAULT_PATTERN = " %level [%thread] %logger - %msg%n";
+  public static final String DEFAULT_TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss,SSS";
+  public static final int DEFAULT_BATCH_SIZE = 256;
+
+  private static final int INITIAL_BATCH_MESSAGES_CAPACITY_PER_EVENT = 128;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  // Configuration
+  private String file = null;
+  private Layout<ILoggingEvent> layout = null;
+  private boolean useFourByteEncoding = true;
+  private String timestampPattern = DEFAULT_TIMESTAMP_PATTERN;
+  private String timeZoneId = TimeZone.getDefault().getID();
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private boolean immediateFlush = true;
+
+  private AbstractClpIrOutputStream irOutputStream = null;
+  private long[] batchTimestamps;
+  private int[] batchMessageEndOffsets;
+  private byte[] batchMessages;
+  private int batchMessagesLength = 0;
+  private int numBatchedEvents = 0;
+
+  public void setFile (String file) {
+    this.file = file;
+  }
+
+  public void setLayout (Layout<ILoggingEvent> layout) {
+    this.layout = layout;
+  }
+
+  public void setUseFourByteEncoding (boolean useFourByteEncoding) {
+    this.useFourByteEncoding = useFourByteEncoding;
+  }
+
+  public void setTimestampPattern (String timestampPattern) {
+    this.timestampPattern = timestampPattern;
+  }
+
+  public void setTimeZoneId (String timeZoneId) {
+    this.timeZoneId = timeZoneId;
+  }
+
+  public void setBatchSize (int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public void setImmediateFlush (boolean immediateFlush) {
+    this.immediateFlush = immediateFlush;
+  }
+
+  @Override
+  public void start () {
+    if (null == file) {
+      addError("No file set for appender \"" + name + "\".");
+      return;
+    }
+    if (batchSize <= 0) {
+      addError("batchSize must be positive for appender \"" + name + "\".");
+      return;
+    }
+    if (null == layout) {
+      PatternLayout patternLayout = new PatternLayout();
+      patternLayout.setContext(context);
+      patternLayout.setPattern(DEFAULT_PATTERN);
+      patternLayout.start();
+      layout = patternLayout;
+    }
+
+    try {
+      Path path = Paths.get(file);
+      Path parent = path.toAbsolutePath().getParent();
+      if (null != parent) {
+        Files.createDirectories(parent);
+      }
+      OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(path.toFile()));
+      if (useFourByteEncoding) {
+        irOutputStream = new FourByteClpIrOutputStream(timestampPattern, timeZoneId,
+                                                       outputStream);
+      } else {
+        irOutputStream = new EightByteClpIrOutputStream(timestampPattern, timeZoneId,
+                                                        outputStream);
+      }
+    } catch (IOException e) {
+      addError("Failed to open " + file + " for appender \"" + name + "\".", e);
+      return;
+    }
+    batchTimestamps = new long[batchSize];
+    batchMessageEndOffsets = new int[batchSize];
+    batchMessages = new byte[batchSize * INITIAL_BATCH_MESSAGES_CAPACITY_PER_EVENT];
+    super.start();
+  }
+
+  @Override
+  public void stop () {
+    if (false == isStarted()) {
+      return;
+    }
+    super.stop();
+    lock.lock();
+    try {
+      writeBatch();
+      irOutputStream.close();
+    } catch (IOException e) {
+      addError("Failed to close CLP IR stream for appender \"" + name + "\".", e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  protected void append (ILoggingEvent event) {
+    String message = layout.doLayout(event);
+    lock.lock();
+    try {
+      if (false == isStarted()) {
+        return;
+      }
+      appendUtf8(message);
+      batchTimestamps[numBatchedEvents] = event.getTimeStamp();
+      batchMessageEndOffsets[numBatchedEvents] = batchMessagesLength;
+      ++numBatchedEvents;
+
+      if (immediateFlush) {
+        writeBatch();
+        irOutputStream.flush();
+      } else if (batchTimestamps.length == numBatchedEvents) {
+        writeBatch();
+      }
+    } catch (IOException e) {
+      addError("Failed to write log event to CLP IR stream for appender \"" + name + "\".", e);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Encodes and writes the current batch. The lock must be held.
+   * @throws IOException on failure to encode the batch or I/O error
+   */
+  private void writeBatch () throws IOException {
+    if (0 == numBatchedEvents) {
+      return;
+    }
+    try {
+      irOutputStream.writeLogEvents(batchTimestamps, batchMessages, batchMessageEndOffsets,
+                                    numBatchedEvents);
+    } finally {
+      numBatchedEvents = 0;
+      batchMessagesLength = 0;
+    }
+  }
+
+  /**
+   * Appends the given string to the batch's messages as UTF-8, without
+   * allocating intermediate buffers. Unpaired surrogates are encoded as '?'.
+   * @param value
+   */
+  private void appendUtf8 (String value) {
+    int length = value.length();
+    // Each UTF-16 code unit encodes to at most 3 UTF-8 bytes
+    ensureBatchMessagesCapacity(batchMessagesLength + length * 3);
+
+    byte[] buffer = batchMessages;
+    int bufferLength = batchMessagesLength;
+    for (int i = 0; i < length; ++i) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        buffer[bufferLength++] = (byte)c;
+      } else if (c < 0x800) {
+        buffer[bufferLength++] = (byte)(0xC0 | (c >> 6));
+        buffer[bufferLength++] = (byte)(0x80 | (c & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && i + 1 < length
+            && Character.isLowSurrogate(value.charAt(i + 1)))
+        {
+          int codePoint = Character.toCodePoint(c, value.charAt(++i));
+          buffer[bufferLength++] = (byte)(0xF0 | (codePoint >> 18));
+          buffer[bufferLength++] = (byte)(0x80 | ((codePoint >> 12) & 0x3F));
+          buffer[bufferLength++] = (byte)(0x80 | ((codePoint >> 6) & 0x3F));
+          buffer[bufferLength++] = (byte)(0x80 | (codePoint & 0x3F));
+        } else {
+          buffer[bufferLength++] = '?';
+        }
+      } else {
+        buffer[bufferLength++] = (byte)(0xE0 | (c >> 12));
+        buffer[bufferLength++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+        buffer[bufferLength++] = (byte)(0x80 | (c & 0x3F));
+      }
+    }
+    batchMessagesLength = bufferLength;
+  }
+
+  private void ensureBatchMessagesCapacity (int capacity) {
+    if (capacity > batchMessages.length) {
+      batchMessages = Arrays.copyOf(batchMessages, Math.max(capacity, batchMessages.length * 2));
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package com.yscope.clp.appenders.logback;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.PatternLayout;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import com.yscope.clp.irstream.AbstractClpIrInputStream;
+import com.yscope.clp.irstream.ClpIrInputStreamFactory;
+import com.yscope.clp.irstream.LogEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+public class TestClpIrFileAppender {
+  @Test
+  void testAppending () {
+    int batchSize = 16;
+    // Not a multiple of the batch size so that the last batch is only written
+    // when the appender is stopped
+    int numEvents = 1000;
+    long firstTimestamp = 1700000000000L;
+
+    Path irPath = null;
+    try {
+      irPath = Files.createTempFile("logback-appender-test", ".clp");
+      LoggerContext loggerContext = new LoggerContext();
+      Logger logger = loggerContext.getLogger("test");
+
+      PatternLayout layout = new PatternLayout();
+      layout.setContext(loggerContext);
+      layout.setPattern(" %level %logger - %msg%n");
+      layout.start();
+
+      ClpIrFileAppender appender = new ClpIrFileAppender();
+      appender.setContext(loggerContext);
+      appender.setName("clp");
+      appender.setFile(irPath.toString());
+      appender.setLayout(layout);
+      appender.setBatchSize(batchSize);
+      appender.setImmediateFlush(false);
+      appender.start();
+      assertTrue(appender.isStarted());
+      for (int i = 0; i < numEvents; ++i) {
+        // Include non-ASCII characters to exercise the UTF-8 encoder
+        LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger, Level.INFO,
+                                              "\u00c9v\u00e9nement {} took {} ms \ud83d\ude80", null,
+                                              new Object[] {i, i * 0.5});
+        event.setTimeStamp(firstTimestamp + i);
+        appender.doAppend(event);
+      }
+      appender.stop();
+
+      AbstractClpIrInputStream inputStream =
+          ClpIrInputStreamFactory.fromInputStream(Files.newInputStream(irPath));
+      LogEvent logEvent = new LogEvent();
+      for (int i = 0; i < numEvents; ++i) {
+        assertTrue(inputStream.readNextLogEvent(logEvent));
+        assertEquals(firstTimestamp + i, logEvent.getTimestamp());
+        assertEquals(" INFO test - \u00c9v\u00e9nement " + i + " took " + (i * 0.5)
+                         + " ms \ud83d\ude80" + System.lineSeparator(),
+                     logEvent.getMessageAsString());
+      }
+      assertFalse(inputStream.readNextLogEvent(logEvent));
+      inputStream.close();
+    } catch (Exception e) {
+      fail(e.getMessage());
+    } finally {
+      if (null != irPath) {
+        try {
+          Files.deleteIfExists(irPath);
+        } catch (IOException e) {
+          // Ignore since the file is in a temporary directory
+        }
+      }
+    }
+  }
+
+  @Test
+  void testImmediateFlushByDefault () {
+    int numEvents = 10;
+    Path irPath = null;
+    try {
+      irPath = Files.createTempFile("logback-appender-test", ".clp");
+      LoggerContext loggerContext = new LoggerContext();
+      Logger logger = loggerContext.getLogger("test");
+
+      PatternLayout layout = new PatternLayout();
+      layout.setContext(loggerContext);
+      layout.setPattern(" %level %logger - %msg%n");
+      layout.start();
+
+      ClpIrFileAppender appender = new ClpIrFileAppender();
+      appender.setContext(loggerContext);
+      appender.setName("clp");
+      appender.setFile(irPath.toString());
+      appender.setLayout(layout);
+      appender.start();
+      assertTrue(appender.isStarted());
+      for (int i = 0; i < numEvents; ++i) {
+        LoggingEvent event = new LoggingEvent(Logger.class.getName(), logger, Level.INFO,
+                                              "Event {}", null, new Object[] {i});
+        event.setTimeStamp(1700000000000L + i);
+        appender.doAppend(event);
+      }
+
+      // Every event should be readable before the appender is stopped
+      AbstractClpIrInputStream inputStream =
+          ClpIrInputStreamFactory.fromInputStream(Files.newInputStream(irPath));
+      LogEvent logEvent = new LogEvent();
+      for (int i = 0; i < numEvents; ++i) {
+        assertTrue(inputStream.readNextLogEvent(logEvent));
+        assertEquals(" INFO test - Event " + i + System.lineSeparator(),
+                     logEvent.getMessageAsString());
+      }
+      inputStream.close();
+      appender.stop();
+    } catch (Exception e) {
+      fail(e.getMessage());
+    } finally {
+      if (null != irPath) {
+        try {
+          Files.deleteIfExists(irPath);
+        } catch (IOException e) {
+          // Ignore since the file is in a temporary directory
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package com.yscope.clp.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates synthetic log messages with a controllable length and number of
+ * variables so that benchmarks can isolate how each dimension affects
+ * performance.
+ */
+public class BenchmarkMessages {
+  private static final String STATIC_TEXT_FILLER =
+      " the quick brown fox jumps over the lazy dog while the service keeps running";
+
+  // Use a fixed seed so that every run of a benchmark sees the same messages
+  private static final long SEED = 0x5eed;
+
+  /**
+   * Generates a message containing the given number of variables. Static text
+   * is appended until the message is at least {@code messageLength} bytes long.
+   * @param random Source of randomness for the variable values
+   * @param messageLength The minimum length of the message in bytes
+   * @param numDictVars Number of dictionary variables (e.g., identifiers)
+   * @param numEncodedVars Number of encoded variables, alternating between
+   *                       integers and floats
+   * @return The message
+   */
+  public static String generateMessage(
+      Random random,
+      int messageLength,
+      int numDictVars,
+      int numEncodedVars
+  ) {
+    StringBuilder builder = new StringBuilder(messageLength + STATIC_TEXT_FILLER.length());
+    builder.append("INFO Task");
+    for (int i = 0; i < numDictVars; ++i) {
+      builder.append(" task_").append(Integer.toHexString(random.nextInt()))
+          .append("_attempt").append(i);
+    }
+    for (int i = 0; i < numEncodedVars; ++i) {
+      if (0 == i % 2) {
+        builder.append(" count=").append(random.nextInt(1_000_000));
+      } else {
+        builder.append(" ratio=").append(random.nextInt(1000)).append('.')
+            .append(random.nextInt(1000));
+      }
+    }
+    while (builder.length() < messageLength) {
+      int numCharsToAppend =
+          Math.min(STATIC_TEXT_FILLER.length(), messageLength - builder.length());
+      builder.append(STATIC_TEXT_FILLER, 0, numCharsToAppend);
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Generates a batch of messages using {@link #generateMessage}
+   * @param numMessages
+   * @param messageLength
+   * @param numDictVars
+   * @param numEncodedVars
+   * @return The messages
+   */
+  public static String[] generateMessages(
+      int numMessages,
+      int messageLength,
+      int numDictVars,
+      int numEncodedVars
+  ) {
+    Random random = new Random(SEED);
+    String[] messages = new String[numMessages];
+    for (int i = 0; i < numMessages; ++i) {
+      messages[i] = generateMessage(random, messageLength, numDictVars, numEncodedVars);
+    }
+    return messages;
+  }
+
+  /**
+   * @param messages
+   * @return The messages encoded as UTF-8 byte arrays
+   */
+  public static byte[][] toUtf8ByteArrays(String[] messages) {
+    byte[][] byteArrays = new byte[messages.length][];
+    for (int i = 0; i < messages.length; ++i) {
+      byteArrays[i] = messages[i].getBytes(StandardCharsets.UTF_8);
+    }
+    return byteArrays;
+  }
+}
@@ -0,0 +1,40 @@
+package com.yscope.clp.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Auxiliary JMH counters for reporting throughput in MB/s alongside ops/s.
+ * Benchmarks add the number of (uncompressed) bytes they processed per
+ * operation, and JMH reports the counter normalized by time.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class ByteCounters {
+  private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+  private long numBytesProcessed;
+
+  @Setup(Level.Iteration)
+  public void reset() {
+    numBytesProcessed = 0;
+  }
+
+  // NOTE: This is package-private since JMH treats every public method of an
+  // AuxCounters state as a counter.
+  void add(long numBytes) {
+    numBytesProcessed += numBytes;
+  }
+
+  /**
+   * NOTE: JMH reports this counter divided by the iteration's duration, so it
+   * appears as MB/s in the results.
+   * @return The number of megabytes processed in the current iteration
+   */
+  public double megabytes() {
+    return numBytesProcessed / BYTES_PER_MEGABYTE;
+  }
+}
@@ -0,0 +1,141 @@
+package com.yscope.clp.benchmarks;
+
+import com.yscope.clp.compressorfrontend.FlattenedByteArray;
+import com.yscope.clp.compressorfrontend.FlattenedByteArrayFactory;
+import com.yscope.clp.irstream.AbstractClpIrOutputStream;
+import com.yscope.clp.irstream.EightByteClpIrOutputStream;
+import com.yscope.clp.irstream.FourByteClpIrOutputStream;
+import com.yscope.clp.irstream.ZstdFrameOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link AbstractClpIrOutputStream#writeLogEvent} and
+ * {@link AbstractClpIrOutputStream#writeLogEvents} for both the four-byte and
+ * eight-byte encodings. The IR is written to a stream that
+ * discards it, so the results exclude I/O costs.
+ * <p></p>
+ * When {@code zstdFrameSize} is non-zero, the IR is compressed with a
+ * {@link ZstdFrameOutputStream} using that target frame size.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IrOutputStreamBenchmark {
+  private static final int NUM_UNIQUE_MESSAGES = 1024;
+  private static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss,SSS";
+  private static final String TIME_ZONE_ID = "UTC";
+
+  @Param({"true", "false"})
+  public boolean useFourByteEncoding;
+
+  @Param({"64", "256", "1024"})
+  public int messageLength;
+
+  @Param({"0", "2", "8"})
+  public int numDictVars;
+
+  @Param({"0", "2", "8"})
+  public int numEncodedVars;
+
+  @Param({"0", "1048576"})
+  public int zstdFrameSize;
+
+  private ByteBuffer[] messages;
+  private FlattenedByteArray flattenedMessages;
+  private long[] batchTimestamps;
+  private int messageIdx;
+  private long timestamp;
+  private AbstractClpIrOutputStream irOutputStream;
+
+  @Setup
+  public void setup() {
+    byte[][] messagesAsBytes = BenchmarkMessages.toUtf8ByteArrays(
+        BenchmarkMessages.generateMessages(NUM_UNIQUE_MESSAGES, messageLength, numDictVars,
+                                           numEncodedVars));
+    messages = new ByteBuffer[messagesAsBytes.length];
+    for (int i = 0; i < messagesAsBytes.length; ++i) {
+      messages[i] = ByteBuffer.wrap(messagesAsBytes[i]);
+    }
+    flattenedMessages = FlattenedByteArrayFactory.fromByteArrays(messagesAsBytes);
+    batchTimestamps = new long[messagesAsBytes.length];
+  }
+
+  @Setup(Level.Iteration)
+  public void openStream() {
+    OutputStream discardingOutputStream = new DiscardingOutputStream();
+    if (0 != zstdFrameSize) {
+      discardingOutputStream = new ZstdFrameOutputStream(
+          discardingOutputStream, zstdFrameSize, ZstdFrameOutputStream.DEFAULT_COMPRESSION_LEVEL);
+    }
+    if (useFourByteEncoding) {
+      irOutputStream = new FourByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID,
+                                                     discardingOutputStream);
+    } else {
+      irOutputStream = new EightByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID,
+                                                      discardingOutputStream);
+    }
+    messageIdx = 0;
+    timestamp = System.currentTimeMillis();
+  }
+
+  @TearDown(Level.Iteration)
+  public void closeStream() throws IOException {
+    irOutputStream.close();
+  }
+
+  @Benchmark
+  public void writeLogEvent(ByteCounters counters) throws IOException {
+    ByteBuffer message = messages[messageIdx];
+    messageIdx = (messageIdx + 1) % messages.length;
+    // Advance the timestamp by a small amount to mimic a typical log
+    timestamp += 3;
+    irOutputStream.writeLogEvent(timestamp, message);
+    counters.add(message.remaining());
+  }
+
+  /**
+   * Writes all the unique messages as a single batch. Compare the megabytes
+   * counter (rather than ops/s) with {@link #writeLogEvent}.
+   */
+  @Benchmark
+  public void writeLogEvents(ByteCounters counters) throws IOException {
+    for (int i = 0; i < batchTimestamps.length; ++i) {
+      timestamp += 3;
+      batchTimestamps[i] = timestamp;
+    }
+    irOutputStream.writeLogEvents(batchTimestamps, flattenedMessages);
+    counters.add(flattenedMessages.getFlattenedElems().length);
+  }
+
+  /**
+   * An output stream that discards everything written to it
+   */
+  private static class DiscardingOutputStream extends OutputStream {
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package com.yscope.clp.benchmarks;
+
+import com.yscope.clp.compressorfrontend.AbstractClpEncodedSubquery;
+import com.yscope.clp.compressorfrontend.BuiltInVariableHandlingRuleVersions;
+import com.yscope.clp.compressorfrontend.EightByteClpWildcardQueryEncoder;
+import com.yscope.clp.compressorfrontend.FourByteClpWildcardQueryEncoder;
+import com.yscope.clp.irstream.AbstractClpIrInputStream;
+import com.yscope.clp.irstream.AbstractClpIrOutputStream;
+import com.yscope.clp.irstream.ClpIrInputStreamFactory;
+import com.yscope.clp.irstream.ClpIrStreamSearcher;
+import com.yscope.clp.irstream.EightByteClpIrOutputStream;
+import com.yscope.clp.irstream.FourByteClpIrOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link ClpIrStreamSearcher#search} on an in-memory IR stream for
+ * both the four-byte and eight-byte encodings. Each operation searches the
+ * whole stream, and the megabytes counter reports the amount of IR (rather
+ * than decoded text) searched per second.
+ * <p></p>
+ * The queries cover an encoded variable wildcard query, a dictionary variable
+ * wildcard query, and a query whose logtype matches nothing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IrStreamSearchBenchmark {
+  private static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss,SSS";
+  private static final String TIME_ZONE_ID = "UTC";
+
+  @Param({"true", "false"})
+  public boolean useFourByteEncoding;
+
+  @Param({"100000"})
+  public int numMessages;
+
+  @Param({"256"})
+  public int messageLength;
+
+  @Param({"*count=1*", "*task_*_attempt1*", "*no such text*"})
+  public String query;
+
+  private byte[] irBytes;
+  private ClpIrStreamSearcher searcher;
+
+  @Setup
+  public void setup() throws IOException {
+    byte[][] messages = BenchmarkMessages.toUtf8ByteArrays(
+        BenchmarkMessages.generateMessages(numMessages, messageLength, 2, 2));
+
+    ByteArrayOutputStream irOutputBytes = new ByteArrayOutputStream();
+    AbstractClpIrOutputStream irOutputStream;
+    AbstractClpEncodedSubquery[] subqueries;
+    if (useFourByteEncoding) {
+      irOutputStream = new FourByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID,
+                                                     irOutputBytes);
+      subqueries = new FourByteClpWildcardQueryEncoder(
+          BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+          BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+      ).encode(query);
+    } else {
+      irOutputStream = new EightByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID,
+                                                      irOutputBytes);
+      subqueries = new EightByteClpWildcardQueryEncoder(
+          BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+          BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+      ).encode(query);
+    }
+    long timestamp = System.currentTimeMillis();
+    for (byte[] message : messages) {
+      timestamp += 3;
+      irOutputStream.writeLogEvent(timestamp, ByteBuffer.wrap(message));
+    }
+    irOutputStream.close();
+    irBytes = irOutputBytes.toByteArray();
+
+    searcher = new ClpIrStreamSearcher(subqueries);
+  }
+
+  /**
+   * Searches the whole stream. Divide the megabytes counter by 1024 for the
+   * throughput in GB/s of IR.
+   * @return The number of matches, so that the search isn't optimized away
+   */
+  @Benchmark
+  public long search(ByteCounters counters) throws IOException {
+    AbstractClpIrInputStream irInputStream =
+        ClpIrInputStreamFactory.fromInputStream(new ByteArrayInputStream(irBytes));
+    long numMatches = searcher.search(irInputStream, logEvent -> true);
+    irInputStream.close();
+    counters.add(irBytes.length);
+    return numMatches;
+  }
+}
@@ -0,0 +1,142 @@
+package com.yscope.clp.benchmarks;
+
+import com.yscope.clp.compressorfrontend.BuiltInVariableHandlingRuleVersions;
+import com.yscope.clp.compressorfrontend.EncodedMessage;
+import com.yscope.clp.compressorfrontend.FlattenedByteArray;
+import com.yscope.clp.compressorfrontend.MessageDecoder;
+import com.yscope.clp.compressorfrontend.MessageEncoder;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks {@link MessageDecoder#decodeMessage},
+ * {@link MessageDecoder#decodeMessageAsBytes}, and
+ * {@link MessageDecoder#decodeMessageInto}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageDecoderBenchmark {
+  private static final int NUM_UNIQUE_MESSAGES = 1024;
+
+  @Param({"64", "256", "1024"})
+  public int messageLength;
+
+  @Param({"0", "2", "8"})
+  public int numDictVars;
+
+  @Param({"0", "2", "8"})
+  public int numEncodedVars;
+
+  private MessageDecoder messageDecoder;
+  private MessageDecoder cachingMessageDecoder;
+  private byte[][] logtypes;
+  private String[] logtypesAsStrings;
+  private FlattenedByteArray[] dictVars;
+  private String[][] dictVarsAsStrings;
+  private long[][] encodedVars;
+  private long[] messageLengths;
+  private byte[] decodedMessageBuffer;
+  private int messageIdx;
+
+  @Setup
+  public void setup() throws IOException {
+    MessageEncoder messageEncoder = new MessageEncoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+    );
+    messageDecoder = new MessageDecoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+    );
+    cachingMessageDecoder = new MessageDecoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1,
+        NUM_UNIQUE_MESSAGES
+    );
+
+    String[] messages = BenchmarkMessages.generateMessages(NUM_UNIQUE_MESSAGES, messageLength,
+                                                           numDictVars, numEncodedVars);
+    logtypes = new byte[messages.length][];
+    logtypesAsStrings = new String[messages.length];
+    dictVars = new FlattenedByteArray[messages.length];
+    dictVarsAsStrings = new String[messages.length][];
+    encodedVars = new long[messages.length][];
+    messageLengths = new long[messages.length];
+    EncodedMessage encodedMessage = new EncodedMessage();
+    for (int i = 0; i < messages.length; ++i) {
+      messageEncoder.encodeMessage(messages[i], encodedMessage);
+      logtypes[i] = encodedMessage.getLogtype();
+      logtypesAsStrings[i] = encodedMessage.getLogTypeAsString();
+      dictVars[i] = encodedMessage.getDictionaryVarsAsFlattenedByteArray();
+      dictVarsAsStrings[i] = encodedMessage.getDictionaryVarsAsStrings();
+      encodedVars[i] = encodedMessage.getEncodedVars();
+      messageLengths[i] = encodedMessage.getMessage().length;
+    }
+    decodedMessageBuffer = new byte[(int)Arrays.stream(messageLengths).max().orElse(0)];
+    messageIdx = 0;
+  }
+
+  @Benchmark
+  public void decodeMessageFromStrings(ByteCounters counters, Blackhole blackhole)
+      throws IOException
+  {
+    int i = nextMessageIdx();
+    blackhole.consume(messageDecoder.decodeMessage(logtypesAsStrings[i], dictVarsAsStrings[i],
+                                                   encodedVars[i]));
+    counters.add(messageLengths[i]);
+  }
+
+  @Benchmark
+  public void decodeMessageAsBytes(ByteCounters counters, Blackhole blackhole)
+      throws IOException
+  {
+    int i = nextMessageIdx();
+    blackhole.consume(messageDecoder.decodeMessageAsBytes(logtypes[i], dictVars[i],
+                                                          encodedVars[i]));
+    counters.add(messageLengths[i]);
+  }
+
+  @Benchmark
+  public void decodeMessageAsBytesWithCachedLogtypeTemplate(ByteCounters counters,
+                                                            Blackhole blackhole)
+      throws IOException
+  {
+    int i = nextMessageIdx();
+    blackhole.consume(cachingMessageDecoder.decodeMessageAsBytes(i, logtypes[i], dictVars[i],
+                                                                 encodedVars[i]));
+    counters.add(messageLengths[i]);
+  }
+
+  @Benchmark
+  public void decodeMessageIntoArray(ByteCounters counters, Blackhole blackhole)
+      throws IOException
+  {
+    int i = nextMessageIdx();
+    blackhole.consume(messageDecoder.decodeMessageInto(logtypes[i], dictVars[i], encodedVars[i],
+                                                       decodedMessageBuffer, 0));
+    counters.add(messageLengths[i]);
+  }
+
+  private int nextMessageIdx() {
+    int i = messageIdx;
+    messageIdx = (messageIdx + 1) % logtypes.length;
+    return i;
+  }
+}
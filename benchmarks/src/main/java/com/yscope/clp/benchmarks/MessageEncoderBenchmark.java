@@ -0,0 +1,99 @@
+package com.yscope.clp.benchmarks;
+
+import com.yscope.clp.compressorfrontend.BuiltInVariableHandlingRuleVersions;
+import com.yscope.clp.compressorfrontend.EncodedMessage;
+import com.yscope.clp.compressorfrontend.EncodedMessageBatch;
+import com.yscope.clp.compressorfrontend.FlattenedByteArray;
+import com.yscope.clp.compressorfrontend.FlattenedByteArrayFactory;
+import com.yscope.clp.compressorfrontend.MessageEncoder;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks {@link MessageEncoder#encodeMessage} and
+ * {@link MessageEncoder#encodeMessages}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageEncoderBenchmark {
+  private static final int NUM_UNIQUE_MESSAGES = 1024;
+
+  @Param({"64", "256", "1024"})
+  public int messageLength;
+
+  @Param({"0", "2", "8"})
+  public int numDictVars;
+
+  @Param({"0", "2", "8"})
+  public int numEncodedVars;
+
+  private MessageEncoder messageEncoder;
+  private EncodedMessage encodedMessage;
+  private String[] messages;
+  private long[] messageLengths;
+  private int messageIdx;
+
+  private EncodedMessageBatch encodedMessageBatch;
+  private FlattenedByteArray flattenedMessages;
+
+  @Setup
+  public void setup() {
+    messageEncoder = new MessageEncoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+    );
+    encodedMessage = new EncodedMessage();
+    messages = BenchmarkMessages.generateMessages(NUM_UNIQUE_MESSAGES, messageLength, numDictVars,
+                                                  numEncodedVars);
+    byte[][] messagesAsBytes = BenchmarkMessages.toUtf8ByteArrays(messages);
+    messageLengths = new long[messages.length];
+    for (int i = 0; i < messages.length; ++i) {
+      messageLengths[i] = messagesAsBytes[i].length;
+    }
+    messageIdx = 0;
+
+    encodedMessageBatch = new EncodedMessageBatch();
+    flattenedMessages = FlattenedByteArrayFactory.fromByteArrays(messagesAsBytes);
+  }
+
+  @Benchmark
+  public void encodeMessage(ByteCounters counters, Blackhole blackhole) throws IOException {
+    int i = nextMessageIdx();
+    messageEncoder.encodeMessage(messages[i], encodedMessage);
+    blackhole.consume(encodedMessage.getLogtype());
+    counters.add(messageLengths[i]);
+  }
+
+  /**
+   * Encodes all the unique messages in a single call. Compare the megabytes
+   * counter (rather than ops/s) with {@link #encodeMessage}.
+   */
+  @Benchmark
+  public void encodeMessages(ByteCounters counters, Blackhole blackhole) throws IOException {
+    messageEncoder.encodeMessages(flattenedMessages, encodedMessageBatch);
+    blackhole.consume(encodedMessageBatch.getEncodedVars());
+    counters.add(flattenedMessages.getFlattenedElems().length);
+  }
+
+  private int nextMessageIdx() {
+    int i = messageIdx;
+    messageIdx = (messageIdx + 1) % messages.length;
+    return i;
+  }
+}
@@ -0,0 +1,115 @@
+package com.yscope.clp.benchmarks;
+
+import com.yscope.clp.irstream.AbstractClpIrOutputStream;
+import com.yscope.clp.irstream.FourByteClpIrOutputStream;
+import com.yscope.clp.irstream.ShardedClpIrOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link ShardedClpIrOutputStream#writeLogEvent} with all the
+ * machine's cores writing concurrently. Compare the total throughput across
+ * values of {@code numShards} to see how encoding scales; with one shard, all
+ * threads contend on a single stream. The IR is written to streams that
+ * discard it, so the results exclude I/O costs.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class ShardedIrOutputStreamBenchmark {
+  private static final int NUM_UNIQUE_MESSAGES = 1024;
+  private static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss,SSS";
+  private static final String TIME_ZONE_ID = "UTC";
+
+  @Param({"1", "8", "32"})
+  public int numShards;
+
+  @Param({"256"})
+  public int messageLength;
+
+  @Param({"2"})
+  public int numDictVars;
+
+  @Param({"2"})
+  public int numEncodedVars;
+
+  private ByteBuffer[] messages;
+  private ShardedClpIrOutputStream shardedOutputStream;
+
+  /**
+   * Per-thread state so that threads don't share message positions
+   */
+  @State(Scope.Thread)
+  public static class ThreadState {
+    int messageIdx;
+    long timestamp = System.currentTimeMillis();
+  }
+
+  @Setup
+  public void setup() {
+    byte[][] messagesAsBytes = BenchmarkMessages.toUtf8ByteArrays(
+        BenchmarkMessages.generateMessages(NUM_UNIQUE_MESSAGES, messageLength, numDictVars,
+                                           numEncodedVars));
+    messages = new ByteBuffer[messagesAsBytes.length];
+    for (int i = 0; i < messagesAsBytes.length; ++i) {
+      messages[i] = ByteBuffer.wrap(messagesAsBytes[i]);
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void openStream() {
+    AbstractClpIrOutputStream[] shards = new AbstractClpIrOutputStream[numShards];
+    for (int i = 0; i < numShards; ++i) {
+      shards[i] = new FourByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID,
+                                                new DiscardingOutputStream());
+    }
+    shardedOutputStream = new ShardedClpIrOutputStream(shards);
+  }
+
+  @TearDown(Level.Iteration)
+  public void closeStream() throws IOException {
+    shardedOutputStream.close();
+  }
+
+  @Benchmark
+  public void writeLogEvent(ThreadState threadState, ByteCounters counters) throws IOException {
+    ByteBuffer message = messages[threadState.messageIdx];
+    threadState.messageIdx = (threadState.messageIdx + 1) % messages.length;
+    threadState.timestamp += 3;
+    shardedOutputStream.writeLogEvent(threadState.timestamp, message);
+    counters.add(message.remaining());
+  }
+
+  /**
+   * An output stream that discards everything written to it
+   */
+  private static class DiscardingOutputStream extends OutputStream {
+    @Override
+    public void write(int b) {
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+    }
+  }
+}
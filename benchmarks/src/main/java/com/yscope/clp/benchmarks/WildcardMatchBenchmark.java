@@ -0,0 +1,124 @@
+package com.yscope.clp.benchmarks;
+
+import com.yscope.clp.compressorfrontend.AbstractClpEncodedSubquery.VariableWildcardQuery;
+import com.yscope.clp.compressorfrontend.BuiltInVariableHandlingRuleVersions;
+import com.yscope.clp.compressorfrontend.EightByteClpEncodedSubquery;
+import com.yscope.clp.compressorfrontend.EightByteClpWildcardQueryEncoder;
+import com.yscope.clp.compressorfrontend.EncodedMessage;
+import com.yscope.clp.compressorfrontend.MessageDecoder;
+import com.yscope.clp.compressorfrontend.MessageEncoder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks {@link MessageDecoder#batchEncodedVarsWildcardMatch}. Each
+ * operation matches one subquery against a whole batch of messages.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WildcardMatchBenchmark {
+  private static final String WILDCARD_QUERY = "*count=1*";
+
+  @Param({"1000", "10000", "100000"})
+  public int batchSize;
+
+  @Param({"2", "8"})
+  public int numEncodedVars;
+
+  @Param({"128"})
+  public int messageLength;
+
+  private MessageDecoder messageDecoder;
+  private byte[][] logtypes;
+  private long[][] encodedVarArrays;
+  private long batchNumBytes;
+
+  private byte[] wildcardVarPlaceholders;
+  private byte[] serializedVarWildcardQueries;
+  private int[] varWildcardQueryEndIndexes;
+  private int[] matchResults;
+
+  @Setup
+  public void setup() throws IOException {
+    MessageEncoder messageEncoder = new MessageEncoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+    );
+    messageDecoder = new MessageDecoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+    );
+
+    String[] messages =
+        BenchmarkMessages.generateMessages(batchSize, messageLength, 1, numEncodedVars);
+    logtypes = new byte[batchSize][];
+    encodedVarArrays = new long[batchSize][];
+    batchNumBytes = 0;
+    EncodedMessage encodedMessage = new EncodedMessage();
+    for (int i = 0; i < batchSize; ++i) {
+      messageEncoder.encodeMessage(messages[i], encodedMessage);
+      logtypes[i] = encodedMessage.getLogtype();
+      encodedVarArrays[i] = encodedMessage.getEncodedVars();
+      batchNumBytes += encodedMessage.getMessage().length;
+    }
+    matchResults = new int[batchSize];
+
+    // Serialize the encoded-variable wildcard queries of the first subquery
+    // that contains any
+    EightByteClpWildcardQueryEncoder queryEncoder = new EightByteClpWildcardQueryEncoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+    );
+    for (EightByteClpEncodedSubquery subquery : queryEncoder.encode(WILDCARD_QUERY)) {
+      int numQueries = subquery.getNumEncodedVarWildcardQueries();
+      if (0 == numQueries) {
+        continue;
+      }
+      wildcardVarPlaceholders = new byte[numQueries];
+      varWildcardQueryEndIndexes = new int[numQueries];
+      ByteArrayOutputStream serializedQueries = new ByteArrayOutputStream();
+      int queryIdx = 0;
+      for (VariableWildcardQuery q : subquery.getEncodedVarWildcardQueries()) {
+        wildcardVarPlaceholders[queryIdx] = q.getType();
+        serializedQueries.write(q.getQuery().toByteArray());
+        varWildcardQueryEndIndexes[queryIdx] = serializedQueries.size();
+        ++queryIdx;
+      }
+      serializedVarWildcardQueries = serializedQueries.toByteArray();
+      break;
+    }
+    if (null == wildcardVarPlaceholders) {
+      throw new IllegalStateException("Query has no subquery with encoded-variable wildcard "
+                                          + "queries.");
+    }
+  }
+
+  @Benchmark
+  public void batchEncodedVarsWildcardMatch(ByteCounters counters, Blackhole blackhole)
+      throws IOException
+  {
+    messageDecoder.batchEncodedVarsWildcardMatch(logtypes, encodedVarArrays,
+                                                 wildcardVarPlaceholders,
+                                                 serializedVarWildcardQueries,
+                                                 varWildcardQueryEndIndexes, matchResults);
+    blackhole.consume(matchResults);
+    counters.add(batchNumBytes);
+  }
+}
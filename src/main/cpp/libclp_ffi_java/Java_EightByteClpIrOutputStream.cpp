@@ -9,6 +9,8 @@
 #include "ir_stream/common.hpp"
 
 using libclp_ffi_java::ir_stream::encode_log_event;
+using libclp_ffi_java::ir_stream::encode_log_event_into_buffer;
+using libclp_ffi_java::ir_stream::encode_log_events;
 using libclp_ffi_java::ir_stream::encode_preamble;
 
 JNIEXPORT jbyteArray JNICALL
@@ -45,10 +47,60 @@ Java_com_yscope_clp_irstream_EightByteClpIrOutputStream_encodeLogEventNative (
         jlong stream_state_address,
         jlong timestamp,
         jbyteArray Java_message,
+        jobject Java_directMessage,
+        jint message_offset,
         jint message_length
 ) {
     LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
     return encode_log_event<ffi::eight_byte_encoded_variable_t>(
-            jni_env, stream_state_address, timestamp, Java_message, message_length);
+            jni_env, stream_state_address, timestamp, Java_message, Java_directMessage,
+            message_offset, message_length);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(nullptr)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_yscope_clp_irstream_EightByteClpIrOutputStream_encodeLogEventIntoBufferNative (
+        JNIEnv* jni_env,
+        jobject,
+        jlong stream_state_address,
+        jlong timestamp,
+        jbyteArray Java_message,
+        jobject Java_directMessage,
+        jint message_offset,
+        jint message_length,
+        jobject Java_outputBuffer,
+        jint output_buffer_offset,
+        jint output_buffer_limit
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    return encode_log_event_into_buffer<ffi::eight_byte_encoded_variable_t>(
+            jni_env,
+            stream_state_address,
+            timestamp,
+            Java_message,
+            Java_directMessage,
+            message_offset,
+            message_length,
+            Java_outputBuffer,
+            output_buffer_offset,
+            output_buffer_limit
+    );
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(0)
+}
+
+JNIEXPORT jbyteArray JNICALL
+Java_com_yscope_clp_irstream_EightByteClpIrOutputStream_encodeLogEventsNative (
+        JNIEnv* jni_env,
+        jobject,
+        jlong stream_state_address,
+        jlongArray Java_timestamps,
+        jbyteArray Java_messages,
+        jintArray Java_messageEndOffsets,
+        jint num_events
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    return encode_log_events<ffi::eight_byte_encoded_variable_t>(
+            jni_env, stream_state_address, 0, Java_timestamps, Java_messages,
+            Java_messageEndOffsets, num_events);
     LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(nullptr)
 }
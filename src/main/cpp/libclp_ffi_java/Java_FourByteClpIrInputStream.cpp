@@ -0,0 +1,63 @@
+// JNI
+#include <com_yscope_clp_irstream_FourByteClpIrInputStream.h>
+
+// Project headers
+#include "GeneralException.hpp"
+#include "ir_stream/common.hpp"
+
+using libclp_ffi_java::ir_stream::decode_log_event_message;
+using libclp_ffi_java::ir_stream::decode_log_events;
+
+JNIEXPORT jint JNICALL
+Java_com_yscope_clp_irstream_FourByteClpIrInputStream_decodeMessageNative (
+        JNIEnv* jni_env,
+        jobject,
+        jbyteArray Java_logtype,
+        jint logtype_length,
+        jlongArray Java_encodedVars,
+        jint num_encoded_vars,
+        jbyteArray Java_dictVars,
+        jint dict_vars_length,
+        jintArray Java_dictVarEndOffsets,
+        jint num_dict_vars,
+        jbyteArray Java_buffer
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    return decode_log_event_message<ffi::four_byte_encoded_variable_t>(
+            jni_env,
+            Java_logtype,
+            logtype_length,
+            Java_encodedVars,
+            num_encoded_vars,
+            Java_dictVars,
+            dict_vars_length,
+            Java_dictVarEndOffsets,
+            num_dict_vars,
+            Java_buffer
+    );
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(0)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_yscope_clp_irstream_FourByteClpIrInputStream_decodeLogEventsNative (
+        JNIEnv* jni_env,
+        jclass,
+        jobject Java_irBuffer,
+        jint limit,
+        jlongArray Java_cursor,
+        jlongArray Java_timestamps,
+        jbyteArray Java_messages,
+        jintArray Java_messageEndOffsets
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    return decode_log_events<ffi::four_byte_encoded_variable_t>(
+            jni_env,
+            Java_irBuffer,
+            limit,
+            Java_cursor,
+            Java_timestamps,
+            Java_messages,
+            Java_messageEndOffsets
+    );
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(0)
+}
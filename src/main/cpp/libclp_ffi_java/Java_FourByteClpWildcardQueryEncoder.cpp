@@ -0,0 +1,26 @@
+// JNI
+#include <com_yscope_clp_compressorfrontend_FourByteClpWildcardQueryEncoder.h>
+
+// Project headers
+#include "../submodules/clp/components/core/src/ffi/encoding_methods.hpp"
+#include "common.hpp"
+#include "search/common.hpp"
+#include "static_init.hpp"
+
+using libclp_ffi_java::Java_FourByteClpEncodedSubQuery_init;
+using libclp_ffi_java::Java_FourByteClpEncodedSubQuery;
+using libclp_ffi_java::search::encode_wildcard_query;
+
+JNIEXPORT jobjectArray JNICALL
+Java_com_yscope_clp_compressorfrontend_FourByteClpWildcardQueryEncoder_encodeNative (
+        JNIEnv* jni_env,
+        jobject,
+        jbyteArray Java_wildcardQuery,
+        jint wildcard_query_len
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    return encode_wildcard_query<ffi::four_byte_encoded_variable_t>(
+            jni_env, Java_wildcardQuery, wildcard_query_len, Java_FourByteClpEncodedSubQuery,
+            Java_FourByteClpEncodedSubQuery_init);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(nullptr)
+}
@@ -0,0 +1,146 @@
+// C++ standard libraries
+#include <string>
+#include <string_view>
+#include <vector>
+
+// CLP
+#include "../submodules/clp/components/core/src/type_utils.hpp"
+
+// JNI
+#include <com_yscope_clp_compressorfrontend_LogtypeDictionary.h>
+
+// Project headers
+#include "common.hpp"
+#include "GeneralException.hpp"
+#include "JavaException.hpp"
+#include "LogtypeDictionary.hpp"
+
+using libclp_ffi_java::cJSizeMax;
+using libclp_ffi_java::get_java_primitive_array_elements;
+using libclp_ffi_java::JavaIllegalArgumentException;
+using libclp_ffi_java::JavaUnsupportedOperationException;
+using libclp_ffi_java::LogtypeDictionary;
+using libclp_ffi_java::new_java_primitive_array;
+using std::string;
+using std::string_view;
+using std::vector;
+
+// Local function prototypes
+/**
+ * @param dictionary_address
+ * @return The logtype dictionary at the given address
+ */
+static LogtypeDictionary* get_dictionary (jlong dictionary_address);
+
+JNIEXPORT jlong JNICALL
+Java_com_yscope_clp_compressorfrontend_LogtypeDictionary_createNativeDictionary (
+        JNIEnv* jni_env,
+        jclass
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    // NOTE: The use of uintptr_t means that if for some reason,
+    // sizeof(jlong) < sizeof(void*) but sizeof(jlong) == sizeof(uintptr_t),
+    // then this conversion will still work.
+    return bit_cast<jlong>(reinterpret_cast<uintptr_t>(new LogtypeDictionary()));
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(0)
+}
+
+JNIEXPORT void JNICALL
+Java_com_yscope_clp_compressorfrontend_LogtypeDictionary_destroyNativeDictionary (
+        JNIEnv*,
+        jclass,
+        jlong dictionary_address
+) {
+    delete get_dictionary(dictionary_address);
+}
+
+JNIEXPORT jint JNICALL
+Java_com_yscope_clp_compressorfrontend_LogtypeDictionary_getOrAddLogtypeNative (
+        JNIEnv* jni_env,
+        jclass,
+        jlong dictionary_address,
+        jbyteArray Java_logtype,
+        jint logtype_length
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    if (logtype_length < 0 || logtype_length > jni_env->GetArrayLength(Java_logtype)) {
+        throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                           "[native] Invalid logtype length.");
+    }
+    auto logtype_bytes = get_java_primitive_array_elements<jbyteArray, jbyte>(
+            jni_env, Java_logtype, JNI_ABORT);
+    string_view logtype(size_checked_pointer_cast<char>(logtype_bytes.get()), logtype_length);
+    return get_dictionary(dictionary_address)->get_or_add(logtype);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(-1)
+}
+
+JNIEXPORT jbyteArray JNICALL
+Java_com_yscope_clp_compressorfrontend_LogtypeDictionary_getLogtypeNative (
+        JNIEnv* jni_env,
+        jclass,
+        jlong dictionary_address,
+        jint id
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    string logtype;
+    if (false == get_dictionary(dictionary_address)->get_logtype(id, logtype)) {
+        throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                           "[native] Unknown logtype ID: " + std::to_string(id));
+    }
+    return new_java_primitive_array<jbyteArray, jbyte>(
+            jni_env, size_checked_pointer_cast<jbyte>(logtype.data()), logtype.length());
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(nullptr)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_yscope_clp_compressorfrontend_LogtypeDictionary_sizeNative (
+        JNIEnv* jni_env,
+        jclass,
+        jlong dictionary_address
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    // This static cast is safe since IDs are limited to the range of an int32_t
+    return static_cast<jint>(get_dictionary(dictionary_address)->size());
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(-1)
+}
+
+JNIEXPORT jbyteArray JNICALL
+Java_com_yscope_clp_compressorfrontend_LogtypeDictionary_getLogtypesNative (
+        JNIEnv* jni_env,
+        jclass,
+        jlong dictionary_address,
+        jint num_logtypes,
+        jintArray Java_logtypeEndOffsets
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    if (num_logtypes < 0 || num_logtypes > jni_env->GetArrayLength(Java_logtypeEndOffsets)) {
+        throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                           "[native] Invalid number of logtypes.");
+    }
+
+    string logtypes;
+    vector<size_t> logtype_end_offsets;
+    logtype_end_offsets.reserve(num_logtypes);
+    if (false == get_dictionary(dictionary_address)->get_logtypes(num_logtypes, logtypes,
+                                                                  logtype_end_offsets))
+    {
+        throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                           "[native] Invalid number of logtypes.");
+    }
+    if (logtypes.length() > cJSizeMax) {
+        throw JavaUnsupportedOperationException(__FILENAME__, __LINE__, jni_env,
+                                                "Logtypes can't fit in a Java array");
+    }
+
+    vector<jint> Java_logtype_end_offsets(logtype_end_offsets.cbegin(),
+                                          logtype_end_offsets.cend());
+    jni_env->SetIntArrayRegion(Java_logtypeEndOffsets, 0, num_logtypes,
+                               Java_logtype_end_offsets.data());
+    return new_java_primitive_array<jbyteArray, jbyte>(
+            jni_env, size_checked_pointer_cast<jbyte>(logtypes.data()), logtypes.length());
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(nullptr)
+}
+
+static LogtypeDictionary* get_dictionary (jlong dictionary_address) {
+    return reinterpret_cast<LogtypeDictionary*>(bit_cast<uintptr_t>(dictionary_address));
+}
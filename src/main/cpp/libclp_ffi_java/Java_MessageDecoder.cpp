@@ -2,7 +2,12 @@
 // jlong* -> encoded_variable_t* is necessary to resolve build errors on macOS.
 
 // C++ standard libraries
+#include <algorithm>
+#include <cstring>
 #include <string>
+#include <type_traits>
+#include <unordered_map>
+#include <vector>
 
 // JNI
 #include <com_yscope_clp_compressorfrontend_MessageDecoder.h>
@@ -14,18 +19,26 @@
 #include "../submodules/clp/components/core/src/type_utils.hpp"
 #include "common.hpp"
 #include "JavaException.hpp"
+#include "PreparedSubquery.hpp"
 
+using ffi::decode_float_var;
+using ffi::decode_integer_var;
 using ffi::decode_message;
 using ffi::eight_byte_encoded_variable_t;
+using ffi::four_byte_encoded_variable_t;
 using ffi::wildcard_match_encoded_vars;
 using ffi::wildcard_query_matches_any_encoded_var;
 using ir::VariablePlaceholder;
 using libclp_ffi_java::cJSizeMax;
 using libclp_ffi_java::get_java_primitive_array_elements;
 using libclp_ffi_java::JavaExceptionOccurred;
+using libclp_ffi_java::JavaIllegalArgumentException;
 using libclp_ffi_java::JavaIOException;
 using libclp_ffi_java::JavaRuntimeException;
+using libclp_ffi_java::PreparedSubquery;
+using std::string;
 using std::string_view;
+using std::unordered_map;
 
 // Local function prototypes
 /**
@@ -57,7 +70,219 @@ static void batch_encoded_vars_wildcard_match_native (
 );
 
 /**
- * See MessageDecoder::decodeMessageNative in Java
+ * See MessageDecoder::batchEncodedVarsWildcardMatchFlattenedNative and
+ * MessageDecoder::batchEncodedVarsWildcardMatchFourByteNative in Java
+ * @tparam encoded_variable_t Type of the encoded variables
+ * @tparam JavaArrayType Type of the Java array of encoded variables
+ * @tparam JavaPrimitiveType Type of the Java array's elements
+ * @param jni_env
+ * @param begin_message_idx
+ * @param end_message_idx
+ * @param Java_allLogtypes
+ * @param Java_logtypeEndOffsets
+ * @param Java_logtypeIds
+ * @param Java_encodedVarsArray
+ * @param Java_encodedVarsBuffer
+ * @param encoded_vars_begin_offset
+ * @param Java_encodedVarEndOffsets
+ * @param Java_wildcardVarPlaceholders
+ * @param wildcard_var_placeholders_len
+ * @param Java_serializedVarWildcardQueries
+ * @param serialized_var_wildcard_queries_len
+ * @param Java_varWildcardQueryEndIndexes
+ * @param var_wildcard_query_end_indexes_len
+ * @param Java_matchResults
+ */
+template <typename encoded_variable_t, typename JavaArrayType, typename JavaPrimitiveType>
+static void batch_encoded_vars_wildcard_match_flattened_native (
+        JNIEnv* jni_env,
+        jint begin_message_idx,
+        jint end_message_idx,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        JavaArrayType Java_encodedVarsArray,
+        jobject Java_encodedVarsBuffer,
+        jint encoded_vars_begin_offset,
+        jintArray Java_encodedVarEndOffsets,
+        jbyteArray Java_wildcardVarPlaceholders,
+        jint wildcard_var_placeholders_len,
+        jbyteArray Java_serializedVarWildcardQueries,
+        jint serialized_var_wildcard_queries_len,
+        jintArray Java_varWildcardQueryEndIndexes,
+        jint var_wildcard_query_end_indexes_len,
+        jintArray Java_matchResults
+);
+
+/**
+ * See MessageDecoder::batchEncodedVarsWildcardMatchPreparedNative in Java
+ * @param jni_env
+ * @param begin_message_idx
+ * @param end_message_idx
+ * @param Java_allLogtypes
+ * @param Java_logtypeEndOffsets
+ * @param Java_logtypeIds
+ * @param Java_encodedVars
+ * @param Java_encodedVarEndOffsets
+ * @param prepared_subquery_address
+ * @param Java_matchResults
+ */
+static void batch_encoded_vars_wildcard_match_prepared_native (
+        JNIEnv* jni_env,
+        jint begin_message_idx,
+        jint end_message_idx,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        jlongArray Java_encodedVars,
+        jintArray Java_encodedVarEndOffsets,
+        jlong prepared_subquery_address,
+        jintArray Java_matchResults
+);
+
+/**
+ * Copies the end offsets of elements [begin_idx, end_idx) of a flattened array,
+ * preceded by the begin offset of element begin_idx
+ * @param jni_env
+ * @param Java_endOffsets
+ * @param begin_idx
+ * @param end_idx
+ * @return The end_idx - begin_idx + 1 offsets
+ */
+static std::vector<jint> get_end_offsets_region (
+        JNIEnv* jni_env,
+        jintArray Java_endOffsets,
+        jint begin_idx,
+        jint end_idx
+);
+
+/**
+ * Matches the messages in [begin_message_idx, end_message_idx) of a flattened
+ * batch using the given function, and writes the results into the same range
+ * of Java_matchResults. Only the given range of each per-message array is
+ * copied (rather than getting the arrays' elements) so that concurrent calls
+ * for disjoint ranges neither copy the whole batch nor overwrite each other's
+ * results. Similarly, only the logtypes between the lowest and highest
+ * logtype index used by the range are copied.
+ * @tparam encoded_variable_t Type of the encoded variables
+ * @tparam JavaArrayType Type of the Java array of encoded variables
+ * @tparam JavaPrimitiveType Type of the Java array's elements
+ * @tparam EncodedVarsMatcher Function with the signature
+ * bool(string_view logtype, encoded_variable_t* encoded_vars,
+ * size_t num_encoded_vars)
+ * @param jni_env
+ * @param begin_message_idx
+ * @param end_message_idx
+ * @param Java_allLogtypes
+ * @param Java_logtypeEndOffsets
+ * @param Java_logtypeIds
+ * @param Java_encodedVarsArray
+ * @param Java_encodedVarsBuffer A direct buffer, used if Java_encodedVarsArray
+ * is null
+ * @param encoded_vars_begin_offset
+ * @param Java_encodedVarEndOffsets
+ * @param Java_matchResults
+ * @param match
+ */
+template <typename encoded_variable_t, typename JavaArrayType, typename JavaPrimitiveType,
+          typename EncodedVarsMatcher>
+static void match_flattened_batch_range (
+        JNIEnv* jni_env,
+        jint begin_message_idx,
+        jint end_message_idx,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        JavaArrayType Java_encodedVarsArray,
+        jobject Java_encodedVarsBuffer,
+        jint encoded_vars_begin_offset,
+        jintArray Java_encodedVarEndOffsets,
+        jintArray Java_matchResults,
+        EncodedVarsMatcher match
+);
+
+/**
+ * See MessageDecoder::batchEncodedVarsWildcardMatchSubqueriesNative and
+ * MessageDecoder::batchEncodedVarsWildcardMatchFourByteSubqueriesNative in Java
+ * @tparam encoded_variable_t Type of the encoded variables
+ * @tparam JavaArrayType Type of the Java array of encoded variables
+ * @tparam JavaPrimitiveType Type of the Java array's elements
+ * @param jni_env
+ * @param num_messages
+ * @param Java_allLogtypes
+ * @param Java_logtypeEndOffsets
+ * @param Java_logtypeIds
+ * @param Java_encodedVars
+ * @param Java_encodedVarEndOffsets
+ * @param num_subqueries
+ * @param Java_subqueryEndIndexes
+ * @param Java_wildcardVarPlaceholders
+ * @param Java_serializedVarWildcardQueries
+ * @param Java_varWildcardQueryEndIndexes
+ * @param num_match_bitmask_words
+ * @param Java_matchBitmasks
+ */
+template <typename encoded_variable_t, typename JavaArrayType, typename JavaPrimitiveType>
+static void batch_encoded_vars_wildcard_match_subqueries_native (
+        JNIEnv* jni_env,
+        jint num_messages,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        JavaArrayType Java_encodedVars,
+        jintArray Java_encodedVarEndOffsets,
+        jint num_subqueries,
+        jintArray Java_subqueryEndIndexes,
+        jbyteArray Java_wildcardVarPlaceholders,
+        jbyteArray Java_serializedVarWildcardQueries,
+        jintArray Java_varWildcardQueryEndIndexes,
+        jint num_match_bitmask_words,
+        jlongArray Java_matchBitmasks
+);
+
+/**
+ * See MessageDecoder::batchLogtypeQueryMatchNative in Java
+ * @param jni_env
+ * @param num_logtypes
+ * @param Java_allLogtypes
+ * @param Java_logtypeEndOffsets
+ * @param num_subqueries
+ * @param Java_serializedLogtypeQueries
+ * @param Java_logtypeQueryEndOffsets
+ * @param Java_logtypeQueriesContainWildcards
+ * @param num_match_bitmask_words
+ * @param Java_matchBitmasks
+ */
+static void batch_logtype_query_match_native (
+        JNIEnv* jni_env,
+        jint num_logtypes,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jint num_subqueries,
+        jbyteArray Java_serializedLogtypeQueries,
+        jintArray Java_logtypeQueryEndOffsets,
+        jbooleanArray Java_logtypeQueriesContainWildcards,
+        jint num_match_bitmask_words,
+        jlongArray Java_matchBitmasks
+);
+
+/**
+ * Splits the given serialized variable wildcard queries into individual
+ * queries
+ * @param serialized_var_wildcard_queries
+ * @param var_wildcard_query_end_indexes
+ * @param var_wildcard_query_end_indexes_len
+ * @return The queries
+ */
+static std::vector<string_view> deserialize_var_wildcard_queries (
+        string_view serialized_var_wildcard_queries,
+        jint const* var_wildcard_query_end_indexes,
+        jint var_wildcard_query_end_indexes_len
+);
+
+/**
+ * Decodes the message from the given logtype and variables. See
+ * MessageDecoder::decodeMessageNative in Java.
  * @param jni_env
  * @param Java_logtype
  * @param logtype_len
@@ -69,7 +294,7 @@ static void batch_encoded_vars_wildcard_match_native (
  * @param encoded_vars_len
  * @return The decoded message
  */
-static jbyteArray decode_message_native (
+static string decode_message_from_logtype (
         JNIEnv* jni_env,
         jbyteArray Java_logtype,
         jint logtype_len,
@@ -81,6 +306,112 @@ static jbyteArray decode_message_native (
         jint encoded_vars_len
 );
 
+/**
+ * Decodes the message from the given logtype template and variables. See
+ * MessageDecoder::decodeMessageWithTemplateNative in Java.
+ *
+ * Only the template's segments and the message's variables are copied out of
+ * the Java arrays; each constant segment and dictionary variable is copied
+ * straight into the message.
+ * @param jni_env
+ * @param Java_constants
+ * @param Java_segments
+ * @param num_placeholders
+ * @param Java_allDictionaryVars
+ * @param all_dictionary_vars_len
+ * @param Java_dictionaryVarEndOffsets
+ * @param dictionary_var_end_offsets_len
+ * @param Java_encodedVars
+ * @param encoded_vars_len
+ * @return The decoded message
+ */
+static string decode_message_from_template (
+        JNIEnv* jni_env,
+        jbyteArray Java_constants,
+        jlongArray Java_segments,
+        jint num_placeholders,
+        jbyteArray Java_allDictionaryVars,
+        jint all_dictionary_vars_len,
+        jintArray Java_dictionaryVarEndOffsets,
+        jint dictionary_var_end_offsets_len,
+        jlongArray Java_encodedVars,
+        jint encoded_vars_len
+);
+
+/**
+ * Appends [begin_offset, begin_offset + length) of the given Java byte array to
+ * the given string
+ * @param jni_env
+ * @param Java_array
+ * @param begin_offset
+ * @param length
+ * @param dest
+ */
+static void append_java_byte_array_region (
+        JNIEnv* jni_env,
+        jbyteArray Java_array,
+        jsize begin_offset,
+        jsize length,
+        string& dest
+);
+
+/**
+ * See MessageDecoder::batchDecodeMessagesNative in Java
+ * @param jni_env
+ * @param num_messages
+ * @param Java_allLogtypes
+ * @param Java_logtypeEndOffsets
+ * @param Java_logtypeIds
+ * @param Java_encodedVars
+ * @param Java_encodedVarEndOffsets
+ * @param Java_allDictionaryVars
+ * @param Java_dictionaryVarEndOffsets
+ * @param Java_dictionaryVarEndIndexes
+ * @param Java_messageEndOffsets
+ * @return The decoded messages, stored back-to-back
+ */
+static jbyteArray batch_decode_messages_native (
+        JNIEnv* jni_env,
+        jint num_messages,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        jlongArray Java_encodedVars,
+        jintArray Java_encodedVarEndOffsets,
+        jbyteArray Java_allDictionaryVars,
+        jintArray Java_dictionaryVarEndOffsets,
+        jintArray Java_dictionaryVarEndIndexes,
+        jintArray Java_messageEndOffsets
+);
+
+/**
+ * @param jni_env
+ * @param message
+ * @return A new Java byte array containing the given message
+ */
+static jbyteArray new_java_message (JNIEnv* jni_env, string const& message);
+
+/**
+ * Copies the given message into [dest_begin_offset, dest_end_offset) of either
+ * the given Java byte array or the given direct buffer (whichever isn't null)
+ * @param jni_env
+ * @param message
+ * @param Java_destArray
+ * @param Java_destBuffer
+ * @param dest_begin_offset
+ * @param dest_end_offset
+ * @return The length of the message if it fits in the destination, or the
+ * negated length otherwise
+ */
+static jint copy_message_into_destination (
+        JNIEnv* jni_env,
+        string const& message,
+        jbyteArray Java_destArray,
+        jobject Java_destBuffer,
+        jint dest_begin_offset,
+        jint dest_end_offset
+);
+
 /**
  * Wrapper around wildcard_query_matches_any_encoded_var which
  * @tparam var_placeholder
@@ -135,10 +466,119 @@ Java_com_yscope_clp_compressorfrontend_MessageDecoder_decodeMessageNative (
         jint encoded_vars_len
 ) {
     LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
-    return decode_message_native(jni_env, Java_logtype, logtype_len, Java_allDictionaryVars,
-                                 all_dictionary_vars_len, Java_dictionaryVarEndOffsets,
-                                 dictionary_var_end_offsets_len, Java_encodedVars,
-                                 encoded_vars_len);
+    auto message = decode_message_from_logtype(jni_env, Java_logtype, logtype_len,
+                                               Java_allDictionaryVars, all_dictionary_vars_len,
+                                               Java_dictionaryVarEndOffsets,
+                                               dictionary_var_end_offsets_len, Java_encodedVars,
+                                               encoded_vars_len);
+    return new_java_message(jni_env, message);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(nullptr)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_yscope_clp_compressorfrontend_MessageDecoder_decodeMessageIntoNative (
+        JNIEnv* jni_env,
+        jobject,
+        jbyteArray Java_logtype,
+        jint logtype_len,
+        jbyteArray Java_allDictionaryVars,
+        jint all_dictionary_vars_len,
+        jintArray Java_dictionaryVarEndOffsets,
+        jint dictionary_var_end_offsets_len,
+        jlongArray Java_encodedVars,
+        jint encoded_vars_len,
+        jbyteArray Java_destArray,
+        jobject Java_destBuffer,
+        jint dest_begin_offset,
+        jint dest_end_offset
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    auto message = decode_message_from_logtype(jni_env, Java_logtype, logtype_len,
+                                               Java_allDictionaryVars, all_dictionary_vars_len,
+                                               Java_dictionaryVarEndOffsets,
+                                               dictionary_var_end_offsets_len, Java_encodedVars,
+                                               encoded_vars_len);
+    return copy_message_into_destination(jni_env, message, Java_destArray, Java_destBuffer,
+                                         dest_begin_offset, dest_end_offset);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(0)
+}
+
+JNIEXPORT jbyteArray JNICALL
+Java_com_yscope_clp_compressorfrontend_MessageDecoder_decodeMessageWithTemplateNative (
+        JNIEnv* jni_env,
+        jobject,
+        jbyteArray Java_constants,
+        jlongArray Java_segments,
+        jint num_placeholders,
+        jbyteArray Java_allDictionaryVars,
+        jint all_dictionary_vars_len,
+        jintArray Java_dictionaryVarEndOffsets,
+        jint dictionary_var_end_offsets_len,
+        jlongArray Java_encodedVars,
+        jint encoded_vars_len
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    auto message = decode_message_from_template(jni_env, Java_constants, Java_segments,
+                                                num_placeholders, Java_allDictionaryVars,
+                                                all_dictionary_vars_len,
+                                                Java_dictionaryVarEndOffsets,
+                                                dictionary_var_end_offsets_len, Java_encodedVars,
+                                                encoded_vars_len);
+    return new_java_message(jni_env, message);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(nullptr)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_yscope_clp_compressorfrontend_MessageDecoder_decodeMessageWithTemplateIntoNative (
+        JNIEnv* jni_env,
+        jobject,
+        jbyteArray Java_constants,
+        jlongArray Java_segments,
+        jint num_placeholders,
+        jbyteArray Java_allDictionaryVars,
+        jint all_dictionary_vars_len,
+        jintArray Java_dictionaryVarEndOffsets,
+        jint dictionary_var_end_offsets_len,
+        jlongArray Java_encodedVars,
+        jint encoded_vars_len,
+        jbyteArray Java_destArray,
+        jobject Java_destBuffer,
+        jint dest_begin_offset,
+        jint dest_end_offset
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    auto message = decode_message_from_template(jni_env, Java_constants, Java_segments,
+                                                num_placeholders, Java_allDictionaryVars,
+                                                all_dictionary_vars_len,
+                                                Java_dictionaryVarEndOffsets,
+                                                dictionary_var_end_offsets_len, Java_encodedVars,
+                                                encoded_vars_len);
+    return copy_message_into_destination(jni_env, message, Java_destArray, Java_destBuffer,
+                                         dest_begin_offset, dest_end_offset);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(0)
+}
+
+JNIEXPORT jbyteArray JNICALL
+Java_com_yscope_clp_compressorfrontend_MessageDecoder_batchDecodeMessagesNative (
+        JNIEnv* jni_env,
+        jobject,
+        jint num_messages,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        jlongArray Java_encodedVars,
+        jintArray Java_encodedVarEndOffsets,
+        jbyteArray Java_allDictionaryVars,
+        jintArray Java_dictionaryVarEndOffsets,
+        jintArray Java_dictionaryVarEndIndexes,
+        jintArray Java_messageEndOffsets
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    return batch_decode_messages_native(jni_env, num_messages, Java_allLogtypes,
+                                        Java_logtypeEndOffsets, Java_logtypeIds, Java_encodedVars,
+                                        Java_encodedVarEndOffsets, Java_allDictionaryVars,
+                                        Java_dictionaryVarEndOffsets,
+                                        Java_dictionaryVarEndIndexes, Java_messageEndOffsets);
     LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(nullptr)
 }
 
@@ -208,6 +648,224 @@ Java_com_yscope_clp_compressorfrontend_MessageDecoder_batchEncodedVarsWildcardMa
     LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END()
 }
 
+JNIEXPORT void JNICALL
+Java_com_yscope_clp_compressorfrontend_MessageDecoder_batchEncodedVarsWildcardMatchFlattenedNative (
+        JNIEnv* jni_env,
+        jobject,
+        jint begin_message_idx,
+        jint end_message_idx,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        jlongArray Java_encodedVarsArray,
+        jobject Java_encodedVarsBuffer,
+        jint encoded_vars_begin_offset,
+        jintArray Java_encodedVarEndOffsets,
+        jbyteArray Java_wildcardVarPlaceholders,
+        jint wildcard_var_placeholders_len,
+        jbyteArray Java_serializedVarWildcardQueries,
+        jint serialized_var_wildcard_queries_len,
+        jintArray Java_varWildcardQueryEndIndexes,
+        jint var_wildcard_query_end_indexes_len,
+        jintArray Java_matchResults
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    batch_encoded_vars_wildcard_match_flattened_native<
+            eight_byte_encoded_variable_t, jlongArray, jlong>(
+            jni_env,
+            begin_message_idx,
+            end_message_idx,
+            Java_allLogtypes,
+            Java_logtypeEndOffsets,
+            Java_logtypeIds,
+            Java_encodedVarsArray,
+            Java_encodedVarsBuffer,
+            encoded_vars_begin_offset,
+            Java_encodedVarEndOffsets,
+            Java_wildcardVarPlaceholders,
+            wildcard_var_placeholders_len,
+            Java_serializedVarWildcardQueries,
+            serialized_var_wildcard_queries_len,
+            Java_varWildcardQueryEndIndexes,
+            var_wildcard_query_end_indexes_len,
+            Java_matchResults);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END()
+}
+
+JNIEXPORT void JNICALL
+Java_com_yscope_clp_compressorfrontend_MessageDecoder_batchEncodedVarsWildcardMatchPreparedNative (
+        JNIEnv* jni_env,
+        jobject,
+        jint begin_message_idx,
+        jint end_message_idx,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        jlongArray Java_encodedVars,
+        jintArray Java_encodedVarEndOffsets,
+        jlong prepared_subquery_address,
+        jintArray Java_matchResults
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    batch_encoded_vars_wildcard_match_prepared_native(jni_env,
+                                                      begin_message_idx,
+                                                      end_message_idx,
+                                                      Java_allLogtypes,
+                                                      Java_logtypeEndOffsets,
+                                                      Java_logtypeIds,
+                                                      Java_encodedVars,
+                                                      Java_encodedVarEndOffsets,
+                                                      prepared_subquery_address,
+                                                      Java_matchResults);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END()
+}
+
+JNIEXPORT void JNICALL
+Java_com_yscope_clp_compressorfrontend_MessageDecoder_batchEncodedVarsWildcardMatchSubqueriesNative (
+        JNIEnv* jni_env,
+        jobject,
+        jint num_messages,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        jlongArray Java_encodedVars,
+        jintArray Java_encodedVarEndOffsets,
+        jint num_subqueries,
+        jintArray Java_subqueryEndIndexes,
+        jbyteArray Java_wildcardVarPlaceholders,
+        jbyteArray Java_serializedVarWildcardQueries,
+        jintArray Java_varWildcardQueryEndIndexes,
+        jint num_match_bitmask_words,
+        jlongArray Java_matchBitmasks
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    batch_encoded_vars_wildcard_match_subqueries_native<
+            eight_byte_encoded_variable_t, jlongArray, jlong>(
+            jni_env,
+            num_messages,
+            Java_allLogtypes,
+            Java_logtypeEndOffsets,
+            Java_logtypeIds,
+            Java_encodedVars,
+            Java_encodedVarEndOffsets,
+            num_subqueries,
+            Java_subqueryEndIndexes,
+            Java_wildcardVarPlaceholders,
+            Java_serializedVarWildcardQueries,
+            Java_varWildcardQueryEndIndexes,
+            num_match_bitmask_words,
+            Java_matchBitmasks);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END()
+}
+
+JNIEXPORT void JNICALL
+Java_com_yscope_clp_compressorfrontend_MessageDecoder_batchEncodedVarsWildcardMatchFourByteNative (
+        JNIEnv* jni_env,
+        jobject,
+        jint begin_message_idx,
+        jint end_message_idx,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        jintArray Java_encodedVars,
+        jintArray Java_encodedVarEndOffsets,
+        jbyteArray Java_wildcardVarPlaceholders,
+        jint wildcard_var_placeholders_len,
+        jbyteArray Java_serializedVarWildcardQueries,
+        jint serialized_var_wildcard_queries_len,
+        jintArray Java_varWildcardQueryEndIndexes,
+        jint var_wildcard_query_end_indexes_len,
+        jintArray Java_matchResults
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    batch_encoded_vars_wildcard_match_flattened_native<
+            four_byte_encoded_variable_t, jintArray, jint>(
+            jni_env,
+            begin_message_idx,
+            end_message_idx,
+            Java_allLogtypes,
+            Java_logtypeEndOffsets,
+            Java_logtypeIds,
+            Java_encodedVars,
+            nullptr,
+            0,
+            Java_encodedVarEndOffsets,
+            Java_wildcardVarPlaceholders,
+            wildcard_var_placeholders_len,
+            Java_serializedVarWildcardQueries,
+            serialized_var_wildcard_queries_len,
+            Java_varWildcardQueryEndIndexes,
+            var_wildcard_query_end_indexes_len,
+            Java_matchResults);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END()
+}
+
+JNIEXPORT void JNICALL
+Java_com_yscope_clp_compressorfrontend_MessageDecoder_batchEncodedVarsWildcardMatchFourByteSubqueriesNative (
+        JNIEnv* jni_env,
+        jobject,
+        jint num_messages,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        jintArray Java_encodedVars,
+        jintArray Java_encodedVarEndOffsets,
+        jint num_subqueries,
+        jintArray Java_subqueryEndIndexes,
+        jbyteArray Java_wildcardVarPlaceholders,
+        jbyteArray Java_serializedVarWildcardQueries,
+        jintArray Java_varWildcardQueryEndIndexes,
+        jint num_match_bitmask_words,
+        jlongArray Java_matchBitmasks
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    batch_encoded_vars_wildcard_match_subqueries_native<
+            four_byte_encoded_variable_t, jintArray, jint>(
+            jni_env,
+            num_messages,
+            Java_allLogtypes,
+            Java_logtypeEndOffsets,
+            Java_logtypeIds,
+            Java_encodedVars,
+            Java_encodedVarEndOffsets,
+            num_subqueries,
+            Java_subqueryEndIndexes,
+            Java_wildcardVarPlaceholders,
+            Java_serializedVarWildcardQueries,
+            Java_varWildcardQueryEndIndexes,
+            num_match_bitmask_words,
+            Java_matchBitmasks);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END()
+}
+
+JNIEXPORT void JNICALL
+Java_com_yscope_clp_compressorfrontend_MessageDecoder_batchLogtypeQueryMatchNative (
+        JNIEnv* jni_env,
+        jobject,
+        jint num_logtypes,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jint num_subqueries,
+        jbyteArray Java_serializedLogtypeQueries,
+        jintArray Java_logtypeQueryEndOffsets,
+        jbooleanArray Java_logtypeQueriesContainWildcards,
+        jint num_match_bitmask_words,
+        jlongArray Java_matchBitmasks
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    batch_logtype_query_match_native(jni_env,
+                                     num_logtypes,
+                                     Java_allLogtypes,
+                                     Java_logtypeEndOffsets,
+                                     num_subqueries,
+                                     Java_serializedLogtypeQueries,
+                                     Java_logtypeQueryEndOffsets,
+                                     Java_logtypeQueriesContainWildcards,
+                                     num_match_bitmask_words,
+                                     Java_matchBitmasks);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END()
+}
+
 static void batch_encoded_vars_wildcard_match_native (
         JNIEnv* jni_env,
         jint num_messages,
@@ -243,14 +901,9 @@ static void batch_encoded_vars_wildcard_match_native (
     auto var_wildcard_query_end_indexes = var_wildcard_query_end_indexes_uniq_ptr.get();
 
     // Deserialize variable queries
-    std::vector<string_view> var_wildcard_queries;
-    size_t query_begin_idx = 0;
-    for (int i = 0; i < var_wildcard_query_end_indexes_len; ++i) {
-        auto end_idx = static_cast<size_t>(var_wildcard_query_end_indexes[i]);
-        var_wildcard_queries.emplace_back(&serialized_var_wildcard_queries[query_begin_idx],
-                                          end_idx - query_begin_idx);
-        query_begin_idx = end_idx;
-    }
+    auto var_wildcard_queries = deserialize_var_wildcard_queries(
+            serialized_var_wildcard_queries, var_wildcard_query_end_indexes,
+            var_wildcard_query_end_indexes_len);
 
     // Get match results array
     auto match_results_uniq_ptr =
@@ -311,7 +964,465 @@ static void batch_encoded_vars_wildcard_match_native (
     }
 }
 
-static jbyteArray decode_message_native (
+template <typename encoded_variable_t, typename JavaArrayType, typename JavaPrimitiveType>
+static void batch_encoded_vars_wildcard_match_flattened_native (
+        JNIEnv* jni_env,
+        jint begin_message_idx,
+        jint end_message_idx,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        JavaArrayType Java_encodedVarsArray,
+        jobject Java_encodedVarsBuffer,
+        jint encoded_vars_begin_offset,
+        jintArray Java_encodedVarEndOffsets,
+        jbyteArray Java_wildcardVarPlaceholders,
+        jint wildcard_var_placeholders_len,
+        jbyteArray Java_serializedVarWildcardQueries,
+        jint serialized_var_wildcard_queries_len,
+        jintArray Java_varWildcardQueryEndIndexes,
+        jint var_wildcard_query_end_indexes_len,
+        jintArray Java_matchResults
+) {
+    // Get serialized variable types
+    auto wildcard_var_placeholders = get_java_primitive_array_elements<jbyteArray, jbyte>(
+            jni_env, Java_wildcardVarPlaceholders, JNI_ABORT);
+    string_view wildcard_var_types{
+            size_checked_pointer_cast<char>(wildcard_var_placeholders.get()),
+            static_cast<size_t>(wildcard_var_placeholders_len)};
+
+    // Get variable queries
+    auto serialized_var_wildcard_queries_bytes =
+            get_java_primitive_array_elements<jbyteArray, jbyte>(
+                    jni_env, Java_serializedVarWildcardQueries, JNI_ABORT);
+    string_view serialized_var_wildcard_queries{
+            size_checked_pointer_cast<char>(serialized_var_wildcard_queries_bytes.get()),
+            static_cast<size_t>(serialized_var_wildcard_queries_len)};
+    auto var_wildcard_query_end_indexes = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_varWildcardQueryEndIndexes, JNI_ABORT);
+    auto var_wildcard_queries = deserialize_var_wildcard_queries(
+            serialized_var_wildcard_queries, var_wildcard_query_end_indexes.get(),
+            var_wildcard_query_end_indexes_len);
+
+    match_flattened_batch_range<encoded_variable_t, JavaArrayType, JavaPrimitiveType>(
+            jni_env, begin_message_idx, end_message_idx, Java_allLogtypes,
+            Java_logtypeEndOffsets, Java_logtypeIds, Java_encodedVarsArray,
+            Java_encodedVarsBuffer, encoded_vars_begin_offset, Java_encodedVarEndOffsets,
+            Java_matchResults,
+            [&] (string_view logtype, encoded_variable_t* encoded_vars,
+                 size_t num_encoded_vars) {
+                return wildcard_match_encoded_vars(logtype, encoded_vars, num_encoded_vars,
+                                                   wildcard_var_types, var_wildcard_queries);
+            });
+}
+
+static void batch_encoded_vars_wildcard_match_prepared_native (
+        JNIEnv* jni_env,
+        jint begin_message_idx,
+        jint end_message_idx,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        jlongArray Java_encodedVars,
+        jintArray Java_encodedVarEndOffsets,
+        jlong prepared_subquery_address,
+        jintArray Java_matchResults
+) {
+    auto prepared_subquery = reinterpret_cast<PreparedSubquery const*>(
+            bit_cast<uintptr_t>(prepared_subquery_address));
+    match_flattened_batch_range<eight_byte_encoded_variable_t, jlongArray, jlong>(
+            jni_env, begin_message_idx, end_message_idx, Java_allLogtypes,
+            Java_logtypeEndOffsets, Java_logtypeIds, Java_encodedVars, nullptr, 0,
+            Java_encodedVarEndOffsets, Java_matchResults,
+            [prepared_subquery] (string_view logtype,
+                                 eight_byte_encoded_variable_t* encoded_vars,
+                                 size_t num_encoded_vars) {
+                return prepared_subquery->matches(logtype, encoded_vars, num_encoded_vars);
+            });
+}
+
+static std::vector<jint> get_end_offsets_region (
+        JNIEnv* jni_env,
+        jintArray Java_endOffsets,
+        jint begin_idx,
+        jint end_idx
+) {
+    std::vector<jint> end_offsets(end_idx - begin_idx + 1, 0);
+    if (begin_idx > 0) {
+        jni_env->GetIntArrayRegion(Java_endOffsets, begin_idx - 1, end_idx - begin_idx + 1,
+                                   end_offsets.data());
+    } else {
+        jni_env->GetIntArrayRegion(Java_endOffsets, 0, end_idx, end_offsets.data() + 1);
+    }
+    if (nullptr != jni_env->ExceptionOccurred()) {
+        throw JavaExceptionOccurred(ErrorCode_Failure, __FILENAME__, __LINE__,
+                                    "GetIntArrayRegion failed");
+    }
+    return end_offsets;
+}
+
+template <typename encoded_variable_t, typename JavaArrayType, typename JavaPrimitiveType,
+          typename EncodedVarsMatcher>
+static void match_flattened_batch_range (
+        JNIEnv* jni_env,
+        jint begin_message_idx,
+        jint end_message_idx,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        JavaArrayType Java_encodedVarsArray,
+        jobject Java_encodedVarsBuffer,
+        jint encoded_vars_begin_offset,
+        jintArray Java_encodedVarEndOffsets,
+        jintArray Java_matchResults,
+        EncodedVarsMatcher match
+) {
+    // NOTE: The offsets and IDs are validated by the Java caller
+    auto num_messages = end_message_idx - begin_message_idx;
+    if (num_messages <= 0) {
+        return;
+    }
+
+    std::vector<jint> logtype_ids;
+    if (nullptr != Java_logtypeIds) {
+        logtype_ids.resize(num_messages);
+        jni_env->GetIntArrayRegion(Java_logtypeIds, begin_message_idx, num_messages,
+                                   logtype_ids.data());
+        if (nullptr != jni_env->ExceptionOccurred()) {
+            throw JavaExceptionOccurred(ErrorCode_Failure, __FILENAME__, __LINE__,
+                                        "GetIntArrayRegion failed");
+        }
+    }
+
+    // Get the logtypes used by the range
+    jint min_logtype_idx = begin_message_idx;
+    jint max_logtype_idx = end_message_idx - 1;
+    if (false == logtype_ids.empty()) {
+        auto [min_logtype_id, max_logtype_id]
+                = std::minmax_element(logtype_ids.cbegin(), logtype_ids.cend());
+        min_logtype_idx = *min_logtype_id;
+        max_logtype_idx = *max_logtype_id;
+    }
+    auto logtype_end_offsets = get_end_offsets_region(jni_env, Java_logtypeEndOffsets,
+                                                      min_logtype_idx, max_logtype_idx + 1);
+    auto range_logtypes_begin_offset = logtype_end_offsets.front();
+    string range_logtypes(logtype_end_offsets.back() - range_logtypes_begin_offset, '\0');
+    if (false == range_logtypes.empty()) {
+        jni_env->GetByteArrayRegion(Java_allLogtypes, range_logtypes_begin_offset,
+                                    static_cast<jsize>(range_logtypes.length()),
+                                    size_checked_pointer_cast<jbyte>(range_logtypes.data()));
+        if (nullptr != jni_env->ExceptionOccurred()) {
+            throw JavaExceptionOccurred(ErrorCode_Failure, __FILENAME__, __LINE__,
+                                        "GetByteArrayRegion failed");
+        }
+    }
+
+    // Get the end offsets of the range's encoded variables, preceded by the
+    // range's begin offset
+    auto encoded_var_end_offsets = get_end_offsets_region(jni_env, Java_encodedVarEndOffsets,
+                                                          begin_message_idx, end_message_idx);
+    auto range_encoded_vars_begin_idx = encoded_var_end_offsets.front();
+    auto range_encoded_vars_len = encoded_var_end_offsets.back() - range_encoded_vars_begin_idx;
+
+    // Get encoded variables
+    std::vector<JavaPrimitiveType> encoded_vars_copy;
+    JavaPrimitiveType* encoded_vars;
+    if (nullptr != Java_encodedVarsBuffer) {
+        encoded_vars = static_cast<JavaPrimitiveType*>(
+                jni_env->GetDirectBufferAddress(Java_encodedVarsBuffer));
+        if (nullptr == encoded_vars) {
+            throw JavaIllegalArgumentException(
+                    __FILENAME__, __LINE__, jni_env,
+                    "[native] Encoded variables aren't in a direct buffer.");
+        }
+        encoded_vars += encoded_vars_begin_offset + range_encoded_vars_begin_idx;
+    } else {
+        encoded_vars_copy.resize(range_encoded_vars_len);
+        if (range_encoded_vars_len > 0) {
+            auto region_begin_idx = encoded_vars_begin_offset + range_encoded_vars_begin_idx;
+            if constexpr (std::is_same_v<JavaArrayType, jlongArray>) {
+                jni_env->GetLongArrayRegion(Java_encodedVarsArray, region_begin_idx,
+                                            range_encoded_vars_len, encoded_vars_copy.data());
+            } else {
+                jni_env->GetIntArrayRegion(Java_encodedVarsArray, region_begin_idx,
+                                           range_encoded_vars_len, encoded_vars_copy.data());
+            }
+            if (nullptr != jni_env->ExceptionOccurred()) {
+                throw JavaExceptionOccurred(ErrorCode_Failure, __FILENAME__, __LINE__,
+                                            "Get<Primitive>ArrayRegion failed");
+            }
+        }
+        encoded_vars = encoded_vars_copy.data();
+    }
+
+    // Do the matching
+    std::vector<jint> match_results(num_messages, 0);
+    for (jint i = 0; i < num_messages; ++i) {
+        // NOTE: A message without encoded variables can still match a query
+        // without any encoded variable constraints
+        auto encoded_vars_begin_idx = encoded_var_end_offsets[i] - range_encoded_vars_begin_idx;
+        auto encoded_vars_len = encoded_var_end_offsets[i + 1] - encoded_var_end_offsets[i];
+
+        auto logtype_idx = (logtype_ids.empty() ? begin_message_idx + i : logtype_ids[i])
+                           - min_logtype_idx;
+        auto logtype_begin_offset = logtype_end_offsets[logtype_idx];
+        string_view logtype{
+                range_logtypes.data() + (logtype_begin_offset - range_logtypes_begin_offset),
+                static_cast<size_t>(logtype_end_offsets[logtype_idx + 1]
+                                    - logtype_begin_offset)};
+
+        try {
+            match_results[i] = match(
+                    logtype,
+                    size_checked_pointer_cast<encoded_variable_t>(
+                            encoded_vars + encoded_vars_begin_idx),
+                    encoded_vars_len);
+        } catch (const ffi::EncodingException& e) {
+            throw JavaIOException(__FILENAME__, __LINE__, jni_env, e.what());
+        }
+    }
+
+    jni_env->SetIntArrayRegion(Java_matchResults, begin_message_idx, num_messages,
+                               match_results.data());
+    if (nullptr != jni_env->ExceptionOccurred()) {
+        throw JavaExceptionOccurred(ErrorCode_Failure, __FILENAME__, __LINE__,
+                                    "SetIntArrayRegion failed");
+    }
+}
+
+template <typename encoded_variable_t, typename JavaArrayType, typename JavaPrimitiveType>
+static void batch_encoded_vars_wildcard_match_subqueries_native (
+        JNIEnv* jni_env,
+        jint num_messages,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        JavaArrayType Java_encodedVars,
+        jintArray Java_encodedVarEndOffsets,
+        jint num_subqueries,
+        jintArray Java_subqueryEndIndexes,
+        jbyteArray Java_wildcardVarPlaceholders,
+        jbyteArray Java_serializedVarWildcardQueries,
+        jintArray Java_varWildcardQueryEndIndexes,
+        jint num_match_bitmask_words,
+        jlongArray Java_matchBitmasks
+) {
+    // NOTE: The offsets and IDs are validated by the Java caller
+
+    // Deserialize each subquery's variable placeholders and queries
+    auto subquery_end_indexes = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_subqueryEndIndexes, JNI_ABORT);
+    auto num_var_wildcard_queries
+            = 0 == num_subqueries ? 0 : subquery_end_indexes.get()[num_subqueries - 1];
+    auto var_wildcard_query_end_indexes = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_varWildcardQueryEndIndexes, JNI_ABORT);
+    auto wildcard_var_placeholders_bytes = get_java_primitive_array_elements<jbyteArray, jbyte>(
+            jni_env, Java_wildcardVarPlaceholders, JNI_ABORT);
+    auto wildcard_var_placeholders
+            = size_checked_pointer_cast<char>(wildcard_var_placeholders_bytes.get());
+    auto serialized_var_wildcard_queries_bytes =
+            get_java_primitive_array_elements<jbyteArray, jbyte>(
+                    jni_env, Java_serializedVarWildcardQueries, JNI_ABORT);
+    string_view serialized_var_wildcard_queries{
+            size_checked_pointer_cast<char>(serialized_var_wildcard_queries_bytes.get()),
+            0 == num_var_wildcard_queries
+                    ? 0
+                    : static_cast<size_t>(
+                            var_wildcard_query_end_indexes.get()[num_var_wildcard_queries - 1]
+                    )};
+    auto all_var_wildcard_queries = deserialize_var_wildcard_queries(
+            serialized_var_wildcard_queries, var_wildcard_query_end_indexes.get(),
+            num_var_wildcard_queries);
+
+    std::vector<string_view> subquery_wildcard_var_types;
+    std::vector<std::vector<string_view>> subquery_var_wildcard_queries;
+    subquery_wildcard_var_types.reserve(num_subqueries);
+    subquery_var_wildcard_queries.reserve(num_subqueries);
+    jint subquery_begin_idx = 0;
+    for (jint i = 0; i < num_subqueries; ++i) {
+        auto subquery_end_idx = subquery_end_indexes.get()[i];
+        subquery_wildcard_var_types.emplace_back(
+                nullptr == wildcard_var_placeholders
+                        ? nullptr : wildcard_var_placeholders + subquery_begin_idx,
+                static_cast<size_t>(subquery_end_idx - subquery_begin_idx));
+        subquery_var_wildcard_queries.emplace_back(
+                all_var_wildcard_queries.cbegin() + subquery_begin_idx,
+                all_var_wildcard_queries.cbegin() + subquery_end_idx);
+        subquery_begin_idx = subquery_end_idx;
+    }
+
+    // Get logtypes
+    auto all_logtypes_bytes = get_java_primitive_array_elements<jbyteArray, jbyte>(
+            jni_env, Java_allLogtypes, JNI_ABORT);
+    auto all_logtypes = size_checked_pointer_cast<char>(all_logtypes_bytes.get());
+    auto logtype_end_offsets = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_logtypeEndOffsets, JNI_ABORT);
+    auto logtype_ids = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_logtypeIds, JNI_ABORT);
+
+    // Get encoded variables
+    auto encoded_vars = get_java_primitive_array_elements<JavaArrayType, JavaPrimitiveType>(
+            jni_env, Java_encodedVars, JNI_ABORT);
+    auto encoded_var_end_offsets = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_encodedVarEndOffsets, JNI_ABORT);
+
+    // Get match bitmasks array
+    auto match_bitmasks_uniq_ptr
+            = get_java_primitive_array_elements<jlongArray, jlong>(jni_env, Java_matchBitmasks, 0);
+    auto match_bitmasks = match_bitmasks_uniq_ptr.get();
+
+    // Do the matching, evaluating every subquery against each message before
+    // moving on to the next message
+    jint encoded_vars_begin_idx = 0;
+    for (jint i = 0; i < num_messages; ++i) {
+        auto message_bitmask = match_bitmasks + static_cast<size_t>(i) * num_match_bitmask_words;
+        std::fill_n(message_bitmask, num_match_bitmask_words, 0);
+
+        // NOTE: A message without encoded variables can still match a subquery
+        // without any encoded variable constraints
+        auto encoded_vars_end_idx = encoded_var_end_offsets.get()[i];
+        auto encoded_vars_len = encoded_vars_end_idx - encoded_vars_begin_idx;
+        auto message_encoded_vars = size_checked_pointer_cast<encoded_variable_t>(
+                encoded_vars.get() + encoded_vars_begin_idx);
+
+        auto logtype_idx = nullptr == logtype_ids ? i : logtype_ids.get()[i];
+        auto logtype_begin_offset = 0 == logtype_idx
+                ? 0 : logtype_end_offsets.get()[logtype_idx - 1];
+        string_view logtype{
+                all_logtypes + logtype_begin_offset,
+                static_cast<size_t>(logtype_end_offsets.get()[logtype_idx]
+                                    - logtype_begin_offset)};
+
+        for (jint j = 0; j < num_subqueries; ++j) {
+            bool matches;
+            try {
+                matches = wildcard_match_encoded_vars(
+                        logtype,
+                        message_encoded_vars,
+                        encoded_vars_len,
+                        subquery_wildcard_var_types[j],
+                        subquery_var_wildcard_queries[j]);
+            } catch (const ffi::EncodingException& e) {
+                throw JavaIOException(__FILENAME__, __LINE__, jni_env, e.what());
+            }
+            if (matches) {
+                message_bitmask[j / 64] = static_cast<jlong>(
+                        static_cast<uint64_t>(message_bitmask[j / 64])
+                        | (static_cast<uint64_t>(1) << (j % 64)));
+            }
+        }
+
+        encoded_vars_begin_idx = encoded_vars_end_idx;
+    }
+}
+
+static void batch_logtype_query_match_native (
+        JNIEnv* jni_env,
+        jint num_logtypes,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jint num_subqueries,
+        jbyteArray Java_serializedLogtypeQueries,
+        jintArray Java_logtypeQueryEndOffsets,
+        jbooleanArray Java_logtypeQueriesContainWildcards,
+        jint num_match_bitmask_words,
+        jlongArray Java_matchBitmasks
+) {
+    // NOTE: The offsets are validated by the Java caller
+
+    // Get logtype queries
+    auto logtype_query_end_offsets = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_logtypeQueryEndOffsets, JNI_ABORT);
+    auto serialized_logtype_queries_bytes = get_java_primitive_array_elements<jbyteArray, jbyte>(
+            jni_env, Java_serializedLogtypeQueries, JNI_ABORT);
+    string_view serialized_logtype_queries{
+            size_checked_pointer_cast<char>(serialized_logtype_queries_bytes.get()),
+            0 == num_subqueries
+                    ? 0
+                    : static_cast<size_t>(logtype_query_end_offsets.get()[num_subqueries - 1])};
+    auto logtype_queries = deserialize_var_wildcard_queries(
+            serialized_logtype_queries, logtype_query_end_offsets.get(), num_subqueries);
+    auto logtype_queries_contain_wildcards
+            = get_java_primitive_array_elements<jbooleanArray, jboolean>(
+                    jni_env, Java_logtypeQueriesContainWildcards, JNI_ABORT);
+
+    // Many subqueries of a query share the same logtype query, so group the
+    // subqueries by their logtype query. Queries without wildcards can then
+    // be matched with a single lookup per logtype.
+    unordered_map<string_view, std::vector<jint>> exact_query_to_subquery_indexes;
+    unordered_map<string_view, std::vector<jint>> wildcard_query_to_subquery_indexes;
+    for (jint i = 0; i < num_subqueries; ++i) {
+        if (JNI_FALSE == logtype_queries_contain_wildcards.get()[i]) {
+            exact_query_to_subquery_indexes[logtype_queries[i]].push_back(i);
+        } else {
+            wildcard_query_to_subquery_indexes[logtype_queries[i]].push_back(i);
+        }
+    }
+    std::vector<std::pair<string_view, std::vector<jint>>> wildcard_queries(
+            wildcard_query_to_subquery_indexes.cbegin(),
+            wildcard_query_to_subquery_indexes.cend());
+
+    // Get logtypes
+    auto all_logtypes_bytes = get_java_primitive_array_elements<jbyteArray, jbyte>(
+            jni_env, Java_allLogtypes, JNI_ABORT);
+    auto all_logtypes = size_checked_pointer_cast<char>(all_logtypes_bytes.get());
+    auto logtype_end_offsets = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_logtypeEndOffsets, JNI_ABORT);
+
+    // Get match bitmasks array
+    auto match_bitmasks_uniq_ptr
+            = get_java_primitive_array_elements<jlongArray, jlong>(jni_env, Java_matchBitmasks, 0);
+    auto match_bitmasks = match_bitmasks_uniq_ptr.get();
+    std::fill_n(match_bitmasks, static_cast<size_t>(num_subqueries) * num_match_bitmask_words, 0);
+
+    auto set_match = [&] (std::vector<jint> const& subquery_indexes, jint logtype_idx) {
+        auto word_idx = logtype_idx / 64;
+        auto bit = static_cast<uint64_t>(1) << (logtype_idx % 64);
+        for (auto subquery_idx : subquery_indexes) {
+            auto& word = match_bitmasks[static_cast<size_t>(subquery_idx)
+                                        * num_match_bitmask_words + word_idx];
+            word = static_cast<jlong>(static_cast<uint64_t>(word) | bit);
+        }
+    };
+
+    // Do the matching, evaluating every logtype query against each logtype
+    // before moving on to the next logtype
+    jint logtype_begin_offset = 0;
+    for (jint i = 0; i < num_logtypes; ++i) {
+        auto logtype_end_offset = logtype_end_offsets.get()[i];
+        string_view logtype{all_logtypes + logtype_begin_offset,
+                            static_cast<size_t>(logtype_end_offset - logtype_begin_offset)};
+        logtype_begin_offset = logtype_end_offset;
+
+        auto exact_match = exact_query_to_subquery_indexes.find(logtype);
+        if (exact_query_to_subquery_indexes.cend() != exact_match) {
+            set_match(exact_match->second, i);
+        }
+        for (auto const& [query, subquery_indexes] : wildcard_queries) {
+            if (wildcard_match_unsafe_case_sensitive(logtype, query)) {
+                set_match(subquery_indexes, i);
+            }
+        }
+    }
+}
+
+static std::vector<string_view> deserialize_var_wildcard_queries (
+        string_view serialized_var_wildcard_queries,
+        jint const* var_wildcard_query_end_indexes,
+        jint var_wildcard_query_end_indexes_len
+) {
+    std::vector<string_view> var_wildcard_queries;
+    size_t query_begin_idx = 0;
+    for (int i = 0; i < var_wildcard_query_end_indexes_len; ++i) {
+        auto end_idx = static_cast<size_t>(var_wildcard_query_end_indexes[i]);
+        var_wildcard_queries.emplace_back(&serialized_var_wildcard_queries[query_begin_idx],
+                                          end_idx - query_begin_idx);
+        query_begin_idx = end_idx;
+    }
+    return var_wildcard_queries;
+}
+
+static string decode_message_from_logtype (
         JNIEnv* jni_env,
         jbyteArray Java_logtype,
         jint logtype_len,
@@ -343,7 +1454,7 @@ static jbyteArray decode_message_native (
             jni_env, Java_encodedVars, JNI_ABORT);
 
     try {
-        auto message = decode_message(
+        return decode_message(
                 logtype,
                 size_checked_pointer_cast<eight_byte_encoded_variable_t>(encoded_vars.get()),
                 encoded_vars_len,
@@ -351,13 +1462,301 @@ static jbyteArray decode_message_native (
                 dictionary_var_end_offsets.get(),
                 dictionary_var_end_offsets_len
         );
+    } catch (const ffi::EncodingException& e) {
+        throw JavaIOException(__FILENAME__, __LINE__, jni_env, e.what());
+    }
+}
+
+static string decode_message_from_template (
+        JNIEnv* jni_env,
+        jbyteArray Java_constants,
+        jlongArray Java_segments,
+        jint num_placeholders,
+        jbyteArray Java_allDictionaryVars,
+        jint all_dictionary_vars_len,
+        jintArray Java_dictionaryVarEndOffsets,
+        jint dictionary_var_end_offsets_len,
+        jlongArray Java_encodedVars,
+        jint encoded_vars_len
+) {
+    // Get the template's segments
+    if (num_placeholders < 0 || num_placeholders >= jni_env->GetArrayLength(Java_segments)) {
+        throw JavaIOException(__FILENAME__, __LINE__, jni_env,
+                              "Invalid number of placeholders for logtype template.");
+    }
+    std::vector<jlong> segments(num_placeholders + 1);
+    jni_env->GetLongArrayRegion(Java_segments, 0, num_placeholders + 1, segments.data());
+    if (nullptr != jni_env->ExceptionOccurred()) {
+        throw JavaExceptionOccurred(ErrorCode_Failure, __FILENAME__, __LINE__,
+                                    "GetLongArrayRegion failed");
+    }
+
+    // Get the variables
+    std::vector<jint> dictionary_var_end_offsets(dictionary_var_end_offsets_len);
+    if (dictionary_var_end_offsets_len > 0) {
+        jni_env->GetIntArrayRegion(Java_dictionaryVarEndOffsets, 0,
+                                   dictionary_var_end_offsets_len,
+                                   dictionary_var_end_offsets.data());
+        if (nullptr != jni_env->ExceptionOccurred()) {
+            throw JavaExceptionOccurred(ErrorCode_Failure, __FILENAME__, __LINE__,
+                                        "GetIntArrayRegion failed");
+        }
+    }
+    std::vector<jlong> encoded_vars(encoded_vars_len);
+    if (encoded_vars_len > 0) {
+        jni_env->GetLongArrayRegion(Java_encodedVars, 0, encoded_vars_len, encoded_vars.data());
+        if (nullptr != jni_env->ExceptionOccurred()) {
+            throw JavaExceptionOccurred(ErrorCode_Failure, __FILENAME__, __LINE__,
+                                        "GetLongArrayRegion failed");
+        }
+    }
 
-        auto Java_message = libclp_ffi_java::new_java_primitive_array<jbyteArray, jbyte>(
-                jni_env, size_checked_pointer_cast<jbyte>(message.data()), message.length());
-        return Java_message;
+    // Interleave the constant segments with the decoded variables
+    // NOTE: This must be kept in-sync with LogtypeTemplate.SEGMENT_PLACEHOLDER_BITS
+    constexpr int cSegmentPlaceholderBits = 8;
+    constexpr jlong cSegmentPlaceholderMask = (1 << cSegmentPlaceholderBits) - 1;
+    auto constants_len = static_cast<jsize>(segments.back() >> cSegmentPlaceholderBits);
+    string message;
+    message.reserve(constants_len + all_dictionary_vars_len);
+    jint encoded_var_ix = 0;
+    jint dictionary_var_ix = 0;
+    jsize constant_begin_offset = 0;
+    try {
+        for (jint i = 0; i <= num_placeholders; ++i) {
+            auto constant_end_offset = static_cast<jsize>(segments[i] >> cSegmentPlaceholderBits);
+            if (constant_begin_offset > constant_end_offset
+                || constant_end_offset > constants_len)
+            {
+                throw JavaIOException(__FILENAME__, __LINE__, jni_env,
+                                      "Invalid constant end offset in logtype template.");
+            }
+            append_java_byte_array_region(jni_env, Java_constants, constant_begin_offset,
+                                          constant_end_offset - constant_begin_offset, message);
+            constant_begin_offset = constant_end_offset;
+            if (num_placeholders == i) {
+                break;
+            }
+
+            auto placeholder = static_cast<VariablePlaceholder>(
+                    segments[i] & cSegmentPlaceholderMask);
+            switch (placeholder) {
+                case VariablePlaceholder::Integer:
+                case VariablePlaceholder::Float: {
+                    if (encoded_var_ix >= encoded_vars_len) {
+                        throw JavaIOException(__FILENAME__, __LINE__, jni_env,
+                                              "Too few encoded variables for logtype.");
+                    }
+                    auto encoded_var = bit_cast<eight_byte_encoded_variable_t>(
+                            encoded_vars[encoded_var_ix++]);
+                    if (VariablePlaceholder::Integer == placeholder) {
+                        message.append(decode_integer_var(encoded_var));
+                    } else {
+                        message.append(decode_float_var(encoded_var));
+                    }
+                    break;
+                }
+                case VariablePlaceholder::Dictionary: {
+                    if (dictionary_var_ix >= dictionary_var_end_offsets_len) {
+                        throw JavaIOException(__FILENAME__, __LINE__, jni_env,
+                                              "Too few dictionary variables for logtype.");
+                    }
+                    auto var_begin_offset = 0 == dictionary_var_ix
+                            ? 0 : dictionary_var_end_offsets[dictionary_var_ix - 1];
+                    auto var_end_offset = dictionary_var_end_offsets[dictionary_var_ix];
+                    if (var_begin_offset > var_end_offset
+                        || var_end_offset > all_dictionary_vars_len)
+                    {
+                        throw JavaIOException(__FILENAME__, __LINE__, jni_env,
+                                              "Invalid dictionary variable end offset.");
+                    }
+                    append_java_byte_array_region(jni_env, Java_allDictionaryVars,
+                                                  var_begin_offset,
+                                                  var_end_offset - var_begin_offset, message);
+                    ++dictionary_var_ix;
+                    break;
+                }
+                default:
+                    throw JavaIOException(__FILENAME__, __LINE__, jni_env,
+                                          "Unknown variable placeholder in logtype template.");
+            }
+        }
     } catch (const ffi::EncodingException& e) {
         throw JavaIOException(__FILENAME__, __LINE__, jni_env, e.what());
     }
+
+    return message;
+}
+
+static void append_java_byte_array_region (
+        JNIEnv* jni_env,
+        jbyteArray Java_array,
+        jsize begin_offset,
+        jsize length,
+        string& dest
+) {
+    if (0 == length) {
+        return;
+    }
+    auto dest_begin_offset = dest.length();
+    dest.resize(dest_begin_offset + length);
+    jni_env->GetByteArrayRegion(Java_array, begin_offset, length,
+                                size_checked_pointer_cast<jbyte>(dest.data() + dest_begin_offset));
+    if (nullptr != jni_env->ExceptionOccurred()) {
+        throw JavaExceptionOccurred(ErrorCode_Failure, __FILENAME__, __LINE__,
+                                    "GetByteArrayRegion failed");
+    }
+}
+
+static jbyteArray batch_decode_messages_native (
+        JNIEnv* jni_env,
+        jint num_messages,
+        jbyteArray Java_allLogtypes,
+        jintArray Java_logtypeEndOffsets,
+        jintArray Java_logtypeIds,
+        jlongArray Java_encodedVars,
+        jintArray Java_encodedVarEndOffsets,
+        jbyteArray Java_allDictionaryVars,
+        jintArray Java_dictionaryVarEndOffsets,
+        jintArray Java_dictionaryVarEndIndexes,
+        jintArray Java_messageEndOffsets
+) {
+    // NOTE: The offsets and indexes are validated by the Java caller
+    auto all_logtypes_bytes = get_java_primitive_array_elements<jbyteArray, jbyte>(
+            jni_env, Java_allLogtypes, JNI_ABORT);
+    auto all_logtypes = size_checked_pointer_cast<char>(all_logtypes_bytes.get());
+    auto logtype_end_offsets = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_logtypeEndOffsets, JNI_ABORT);
+    auto logtype_ids = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_logtypeIds, JNI_ABORT);
+
+    auto encoded_vars = get_java_primitive_array_elements<jlongArray, jlong>(
+            jni_env, Java_encodedVars, JNI_ABORT);
+    auto encoded_var_end_offsets = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_encodedVarEndOffsets, JNI_ABORT);
+
+    auto all_dictionary_vars_bytes = get_java_primitive_array_elements<jbyteArray, jbyte>(
+            jni_env, Java_allDictionaryVars, JNI_ABORT);
+    auto all_dictionary_vars = size_checked_pointer_cast<char>(all_dictionary_vars_bytes.get());
+    auto dictionary_var_end_offsets = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_dictionaryVarEndOffsets, JNI_ABORT);
+    auto dictionary_var_end_indexes = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_dictionaryVarEndIndexes, JNI_ABORT);
+
+    auto message_end_offsets = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_messageEndOffsets, 0);
+
+    string all_messages;
+    // CLP expects each message's dictionary variable end offsets to be
+    // relative to the start of the message's first variable
+    std::vector<int32_t> relative_dictionary_var_end_offsets;
+    jint encoded_vars_begin_idx = 0;
+    jint dictionary_vars_begin_idx = 0;
+    for (jint i = 0; i < num_messages; ++i) {
+        auto logtype_idx = nullptr == logtype_ids ? i : logtype_ids.get()[i];
+        auto logtype_begin_offset = 0 == logtype_idx
+                ? 0 : logtype_end_offsets.get()[logtype_idx - 1];
+        string_view logtype{
+                all_logtypes + logtype_begin_offset,
+                static_cast<size_t>(logtype_end_offsets.get()[logtype_idx]
+                                    - logtype_begin_offset)};
+
+        auto encoded_vars_end_idx = encoded_var_end_offsets.get()[i];
+
+        auto dictionary_vars_end_idx = dictionary_var_end_indexes.get()[i];
+        auto dictionary_vars_begin_offset = 0 == dictionary_vars_begin_idx
+                ? 0 : dictionary_var_end_offsets.get()[dictionary_vars_begin_idx - 1];
+        relative_dictionary_var_end_offsets.clear();
+        for (auto j = dictionary_vars_begin_idx; j < dictionary_vars_end_idx; ++j) {
+            relative_dictionary_var_end_offsets.push_back(
+                    dictionary_var_end_offsets.get()[j] - dictionary_vars_begin_offset);
+        }
+        string_view dictionary_vars{
+                nullptr == all_dictionary_vars
+                        ? nullptr : all_dictionary_vars + dictionary_vars_begin_offset,
+                relative_dictionary_var_end_offsets.empty()
+                        ? 0 : static_cast<size_t>(relative_dictionary_var_end_offsets.back())};
+
+        try {
+            all_messages += decode_message(
+                    logtype,
+                    size_checked_pointer_cast<eight_byte_encoded_variable_t>(
+                            encoded_vars.get() + encoded_vars_begin_idx),
+                    encoded_vars_end_idx - encoded_vars_begin_idx,
+                    dictionary_vars,
+                    relative_dictionary_var_end_offsets.data(),
+                    relative_dictionary_var_end_offsets.size()
+            );
+        } catch (const ffi::EncodingException& e) {
+            throw JavaIOException(__FILENAME__, __LINE__, jni_env, e.what());
+        }
+        if (all_messages.length() > cJSizeMax) {
+            throw JavaIOException(__FILENAME__, __LINE__, jni_env,
+                                  "Decoded messages can't fit in a Java array");
+        }
+        message_end_offsets.get()[i] = static_cast<jint>(all_messages.length());
+
+        encoded_vars_begin_idx = encoded_vars_end_idx;
+        dictionary_vars_begin_idx = dictionary_vars_end_idx;
+    }
+
+    return new_java_message(jni_env, all_messages);
+}
+
+static jbyteArray new_java_message (JNIEnv* jni_env, string const& message) {
+    if (message.length() > cJSizeMax) {
+        throw JavaIOException(__FILENAME__, __LINE__, jni_env,
+                              "Decoded message can't fit in a Java array");
+    }
+    return libclp_ffi_java::new_java_primitive_array<jbyteArray, jbyte>(
+            jni_env, size_checked_pointer_cast<jbyte const>(message.data()), message.length());
+}
+
+static jint copy_message_into_destination (
+        JNIEnv* jni_env,
+        string const& message,
+        jbyteArray Java_destArray,
+        jobject Java_destBuffer,
+        jint dest_begin_offset,
+        jint dest_end_offset
+) {
+    if (message.length() > cJSizeMax) {
+        throw JavaIOException(__FILENAME__, __LINE__, jni_env,
+                              "Decoded message can't fit in a Java array");
+    }
+    auto message_length = static_cast<jint>(message.length());
+
+    if (nullptr != Java_destBuffer) {
+        auto buffer = static_cast<jbyte*>(jni_env->GetDirectBufferAddress(Java_destBuffer));
+        if (nullptr == buffer) {
+            throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                               "[native] Destination isn't a direct buffer.");
+        }
+        auto buffer_capacity = jni_env->GetDirectBufferCapacity(Java_destBuffer);
+        if (dest_begin_offset < 0 || dest_end_offset < dest_begin_offset
+            || dest_end_offset > buffer_capacity)
+        {
+            throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                               "[native] Invalid destination bounds.");
+        }
+        if (message_length > dest_end_offset - dest_begin_offset) {
+            return -message_length;
+        }
+        std::memcpy(buffer + dest_begin_offset, message.data(), message_length);
+        return message_length;
+    }
+
+    if (dest_begin_offset < 0 || dest_end_offset < dest_begin_offset
+        || dest_end_offset > jni_env->GetArrayLength(Java_destArray))
+    {
+        throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                           "[native] Invalid destination bounds.");
+    }
+    if (message_length > dest_end_offset - dest_begin_offset) {
+        return -message_length;
+    }
+    jni_env->SetByteArrayRegion(Java_destArray, dest_begin_offset, message_length,
+                                size_checked_pointer_cast<jbyte const>(message.data()));
+    return message_length;
 }
 
 template <VariablePlaceholder var_placeholder>
@@ -22,16 +22,33 @@
 #include "common.hpp"
 #include "GeneralException.hpp"
 #include "JavaException.hpp"
+#include "LogtypeDictionary.hpp"
 #include "static_init.hpp"
+#include "VariableDictionary.hpp"
 
 using ffi::encode_message;
+using libclp_ffi_java::cJSizeMax;
 using libclp_ffi_java::get_java_primitive_array_elements;
 using libclp_ffi_java::Java_EncodedMessage;
 using libclp_ffi_java::Java_EncodedMessage_dictVarBounds;
+using libclp_ffi_java::Java_EncodedMessage_dictVarIds;
 using libclp_ffi_java::Java_EncodedMessage_encodedVars;
 using libclp_ffi_java::Java_EncodedMessage_logtype;
+using libclp_ffi_java::Java_EncodedMessage_logtypeId;
+using libclp_ffi_java::Java_EncodedMessageBatch_dictVarBounds;
+using libclp_ffi_java::Java_EncodedMessageBatch_dictVarBoundsEndOffsets;
+using libclp_ffi_java::Java_EncodedMessageBatch_dictVarIds;
+using libclp_ffi_java::Java_EncodedMessageBatch_encodedVarEndOffsets;
+using libclp_ffi_java::Java_EncodedMessageBatch_encodedVars;
+using libclp_ffi_java::Java_EncodedMessageBatch_logtypeEndOffsets;
+using libclp_ffi_java::Java_EncodedMessageBatch_logtypeIds;
+using libclp_ffi_java::Java_EncodedMessageBatch_logtypes;
+using libclp_ffi_java::JavaIllegalArgumentException;
 using libclp_ffi_java::JavaIOException;
+using libclp_ffi_java::JavaUnsupportedOperationException;
+using libclp_ffi_java::LogtypeDictionary;
 using libclp_ffi_java::new_java_primitive_array;
+using libclp_ffi_java::VariableDictionary;
 using std::string_view;
 using std::string;
 using std::vector;
@@ -41,11 +58,96 @@ using std::vector;
  * See MessageEncoder::encodeMessageNative in Java
  * @param jni_env
  * @param Java_message
+ * @param logtype_dictionary
+ * @param variable_dictionary
  * @param Java_encodedMessage
  */
 static void encode_message_native (JNIEnv* jni_env, jbyteArray Java_message,
+                                   LogtypeDictionary* logtype_dictionary,
+                                   VariableDictionary* variable_dictionary,
                                    jobject Java_encodedMessage);
 
+/**
+ * See MessageEncoder::encodeDirectMessageNative in Java
+ * @param jni_env
+ * @param Java_message
+ * @param message_begin_offset
+ * @param message_end_offset
+ * @param logtype_dictionary
+ * @param variable_dictionary
+ * @param Java_encodedMessage
+ */
+static void encode_direct_message_native (JNIEnv* jni_env, jobject Java_message,
+                                          jint message_begin_offset, jint message_end_offset,
+                                          LogtypeDictionary* logtype_dictionary,
+                                          VariableDictionary* variable_dictionary,
+                                          jobject Java_encodedMessage);
+
+/**
+ * Encodes the given message and stores the encoded values in the given
+ * EncodedMessage
+ * @param jni_env
+ * @param message
+ * @param message_begin_offset The offset of the message within the Java
+ * container (array or buffer) it was read from. Dictionary variable bounds are
+ * stored relative to the start of that container.
+ * @param logtype_dictionary The dictionary to store the logtype in, or nullptr
+ * to store a copy of the logtype in the EncodedMessage instead
+ * @param variable_dictionary The dictionary to store the dictionary variables
+ * in, or nullptr to only store their bounds in the EncodedMessage
+ * @param Java_encodedMessage
+ */
+static void encode_message_into_java_object (JNIEnv* jni_env, string_view message,
+                                             int32_t message_begin_offset,
+                                             LogtypeDictionary* logtype_dictionary,
+                                             VariableDictionary* variable_dictionary,
+                                             jobject Java_encodedMessage);
+
+/**
+ * See MessageEncoder::encodeMessagesNative in Java
+ * @param jni_env
+ * @param Java_messages
+ * @param Java_messageEndOffsets
+ * @param num_messages
+ * @param logtype_dictionary
+ * @param variable_dictionary
+ * @param Java_encodedMessageBatch
+ */
+static void encode_messages_native (JNIEnv* jni_env, jbyteArray Java_messages,
+                                    jintArray Java_messageEndOffsets, jint num_messages,
+                                    LogtypeDictionary* logtype_dictionary,
+                                    VariableDictionary* variable_dictionary,
+                                    jobject Java_encodedMessageBatch);
+
+/**
+ * @param logtype_dictionary_address
+ * @return The logtype dictionary at the given address, or nullptr if the
+ * address is 0
+ */
+static LogtypeDictionary* get_logtype_dictionary (jlong logtype_dictionary_address);
+
+/**
+ * @param variable_dictionary_address
+ * @return The variable dictionary at the given address, or nullptr if the
+ * address is 0
+ */
+static VariableDictionary* get_variable_dictionary (jlong variable_dictionary_address);
+
+/**
+ * Creates a Java primitive array initialized with the given buffer and assigns
+ * it to the given field of the given Java object
+ * @tparam JavaArrayType The Java array's type (e.g., jbooleanArray)
+ * @tparam NativeArrayElementType The type of elements of the native array
+ * @param jni_env
+ * @param Java_object
+ * @param field_id
+ * @param buf
+ * @param buf_len
+ */
+template <typename JavaArrayType, typename NativeArrayElementType>
+static void set_primitive_array_field (JNIEnv* jni_env, jobject Java_object, jfieldID field_id,
+                                       const NativeArrayElementType* buf, size_t buf_len);
+
 JNIEXPORT void JNICALL
 Java_com_yscope_clp_compressorfrontend_MessageEncoder_setVariableHandlingRuleVersions (
         JNIEnv* jni_env,
@@ -67,14 +169,58 @@ JNIEXPORT void JNICALL Java_com_yscope_clp_compressorfrontend_MessageEncoder_enc
         JNIEnv* jni_env,
         jobject,
         jbyteArray Java_message,
+        jlong logtype_dictionary_address,
+        jlong variable_dictionary_address,
         jobject Java_encodedMessage
 ) {
     LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
-    encode_message_native(jni_env, Java_message, Java_encodedMessage);
+    encode_message_native(jni_env, Java_message,
+                          get_logtype_dictionary(logtype_dictionary_address),
+                          get_variable_dictionary(variable_dictionary_address),
+                          Java_encodedMessage);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END()
+}
+
+JNIEXPORT void JNICALL
+Java_com_yscope_clp_compressorfrontend_MessageEncoder_encodeDirectMessageNative (
+        JNIEnv* jni_env,
+        jobject,
+        jobject Java_message,
+        jint message_begin_offset,
+        jint message_end_offset,
+        jlong logtype_dictionary_address,
+        jlong variable_dictionary_address,
+        jobject Java_encodedMessage
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    encode_direct_message_native(jni_env, Java_message, message_begin_offset, message_end_offset,
+                                 get_logtype_dictionary(logtype_dictionary_address),
+                                 get_variable_dictionary(variable_dictionary_address),
+                                 Java_encodedMessage);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END()
+}
+
+JNIEXPORT void JNICALL Java_com_yscope_clp_compressorfrontend_MessageEncoder_encodeMessagesNative (
+        JNIEnv* jni_env,
+        jobject,
+        jbyteArray Java_messages,
+        jintArray Java_messageEndOffsets,
+        jint num_messages,
+        jlong logtype_dictionary_address,
+        jlong variable_dictionary_address,
+        jobject Java_encodedMessageBatch
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    encode_messages_native(jni_env, Java_messages, Java_messageEndOffsets, num_messages,
+                           get_logtype_dictionary(logtype_dictionary_address),
+                           get_variable_dictionary(variable_dictionary_address),
+                           Java_encodedMessageBatch);
     LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END()
 }
 
 static void encode_message_native (JNIEnv* jni_env, jbyteArray Java_message,
+                                   LogtypeDictionary* logtype_dictionary,
+                                   VariableDictionary* variable_dictionary,
                                    jobject Java_encodedMessage)
 {
     // Get the message
@@ -83,6 +229,42 @@ static void encode_message_native (JNIEnv* jni_env, jbyteArray Java_message,
     auto message_length = jni_env->GetArrayLength(Java_message);
     string_view message(size_checked_pointer_cast<char>(message_bytes.get()), message_length);
 
+    encode_message_into_java_object(jni_env, message, 0, logtype_dictionary, variable_dictionary,
+                                    Java_encodedMessage);
+}
+
+static void encode_direct_message_native (JNIEnv* jni_env, jobject Java_message,
+                                          jint message_begin_offset, jint message_end_offset,
+                                          LogtypeDictionary* logtype_dictionary,
+                                          VariableDictionary* variable_dictionary,
+                                          jobject Java_encodedMessage)
+{
+    // Get the message
+    auto buffer = static_cast<jbyte*>(jni_env->GetDirectBufferAddress(Java_message));
+    if (nullptr == buffer) {
+        throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                           "[native] Message isn't a direct buffer.");
+    }
+    auto buffer_capacity = jni_env->GetDirectBufferCapacity(Java_message);
+    if (message_begin_offset < 0 || message_end_offset < message_begin_offset
+        || message_end_offset > buffer_capacity)
+    {
+        throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                           "[native] Invalid message bounds.");
+    }
+    string_view message(size_checked_pointer_cast<char>(buffer + message_begin_offset),
+                        message_end_offset - message_begin_offset);
+
+    encode_message_into_java_object(jni_env, message, message_begin_offset, logtype_dictionary,
+                                    variable_dictionary, Java_encodedMessage);
+}
+
+static void encode_message_into_java_object (JNIEnv* jni_env, string_view message,
+                                             int32_t message_begin_offset,
+                                             LogtypeDictionary* logtype_dictionary,
+                                             VariableDictionary* variable_dictionary,
+                                             jobject Java_encodedMessage)
+{
     string logtype;
     vector<encoded_variable_t> encoded_vars;
     vector<int32_t> dictionary_var_bounds;
@@ -91,13 +273,35 @@ static void encode_message_native (JNIEnv* jni_env, jbyteArray Java_message,
                               "message contains variable placeholders");
     }
 
-    // Set encodedMessage.logtype
-    auto Java_logtype = new_java_primitive_array<jbyteArray, jbyte>(
-            jni_env, size_checked_pointer_cast<jbyte>(logtype.data()), logtype.length());
-    jni_env->SetObjectField(Java_encodedMessage, Java_EncodedMessage_logtype, Java_logtype);
+    // Set encodedMessage.logtypeId or encodedMessage.logtype
+    if (nullptr != logtype_dictionary) {
+        jni_env->SetIntField(Java_encodedMessage, Java_EncodedMessage_logtypeId,
+                             logtype_dictionary->get_or_add(logtype));
+    } else {
+        auto Java_logtype = new_java_primitive_array<jbyteArray, jbyte>(
+                jni_env, size_checked_pointer_cast<jbyte>(logtype.data()), logtype.length());
+        jni_env->SetObjectField(Java_encodedMessage, Java_EncodedMessage_logtype, Java_logtype);
+    }
+
+    // Set encodedMessage.dictionaryVarIds
+    if (nullptr != variable_dictionary && false == dictionary_var_bounds.empty()) {
+        vector<int64_t> dictionary_var_ids;
+        dictionary_var_ids.reserve(dictionary_var_bounds.size() / 2);
+        variable_dictionary->get_or_add_all(message, dictionary_var_bounds, dictionary_var_ids);
+        auto Java_dictVarIds = new_java_primitive_array<jlongArray, jlong>(
+                jni_env, size_checked_pointer_cast<jlong>(dictionary_var_ids.data()),
+                dictionary_var_ids.size());
+        jni_env->SetObjectField(Java_encodedMessage, Java_EncodedMessage_dictVarIds,
+                                Java_dictVarIds);
+    }
 
     // Set encodedMessage.dictionaryVarBounds
     if (false == dictionary_var_bounds.empty()) {
+        if (0 != message_begin_offset) {
+            for (auto& bound : dictionary_var_bounds) {
+                bound += message_begin_offset;
+            }
+        }
         auto Java_dictVarBounds = new_java_primitive_array<jintArray, jint>(
                 jni_env, size_checked_pointer_cast<jint>(dictionary_var_bounds.data()),
                 dictionary_var_bounds.size());
@@ -114,3 +318,156 @@ static void encode_message_native (JNIEnv* jni_env, jbyteArray Java_message,
                                 Java_encodedVars);
     }
 }
+
+static void encode_messages_native (JNIEnv* jni_env, jbyteArray Java_messages,
+                                    jintArray Java_messageEndOffsets, jint num_messages,
+                                    LogtypeDictionary* logtype_dictionary,
+                                    VariableDictionary* variable_dictionary,
+                                    jobject Java_encodedMessageBatch)
+{
+    if (num_messages < 0) {
+        throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                           "[native] Number of messages cannot be negative.");
+    }
+
+    // Get the messages
+    auto messages_bytes = get_java_primitive_array_elements<jbyteArray, jbyte>(
+            jni_env, Java_messages, JNI_ABORT);
+    auto messages_length = jni_env->GetArrayLength(Java_messages);
+    string_view all_messages(size_checked_pointer_cast<char>(messages_bytes.get()),
+                             messages_length);
+    auto message_end_offsets = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_messageEndOffsets, JNI_ABORT);
+
+    // Encode each message, appending its encoded values to the batch's columns
+    string logtypes;
+    vector<int32_t> logtype_end_offsets;
+    vector<int32_t> logtype_ids;
+    vector<encoded_variable_t> encoded_vars;
+    vector<int32_t> encoded_var_end_offsets;
+    vector<int32_t> dictionary_var_bounds;
+    vector<int32_t> dictionary_var_bounds_end_offsets;
+    if (nullptr != logtype_dictionary) {
+        logtype_ids.reserve(num_messages);
+    } else {
+        logtype_end_offsets.reserve(num_messages);
+    }
+    encoded_var_end_offsets.reserve(num_messages);
+    dictionary_var_bounds_end_offsets.reserve(num_messages);
+
+    string logtype;
+    vector<encoded_variable_t> message_encoded_vars;
+    vector<int32_t> message_dictionary_var_bounds;
+    int32_t message_begin_offset = 0;
+    for (jint i = 0; i < num_messages; ++i) {
+        auto message_end_offset = message_end_offsets.get()[i];
+        if (message_end_offset < message_begin_offset || message_end_offset > messages_length) {
+            throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                               "[native] Invalid message end offset.");
+        }
+        auto message = all_messages.substr(message_begin_offset,
+                                           message_end_offset - message_begin_offset);
+
+        logtype.clear();
+        message_encoded_vars.clear();
+        message_dictionary_var_bounds.clear();
+        if (false == encode_message(message, logtype, message_encoded_vars,
+                                    message_dictionary_var_bounds))
+        {
+            throw JavaIOException(__FILENAME__, __LINE__, jni_env,
+                                  "message " + std::to_string(i)
+                                  + " contains variable placeholders");
+        }
+
+        if (nullptr != logtype_dictionary) {
+            logtype_ids.push_back(logtype_dictionary->get_or_add(logtype));
+        } else {
+            logtypes.append(logtype);
+            if (logtypes.length() > cJSizeMax) {
+                throw JavaUnsupportedOperationException(__FILENAME__, __LINE__, jni_env,
+                                                        "Logtypes can't fit in a Java array");
+            }
+            logtype_end_offsets.push_back(static_cast<int32_t>(logtypes.length()));
+        }
+
+        encoded_vars.insert(encoded_vars.cend(), message_encoded_vars.cbegin(),
+                            message_encoded_vars.cend());
+        // This static cast is safe since each message has fewer encoded
+        // variables than bytes
+        encoded_var_end_offsets.push_back(static_cast<int32_t>(encoded_vars.size()));
+
+        // Make the bounds relative to the start of the flattened messages
+        for (auto bound : message_dictionary_var_bounds) {
+            dictionary_var_bounds.push_back(message_begin_offset + bound);
+        }
+        // This static cast is safe since each dictionary variable's bounds
+        // take fewer entries than the variable's bytes
+        dictionary_var_bounds_end_offsets.push_back(
+                static_cast<int32_t>(dictionary_var_bounds.size()));
+
+        message_begin_offset = message_end_offset;
+    }
+
+    // Add the batch's dictionary variables to the dictionary, locking it once
+    vector<int64_t> dictionary_var_ids;
+    if (nullptr != variable_dictionary) {
+        dictionary_var_ids.reserve(dictionary_var_bounds.size() / 2);
+        variable_dictionary->get_or_add_all(all_messages, dictionary_var_bounds,
+                                            dictionary_var_ids);
+    }
+
+    // Set the batch's columns
+    if (nullptr != logtype_dictionary) {
+        set_primitive_array_field<jintArray, jint>(
+                jni_env, Java_encodedMessageBatch, Java_EncodedMessageBatch_logtypeIds,
+                size_checked_pointer_cast<jint>(logtype_ids.data()), logtype_ids.size());
+    } else {
+        set_primitive_array_field<jbyteArray, jbyte>(
+                jni_env, Java_encodedMessageBatch, Java_EncodedMessageBatch_logtypes,
+                size_checked_pointer_cast<jbyte>(logtypes.data()), logtypes.length());
+        set_primitive_array_field<jintArray, jint>(
+                jni_env, Java_encodedMessageBatch, Java_EncodedMessageBatch_logtypeEndOffsets,
+                size_checked_pointer_cast<jint>(logtype_end_offsets.data()),
+                logtype_end_offsets.size());
+    }
+    set_primitive_array_field<jlongArray, jlong>(
+            jni_env, Java_encodedMessageBatch, Java_EncodedMessageBatch_encodedVars,
+            size_checked_pointer_cast<jlong>(encoded_vars.data()), encoded_vars.size());
+    set_primitive_array_field<jintArray, jint>(
+            jni_env, Java_encodedMessageBatch, Java_EncodedMessageBatch_encodedVarEndOffsets,
+            size_checked_pointer_cast<jint>(encoded_var_end_offsets.data()),
+            encoded_var_end_offsets.size());
+    set_primitive_array_field<jintArray, jint>(
+            jni_env, Java_encodedMessageBatch, Java_EncodedMessageBatch_dictVarBounds,
+            size_checked_pointer_cast<jint>(dictionary_var_bounds.data()),
+            dictionary_var_bounds.size());
+    set_primitive_array_field<jintArray, jint>(
+            jni_env, Java_encodedMessageBatch, Java_EncodedMessageBatch_dictVarBoundsEndOffsets,
+            size_checked_pointer_cast<jint>(dictionary_var_bounds_end_offsets.data()),
+            dictionary_var_bounds_end_offsets.size());
+    if (nullptr != variable_dictionary) {
+        set_primitive_array_field<jlongArray, jlong>(
+                jni_env, Java_encodedMessageBatch, Java_EncodedMessageBatch_dictVarIds,
+                size_checked_pointer_cast<jlong>(dictionary_var_ids.data()),
+                dictionary_var_ids.size());
+    }
+}
+
+template <typename JavaArrayType, typename NativeArrayElementType>
+static void set_primitive_array_field (JNIEnv* jni_env, jobject Java_object, jfieldID field_id,
+                                       const NativeArrayElementType* buf, size_t buf_len)
+{
+    auto Java_array = new_java_primitive_array<JavaArrayType, NativeArrayElementType>(
+            jni_env, buf, buf_len);
+    jni_env->SetObjectField(Java_object, field_id, Java_array);
+    jni_env->DeleteLocalRef(Java_array);
+}
+
+static LogtypeDictionary* get_logtype_dictionary (jlong logtype_dictionary_address) {
+    return reinterpret_cast<LogtypeDictionary*>(bit_cast<uintptr_t>(logtype_dictionary_address));
+}
+
+static VariableDictionary* get_variable_dictionary (jlong variable_dictionary_address) {
+    return reinterpret_cast<VariableDictionary*>(
+            bit_cast<uintptr_t>(variable_dictionary_address));
+}
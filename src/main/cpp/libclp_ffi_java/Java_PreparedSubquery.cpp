@@ -0,0 +1,85 @@
+// C++ standard libraries
+#include <string_view>
+#include <vector>
+
+// CLP
+#include "../submodules/clp/components/core/src/type_utils.hpp"
+
+// JNI
+#include <com_yscope_clp_compressorfrontend_PreparedSubquery.h>
+
+// Project headers
+#include "common.hpp"
+#include "JavaException.hpp"
+#include "PreparedSubquery.hpp"
+
+using libclp_ffi_java::get_java_primitive_array_elements;
+using libclp_ffi_java::JavaIllegalArgumentException;
+using libclp_ffi_java::PreparedSubquery;
+using std::string_view;
+using std::vector;
+
+JNIEXPORT jlong JNICALL
+Java_com_yscope_clp_compressorfrontend_PreparedSubquery_createNativeSubquery (
+        JNIEnv* jni_env,
+        jclass,
+        jbyteArray Java_wildcardVarPlaceholders,
+        jbyteArray Java_serializedVarWildcardQueries,
+        jintArray Java_varWildcardQueryEndIndexes,
+        jint num_var_wildcard_queries
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    if (num_var_wildcard_queries < 0
+        || num_var_wildcard_queries > jni_env->GetArrayLength(Java_wildcardVarPlaceholders)
+        || num_var_wildcard_queries > jni_env->GetArrayLength(Java_varWildcardQueryEndIndexes))
+    {
+        throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                           "[native] Invalid number of queries.");
+    }
+
+    auto wildcard_var_placeholders_bytes = get_java_primitive_array_elements<jbyteArray, jbyte>(
+            jni_env, Java_wildcardVarPlaceholders, JNI_ABORT);
+    string_view wildcard_var_placeholders{
+            size_checked_pointer_cast<char>(wildcard_var_placeholders_bytes.get()),
+            static_cast<size_t>(num_var_wildcard_queries)};
+
+    auto serialized_var_wildcard_queries_len
+            = jni_env->GetArrayLength(Java_serializedVarWildcardQueries);
+    auto serialized_var_wildcard_queries_bytes =
+            get_java_primitive_array_elements<jbyteArray, jbyte>(
+                    jni_env, Java_serializedVarWildcardQueries, JNI_ABORT);
+    string_view serialized_var_wildcard_queries{
+            size_checked_pointer_cast<char>(serialized_var_wildcard_queries_bytes.get()),
+            static_cast<size_t>(serialized_var_wildcard_queries_len)};
+
+    auto var_wildcard_query_end_indexes_elems = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_varWildcardQueryEndIndexes, JNI_ABORT);
+    vector<int32_t> var_wildcard_query_end_indexes(
+            var_wildcard_query_end_indexes_elems.get(),
+            var_wildcard_query_end_indexes_elems.get() + num_var_wildcard_queries);
+    jint last_end_idx = 0;
+    for (auto end_idx : var_wildcard_query_end_indexes) {
+        if (end_idx < last_end_idx || end_idx > serialized_var_wildcard_queries_len) {
+            throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                               "[native] Invalid query end index.");
+        }
+        last_end_idx = end_idx;
+    }
+
+    // NOTE: The use of uintptr_t means that if for some reason,
+    // sizeof(jlong) < sizeof(void*) but sizeof(jlong) == sizeof(uintptr_t),
+    // then this conversion will still work.
+    return bit_cast<jlong>(reinterpret_cast<uintptr_t>(
+            new PreparedSubquery(wildcard_var_placeholders, serialized_var_wildcard_queries,
+                                 var_wildcard_query_end_indexes)));
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(0)
+}
+
+JNIEXPORT void JNICALL
+Java_com_yscope_clp_compressorfrontend_PreparedSubquery_destroyNativeSubquery (
+        JNIEnv*,
+        jclass,
+        jlong subquery_address
+) {
+    delete reinterpret_cast<PreparedSubquery*>(bit_cast<uintptr_t>(subquery_address));
+}
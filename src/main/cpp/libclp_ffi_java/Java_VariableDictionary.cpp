@@ -0,0 +1,247 @@
+// C++ standard libraries
+#include <string>
+#include <string_view>
+#include <vector>
+
+// CLP
+#include "../submodules/clp/components/core/src/type_utils.hpp"
+
+// JNI
+#include <com_yscope_clp_compressorfrontend_VariableDictionary.h>
+
+// Project headers
+#include "common.hpp"
+#include "GeneralException.hpp"
+#include "JavaException.hpp"
+#include "static_init.hpp"
+#include "VariableDictionary.hpp"
+
+using libclp_ffi_java::cJSizeMax;
+using libclp_ffi_java::GeneralException;
+using libclp_ffi_java::get_java_primitive_array_elements;
+using libclp_ffi_java::Java_FlattenedByteArray;
+using libclp_ffi_java::Java_FlattenedByteArray_init;
+using libclp_ffi_java::JavaExceptionOccurred;
+using libclp_ffi_java::JavaIllegalArgumentException;
+using libclp_ffi_java::JavaUnsupportedOperationException;
+using libclp_ffi_java::new_java_primitive_array;
+using libclp_ffi_java::VariableDictionary;
+using std::string;
+using std::string_view;
+using std::vector;
+
+// Local function prototypes
+/**
+ * @param dictionary_address
+ * @return The variable dictionary at the given address
+ */
+static VariableDictionary* get_dictionary (jlong dictionary_address);
+
+/**
+ * Creates a Java FlattenedByteArray containing the given segment's variables
+ * and stores the segment's ID in the given Java int array
+ * @param jni_env
+ * @param segment
+ * @param Java_segmentId
+ * @return The FlattenedByteArray
+ */
+static jobject new_java_flattened_segment (JNIEnv* jni_env,
+                                           VariableDictionary::Segment const& segment,
+                                           jintArray Java_segmentId);
+
+JNIEXPORT jlong JNICALL
+Java_com_yscope_clp_compressorfrontend_VariableDictionary_createNativeDictionary (
+        JNIEnv* jni_env,
+        jclass,
+        jlong memory_budget
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    if (memory_budget <= 0) {
+        throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                           "[native] Memory budget must be positive.");
+    }
+    // NOTE: The use of uintptr_t means that if for some reason,
+    // sizeof(jlong) < sizeof(void*) but sizeof(jlong) == sizeof(uintptr_t),
+    // then this conversion will still work.
+    return bit_cast<jlong>(reinterpret_cast<uintptr_t>(
+            new VariableDictionary(static_cast<size_t>(memory_budget))));
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(0)
+}
+
+JNIEXPORT void JNICALL
+Java_com_yscope_clp_compressorfrontend_VariableDictionary_destroyNativeDictionary (
+        JNIEnv*,
+        jclass,
+        jlong dictionary_address
+) {
+    delete get_dictionary(dictionary_address);
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_yscope_clp_compressorfrontend_VariableDictionary_getOrAddVariableNative (
+        JNIEnv* jni_env,
+        jclass,
+        jlong dictionary_address,
+        jbyteArray Java_variable,
+        jint variable_length
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    if (variable_length < 0 || variable_length > jni_env->GetArrayLength(Java_variable)) {
+        throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                           "[native] Invalid variable length.");
+    }
+    auto variable_bytes = get_java_primitive_array_elements<jbyteArray, jbyte>(
+            jni_env, Java_variable, JNI_ABORT);
+    string_view variable(size_checked_pointer_cast<char>(variable_bytes.get()),
+                         variable_length);
+    return get_dictionary(dictionary_address)->get_or_add(variable);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(-1)
+}
+
+JNIEXPORT jbyteArray JNICALL
+Java_com_yscope_clp_compressorfrontend_VariableDictionary_getVariableNative (
+        JNIEnv* jni_env,
+        jclass,
+        jlong dictionary_address,
+        jlong id
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    string variable;
+    if (false == get_dictionary(dictionary_address)->get_var(id, variable)) {
+        throw JavaIllegalArgumentException(
+                __FILENAME__, __LINE__, jni_env,
+                "[native] Variable ID not in active segment: " + std::to_string(id));
+    }
+    return new_java_primitive_array<jbyteArray, jbyte>(
+            jni_env, size_checked_pointer_cast<jbyte>(variable.data()), variable.length());
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(nullptr)
+}
+
+JNIEXPORT void JNICALL
+Java_com_yscope_clp_compressorfrontend_VariableDictionary_rollOverNative (
+        JNIEnv* jni_env,
+        jclass,
+        jlong dictionary_address
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    get_dictionary(dictionary_address)->roll_over();
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END()
+}
+
+JNIEXPORT jint JNICALL
+Java_com_yscope_clp_compressorfrontend_VariableDictionary_getActiveSegmentIdNative (
+        JNIEnv* jni_env,
+        jclass,
+        jlong dictionary_address
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    return get_dictionary(dictionary_address)->get_active_segment_id();
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(-1)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_yscope_clp_compressorfrontend_VariableDictionary_getNumVariablesNative (
+        JNIEnv* jni_env,
+        jclass,
+        jlong dictionary_address
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    // This static cast is safe since each segment has at most INT32_MAX
+    // variables
+    return static_cast<jint>(get_dictionary(dictionary_address)->get_num_vars());
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(-1)
+}
+
+JNIEXPORT jlong JNICALL
+Java_com_yscope_clp_compressorfrontend_VariableDictionary_getMemoryUsageNative (
+        JNIEnv* jni_env,
+        jclass,
+        jlong dictionary_address
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    return static_cast<jlong>(get_dictionary(dictionary_address)->get_memory_usage());
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(-1)
+}
+
+JNIEXPORT jint JNICALL
+Java_com_yscope_clp_compressorfrontend_VariableDictionary_getNumSealedSegmentsNative (
+        JNIEnv* jni_env,
+        jclass,
+        jlong dictionary_address
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    // This static cast is safe since segment IDs are limited to the range of
+    // an int32_t
+    return static_cast<jint>(get_dictionary(dictionary_address)->get_num_sealed_segments());
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(-1)
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_yscope_clp_compressorfrontend_VariableDictionary_exportActiveSegmentNative (
+        JNIEnv* jni_env,
+        jclass,
+        jlong dictionary_address,
+        jintArray Java_segmentId
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    VariableDictionary::Segment segment;
+    get_dictionary(dictionary_address)->export_active_segment(segment);
+    return new_java_flattened_segment(jni_env, segment, Java_segmentId);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(nullptr)
+}
+
+JNIEXPORT jobject JNICALL
+Java_com_yscope_clp_compressorfrontend_VariableDictionary_pollSealedSegmentNative (
+        JNIEnv* jni_env,
+        jclass,
+        jlong dictionary_address,
+        jintArray Java_segmentId
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    VariableDictionary::Segment segment;
+    if (false == get_dictionary(dictionary_address)->pop_sealed_segment(segment)) {
+        return nullptr;
+    }
+    return new_java_flattened_segment(jni_env, segment, Java_segmentId);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(nullptr)
+}
+
+static VariableDictionary* get_dictionary (jlong dictionary_address) {
+    return reinterpret_cast<VariableDictionary*>(bit_cast<uintptr_t>(dictionary_address));
+}
+
+static jobject new_java_flattened_segment (JNIEnv* jni_env,
+                                           VariableDictionary::Segment const& segment,
+                                           jintArray Java_segmentId)
+{
+    if (segment.vars.length() > cJSizeMax) {
+        throw JavaUnsupportedOperationException(__FILENAME__, __LINE__, jni_env,
+                                                "Variables can't fit in a Java array");
+    }
+
+    jint segment_id = segment.id;
+    jni_env->SetIntArrayRegion(Java_segmentId, 0, 1, &segment_id);
+    if (nullptr != jni_env->ExceptionOccurred()) {
+        throw JavaExceptionOccurred(ErrorCode_Failure, __FILENAME__, __LINE__,
+                                    "[native] Failed to set segment ID in JVM");
+    }
+
+    auto Java_vars = new_java_primitive_array<jbyteArray, jbyte>(
+            jni_env, size_checked_pointer_cast<jbyte const>(segment.vars.data()),
+            segment.vars.length());
+    vector<jint> var_end_offsets(segment.var_end_offsets.cbegin(),
+                                 segment.var_end_offsets.cend());
+    auto Java_varEndOffsets = new_java_primitive_array<jintArray, jint>(
+            jni_env, var_end_offsets.data(), var_end_offsets.size());
+    auto Java_segment = jni_env->NewObject(Java_FlattenedByteArray, Java_FlattenedByteArray_init,
+                                           Java_vars, Java_varEndOffsets);
+    if (nullptr != jni_env->ExceptionOccurred()) {
+        throw JavaExceptionOccurred(ErrorCode_Failure, __FILENAME__, __LINE__,
+                                    "[native] Failed to create segment in JVM");
+    }
+    if (nullptr == Java_segment) {
+        throw GeneralException(ErrorCode_Failure, __FILENAME__, __LINE__,
+                               "[native] Failed to create segment in JVM");
+    }
+    return Java_segment;
+}
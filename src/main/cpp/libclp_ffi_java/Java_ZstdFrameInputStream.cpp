@@ -0,0 +1,93 @@
+// C++ standard libraries
+#include <string>
+
+// JNI
+#include <com_yscope_clp_irstream_ZstdFrameInputStream.h>
+
+// zstd
+#include <zstd.h>
+
+// Project headers
+#include "../submodules/clp/components/core/src/type_utils.hpp"
+#include "common.hpp"
+#include "GeneralException.hpp"
+#include "JavaException.hpp"
+
+using libclp_ffi_java::get_java_primitive_array_elements;
+using libclp_ffi_java::JavaIllegalArgumentException;
+using libclp_ffi_java::JavaIOException;
+using std::string;
+
+JNIEXPORT jlong JNICALL
+Java_com_yscope_clp_irstream_ZstdFrameInputStream_createContextNative (JNIEnv* jni_env, jclass)
+{
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    auto context = ZSTD_createDCtx();
+    if (nullptr == context) {
+        throw libclp_ffi_java::GeneralException(ErrorCode_NoMem, __FILENAME__, __LINE__,
+                                                "ZSTD_createDCtx failed");
+    }
+    // NOTE: The use of uintptr_t means that if for some reason,
+    // sizeof(jlong) < sizeof(void*) but sizeof(jlong) == sizeof(uintptr_t),
+    // then this conversion will still work.
+    return bit_cast<jlong>(reinterpret_cast<uintptr_t>(context));
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(0)
+}
+
+JNIEXPORT void JNICALL
+Java_com_yscope_clp_irstream_ZstdFrameInputStream_destroyContextNative (
+        JNIEnv*,
+        jclass,
+        jlong context_address
+) {
+    ZSTD_freeDCtx(reinterpret_cast<ZSTD_DCtx*>(bit_cast<uintptr_t>(context_address)));
+}
+
+JNIEXPORT jboolean JNICALL
+Java_com_yscope_clp_irstream_ZstdFrameInputStream_decompressNative (
+        JNIEnv* jni_env,
+        jclass,
+        jlong context_address,
+        jbyteArray Java_compressed,
+        jint compressed_end,
+        jbyteArray Java_decompressed,
+        jintArray Java_bufferPositions
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    // NOTE: The buffer positions need to be copied back to the Java array
+    auto buffer_positions = get_java_primitive_array_elements<jintArray, jint>(
+            jni_env, Java_bufferPositions, 0);
+    auto compressed_begin = buffer_positions.get()[0];
+    auto decompressed_begin = buffer_positions.get()[1];
+    auto decompressed_end = jni_env->GetArrayLength(Java_decompressed);
+    if (compressed_begin < 0 || compressed_end < compressed_begin
+        || compressed_end > jni_env->GetArrayLength(Java_compressed) || decompressed_begin < 0
+        || decompressed_begin > decompressed_end)
+    {
+        throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                           "[native] Invalid buffer positions.");
+    }
+
+    auto compressed = get_java_primitive_array_elements<jbyteArray, jbyte>(
+            jni_env, Java_compressed, JNI_ABORT);
+    // NOTE: The decompressed content needs to be copied back to the Java array
+    auto decompressed = get_java_primitive_array_elements<jbyteArray, jbyte>(
+            jni_env, Java_decompressed, 0);
+    ZSTD_inBuffer input{compressed.get(), static_cast<size_t>(compressed_end),
+                        static_cast<size_t>(compressed_begin)};
+    ZSTD_outBuffer output{decompressed.get(), static_cast<size_t>(decompressed_end),
+                          static_cast<size_t>(decompressed_begin)};
+    auto context = reinterpret_cast<ZSTD_DCtx*>(bit_cast<uintptr_t>(context_address));
+    auto result = ZSTD_decompressStream(context, &output, &input);
+    if (ZSTD_isError(result)) {
+        throw JavaIOException(__FILENAME__, __LINE__, jni_env,
+                              string("Failed to decompress: ") + ZSTD_getErrorName(result));
+    }
+
+    buffer_positions.get()[0] = static_cast<jint>(input.pos);
+    buffer_positions.get()[1] = static_cast<jint>(output.pos);
+    // ZSTD_decompressStream returns 0 only once a frame has been completely
+    // decoded and flushed
+    return 0 != result;
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(false)
+}
@@ -0,0 +1,97 @@
+// C++ standard libraries
+#include <string>
+
+// JNI
+#include <com_yscope_clp_irstream_ZstdFrameOutputStream.h>
+
+// zstd
+#include <zstd.h>
+
+// Project headers
+#include "../submodules/clp/components/core/src/type_utils.hpp"
+#include "common.hpp"
+#include "GeneralException.hpp"
+#include "JavaException.hpp"
+
+using libclp_ffi_java::cJSizeMax;
+using libclp_ffi_java::get_java_primitive_array_elements;
+using libclp_ffi_java::JavaIllegalArgumentException;
+using libclp_ffi_java::JavaIOException;
+using libclp_ffi_java::JavaUnsupportedOperationException;
+using std::string;
+
+JNIEXPORT jlong JNICALL
+Java_com_yscope_clp_irstream_ZstdFrameOutputStream_createContextNative (
+        JNIEnv* jni_env,
+        jclass,
+        jint compression_level
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    auto context = ZSTD_createCCtx();
+    if (nullptr == context) {
+        throw libclp_ffi_java::GeneralException(ErrorCode_NoMem, __FILENAME__, __LINE__,
+                                                "ZSTD_createCCtx failed");
+    }
+    auto result = ZSTD_CCtx_setParameter(context, ZSTD_c_compressionLevel, compression_level);
+    if (ZSTD_isError(result)) {
+        ZSTD_freeCCtx(context);
+        throw JavaIllegalArgumentException(
+                __FILENAME__, __LINE__, jni_env,
+                string("Invalid compression level: ") + ZSTD_getErrorName(result));
+    }
+    // NOTE: The use of uintptr_t means that if for some reason,
+    // sizeof(jlong) < sizeof(void*) but sizeof(jlong) == sizeof(uintptr_t),
+    // then this conversion will still work.
+    return bit_cast<jlong>(reinterpret_cast<uintptr_t>(context));
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(0)
+}
+
+JNIEXPORT void JNICALL
+Java_com_yscope_clp_irstream_ZstdFrameOutputStream_destroyContextNative (
+        JNIEnv*,
+        jclass,
+        jlong context_address
+) {
+    ZSTD_freeCCtx(reinterpret_cast<ZSTD_CCtx*>(bit_cast<uintptr_t>(context_address)));
+}
+
+JNIEXPORT jint JNICALL
+Java_com_yscope_clp_irstream_ZstdFrameOutputStream_compressFrameNative (
+        JNIEnv* jni_env,
+        jclass,
+        jlong context_address,
+        jbyteArray Java_frame,
+        jint frame_length,
+        jbyteArray Java_compressedFrame
+) {
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_BEGIN()
+    if (frame_length < 0 || frame_length > jni_env->GetArrayLength(Java_frame)) {
+        throw JavaIllegalArgumentException(__FILENAME__, __LINE__, jni_env,
+                                           "[native] Invalid frame length.");
+    }
+
+    auto compressed_frame_capacity = ZSTD_compressBound(frame_length);
+    if (compressed_frame_capacity > cJSizeMax) {
+        throw JavaUnsupportedOperationException(__FILENAME__, __LINE__, jni_env,
+                                                "Compressed frame can't fit in a Java array");
+    }
+    auto compressed_frame_buffer_length = jni_env->GetArrayLength(Java_compressedFrame);
+    if (compressed_frame_capacity > static_cast<size_t>(compressed_frame_buffer_length)) {
+        return -static_cast<jint>(compressed_frame_capacity);
+    }
+
+    auto frame = get_java_primitive_array_elements<jbyteArray, jbyte>(
+            jni_env, Java_frame, JNI_ABORT);
+    // NOTE: The compressed frame needs to be copied back to the Java array
+    auto compressed_frame = get_java_primitive_array_elements<jbyteArray, jbyte>(
+            jni_env, Java_compressedFrame, 0);
+    auto context = reinterpret_cast<ZSTD_CCtx*>(bit_cast<uintptr_t>(context_address));
+    auto result = ZSTD_compress2(context, compressed_frame.get(), compressed_frame_capacity,
+                                 frame.get(), frame_length);
+    if (ZSTD_isError(result)) {
+        throw JavaIOException(__FILENAME__, __LINE__, jni_env,
+                              string("Failed to compress frame: ") + ZSTD_getErrorName(result));
+    }
+    return static_cast<jint>(result);
+    LIBCLP_FFI_JAVA_EXCEPTION_CATCHALL_END(0)
+}
@@ -0,0 +1,66 @@
+#include "LogtypeDictionary.hpp"
+
+// C++ standard libraries
+#include <limits>
+#include <stdexcept>
+
+using std::lock_guard;
+using std::mutex;
+using std::shared_lock;
+using std::shared_mutex;
+using std::string;
+using std::string_view;
+using std::unique_lock;
+using std::vector;
+
+namespace libclp_ffi_java {
+    int32_t LogtypeDictionary::get_or_add (string_view logtype) {
+        auto& stripe = m_stripes[std::hash<string_view>{}(logtype) % cNumStripes];
+        lock_guard<mutex> stripe_lock(stripe.mutex);
+        auto it = stripe.logtype_to_id.find(logtype);
+        if (stripe.logtype_to_id.cend() != it) {
+            return it->second;
+        }
+
+        // NOTE: Lock order is always stripe -> m_logtypes_mutex
+        unique_lock<shared_mutex> logtypes_lock(m_logtypes_mutex);
+        if (m_logtypes.size() > static_cast<size_t>(std::numeric_limits<int32_t>::max())) {
+            throw std::length_error("Logtype dictionary is full");
+        }
+        auto id = static_cast<int32_t>(m_logtypes.size());
+        m_logtypes.emplace_back(std::make_unique<string>(logtype));
+        string_view stored_logtype(*m_logtypes.back());
+        logtypes_lock.unlock();
+
+        stripe.logtype_to_id.emplace(stored_logtype, id);
+        return id;
+    }
+
+    size_t LogtypeDictionary::size () const {
+        shared_lock<shared_mutex> logtypes_lock(m_logtypes_mutex);
+        return m_logtypes.size();
+    }
+
+    bool LogtypeDictionary::get_logtype (int32_t id, string& logtype) const {
+        shared_lock<shared_mutex> logtypes_lock(m_logtypes_mutex);
+        if (id < 0 || static_cast<size_t>(id) >= m_logtypes.size()) {
+            return false;
+        }
+        logtype.assign(*m_logtypes[id]);
+        return true;
+    }
+
+    bool LogtypeDictionary::get_logtypes (size_t num_logtypes, string& logtypes,
+                                          vector<size_t>& logtype_end_offsets) const
+    {
+        shared_lock<shared_mutex> logtypes_lock(m_logtypes_mutex);
+        if (num_logtypes > m_logtypes.size()) {
+            return false;
+        }
+        for (size_t i = 0; i < num_logtypes; ++i) {
+            logtypes.append(*m_logtypes[i]);
+            logtype_end_offsets.push_back(logtypes.length());
+        }
+        return true;
+    }
+}
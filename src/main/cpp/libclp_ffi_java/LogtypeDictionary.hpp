@@ -0,0 +1,79 @@
+#ifndef LIBCLP_FFI_JAVA_LOGTYPEDICTIONARY_HPP
+#define LIBCLP_FFI_JAVA_LOGTYPEDICTIONARY_HPP
+
+// C++ standard libraries
+#include <array>
+#include <cstddef>
+#include <cstdint>
+#include <memory>
+#include <mutex>
+#include <shared_mutex>
+#include <string>
+#include <string_view>
+#include <unordered_map>
+#include <vector>
+
+namespace libclp_ffi_java {
+    /**
+     * A thread-safe dictionary that assigns a dense, stable ID to each unique
+     * logtype. Lookups are spread across independently locked stripes so that
+     * concurrent encoders rarely contend. IDs are assigned in insertion order
+     * starting from 0.
+     */
+    class LogtypeDictionary {
+    public:
+        // Methods
+        /**
+         * Gets the ID of the given logtype, adding it to the dictionary if
+         * it doesn't exist
+         * @param logtype
+         * @return The logtype's ID
+         * @throw std::length_error if the dictionary is full
+         */
+        int32_t get_or_add (std::string_view logtype);
+
+        /**
+         * @return The number of logtypes in the dictionary
+         */
+        size_t size () const;
+
+        /**
+         * Copies the logtype with the given ID into the given string
+         * @param id
+         * @param logtype
+         * @return true if the ID exists, false otherwise
+         */
+        bool get_logtype (int32_t id, std::string& logtype) const;
+
+        /**
+         * Appends the logtypes with IDs in [0, num_logtypes) to the given
+         * string, and the end offset of each in the string to the given
+         * vector
+         * @param num_logtypes
+         * @param logtypes
+         * @param logtype_end_offsets
+         * @return true if every ID exists, false otherwise
+         */
+        bool get_logtypes (size_t num_logtypes, std::string& logtypes,
+                           std::vector<size_t>& logtype_end_offsets) const;
+
+    private:
+        // Constants
+        static constexpr size_t cNumStripes = 64;
+
+        // Types
+        struct Stripe {
+            std::mutex mutex;
+            // Keys point into m_logtypes, which never moves them
+            std::unordered_map<std::string_view, int32_t> logtype_to_id;
+        };
+
+        // Variables
+        std::array<Stripe, cNumStripes> m_stripes;
+
+        mutable std::shared_mutex m_logtypes_mutex;
+        std::vector<std::unique_ptr<std::string>> m_logtypes;
+    };
+}
+
+#endif //LIBCLP_FFI_JAVA_LOGTYPEDICTIONARY_HPP
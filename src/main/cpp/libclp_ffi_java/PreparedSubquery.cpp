@@ -0,0 +1,37 @@
+#include "PreparedSubquery.hpp"
+
+using ffi::eight_byte_encoded_variable_t;
+using ffi::wildcard_match_encoded_vars;
+using std::string_view;
+using std::vector;
+
+namespace libclp_ffi_java {
+    PreparedSubquery::PreparedSubquery (string_view wildcard_var_placeholders,
+                                        string_view serialized_var_wildcard_queries,
+                                        vector<int32_t> const& var_wildcard_query_end_indexes) :
+            m_wildcard_var_placeholders(wildcard_var_placeholders),
+            m_serialized_var_wildcard_queries(serialized_var_wildcard_queries)
+    {
+        m_var_wildcard_queries.reserve(var_wildcard_query_end_indexes.size());
+        string_view queries{m_serialized_var_wildcard_queries};
+        size_t query_begin_idx = 0;
+        for (auto end_idx : var_wildcard_query_end_indexes) {
+            m_var_wildcard_queries.emplace_back(
+                    queries.substr(query_begin_idx, end_idx - query_begin_idx));
+            query_begin_idx = end_idx;
+        }
+    }
+
+    bool PreparedSubquery::matches (string_view logtype,
+                                    eight_byte_encoded_variable_t* encoded_vars,
+                                    size_t num_encoded_vars) const
+    {
+        // Each query must match a unique encoded variable, so a message with
+        // fewer encoded variables than queries can't match
+        if (num_encoded_vars < m_var_wildcard_queries.size()) {
+            return false;
+        }
+        return wildcard_match_encoded_vars(logtype, encoded_vars, num_encoded_vars,
+                                           m_wildcard_var_placeholders, m_var_wildcard_queries);
+    }
+}
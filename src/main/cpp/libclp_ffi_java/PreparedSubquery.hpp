@@ -0,0 +1,59 @@
+#ifndef LIBCLP_FFI_JAVA_PREPAREDSUBQUERY_HPP
+#define LIBCLP_FFI_JAVA_PREPAREDSUBQUERY_HPP
+
+// C++ standard libraries
+#include <cstddef>
+#include <cstdint>
+#include <string>
+#include <string_view>
+#include <vector>
+
+// CLP
+#include "../submodules/clp/components/core/src/ffi/encoding_methods.hpp"
+
+namespace libclp_ffi_java {
+    /**
+     * A subquery's encoded-variable wildcard queries, deserialized once so
+     * that they can be matched against many batches of messages. Matching
+     * doesn't modify the subquery, so it can be shared between threads.
+     */
+    class PreparedSubquery {
+    public:
+        // Constructors
+        /**
+         * @param wildcard_var_placeholders The placeholder of each query
+         * @param serialized_var_wildcard_queries The queries, stored
+         * back-to-back
+         * @param var_wildcard_query_end_indexes The end index of each query in
+         * serialized_var_wildcard_queries
+         */
+        PreparedSubquery (std::string_view wildcard_var_placeholders,
+                          std::string_view serialized_var_wildcard_queries,
+                          std::vector<int32_t> const& var_wildcard_query_end_indexes);
+
+        // Disable copy and move since m_var_wildcard_queries points into
+        // m_serialized_var_wildcard_queries
+        PreparedSubquery (PreparedSubquery const&) = delete;
+        PreparedSubquery& operator= (PreparedSubquery const&) = delete;
+
+        // Methods
+        /**
+         * @param logtype
+         * @param encoded_vars
+         * @param num_encoded_vars
+         * @return Whether the given message's encoded variables match the
+         * subquery's queries, in order
+         * @throw ffi::EncodingException if the logtype is invalid
+         */
+        bool matches (std::string_view logtype, ffi::eight_byte_encoded_variable_t* encoded_vars,
+                      size_t num_encoded_vars) const;
+
+    private:
+        // Variables
+        std::string m_wildcard_var_placeholders;
+        std::string m_serialized_var_wildcard_queries;
+        std::vector<std::string_view> m_var_wildcard_queries;
+    };
+}
+
+#endif //LIBCLP_FFI_JAVA_PREPAREDSUBQUERY_HPP
@@ -0,0 +1,208 @@
+#include "VariableDictionary.hpp"
+
+// C++ standard libraries
+#include <functional>
+#include <limits>
+#include <stdexcept>
+#include <utility>
+
+using std::lock_guard;
+using std::mutex;
+using std::string;
+using std::string_view;
+using std::vector;
+
+namespace libclp_ffi_java {
+    VariableDictionary::VariableDictionary (size_t memory_budget) :
+            m_memory_budget(memory_budget),
+            // The rest of the budget is left for sealed segments that haven't
+            // been exported yet
+            m_active_segment_memory_budget(memory_budget / 2),
+            m_table(cInitialTableSize, 0) {}
+
+    int64_t VariableDictionary::get_or_add (string_view var) {
+        lock_guard<mutex> lock(m_mutex);
+        return get_or_add_locked(var);
+    }
+
+    void VariableDictionary::get_or_add_all (string_view message,
+                                             vector<int32_t> const& var_bounds,
+                                             vector<int64_t>& var_ids)
+    {
+        lock_guard<mutex> lock(m_mutex);
+        for (size_t i = 0; i + 1 < var_bounds.size(); i += 2) {
+            auto begin_offset = var_bounds[i];
+            auto end_offset = var_bounds[i + 1];
+            var_ids.push_back(get_or_add_locked(
+                    message.substr(begin_offset, end_offset - begin_offset)));
+        }
+    }
+
+    bool VariableDictionary::get_var (int64_t var_id, string& var) const {
+        lock_guard<mutex> lock(m_mutex);
+        auto local_id = get_local_id(var_id);
+        if (get_segment_id(var_id) != m_active_segment_id || local_id < 0
+            || static_cast<size_t>(local_id) >= m_var_end_offsets.size())
+        {
+            return false;
+        }
+        var.assign(get_active_var(local_id));
+        return true;
+    }
+
+    void VariableDictionary::roll_over () {
+        lock_guard<mutex> lock(m_mutex);
+        roll_over_locked();
+    }
+
+    void VariableDictionary::export_active_segment (Segment& segment) const {
+        lock_guard<mutex> lock(m_mutex);
+        segment.id = m_active_segment_id;
+        segment.vars = m_vars;
+        segment.var_end_offsets = m_var_end_offsets;
+    }
+
+    bool VariableDictionary::pop_sealed_segment (Segment& segment) {
+        lock_guard<mutex> lock(m_mutex);
+        if (m_sealed_segments.empty()) {
+            return false;
+        }
+        segment = std::move(m_sealed_segments.front());
+        m_sealed_segments.pop_front();
+        m_sealed_segments_memory_usage -= get_memory_usage(segment);
+        return true;
+    }
+
+    int32_t VariableDictionary::get_active_segment_id () const {
+        lock_guard<mutex> lock(m_mutex);
+        return m_active_segment_id;
+    }
+
+    size_t VariableDictionary::get_num_vars () const {
+        lock_guard<mutex> lock(m_mutex);
+        return m_var_end_offsets.size();
+    }
+
+    size_t VariableDictionary::get_memory_usage () const {
+        lock_guard<mutex> lock(m_mutex);
+        return m_vars.length() + m_var_end_offsets.size() * cPerVarOverhead
+               + m_table.size() * sizeof(uint32_t) + m_sealed_segments_memory_usage;
+    }
+
+    size_t VariableDictionary::get_num_sealed_segments () const {
+        lock_guard<mutex> lock(m_mutex);
+        return m_sealed_segments.size();
+    }
+
+    int64_t VariableDictionary::get_or_add_locked (string_view var) {
+        auto hash = std::hash<string_view>{}(var);
+        auto mask = m_table.size() - 1;
+        auto slot_idx = hash & mask;
+        while (0 != m_table[slot_idx]) {
+            auto local_id = m_table[slot_idx] - 1;
+            if (m_var_hashes[local_id] == hash && get_active_var(local_id) == var) {
+                return (static_cast<int64_t>(m_active_segment_id) << 32) | local_id;
+            }
+            slot_idx = (slot_idx + 1) & mask;
+        }
+
+        // Keep the table at most half full
+        auto num_vars = m_var_end_offsets.size();
+        auto table_size = m_table.size();
+        if ((num_vars + 1) * 2 > table_size) {
+            table_size *= 2;
+        }
+        // Roll over if adding the variable would exceed the budget, unless the
+        // segment is empty (in which case the variable can't fit in any
+        // segment)
+        if (num_vars > 0
+            && (get_memory_usage_after_add(var.length(), table_size)
+                        > m_active_segment_memory_budget
+                || num_vars >= static_cast<size_t>(std::numeric_limits<int32_t>::max())))
+        {
+            roll_over_locked();
+            return get_or_add_locked(var);
+        }
+        if (table_size != m_table.size()) {
+            grow_table();
+            mask = m_table.size() - 1;
+            slot_idx = hash & mask;
+            while (0 != m_table[slot_idx]) {
+                slot_idx = (slot_idx + 1) & mask;
+            }
+        }
+
+        m_vars.append(var);
+        m_var_end_offsets.push_back(m_vars.length());
+        m_var_hashes.push_back(hash);
+        m_table[slot_idx] = static_cast<uint32_t>(num_vars + 1);
+        return (static_cast<int64_t>(m_active_segment_id) << 32) | static_cast<int64_t>(num_vars);
+    }
+
+    string_view VariableDictionary::get_active_var (size_t local_id) const {
+        auto begin_offset = 0 == local_id ? 0 : m_var_end_offsets[local_id - 1];
+        return string_view(m_vars).substr(begin_offset,
+                                          m_var_end_offsets[local_id] - begin_offset);
+    }
+
+    size_t VariableDictionary::get_memory_usage_after_add (size_t var_length,
+                                                           size_t table_size) const
+    {
+        return m_vars.length() + var_length + (m_var_end_offsets.size() + 1) * cPerVarOverhead
+               + table_size * sizeof(uint32_t);
+    }
+
+    void VariableDictionary::roll_over_locked () {
+        if (m_var_end_offsets.empty()) {
+            return;
+        }
+        if (std::numeric_limits<int32_t>::max() == m_active_segment_id) {
+            throw std::length_error("Variable dictionary has no segment IDs left");
+        }
+
+        // Sealed segments that haven't been exported can't be dropped, since
+        // callers may already hold the IDs of their variables
+        auto sealed_segments_memory_budget = m_memory_budget - m_active_segment_memory_budget;
+        auto sealed_segment_memory_usage
+                = m_vars.length() + m_var_end_offsets.size() * sizeof(size_t);
+        if (m_sealed_segments_memory_usage + sealed_segment_memory_usage
+            > sealed_segments_memory_budget)
+        {
+            throw std::length_error("Variable dictionary is full; its sealed segments must be "
+                                    "exported before more variables can be added");
+        }
+
+        Segment segment;
+        segment.id = m_active_segment_id;
+        segment.vars = std::move(m_vars);
+        segment.vars.shrink_to_fit();
+        segment.var_end_offsets = std::move(m_var_end_offsets);
+        segment.var_end_offsets.shrink_to_fit();
+        m_sealed_segments_memory_usage += get_memory_usage(segment);
+        m_sealed_segments.emplace_back(std::move(segment));
+
+        ++m_active_segment_id;
+        m_vars = string();
+        m_var_end_offsets = vector<size_t>();
+        m_var_hashes = vector<size_t>();
+        m_table.assign(cInitialTableSize, 0);
+        m_table.shrink_to_fit();
+    }
+
+    size_t VariableDictionary::get_memory_usage (Segment const& segment) {
+        return segment.vars.length() + segment.var_end_offsets.size() * sizeof(size_t);
+    }
+
+    void VariableDictionary::grow_table () {
+        vector<uint32_t> table(m_table.size() * 2, 0);
+        auto mask = table.size() - 1;
+        for (size_t local_id = 0; local_id < m_var_hashes.size(); ++local_id) {
+            auto slot_idx = m_var_hashes[local_id] & mask;
+            while (0 != table[slot_idx]) {
+                slot_idx = (slot_idx + 1) & mask;
+            }
+            table[slot_idx] = static_cast<uint32_t>(local_id + 1);
+        }
+        m_table = std::move(table);
+    }
+}
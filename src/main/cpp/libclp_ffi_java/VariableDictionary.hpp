@@ -0,0 +1,189 @@
+#ifndef LIBCLP_FFI_JAVA_VARIABLEDICTIONARY_HPP
+#define LIBCLP_FFI_JAVA_VARIABLEDICTIONARY_HPP
+
+// C++ standard libraries
+#include <cstddef>
+#include <cstdint>
+#include <deque>
+#include <mutex>
+#include <string>
+#include <string_view>
+#include <vector>
+
+namespace libclp_ffi_java {
+    /**
+     * A thread-safe dictionary of dictionary variables stored in native memory.
+     * Variables are stored back-to-back in an arena and indexed by an
+     * open-addressing hash table.
+     * <p></p>
+     * The dictionary is split into segments. Variables are added to the active
+     * segment until it reaches half of the memory budget, at which point the
+     * segment is sealed and a new active segment is started (a rollover).
+     * Sealed segments are kept (without their hash tables) until they're
+     * exported by pop_sealed_segment. Each variable's ID combines the ID of its
+     * segment (in the upper 32 bits) with its index in the segment (in the
+     * lower 32 bits).
+     * <p></p>
+     * Sealed segments count toward the memory budget and are never dropped
+     * before they're exported, since the IDs of their variables may already
+     * be in use. So if sealing the active segment would exceed the budget,
+     * the rollover fails (and the variable that triggered it isn't added)
+     * until enough sealed segments are exported.
+     */
+    class VariableDictionary {
+    public:
+        // Types
+        /**
+         * The variables of a segment, stored back-to-back
+         */
+        struct Segment {
+            int32_t id{0};
+            std::string vars;
+            std::vector<size_t> var_end_offsets;
+        };
+
+        // Constructors
+        /**
+         * @param memory_budget The approximate number of bytes of native memory
+         * the dictionary (the active segment and the sealed segments) may use
+         */
+        explicit VariableDictionary (size_t memory_budget);
+
+        // Methods
+        /**
+         * Gets the ID of the given variable, adding it to the active segment if
+         * it doesn't exist there
+         * @param var
+         * @return The variable's ID
+         * @throw std::length_error if the active segment is full and sealing
+         * it would exceed the memory budget
+         */
+        int64_t get_or_add (std::string_view var);
+
+        /**
+         * Same as get_or_add, but for each variable in the given message, while
+         * only locking the dictionary once
+         * @param message
+         * @param var_bounds The "begin" and "end" offset of each variable in
+         * the message, laid out as follows: [v1.begin, v1.end, v2.begin,
+         * v2.end, ...]
+         * @param var_ids Returns the ID of each variable
+         * @throw std::length_error if the active segment is full and sealing
+         * it would exceed the memory budget
+         */
+        void get_or_add_all (std::string_view message, std::vector<int32_t> const& var_bounds,
+                             std::vector<int64_t>& var_ids);
+
+        /**
+         * Copies the variable with the given ID from the active segment into
+         * the given string
+         * @param var_id
+         * @param var
+         * @return true if the ID exists in the active segment, false otherwise
+         */
+        bool get_var (int64_t var_id, std::string& var) const;
+
+        /**
+         * Seals the active segment (unless it's empty) and starts a new one
+         * @throw std::length_error if sealing the active segment would exceed
+         * the memory budget
+         */
+        void roll_over ();
+
+        /**
+         * Copies the active segment into the given segment
+         * @param segment
+         */
+        void export_active_segment (Segment& segment) const;
+
+        /**
+         * Removes the oldest sealed segment from the dictionary
+         * @param segment Returns the segment
+         * @return true if there was a sealed segment, false otherwise
+         */
+        bool pop_sealed_segment (Segment& segment);
+
+        int32_t get_active_segment_id () const;
+
+        size_t get_num_vars () const;
+
+        /**
+         * @return The approximate number of bytes of native memory used by the
+         * active segment and the sealed segments
+         */
+        size_t get_memory_usage () const;
+
+        size_t get_num_sealed_segments () const;
+
+        /**
+         * @param var_id
+         * @return The ID of the segment containing the given variable
+         */
+        static int32_t get_segment_id (int64_t var_id) {
+            return static_cast<int32_t>(static_cast<uint64_t>(var_id) >> 32);
+        }
+
+        /**
+         * @param var_id
+         * @return The index of the given variable in its segment
+         */
+        static int32_t get_local_id (int64_t var_id) {
+            return static_cast<int32_t>(var_id & 0xFFFFFFFF);
+        }
+
+    private:
+        // Constants
+        static constexpr size_t cInitialTableSize = 1024;
+        // Bytes used by each variable in addition to its content
+        static constexpr size_t cPerVarOverhead = sizeof(size_t) + sizeof(size_t);
+
+        // Methods
+        int64_t get_or_add_locked (std::string_view var);
+
+        /**
+         * @param local_id
+         * @return The variable with the given index in the active segment
+         */
+        std::string_view get_active_var (size_t local_id) const;
+
+        /**
+         * @param var_length
+         * @param table_size The hash table's size after adding a variable
+         * @return The active segment's approximate memory usage after adding a
+         * variable with the given length
+         */
+        size_t get_memory_usage_after_add (size_t var_length, size_t table_size) const;
+
+        void roll_over_locked ();
+
+        /**
+         * @param segment
+         * @return The approximate number of bytes of native memory used by the
+         * given sealed segment
+         */
+        static size_t get_memory_usage (Segment const& segment);
+
+        /**
+         * Doubles the hash table's size and reinserts every variable
+         */
+        void grow_table ();
+
+        // Variables
+        mutable std::mutex m_mutex;
+        size_t m_memory_budget;
+        size_t m_active_segment_memory_budget;
+
+        // The active segment
+        int32_t m_active_segment_id{0};
+        std::string m_vars;
+        std::vector<size_t> m_var_end_offsets;
+        std::vector<size_t> m_var_hashes;
+        // Each slot holds a variable's index + 1, or 0 if the slot is empty
+        std::vector<uint32_t> m_table;
+
+        std::deque<Segment> m_sealed_segments;
+        size_t m_sealed_segments_memory_usage{0};
+    };
+}
+
+#endif //LIBCLP_FFI_JAVA_VARIABLEDICTIONARY_HPP
@@ -41,7 +41,8 @@ namespace libclp_ffi_java::ir_stream {
 
     /**
      * Encodes the log event into the IR stream format determined by the given
-     * encoded variable type.
+     * encoded variable type. The message is either in a Java byte array or in a
+     * direct buffer.
      * NOTE: On failure, callers should return to Java without calling any other
      * JNI methods.
      * @tparam encoded_variable_t Type of the encoded variables used with this
@@ -49,7 +50,11 @@ namespace libclp_ffi_java::ir_stream {
      * @param jni_env
      * @param stream_state_address
      * @param timestamp_or_timestamp_delta
-     * @param Java_message
+     * @param Java_message The array containing the message, or nullptr if the
+     * message is in \p Java_directMessage
+     * @param Java_directMessage The direct buffer containing the message, or
+     * nullptr if the message is in \p Java_message
+     * @param message_offset
      * @param message_length
      * @return A reference to the encoded log event on success, nullptr
      * otherwise.
@@ -57,7 +62,138 @@ namespace libclp_ffi_java::ir_stream {
     template <typename encoded_variable_t>
     jbyteArray encode_log_event (JNIEnv* jni_env, jlong stream_state_address,
                                  jlong timestamp_or_timestamp_delta, jbyteArray Java_message,
+                                 jobject Java_directMessage, jint message_offset,
                                  jint message_length);
+
+    /**
+     * Same as encode_log_event except the encoded log event is copied into the
+     * given direct buffer rather than returned as a Java array.
+     * NOTE: On failure, callers should return to Java without calling any other
+     * JNI methods.
+     * @tparam encoded_variable_t
+     * @param jni_env
+     * @param stream_state_address
+     * @param timestamp_or_timestamp_delta
+     * @param Java_message
+     * @param Java_directMessage
+     * @param message_offset
+     * @param message_length
+     * @param Java_outputBuffer
+     * @param output_buffer_offset The offset in \p Java_outputBuffer to start
+     * writing at
+     * @param output_buffer_limit The offset in \p Java_outputBuffer to stop
+     * writing at
+     * @return The number of bytes written if the encoded log event fit between
+     * \p output_buffer_offset and \p output_buffer_limit. Otherwise, the
+     * negated length of the encoded log event.
+     */
+    template <typename encoded_variable_t>
+    jint encode_log_event_into_buffer (
+            JNIEnv* jni_env,
+            jlong stream_state_address,
+            jlong timestamp_or_timestamp_delta,
+            jbyteArray Java_message,
+            jobject Java_directMessage,
+            jint message_offset,
+            jint message_length,
+            jobject Java_outputBuffer,
+            jint output_buffer_offset,
+            jint output_buffer_limit
+    );
+
+    /**
+     * Encodes the batch of log events into the IR stream format determined by
+     * the given encoded variable type. All events are encoded back-to-back
+     * into the stream state's IR buffer before being returned as a single
+     * Java array.
+     * NOTE: On failure, callers should return to Java without calling any other
+     * JNI methods.
+     * @tparam encoded_variable_t Type of the encoded variables used with this
+     * IR stream
+     * @param jni_env
+     * @param stream_state_address
+     * @param reference_timestamp For the four-byte encoding, the timestamp
+     * that the first log event's timestamp delta is calculated from. For the
+     * eight-byte encoding, this is unused.
+     * @param Java_timestamps
+     * @param Java_messages
+     * @param Java_messageEndOffsets
+     * @param num_events
+     * @return A reference to the encoded log events on success, nullptr
+     * otherwise.
+     */
+    template <typename encoded_variable_t>
+    jbyteArray encode_log_events (JNIEnv* jni_env, jlong stream_state_address,
+                                  jlong reference_timestamp, jlongArray Java_timestamps,
+                                  jbyteArray Java_messages, jintArray Java_messageEndOffsets,
+                                  jint num_events);
+
+    /**
+     * Decodes the message of a log event read from an IR stream whose format
+     * is determined by the given encoded variable type.
+     * NOTE: On failure, callers should return to Java without calling any other
+     * JNI methods.
+     * @tparam encoded_variable_t Type of the encoded variables used with this
+     * IR stream
+     * @param jni_env
+     * @param Java_logtype
+     * @param logtype_length
+     * @param Java_encodedVars The encoded variables, sign-extended to jlongs
+     * @param num_encoded_vars
+     * @param Java_dictVars
+     * @param dict_vars_length
+     * @param Java_dictVarEndOffsets
+     * @param num_dict_vars
+     * @param Java_buffer The buffer to decode the message into
+     * @return The length of the decoded message if it fit in \p Java_buffer.
+     * Otherwise, the negated length of the decoded message.
+     */
+    template <typename encoded_variable_t>
+    jint decode_log_event_message (
+            JNIEnv* jni_env,
+            jbyteArray Java_logtype,
+            jint logtype_length,
+            jlongArray Java_encodedVars,
+            jint num_encoded_vars,
+            jbyteArray Java_dictVars,
+            jint dict_vars_length,
+            jintArray Java_dictVarEndOffsets,
+            jint num_dict_vars,
+            jbyteArray Java_buffer
+    );
+
+    /**
+     * Decodes consecutive log events straight from a direct buffer containing
+     * an IR stream whose format is determined by the given encoded variable
+     * type. Decoding stops before an EOF tag, before an event that doesn't end
+     * before \p limit, or once the output arrays are full.
+     * NOTE: On failure, callers should return to Java without calling any other
+     * JNI methods.
+     * @tparam encoded_variable_t Type of the encoded variables used with this
+     * IR stream
+     * @param jni_env
+     * @param Java_irBuffer The direct buffer containing the encoded log events
+     * @param limit The offset in \p Java_irBuffer to stop decoding at
+     * @param Java_cursor The offset in \p Java_irBuffer of the first event and,
+     * for the four-byte encoding, the timestamp that its timestamp delta is
+     * relative to. Both are advanced past the decoded events.
+     * @param Java_timestamps Returns the events' timestamps
+     * @param Java_messages Returns the events' messages, back-to-back
+     * @param Java_messageEndOffsets Returns the end offset of each message in
+     * \p Java_messages
+     * @return The number of events decoded, or the negated length of the first
+     * event's message if it doesn't fit in \p Java_messages.
+     */
+    template <typename encoded_variable_t>
+    jint decode_log_events (
+            JNIEnv* jni_env,
+            jobject Java_irBuffer,
+            jint limit,
+            jlongArray Java_cursor,
+            jlongArray Java_timestamps,
+            jbyteArray Java_messages,
+            jintArray Java_messageEndOffsets
+    );
 }
 
 #include "common.inc"
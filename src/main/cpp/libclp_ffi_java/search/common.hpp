@@ -0,0 +1,32 @@
+#ifndef LIBCLP_FFI_JAVA_SEARCH_COMMON_HPP
+#define LIBCLP_FFI_JAVA_SEARCH_COMMON_HPP
+
+// JNI
+#include <jni.h>
+
+namespace libclp_ffi_java::search {
+    /**
+     * Encodes the given wildcard query into subqueries whose variables use
+     * the given encoded variable type.
+     * @tparam encoded_variable_t Type of the encoded variables in the
+     * subqueries
+     * @param jni_env
+     * @param Java_wildcardQuery
+     * @param wildcard_query_length
+     * @param Java_subqueryClass The Java subquery class to instantiate
+     * @param Java_subqueryInit The Java subquery class' constructor
+     * @return The encoded subqueries
+     */
+    template <typename encoded_variable_t>
+    jobjectArray encode_wildcard_query (
+            JNIEnv* jni_env,
+            jbyteArray Java_wildcardQuery,
+            jint wildcard_query_length,
+            jclass Java_subqueryClass,
+            jmethodID Java_subqueryInit
+    );
+}
+
+#include "common.inc"
+
+#endif //LIBCLP_FFI_JAVA_SEARCH_COMMON_HPP
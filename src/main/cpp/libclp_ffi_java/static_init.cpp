@@ -11,8 +11,23 @@ using libclp_ffi_java::Java_EncodedMessage;
 using libclp_ffi_java::Java_EightByteClpEncodedSubQuery;
 using libclp_ffi_java::Java_EightByteClpEncodedSubQuery_init;
 using libclp_ffi_java::Java_EncodedMessage_logtype;
+using libclp_ffi_java::Java_EncodedMessage_logtypeId;
 using libclp_ffi_java::Java_EncodedMessage_dictVarBounds;
 using libclp_ffi_java::Java_EncodedMessage_encodedVars;
+using libclp_ffi_java::Java_EncodedMessage_dictVarIds;
+using libclp_ffi_java::Java_EncodedMessageBatch;
+using libclp_ffi_java::Java_EncodedMessageBatch_dictVarBounds;
+using libclp_ffi_java::Java_EncodedMessageBatch_dictVarBoundsEndOffsets;
+using libclp_ffi_java::Java_EncodedMessageBatch_dictVarIds;
+using libclp_ffi_java::Java_EncodedMessageBatch_encodedVarEndOffsets;
+using libclp_ffi_java::Java_EncodedMessageBatch_encodedVars;
+using libclp_ffi_java::Java_EncodedMessageBatch_logtypeEndOffsets;
+using libclp_ffi_java::Java_EncodedMessageBatch_logtypeIds;
+using libclp_ffi_java::Java_EncodedMessageBatch_logtypes;
+using libclp_ffi_java::Java_FlattenedByteArray;
+using libclp_ffi_java::Java_FlattenedByteArray_init;
+using libclp_ffi_java::Java_FourByteClpEncodedSubQuery;
+using libclp_ffi_java::Java_FourByteClpEncodedSubQuery_init;
 
 // Globals with external linkage
 namespace libclp_ffi_java {
@@ -20,8 +35,23 @@ namespace libclp_ffi_java {
     jmethodID Java_EightByteClpEncodedSubQuery_init;
     jclass Java_EncodedMessage = nullptr;
     jfieldID Java_EncodedMessage_logtype;
+    jfieldID Java_EncodedMessage_logtypeId;
     jfieldID Java_EncodedMessage_dictVarBounds;
     jfieldID Java_EncodedMessage_encodedVars;
+    jfieldID Java_EncodedMessage_dictVarIds;
+    jclass Java_EncodedMessageBatch = nullptr;
+    jfieldID Java_EncodedMessageBatch_logtypes;
+    jfieldID Java_EncodedMessageBatch_logtypeEndOffsets;
+    jfieldID Java_EncodedMessageBatch_logtypeIds;
+    jfieldID Java_EncodedMessageBatch_encodedVars;
+    jfieldID Java_EncodedMessageBatch_encodedVarEndOffsets;
+    jfieldID Java_EncodedMessageBatch_dictVarBounds;
+    jfieldID Java_EncodedMessageBatch_dictVarBoundsEndOffsets;
+    jfieldID Java_EncodedMessageBatch_dictVarIds;
+    jclass Java_FlattenedByteArray = nullptr;
+    jmethodID Java_FlattenedByteArray_init;
+    jclass Java_FourByteClpEncodedSubQuery = nullptr;
+    jmethodID Java_FourByteClpEncodedSubQuery_init;
 }
 
 // Constants
@@ -48,6 +78,10 @@ static bool cache_java_encoded_message_field_ids (JNIEnv* jni_env) {
     if (nullptr == Java_EncodedMessage_logtype) {
         return false;
     }
+    Java_EncodedMessage_logtypeId = jni_env->GetFieldID(Java_EncodedMessage, "logtypeId", "I");
+    if (nullptr == Java_EncodedMessage_logtypeId) {
+        return false;
+    }
     Java_EncodedMessage_encodedVars =
             jni_env->GetFieldID(Java_EncodedMessage, "encodedVars", "[J");
     if (nullptr == Java_EncodedMessage_encodedVars) {
@@ -58,6 +92,61 @@ static bool cache_java_encoded_message_field_ids (JNIEnv* jni_env) {
     if (nullptr == Java_EncodedMessage_dictVarBounds) {
         return false;
     }
+    Java_EncodedMessageBatch_logtypes =
+            jni_env->GetFieldID(Java_EncodedMessageBatch, "logtypes", "[B");
+    if (nullptr == Java_EncodedMessageBatch_logtypes) {
+        return false;
+    }
+    Java_EncodedMessageBatch_logtypeEndOffsets =
+            jni_env->GetFieldID(Java_EncodedMessageBatch, "logtypeEndOffsets", "[I");
+    if (nullptr == Java_EncodedMessageBatch_logtypeEndOffsets) {
+        return false;
+    }
+    Java_EncodedMessageBatch_logtypeIds =
+            jni_env->GetFieldID(Java_EncodedMessageBatch, "logtypeIds", "[I");
+    if (nullptr == Java_EncodedMessageBatch_logtypeIds) {
+        return false;
+    }
+    Java_EncodedMessageBatch_encodedVars =
+            jni_env->GetFieldID(Java_EncodedMessageBatch, "encodedVars", "[J");
+    if (nullptr == Java_EncodedMessageBatch_encodedVars) {
+        return false;
+    }
+    Java_EncodedMessageBatch_encodedVarEndOffsets =
+            jni_env->GetFieldID(Java_EncodedMessageBatch, "encodedVarEndOffsets", "[I");
+    if (nullptr == Java_EncodedMessageBatch_encodedVarEndOffsets) {
+        return false;
+    }
+    Java_EncodedMessageBatch_dictVarBounds =
+            jni_env->GetFieldID(Java_EncodedMessageBatch, "dictionaryVarBounds", "[I");
+    if (nullptr == Java_EncodedMessageBatch_dictVarBounds) {
+        return false;
+    }
+    Java_EncodedMessageBatch_dictVarBoundsEndOffsets =
+            jni_env->GetFieldID(Java_EncodedMessageBatch, "dictionaryVarBoundsEndOffsets", "[I");
+    if (nullptr == Java_EncodedMessageBatch_dictVarBoundsEndOffsets) {
+        return false;
+    }
+    Java_EncodedMessage_dictVarIds =
+            jni_env->GetFieldID(Java_EncodedMessage, "dictionaryVarIds", "[J");
+    if (nullptr == Java_EncodedMessage_dictVarIds) {
+        return false;
+    }
+    Java_EncodedMessageBatch_dictVarIds =
+            jni_env->GetFieldID(Java_EncodedMessageBatch, "dictionaryVarIds", "[J");
+    if (nullptr == Java_EncodedMessageBatch_dictVarIds) {
+        return false;
+    }
+    Java_FlattenedByteArray_init = jni_env->GetMethodID(Java_FlattenedByteArray, "<init>",
+                                                        "([B[I)V");
+    if (nullptr == Java_FlattenedByteArray_init) {
+        return false;
+    }
+    Java_FourByteClpEncodedSubQuery_init = jni_env->GetMethodID(Java_FourByteClpEncodedSubQuery,
+                                                                "<init>", "([B[BZ[I[I[B[I)V");
+    if (nullptr == Java_FourByteClpEncodedSubQuery_init) {
+        return false;
+    }
 
     return true;
 }
@@ -76,6 +165,12 @@ JNIEXPORT jint JNICALL JNI_OnLoad (JavaVM* vm, void*) {
                 jni_env, "com/yscope/clp/compressorfrontend/EightByteClpEncodedSubquery");
         Java_EncodedMessage = libclp_ffi_java::get_class_global_ref(
                 jni_env, "com/yscope/clp/compressorfrontend/EncodedMessage");
+        Java_EncodedMessageBatch = libclp_ffi_java::get_class_global_ref(
+                jni_env, "com/yscope/clp/compressorfrontend/EncodedMessageBatch");
+        Java_FlattenedByteArray = libclp_ffi_java::get_class_global_ref(
+                jni_env, "com/yscope/clp/compressorfrontend/FlattenedByteArray");
+        Java_FourByteClpEncodedSubQuery = libclp_ffi_java::get_class_global_ref(
+                jni_env, "com/yscope/clp/compressorfrontend/FourByteClpEncodedSubquery");
     } catch (libclp_ffi_java::JavaException& e) {
         return JNI_ERR;
     }
@@ -83,6 +178,12 @@ JNIEXPORT jint JNICALL JNI_OnLoad (JavaVM* vm, void*) {
         jni_env->DeleteGlobalRef(Java_EightByteClpEncodedSubQuery);
         jni_env->DeleteGlobalRef(Java_EncodedMessage);
         Java_EncodedMessage = nullptr;
+        jni_env->DeleteGlobalRef(Java_EncodedMessageBatch);
+        Java_EncodedMessageBatch = nullptr;
+        jni_env->DeleteGlobalRef(Java_FlattenedByteArray);
+        Java_FlattenedByteArray = nullptr;
+        jni_env->DeleteGlobalRef(Java_FourByteClpEncodedSubQuery);
+        Java_FourByteClpEncodedSubQuery = nullptr;
         return JNI_ERR;
     }
 
@@ -100,4 +201,10 @@ JNIEXPORT void JNICALL JNI_OnUnload (JavaVM* vm, void*) {
     Java_EightByteClpEncodedSubQuery = nullptr;
     jni_env->DeleteGlobalRef(Java_EncodedMessage);
     Java_EncodedMessage = nullptr;
+    jni_env->DeleteGlobalRef(Java_EncodedMessageBatch);
+    Java_EncodedMessageBatch = nullptr;
+    jni_env->DeleteGlobalRef(Java_FlattenedByteArray);
+    Java_FlattenedByteArray = nullptr;
+    jni_env->DeleteGlobalRef(Java_FourByteClpEncodedSubQuery);
+    Java_FourByteClpEncodedSubQuery = nullptr;
 }
@@ -8,8 +8,23 @@ namespace libclp_ffi_java {
     extern jmethodID Java_EightByteClpEncodedSubQuery_init;
     extern jclass Java_EncodedMessage;
     extern jfieldID Java_EncodedMessage_logtype;
+    extern jfieldID Java_EncodedMessage_logtypeId;
     extern jfieldID Java_EncodedMessage_dictVarBounds;
     extern jfieldID Java_EncodedMessage_encodedVars;
+    extern jfieldID Java_EncodedMessage_dictVarIds;
+    extern jclass Java_EncodedMessageBatch;
+    extern jfieldID Java_EncodedMessageBatch_logtypes;
+    extern jfieldID Java_EncodedMessageBatch_logtypeEndOffsets;
+    extern jfieldID Java_EncodedMessageBatch_logtypeIds;
+    extern jfieldID Java_EncodedMessageBatch_encodedVars;
+    extern jfieldID Java_EncodedMessageBatch_encodedVarEndOffsets;
+    extern jfieldID Java_EncodedMessageBatch_dictVarBounds;
+    extern jfieldID Java_EncodedMessageBatch_dictVarBoundsEndOffsets;
+    extern jfieldID Java_EncodedMessageBatch_dictVarIds;
+    extern jclass Java_FlattenedByteArray;
+    extern jmethodID Java_FlattenedByteArray_init;
+    extern jclass Java_FourByteClpEncodedSubQuery;
+    extern jmethodID Java_FourByteClpEncodedSubQuery_init;
 }
 
 #endif //LIBCLP_FFI_JAVA_STATIC_INIT_HPP
@@ -52,6 +52,14 @@ public abstract class AbstractClpEncodedSubquery {
     this.wildcardVarBounds = wildcardVarBounds;
   }
 
+  public byte[] getQuery () {
+    return query;
+  }
+
+  public byte[] getLogtypeQuery () {
+    return logtypeQuery;
+  }
+
   public String getLogtypeQueryAsString () {
     return new String(logtypeQuery, StandardCharsets.ISO_8859_1);
   }
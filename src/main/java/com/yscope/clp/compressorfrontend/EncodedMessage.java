@@ -1,7 +1,7 @@
 package com.yscope.clp.compressorfrontend;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
 import java.util.Objects;
 import java.util.stream.LongStream;
 
@@ -9,12 +9,16 @@ import org.jetbrains.annotations.NotNull;
 
 public class EncodedMessage {
   private byte[] logtype;
+  private int logtypeId = -1;
+  private LogtypeDictionary logtypeDictionary;
   private long[] encodedVars;
   private int[] dictionaryVarBounds;
+  private long[] dictionaryVarIds;
 
   private FlattenedByteArray flattenedDictVars;
 
   private byte[] message;
+  private ByteBuffer messageBuffer;
 
   /**
    * Sets the message to which this encoded message corresponds.
@@ -26,22 +30,49 @@ public class EncodedMessage {
     Objects.requireNonNull(message);
 
     this.message = message;
+    messageBuffer = null;
+    clearEncodedValues();
+  }
 
-    // Clear the encoded values since they no longer match
-    logtype = null;
-    encodedVars = null;
-    dictionaryVarBounds = null;
-    flattenedDictVars = null;
+  /**
+   * Same as {@link #setMessage(byte[])} except the message is stored in a
+   * buffer. The dictionary variable bounds are relative to the start of the
+   * buffer.
+   * @param message
+   */
+  public void setMessage(@NotNull ByteBuffer message) {
+    Objects.requireNonNull(message);
+
+    this.message = null;
+    messageBuffer = message;
+    clearEncodedValues();
   }
 
+  /**
+   * @return The logtype. If the message was encoded with a
+   * {@link LogtypeDictionary}, the logtype is only fetched from the dictionary
+   * on the first call.
+   */
   public byte[] getLogtype() {
+    if (null == logtype && -1 != logtypeId) {
+      logtype = logtypeDictionary.getLogtype(logtypeId);
+    }
     return logtype;
   }
 
+  /**
+   * @return The logtype's ID in the {@link LogtypeDictionary} the message was
+   * encoded with, or -1 if the message was encoded without a dictionary.
+   */
+  public int getLogtypeId() {
+    return logtypeId;
+  }
+
   /**
    * @return The logtype after converting it to a {@code String}.
    */
   public String getLogTypeAsString() {
+    byte[] logtype = getLogtype();
     if (null == logtype) {
       return null;
     } else {
@@ -49,6 +80,15 @@ public class EncodedMessage {
     }
   }
 
+  /**
+   * @return The ID of each dictionary variable in the {@link VariableDictionary}
+   * the message was encoded with, or null if the message was encoded without a
+   * dictionary or has no dictionary variables.
+   */
+  public long[] getDictionaryVarIds() {
+    return dictionaryVarIds;
+  }
+
   /**
    * @return The dictionary variables instantiated as {@code String}s.
    */
@@ -62,8 +102,13 @@ public class EncodedMessage {
     for (int i = 0, j = 0; i < dictVars.length; ++i) {
       int beginOffset = dictionaryVarBounds[j++];
       int endOffset = dictionaryVarBounds[j++];
-      dictVars[i] = new String(message, beginOffset,
-          endOffset - beginOffset, StandardCharsets.ISO_8859_1);
+      if (null != message) {
+        dictVars[i] = new String(message, beginOffset,
+            endOffset - beginOffset, StandardCharsets.ISO_8859_1);
+      } else {
+        dictVars[i] = new String(copyOfMessageRange(beginOffset, endOffset),
+                                 StandardCharsets.ISO_8859_1);
+      }
     }
     return dictVars;
   }
@@ -81,7 +126,7 @@ public class EncodedMessage {
     for (int i = 0, j = 0; i < dictVars.length; ++i) {
       int beginOffset = dictionaryVarBounds[j++];
       int endOffset = dictionaryVarBounds[j++];
-      dictVars[i] = Arrays.copyOfRange(message, beginOffset, endOffset);
+      dictVars[i] = copyOfMessageRange(beginOffset, endOffset);
     }
     return dictVars;
   }
@@ -118,13 +163,7 @@ public class EncodedMessage {
       int varBeginOffset = dictionaryVarBounds[varBoundsIdx++];
       int varEndOffset = dictionaryVarBounds[varBoundsIdx++];
       int varLength = varEndOffset - varBeginOffset;
-      System.arraycopy(
-          message,
-          varBeginOffset,
-          flattenedVars,
-          flattenedVarsOffset,
-          varLength
-      );
+      copyMessageRange(varBeginOffset, flattenedVars, flattenedVarsOffset, varLength);
       flattenedVarsOffset += varLength;
     }
 
@@ -147,7 +186,54 @@ public class EncodedMessage {
     }
   }
 
+  /**
+   * @return The message, or null if the message was set as a buffer.
+   */
   public byte[] getMessage() {
     return message;
   }
+
+  /**
+   * @return The message's buffer, or null if the message was set as a byte
+   * array.
+   */
+  public ByteBuffer getMessageBuffer() {
+    return messageBuffer;
+  }
+
+  /**
+   * Sets the dictionary that the logtype ID set by the encoder refers to.
+   * @param logtypeDictionary
+   */
+  void setLogtypeDictionary(LogtypeDictionary logtypeDictionary) {
+    this.logtypeDictionary = logtypeDictionary;
+  }
+
+  private void clearEncodedValues() {
+    // Clear the encoded values since they no longer match
+    logtype = null;
+    logtypeId = -1;
+    logtypeDictionary = null;
+    encodedVars = null;
+    dictionaryVarBounds = null;
+    dictionaryVarIds = null;
+    flattenedDictVars = null;
+  }
+
+  private byte[] copyOfMessageRange(int beginOffset, int endOffset) {
+    byte[] bytes = new byte[endOffset - beginOffset];
+    copyMessageRange(beginOffset, bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  private void copyMessageRange(int beginOffset, byte[] dest, int destOffset, int length) {
+    if (null != message) {
+      System.arraycopy(message, beginOffset, dest, destOffset, length);
+    } else {
+      // Use a duplicate so that we don't modify the caller's buffer position
+      ByteBuffer buffer = messageBuffer.duplicate();
+      buffer.position(beginOffset);
+      buffer.get(dest, destOffset, length);
+    }
+  }
 }
@@ -0,0 +1,205 @@
+package com.yscope.clp.compressorfrontend;
+
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A batch of encoded messages stored in a columnar layout. Each column is
+ * flattened into a single array for the whole batch, and each message's
+ * elements are delimited by a per-message end offset. This layout allows the
+ * whole batch to be produced (or consumed) in a single JNI call.
+ */
+public class EncodedMessageBatch {
+  private byte[] logtypes;
+  private int[] logtypeEndOffsets;
+  private int[] logtypeIds;
+  private LogtypeDictionary logtypeDictionary;
+  private long[] encodedVars;
+  private int[] encodedVarEndOffsets;
+  private int[] dictionaryVarBounds;
+  private int[] dictionaryVarBoundsEndOffsets;
+  private long[] dictionaryVarIds;
+
+  private FlattenedByteArray flattenedLogtypes;
+  private FlattenedByteArray flattenedDictVars;
+
+  private FlattenedByteArray messages;
+
+  /**
+   * Sets the messages to which this batch corresponds. This allows the batch
+   * to store dictionary variables as bounds within the original messages
+   * rather than as new byte arrays.
+   * @param messages
+   */
+  public void setMessages(@NotNull FlattenedByteArray messages) {
+    Objects.requireNonNull(messages);
+
+    this.messages = messages;
+
+    // Clear the encoded values since they no longer match
+    logtypes = null;
+    logtypeEndOffsets = null;
+    logtypeIds = null;
+    logtypeDictionary = null;
+    encodedVars = null;
+    encodedVarEndOffsets = null;
+    dictionaryVarBounds = null;
+    dictionaryVarBoundsEndOffsets = null;
+    dictionaryVarIds = null;
+    flattenedLogtypes = null;
+    flattenedDictVars = null;
+  }
+
+  public FlattenedByteArray getMessages() {
+    return messages;
+  }
+
+  public int getNumMessages() {
+    return null == messages ? 0 : messages.size();
+  }
+
+  /**
+   * @return The logtype of every message in the batch, in order. If the batch
+   * was encoded with a {@link LogtypeDictionary}, the logtypes are only
+   * fetched from the dictionary on the first call.
+   */
+  public FlattenedByteArray getLogtypes() {
+    if (null == logtypes && null != logtypeIds) {
+      fetchLogtypesFromDictionary();
+    }
+    if (null == logtypes) {
+      return null;
+    }
+    if (null == flattenedLogtypes) {
+      flattenedLogtypes = new FlattenedByteArray(logtypes, logtypeEndOffsets);
+    }
+    return flattenedLogtypes;
+  }
+
+  /**
+   * @return The logtype ID of every message in the batch, in order, or null if
+   * the batch was encoded without a {@link LogtypeDictionary}.
+   */
+  public int[] getLogtypeIds() {
+    return logtypeIds;
+  }
+
+  /**
+   * @return The encoded variables of every message in the batch, stored
+   * back-to-back. Each message's end offset in this array is given by
+   * {@link #getEncodedVarEndOffsets()}.
+   */
+  public long[] getEncodedVars() {
+    return encodedVars;
+  }
+
+  public int[] getEncodedVarEndOffsets() {
+    return encodedVarEndOffsets;
+  }
+
+  /**
+   * @return The "begin" and "end" offset of every dictionary variable in the
+   * batch, laid out as follows: [v1.begin, v1.end, v2.begin, v2.end, ...].
+   * Each offset is relative to the start of the flattened messages (i.e.,
+   * {@code getMessages().getFlattenedElems()}). Each message's end index in
+   * this array is given by {@link #getDictionaryVarBoundsEndOffsets()}.
+   */
+  public int[] getDictionaryVarBounds() {
+    return dictionaryVarBounds;
+  }
+
+  public int[] getDictionaryVarBoundsEndOffsets() {
+    return dictionaryVarBoundsEndOffsets;
+  }
+
+  /**
+   * @return The ID of every dictionary variable in the batch in the
+   * {@link VariableDictionary} the batch was encoded with, or null if the batch
+   * was encoded without a dictionary. The IDs of message {@code i}'s variables
+   * are at indexes [{@code getDictionaryVarBoundsEndOffsets()[i - 1] / 2},
+   * {@code getDictionaryVarBoundsEndOffsets()[i] / 2}).
+   */
+  public long[] getDictionaryVarIds() {
+    return dictionaryVarIds;
+  }
+
+  /**
+   * @return The dictionary variables of every message in the batch, serialized
+   * into a flattened byte array. Message {@code i} owns the variables with
+   * indexes [{@code getDictionaryVarBoundsEndOffsets()[i - 1] / 2},
+   * {@code getDictionaryVarBoundsEndOffsets()[i] / 2}).
+   */
+  public FlattenedByteArray getDictionaryVarsAsFlattenedByteArray() {
+    if (null == dictionaryVarBounds) {
+      return null;
+    }
+
+    if (null != flattenedDictVars) {
+      return flattenedDictVars;
+    }
+
+    byte[] flattenedMessages = messages.getFlattenedElems();
+
+    // Compute flattenedVarsEndOffsets
+    int flattenedVarsLength = 0;
+    int[] flattenedVarsEndOffsets = new int[dictionaryVarBounds.length / 2];
+    for (
+        int varBoundsIdx = 0, endOffsetsIdx = 0;
+        varBoundsIdx < dictionaryVarBounds.length;
+        endOffsetsIdx++
+    ) {
+      int varBeginOffset = dictionaryVarBounds[varBoundsIdx++];
+      int varEndOffset = dictionaryVarBounds[varBoundsIdx++];
+      flattenedVarsLength += varEndOffset - varBeginOffset;
+      flattenedVarsEndOffsets[endOffsetsIdx] = flattenedVarsLength;
+    }
+
+    // Compute flattenedVars
+    byte[] flattenedVars = new byte[flattenedVarsLength];
+    for (int varBoundsIdx = 0, flattenedVarsOffset = 0; varBoundsIdx < dictionaryVarBounds.length;) {
+      int varBeginOffset = dictionaryVarBounds[varBoundsIdx++];
+      int varEndOffset = dictionaryVarBounds[varBoundsIdx++];
+      int varLength = varEndOffset - varBeginOffset;
+      System.arraycopy(
+          flattenedMessages,
+          varBeginOffset,
+          flattenedVars,
+          flattenedVarsOffset,
+          varLength
+      );
+      flattenedVarsOffset += varLength;
+    }
+
+    flattenedDictVars = new FlattenedByteArray(flattenedVars, flattenedVarsEndOffsets);
+    return flattenedDictVars;
+  }
+
+  /**
+   * Sets the dictionary that the logtype IDs set by the encoder refer to.
+   * @param logtypeDictionary
+   */
+  void setLogtypeDictionary(LogtypeDictionary logtypeDictionary) {
+    this.logtypeDictionary = logtypeDictionary;
+  }
+
+  private void fetchLogtypesFromDictionary() {
+    byte[][] logtypesById = new byte[logtypeIds.length][];
+    int logtypesLength = 0;
+    for (int i = 0; i < logtypeIds.length; ++i) {
+      logtypesById[i] = logtypeDictionary.getLogtype(logtypeIds[i]);
+      logtypesLength += logtypesById[i].length;
+    }
+
+    byte[] logtypes = new byte[logtypesLength];
+    int[] logtypeEndOffsets = new int[logtypeIds.length];
+    int logtypesOffset = 0;
+    for (int i = 0; i < logtypesById.length; ++i) {
+      System.arraycopy(logtypesById[i], 0, logtypes, logtypesOffset, logtypesById[i].length);
+      logtypesOffset += logtypesById[i].length;
+      logtypeEndOffsets[i] = logtypesOffset;
+    }
+    this.logtypes = logtypes;
+    this.logtypeEndOffsets = logtypeEndOffsets;
+  }
+}
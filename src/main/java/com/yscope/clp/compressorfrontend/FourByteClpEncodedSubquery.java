@@ -0,0 +1,27 @@
+package com.yscope.clp.compressorfrontend;
+
+/**
+ * A CLP-encoded subquery using the four-byte encoding for variables.
+ */
+public class FourByteClpEncodedSubquery extends AbstractClpEncodedSubquery {
+  private final int[] encodedVars;
+
+  public FourByteClpEncodedSubquery (byte[] query, byte[] logtypeQuery,
+                                     boolean logtypeQueryContainsWildcards, int[] dictVarBounds,
+                                     int[] encodedVars, byte[] wildcardVarTypes,
+                                     int[] wildcardVarBounds)
+  {
+    super(query, logtypeQuery, logtypeQueryContainsWildcards, dictVarBounds, wildcardVarTypes,
+          wildcardVarBounds);
+    this.encodedVars = encodedVars;
+  }
+
+  @Override
+  public boolean containsVariables () {
+    return super.containsVariables() || encodedVars.length > 0;
+  }
+
+  public int[] getEncodedVars () {
+    return encodedVars;
+  }
+}
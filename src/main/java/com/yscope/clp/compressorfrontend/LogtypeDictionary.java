@@ -0,0 +1,203 @@
+package com.yscope.clp.compressorfrontend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A thread-safe dictionary that assigns a dense, stable {@code int} ID to each
+ * unique logtype. IDs are assigned in insertion order, starting from 0.
+ * <p></p>
+ * When a dictionary is attached to a {@link MessageEncoder}, the encoder looks
+ * up each logtype in native code and returns its ID (see
+ * {@link EncodedMessage#getLogtypeId()}) instead of allocating a new logtype
+ * array for each message. A dictionary can be shared by encoders on different
+ * threads; lookups are spread across independently locked stripes so that
+ * encoders rarely contend.
+ * <p></p>
+ * The dictionary is stored in native memory, so it must be closed to free
+ * that memory. It must not be closed while an encoder is using it.
+ */
+public class LogtypeDictionary implements AutoCloseable {
+  static final byte[] MAGIC_NUMBER = {'C', 'L', 'P', 'L'};
+  static final byte VERSION = 1;
+
+  private long nativeDictionaryAddress;
+
+  static {
+    NativeLibraryLoader.load();
+  }
+
+  public LogtypeDictionary() {
+    nativeDictionaryAddress = createNativeDictionary();
+  }
+
+  /**
+   * Reads a dictionary written by {@link #serialize(OutputStream)}. The
+   * logtypes keep their IDs.
+   * @param inputStream
+   * @return The dictionary
+   * @throws IOException if the stream isn't a serialized dictionary or on I/O
+   * error
+   */
+  public static LogtypeDictionary deserialize(@NotNull InputStream inputStream)
+      throws IOException
+  {
+    DataInputStream dataInputStream =
+        new DataInputStream(new BufferedInputStream(inputStream));
+    byte[] magicNumber = new byte[MAGIC_NUMBER.length];
+    dataInputStream.readFully(magicNumber);
+    if (false == Arrays.equals(MAGIC_NUMBER, magicNumber)) {
+      throw new IOException("Not a serialized logtype dictionary.");
+    }
+    byte version = dataInputStream.readByte();
+    if (VERSION != version) {
+      throw new IOException("Unsupported logtype dictionary version: " + version);
+    }
+    int numLogtypes = dataInputStream.readInt();
+    if (numLogtypes < 0) {
+      throw new IOException("Corrupt logtype dictionary.");
+    }
+
+    LogtypeDictionary dictionary = new LogtypeDictionary();
+    try {
+      byte[] logtype = EmptyArrayUtils.EMPTY_BYTE_ARRAY;
+      for (int i = 0; i < numLogtypes; ++i) {
+        int logtypeLength = dataInputStream.readInt();
+        if (logtypeLength < 0) {
+          throw new IOException("Corrupt logtype dictionary.");
+        }
+        if (logtypeLength > logtype.length) {
+          logtype = new byte[logtypeLength];
+        }
+        dataInputStream.readFully(logtype, 0, logtypeLength);
+        if (i != getOrAddLogtypeNative(dictionary.nativeDictionaryAddress, logtype,
+                                       logtypeLength))
+        {
+          throw new IOException("Duplicate logtype in logtype dictionary.");
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      dictionary.close();
+      throw e;
+    }
+    return dictionary;
+  }
+
+  /**
+   * Gets the ID of the given logtype, adding it to the dictionary if it
+   * doesn't exist
+   * @param logtype
+   * @return The logtype's ID
+   */
+  public int getOrAddLogtype(byte @NotNull [] logtype) {
+    Objects.requireNonNull(logtype);
+    return getOrAddLogtypeNative(getNativeDictionaryAddress(), logtype, logtype.length);
+  }
+
+  /**
+   * @param id
+   * @return The logtype with the given ID
+   * @throws IllegalArgumentException if the ID doesn't exist
+   */
+  public byte[] getLogtype(int id) {
+    return getLogtypeNative(getNativeDictionaryAddress(), id);
+  }
+
+  /**
+   * @return The number of logtypes in the dictionary
+   */
+  public int size() {
+    return sizeNative(getNativeDictionaryAddress());
+  }
+
+  /**
+   * Takes a consistent snapshot of the dictionary. Logtypes added
+   * concurrently are either entirely included in or excluded from the
+   * snapshot.
+   * @return The logtypes in the dictionary, where each logtype's index is its
+   * ID
+   */
+  public FlattenedByteArray snapshot() {
+    long address = getNativeDictionaryAddress();
+    int numLogtypes = sizeNative(address);
+    int[] logtypeEndOffsets = new int[numLogtypes];
+    byte[] logtypes = getLogtypesNative(address, numLogtypes, logtypeEndOffsets);
+    return new FlattenedByteArray(logtypes, logtypeEndOffsets);
+  }
+
+  /**
+   * Writes a snapshot (see {@link #snapshot()}) of the dictionary to the given
+   * stream, so that it can be persisted alongside data encoded with it
+   * @param outputStream
+   * @throws IOException on I/O error
+   */
+  public void serialize(@NotNull OutputStream outputStream) throws IOException {
+    FlattenedByteArray logtypes = snapshot();
+    byte[] flattenedLogtypes = logtypes.getFlattenedElems();
+    int[] logtypeEndOffsets = logtypes.getElemEndOffsets();
+
+    DataOutputStream dataOutputStream =
+        new DataOutputStream(new BufferedOutputStream(outputStream));
+    dataOutputStream.write(MAGIC_NUMBER);
+    dataOutputStream.writeByte(VERSION);
+    dataOutputStream.writeInt(logtypeEndOffsets.length);
+    int logtypeBeginOffset = 0;
+    for (int logtypeEndOffset : logtypeEndOffsets) {
+      dataOutputStream.writeInt(logtypeEndOffset - logtypeBeginOffset);
+      dataOutputStream.write(flattenedLogtypes, logtypeBeginOffset,
+                             logtypeEndOffset - logtypeBeginOffset);
+      logtypeBeginOffset = logtypeEndOffset;
+    }
+    dataOutputStream.flush();
+  }
+
+  @Override
+  public void close() {
+    if (0 != nativeDictionaryAddress) {
+      destroyNativeDictionary(nativeDictionaryAddress);
+      nativeDictionaryAddress = 0;
+    }
+  }
+
+  /**
+   * @return The address of the native dictionary
+   * @throws IllegalStateException if the dictionary is closed
+   */
+  long getNativeDictionaryAddress() {
+    if (0 == nativeDictionaryAddress) {
+      throw new IllegalStateException("Dictionary closed.");
+    }
+    return nativeDictionaryAddress;
+  }
+
+  private static native long createNativeDictionary();
+
+  private static native void destroyNativeDictionary(long dictionaryAddress);
+
+  private static native int getOrAddLogtypeNative(long dictionaryAddress, byte[] logtype,
+                                                  int logtypeLength);
+
+  private static native byte[] getLogtypeNative(long dictionaryAddress, int id);
+
+  private static native int sizeNative(long dictionaryAddress);
+
+  /**
+   * Gets the logtypes with IDs in [0, {@code numLogtypes})
+   * @param dictionaryAddress
+   * @param numLogtypes
+   * @param logtypeEndOffsets Returns the end offset of each logtype in the
+   * returned array
+   * @return The logtypes, stored back-to-back
+   */
+  private static native byte[] getLogtypesNative(long dictionaryAddress, int numLogtypes,
+                                                 int[] logtypeEndOffsets);
+}
@@ -0,0 +1,146 @@
+package com.yscope.clp.compressorfrontend;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A logtype that has been parsed once into the form needed to decode
+ * messages: the logtype's static text (with escape characters removed), split
+ * into one constant segment before each variable placeholder plus a trailing
+ * segment, and the kind of each placeholder. Decoding a message against a
+ * template only requires interleaving the constant segments with the decoded
+ * variables, so the logtype doesn't need to be scanned again.
+ * <p></p>
+ * Templates are immutable, so they can be shared between threads.
+ */
+public final class LogtypeTemplate {
+  // NOTE: These must be kept in-sync with CLP's built-in variable schemas.
+  static final byte VAR_SCHEMAS_V2_INT_VAR_PLACEHOLDER = 0x11;
+  static final byte VAR_SCHEMAS_V2_DICT_VAR_PLACEHOLDER = 0x12;
+  static final byte VAR_SCHEMAS_V2_FLOAT_VAR_PLACEHOLDER = 0x13;
+  static final byte VAR_SCHEMAS_V2_ESCAPE_CHAR = '\\';
+
+  // The number of low bits of each segment that hold its placeholder
+  static final int SEGMENT_PLACEHOLDER_BITS = 8;
+
+  private final byte[] constants;
+  private final long[] segments;
+  private final int numDictionaryVars;
+  private final int numEncodedVars;
+
+  private LogtypeTemplate(byte[] constants, long[] segments, int numDictionaryVars,
+                          int numEncodedVars)
+  {
+    this.constants = constants;
+    this.segments = segments;
+    this.numDictionaryVars = numDictionaryVars;
+    this.numEncodedVars = numEncodedVars;
+  }
+
+  /**
+   * Compiles the given logtype into a template
+   * @param logtype
+   * @return The template
+   * @throws IOException if the logtype ends with an unescaped escape
+   * character
+   */
+  public static LogtypeTemplate compile(byte @NotNull [] logtype) throws IOException {
+    Objects.requireNonNull(logtype);
+    return compile(logtype, logtype.length);
+  }
+
+  /**
+   * Compiles the first {@code logtypeLength} bytes of the given logtype into a
+   * template
+   * @param logtype
+   * @param logtypeLength
+   * @return The template
+   * @throws IOException if the logtype ends with an unescaped escape
+   * character
+   */
+  public static LogtypeTemplate compile(byte @NotNull [] logtype, int logtypeLength)
+      throws IOException
+  {
+    Objects.requireNonNull(logtype);
+    if (logtypeLength < 0 || logtypeLength > logtype.length) {
+      throw new IllegalArgumentException("Invalid logtype length.");
+    }
+
+    byte[] constants = new byte[logtypeLength];
+    int constantsLength = 0;
+    // A logtype has at most one placeholder per byte, plus a trailing segment
+    long[] segments = new long[logtypeLength + 1];
+    int numPlaceholders = 0;
+    int numDictionaryVars = 0;
+    for (int i = 0; i < logtypeLength; ++i) {
+      byte c = logtype[i];
+      switch (c) {
+        case VAR_SCHEMAS_V2_ESCAPE_CHAR:
+          // The character after the escape character is static text
+          // (regardless of whether it's a placeholder)
+          ++i;
+          if (logtypeLength == i) {
+            throw new IOException("Unexpected escape character without escaped value at end "
+                                      + "of logtype.");
+          }
+          constants[constantsLength++] = logtype[i];
+          break;
+        case VAR_SCHEMAS_V2_DICT_VAR_PLACEHOLDER:
+        case VAR_SCHEMAS_V2_INT_VAR_PLACEHOLDER:
+        case VAR_SCHEMAS_V2_FLOAT_VAR_PLACEHOLDER:
+          if (VAR_SCHEMAS_V2_DICT_VAR_PLACEHOLDER == c) {
+            ++numDictionaryVars;
+          }
+          segments[numPlaceholders++] = toSegment(constantsLength, c);
+          break;
+        default:
+          constants[constantsLength++] = c;
+          break;
+      }
+    }
+    segments[numPlaceholders] = toSegment(constantsLength, (byte)0);
+
+    return new LogtypeTemplate(Arrays.copyOf(constants, constantsLength),
+                               Arrays.copyOf(segments, numPlaceholders + 1),
+                               numDictionaryVars, numPlaceholders - numDictionaryVars);
+  }
+
+  private static long toSegment(int constantEndOffset, byte placeholder) {
+    return ((long)constantEndOffset << SEGMENT_PLACEHOLDER_BITS) | (placeholder & 0xFF);
+  }
+
+  /**
+   * @return The constant segments, stored back-to-back. Segment {@code i}
+   * precedes placeholder {@code i}, and the last segment follows the last
+   * placeholder.
+   */
+  byte[] getConstants() {
+    return constants;
+  }
+
+  /**
+   * @return One element per constant segment, packing the segment's end
+   * offset in {@link #getConstants()} (in the high bits) with the placeholder
+   * that follows it (in the low {@link #SEGMENT_PLACEHOLDER_BITS} bits). The
+   * last segment has no placeholder. Packing them into one array lets the
+   * native decoder read them with a single copy.
+   */
+  long[] getSegments() {
+    return segments;
+  }
+
+  public int getNumPlaceholders() {
+    return segments.length - 1;
+  }
+
+  public int getNumDictionaryVars() {
+    return numDictionaryVars;
+  }
+
+  public int getNumEncodedVars() {
+    return numEncodedVars;
+  }
+}
@@ -0,0 +1,199 @@
+package com.yscope.clp.compressorfrontend;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe, bounded cache of compiled {@link LogtypeTemplate}s. Templates
+ * can be keyed by a logtype ID, by the logtype's bytes, or by the logtype as a
+ * {@code String}; each kind of key is looked up separately.
+ * <p></p>
+ * Once the cache is full, templates are evicted using the CLOCK (second-chance)
+ * approximation of LRU: cached templates sit in a ring, each with a bit that's
+ * set when the template is used. To make room, a hand sweeps the ring, clearing
+ * set bits and evicting the first template whose bit is clear. So each miss
+ * evicts in amortized constant time, and templates that were used since the
+ * hand last passed them survive.
+ * <p></p>
+ * Lookups don't lock, so concurrent decodes don't contend on the cache. Only
+ * misses lock, to add the template to the ring; logtypes are compiled outside
+ * the lock, so concurrent misses on the same logtype may each compile it.
+ */
+class LogtypeTemplateCache {
+  private final int capacity;
+  private final ConcurrentHashMap<Object, Entry> templates = new ConcurrentHashMap<>();
+  private final Object evictionLock = new Object();
+  // The cached entries, in the order the clock hand visits them. Guarded by
+  // evictionLock.
+  private final Entry[] ring;
+  private int ringSize = 0;
+  private int clockHand = 0;
+  private final LongAdder numHits = new LongAdder();
+  private final LongAdder numMisses = new LongAdder();
+
+  /**
+   * @param capacity The maximum number of templates to cache
+   */
+  LogtypeTemplateCache(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive.");
+    }
+    this.capacity = capacity;
+    ring = new Entry[capacity];
+  }
+
+  /**
+   * Gets the template for the logtype with the given ID, compiling the given
+   * logtype if the ID isn't cached. Callers must ensure each ID always
+   * corresponds to the same logtype.
+   * @param logtypeId
+   * @param logtype
+   * @return The template
+   * @throws IOException if the logtype can't be compiled
+   */
+  LogtypeTemplate get(int logtypeId, byte[] logtype) throws IOException {
+    Integer key = logtypeId;
+    LogtypeTemplate template = lookUp(key);
+    if (null == template) {
+      template = LogtypeTemplate.compile(logtype);
+      put(key, template);
+    }
+    return template;
+  }
+
+  /**
+   * Gets the template for the given logtype, compiling it if it isn't cached
+   * @param logtype
+   * @return The template
+   * @throws IOException if the logtype can't be compiled
+   */
+  LogtypeTemplate get(byte[] logtype) throws IOException {
+    LogtypeTemplate template = lookUp(new LogtypeKey(logtype));
+    if (null == template) {
+      template = LogtypeTemplate.compile(logtype);
+      // Copy the logtype since the caller may reuse its array
+      put(new LogtypeKey(logtype.clone()), template);
+    }
+    return template;
+  }
+
+  /**
+   * Gets the template for the given logtype, compiling it if it isn't cached.
+   * On a hit, this avoids converting the logtype into bytes.
+   * @param logtype
+   * @return The template
+   * @throws IOException if the logtype can't be compiled
+   */
+  LogtypeTemplate get(String logtype) throws IOException {
+    LogtypeTemplate template = lookUp(logtype);
+    if (null == template) {
+      template = LogtypeTemplate.compile(logtype.getBytes(StandardCharsets.ISO_8859_1));
+      put(logtype, template);
+    }
+    return template;
+  }
+
+  int size() {
+    return templates.size();
+  }
+
+  long getNumHits() {
+    return numHits.sum();
+  }
+
+  long getNumMisses() {
+    return numMisses.sum();
+  }
+
+  /**
+   * @param key
+   * @return The cached template for the given key, or null if it isn't cached
+   */
+  private LogtypeTemplate lookUp(Object key) {
+    Entry entry = templates.get(key);
+    if (null == entry) {
+      numMisses.increment();
+      return null;
+    }
+    if (false == entry.referenced) {
+      // Only write when the bit changes, to avoid contending on hot entries
+      entry.referenced = true;
+    }
+    numHits.increment();
+    return entry.template;
+  }
+
+  /**
+   * Adds the given template to the cache, evicting a template that hasn't
+   * been used recently if the cache is full
+   * @param key
+   * @param template
+   */
+  private void put(Object key, LogtypeTemplate template) {
+    Entry entry = new Entry(key, template);
+    synchronized (evictionLock) {
+      if (null != templates.putIfAbsent(key, entry)) {
+        // Another thread cached the logtype concurrently
+        return;
+      }
+      if (ringSize < capacity) {
+        ring[ringSize++] = entry;
+        return;
+      }
+      // Give each used entry a second chance until reaching one that hasn't
+      // been used since the hand last passed it
+      while (ring[clockHand].referenced) {
+        ring[clockHand].referenced = false;
+        clockHand = (clockHand + 1) % capacity;
+      }
+      Entry evictedEntry = ring[clockHand];
+      templates.remove(evictedEntry.key, evictedEntry);
+      ring[clockHand] = entry;
+      clockHand = (clockHand + 1) % capacity;
+    }
+  }
+
+  private static class Entry {
+    private final Object key;
+    private final LogtypeTemplate template;
+    // Whether the entry was used since the clock hand last passed it
+    private volatile boolean referenced = false;
+
+    Entry(Object key, LogtypeTemplate template) {
+      this.key = key;
+      this.template = template;
+    }
+  }
+
+  /**
+   * A key that compares logtypes by their content
+   */
+  private static class LogtypeKey {
+    private final byte[] logtype;
+    private final int hashCode;
+
+    LogtypeKey(byte[] logtype) {
+      this.logtype = logtype;
+      hashCode = Arrays.hashCode(logtype);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (false == o instanceof LogtypeKey) {
+        return false;
+      }
+      return Arrays.equals(logtype, ((LogtypeKey)o).logtype);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
@@ -1,8 +1,17 @@
 package com.yscope.clp.compressorfrontend;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.jetbrains.annotations.NotNull;
 
@@ -14,6 +23,15 @@ public class MessageDecoder {
     NativeLibraryLoader.load();
   }
 
+  // The minimum number of messages matched by each task of a parallel batch
+  // match, so that the cost of each native call is amortized
+  private static final int MIN_PARALLEL_MATCH_RANGE_SIZE = 1024;
+  // The number of ranges per thread that a parallel batch match is split into,
+  // so that uneven ranges can be balanced by work-stealing
+  private static final int PARALLEL_MATCH_RANGES_PER_THREAD = 4;
+
+  private final LogtypeTemplateCache logtypeTemplateCache;
+
   /**
    * Constructs an object for decoding CLP-encoded log messages.
    * @param variablesSchemaVersion The version of the variables schema used to
@@ -28,6 +46,35 @@ public class MessageDecoder {
       @NotNull String variablesSchemaVersion,
       @NotNull String variableEncodingMethodsVersion
   ) throws UnsupportedOperationException {
+    this(variablesSchemaVersion, variableEncodingMethodsVersion, 0);
+  }
+
+  /**
+   * Constructs an object for decoding CLP-encoded log messages, which caches
+   * up to {@code logtypeTemplateCacheCapacity} compiled logtypes (see
+   * {@link LogtypeTemplate}). Decoding a message whose logtype is cached
+   * doesn't require scanning the logtype for variable placeholders, so this is
+   * useful when decoding many messages that share a small set of logtypes.
+   * When the cache is full, a logtype that hasn't been used recently is
+   * evicted.
+   * @param variablesSchemaVersion The version of the variables schema used to
+   *                               parse the log messages.
+   * @param variableEncodingMethodsVersion The version of variable encoding
+   *                                       methods used to encode the log
+   *                                       messages.
+   * @param logtypeTemplateCacheCapacity The maximum number of logtypes to
+   *                                     cache, or 0 to disable caching.
+   * @throws UnsupportedOperationException if either version was unknown or
+   * unsupported.
+   */
+  public MessageDecoder(
+      @NotNull String variablesSchemaVersion,
+      @NotNull String variableEncodingMethodsVersion,
+      int logtypeTemplateCacheCapacity
+  ) throws UnsupportedOperationException {
+    if (logtypeTemplateCacheCapacity < 0) {
+      throw new IllegalArgumentException("logtypeTemplateCacheCapacity cannot be negative.");
+    }
     Objects.requireNonNull(variablesSchemaVersion);
     Objects.requireNonNull(variableEncodingMethodsVersion);
     byte[] schemaVersionBytes = variablesSchemaVersion.getBytes(StandardCharsets.ISO_8859_1);
@@ -36,6 +83,30 @@ public class MessageDecoder {
     setVariableHandlingRuleVersions(schemaVersionBytes, schemaVersionBytes.length,
                                     encodingMethodsVersionBytes,
                                     encodingMethodsVersionBytes.length);
+    logtypeTemplateCache = (0 == logtypeTemplateCacheCapacity)
+        ? null : new LogtypeTemplateCache(logtypeTemplateCacheCapacity);
+  }
+
+  /**
+   * @return The number of logtypes in the template cache
+   */
+  public int getNumCachedLogtypeTemplates() {
+    return null == logtypeTemplateCache ? 0 : logtypeTemplateCache.size();
+  }
+
+  /**
+   * @return The number of template-cache lookups that found the logtype
+   */
+  public long getNumLogtypeTemplateCacheHits() {
+    return null == logtypeTemplateCache ? 0 : logtypeTemplateCache.getNumHits();
+  }
+
+  /**
+   * @return The number of template-cache lookups that had to compile the
+   * logtype
+   */
+  public long getNumLogtypeTemplateCacheMisses() {
+    return null == logtypeTemplateCache ? 0 : logtypeTemplateCache.getNumMisses();
   }
 
   private native void setVariableHandlingRuleVersions (
@@ -81,6 +152,96 @@ public class MessageDecoder {
     );
   }
 
+  /**
+   * Decodes the message with the given logtype and variables. If the decoder
+   * caches logtype templates, the template is looked up by
+   * {@code logtypeId}, so {@code logtype} is only compiled the first time the
+   * ID is seen (or after it's evicted).
+   * @param logtypeId The logtype's ID. Callers must ensure each ID always
+   *                  corresponds to the same logtype.
+   * @param logtype
+   * @param dictionaryVars
+   * @param encodedVars
+   * @return The decoded message
+   * @throws IOException if decoding fails
+   */
+  public String decodeMessage(
+      int logtypeId,
+      byte @NotNull [] logtype,
+      FlattenedByteArray dictionaryVars,
+      long[] encodedVars
+  ) throws IOException {
+    return new String(
+        decodeMessageAsBytes(logtypeId, logtype, dictionaryVars, encodedVars),
+        StandardCharsets.UTF_8
+    );
+  }
+
+  /**
+   * Same as {@link #decodeMessage(int, byte[], FlattenedByteArray, long[])}
+   * except the decoded message is returned as bytes
+   * @param logtypeId
+   * @param logtype
+   * @param dictionaryVars
+   * @param encodedVars
+   * @return The decoded message
+   * @throws IOException if decoding fails
+   */
+  public byte[] decodeMessageAsBytes(
+      int logtypeId,
+      byte @NotNull [] logtype,
+      FlattenedByteArray dictionaryVars,
+      long[] encodedVars
+  ) throws IOException {
+    Objects.requireNonNull(logtype);
+    if (null == logtypeTemplateCache) {
+      return decodeMessageAsBytes(logtype, dictionaryVars, encodedVars);
+    }
+    return decodeMessageAsBytes(logtypeTemplateCache.get(logtypeId, logtype), dictionaryVars,
+                                encodedVars);
+  }
+
+  /**
+   * Decodes the message with the given logtype template and variables
+   * @param logtypeTemplate
+   * @param dictionaryVars
+   * @param encodedVars
+   * @return The decoded message
+   * @throws IOException if decoding fails
+   */
+  public byte[] decodeMessageAsBytes(
+      @NotNull LogtypeTemplate logtypeTemplate,
+      FlattenedByteArray dictionaryVars,
+      long[] encodedVars
+  ) throws IOException {
+    Objects.requireNonNull(logtypeTemplate);
+    if (null == dictionaryVars) {
+      return decodeMessageWithTemplateNative(
+          logtypeTemplate.getConstants(),
+          logtypeTemplate.getSegments(),
+          logtypeTemplate.getNumPlaceholders(),
+          null,
+          0,
+          null,
+          0,
+          encodedVars,
+          null == encodedVars ? 0 : encodedVars.length
+      );
+    } else {
+      return decodeMessageWithTemplateNative(
+          logtypeTemplate.getConstants(),
+          logtypeTemplate.getSegments(),
+          logtypeTemplate.getNumPlaceholders(),
+          dictionaryVars.getFlattenedElems(),
+          dictionaryVars.getFlattenedElems().length,
+          dictionaryVars.getElemEndOffsets(),
+          dictionaryVars.getElemEndOffsets().length,
+          encodedVars,
+          null == encodedVars ? 0 : encodedVars.length
+      );
+    }
+  }
+
   /**
    * Decodes the message with the given logtype and variables
    * @param logtype
@@ -95,6 +256,10 @@ public class MessageDecoder {
       long[] encodedVars
   ) throws IOException {
     Objects.requireNonNull(logtype);
+    if (null != logtypeTemplateCache) {
+      return decodeMessageAsBytes(logtypeTemplateCache.get(logtype), dictionaryVars,
+                                  encodedVars);
+    }
     if (null == dictionaryVars) {
       return decodeMessageNative(
               logtype,
@@ -134,13 +299,467 @@ public class MessageDecoder {
           long[] encodedVars
   ) throws IOException {
     Objects.requireNonNull(logtype);
+    FlattenedByteArray flattenedDictionaryVars =
+        null == dictionaryVars ? null : FlattenedByteArrayFactory.fromStrings(dictionaryVars);
+    if (null != logtypeTemplateCache) {
+      return decodeMessageAsBytes(logtypeTemplateCache.get(logtype), flattenedDictionaryVars,
+                                  encodedVars);
+    }
     return decodeMessageAsBytes(
             logtype.getBytes(StandardCharsets.ISO_8859_1),
-            null == dictionaryVars ? null : FlattenedByteArrayFactory.fromStrings(dictionaryVars),
+            flattenedDictionaryVars,
             encodedVars
     );
   }
 
+  /**
+   * Decodes the message with the given logtype and variables into
+   * {@code dest}, starting at {@code destOffset}, without allocating a new
+   * array for the message.
+   * @param logtype
+   * @param dictionaryVars
+   * @param encodedVars
+   * @param dest
+   * @param destOffset
+   * @return The length of the decoded message if it fit in {@code dest}.
+   * Otherwise, nothing is written and the negated length of the decoded
+   * message is returned, so callers can retry with a large enough
+   * destination.
+   * @throws IOException if decoding fails
+   */
+  public int decodeMessageInto(
+      byte @NotNull [] logtype,
+      FlattenedByteArray dictionaryVars,
+      long[] encodedVars,
+      byte @NotNull [] dest,
+      int destOffset
+  ) throws IOException {
+    Objects.requireNonNull(logtype);
+    if (null != logtypeTemplateCache) {
+      return decodeMessageInto(logtypeTemplateCache.get(logtype), dictionaryVars, encodedVars,
+                               dest, destOffset);
+    }
+    validateDestination(dest, destOffset);
+    return decodeMessageInto(logtype, dictionaryVars, encodedVars, dest, null, destOffset,
+                             dest.length);
+  }
+
+  /**
+   * Same as {@link #decodeMessageInto(byte[], FlattenedByteArray, long[],
+   * byte[], int)} except the message is decoded into the remaining space of
+   * the given buffer (which may be direct). On success, the buffer's position
+   * is advanced past the decoded message; otherwise, the buffer is unchanged.
+   * @param logtype
+   * @param dictionaryVars
+   * @param encodedVars
+   * @param dest
+   * @return The length of the decoded message if it fit in {@code dest}, or
+   * the negated length otherwise
+   * @throws IOException if decoding fails
+   * @throws ReadOnlyBufferException if {@code dest} is read-only
+   */
+  public int decodeMessageInto(
+      byte @NotNull [] logtype,
+      FlattenedByteArray dictionaryVars,
+      long[] encodedVars,
+      @NotNull ByteBuffer dest
+  ) throws IOException {
+    Objects.requireNonNull(logtype);
+    if (null != logtypeTemplateCache) {
+      return decodeMessageInto(logtypeTemplateCache.get(logtype), dictionaryVars, encodedVars,
+                               dest);
+    }
+    validateDestination(dest);
+    int numBytesWritten;
+    if (dest.isDirect()) {
+      numBytesWritten = decodeMessageInto(logtype, dictionaryVars, encodedVars, null, dest,
+                                          dest.position(), dest.limit());
+    } else {
+      numBytesWritten = decodeMessageInto(logtype, dictionaryVars, encodedVars, dest.array(),
+                                          null, dest.arrayOffset() + dest.position(),
+                                          dest.arrayOffset() + dest.limit());
+    }
+    advancePosition(dest, numBytesWritten);
+    return numBytesWritten;
+  }
+
+  /**
+   * Same as {@link #decodeMessageInto(byte[], FlattenedByteArray, long[],
+   * byte[], int)} except, if the decoder caches logtype templates, the
+   * template is looked up by {@code logtypeId} (see
+   * {@link #decodeMessage(int, byte[], FlattenedByteArray, long[])}).
+   * @param logtypeId
+   * @param logtype
+   * @param dictionaryVars
+   * @param encodedVars
+   * @param dest
+   * @param destOffset
+   * @return The length of the decoded message if it fit in {@code dest}, or
+   * the negated length otherwise
+   * @throws IOException if decoding fails
+   */
+  public int decodeMessageInto(
+      int logtypeId,
+      byte @NotNull [] logtype,
+      FlattenedByteArray dictionaryVars,
+      long[] encodedVars,
+      byte @NotNull [] dest,
+      int destOffset
+  ) throws IOException {
+    Objects.requireNonNull(logtype);
+    if (null == logtypeTemplateCache) {
+      return decodeMessageInto(logtype, dictionaryVars, encodedVars, dest, destOffset);
+    }
+    return decodeMessageInto(logtypeTemplateCache.get(logtypeId, logtype), dictionaryVars,
+                             encodedVars, dest, destOffset);
+  }
+
+  /**
+   * Same as {@link #decodeMessageInto(int, byte[], FlattenedByteArray, long[],
+   * byte[], int)} except the message is decoded into the given buffer (see
+   * {@link #decodeMessageInto(byte[], FlattenedByteArray, long[],
+   * ByteBuffer)}).
+   * @param logtypeId
+   * @param logtype
+   * @param dictionaryVars
+   * @param encodedVars
+   * @param dest
+   * @return The length of the decoded message if it fit in {@code dest}, or
+   * the negated length otherwise
+   * @throws IOException if decoding fails
+   * @throws ReadOnlyBufferException if {@code dest} is read-only
+   */
+  public int decodeMessageInto(
+      int logtypeId,
+      byte @NotNull [] logtype,
+      FlattenedByteArray dictionaryVars,
+      long[] encodedVars,
+      @NotNull ByteBuffer dest
+  ) throws IOException {
+    Objects.requireNonNull(logtype);
+    if (null == logtypeTemplateCache) {
+      return decodeMessageInto(logtype, dictionaryVars, encodedVars, dest);
+    }
+    return decodeMessageInto(logtypeTemplateCache.get(logtypeId, logtype), dictionaryVars,
+                             encodedVars, dest);
+  }
+
+  /**
+   * Same as {@link #decodeMessageInto(byte[], FlattenedByteArray, long[],
+   * byte[], int)} except the message is decoded from the given logtype
+   * template
+   * @param logtypeTemplate
+   * @param dictionaryVars
+   * @param encodedVars
+   * @param dest
+   * @param destOffset
+   * @return The length of the decoded message if it fit in {@code dest}, or
+   * the negated length otherwise
+   * @throws IOException if decoding fails
+   */
+  public int decodeMessageInto(
+      @NotNull LogtypeTemplate logtypeTemplate,
+      FlattenedByteArray dictionaryVars,
+      long[] encodedVars,
+      byte @NotNull [] dest,
+      int destOffset
+  ) throws IOException {
+    Objects.requireNonNull(logtypeTemplate);
+    validateDestination(dest, destOffset);
+    return decodeMessageInto(logtypeTemplate, dictionaryVars, encodedVars, dest, null,
+                             destOffset, dest.length);
+  }
+
+  /**
+   * Same as {@link #decodeMessageInto(byte[], FlattenedByteArray, long[],
+   * ByteBuffer)} except the message is decoded from the given logtype template
+   * @param logtypeTemplate
+   * @param dictionaryVars
+   * @param encodedVars
+   * @param dest
+   * @return The length of the decoded message if it fit in {@code dest}, or
+   * the negated length otherwise
+   * @throws IOException if decoding fails
+   * @throws ReadOnlyBufferException if {@code dest} is read-only
+   */
+  public int decodeMessageInto(
+      @NotNull LogtypeTemplate logtypeTemplate,
+      FlattenedByteArray dictionaryVars,
+      long[] encodedVars,
+      @NotNull ByteBuffer dest
+  ) throws IOException {
+    Objects.requireNonNull(logtypeTemplate);
+    validateDestination(dest);
+    int numBytesWritten;
+    if (dest.isDirect()) {
+      numBytesWritten = decodeMessageInto(logtypeTemplate, dictionaryVars, encodedVars, null,
+                                          dest, dest.position(), dest.limit());
+    } else {
+      numBytesWritten = decodeMessageInto(logtypeTemplate, dictionaryVars, encodedVars,
+                                          dest.array(), null,
+                                          dest.arrayOffset() + dest.position(),
+                                          dest.arrayOffset() + dest.limit());
+    }
+    advancePosition(dest, numBytesWritten);
+    return numBytesWritten;
+  }
+
+  private int decodeMessageInto(
+      byte[] logtype,
+      FlattenedByteArray dictionaryVars,
+      long[] encodedVars,
+      byte[] destArray,
+      ByteBuffer destBuffer,
+      int destBeginOffset,
+      int destEndOffset
+  ) throws IOException {
+    if (null == dictionaryVars) {
+      return decodeMessageIntoNative(
+          logtype,
+          logtype.length,
+          null,
+          0,
+          null,
+          0,
+          encodedVars,
+          null == encodedVars ? 0 : encodedVars.length,
+          destArray,
+          destBuffer,
+          destBeginOffset,
+          destEndOffset
+      );
+    } else {
+      return decodeMessageIntoNative(
+          logtype,
+          logtype.length,
+          dictionaryVars.getFlattenedElems(),
+          dictionaryVars.getFlattenedElems().length,
+          dictionaryVars.getElemEndOffsets(),
+          dictionaryVars.getElemEndOffsets().length,
+          encodedVars,
+          null == encodedVars ? 0 : encodedVars.length,
+          destArray,
+          destBuffer,
+          destBeginOffset,
+          destEndOffset
+      );
+    }
+  }
+
+  private int decodeMessageInto(
+      LogtypeTemplate logtypeTemplate,
+      FlattenedByteArray dictionaryVars,
+      long[] encodedVars,
+      byte[] destArray,
+      ByteBuffer destBuffer,
+      int destBeginOffset,
+      int destEndOffset
+  ) throws IOException {
+    if (null == dictionaryVars) {
+      return decodeMessageWithTemplateIntoNative(
+          logtypeTemplate.getConstants(),
+          logtypeTemplate.getSegments(),
+          logtypeTemplate.getNumPlaceholders(),
+          null,
+          0,
+          null,
+          0,
+          encodedVars,
+          null == encodedVars ? 0 : encodedVars.length,
+          destArray,
+          destBuffer,
+          destBeginOffset,
+          destEndOffset
+      );
+    } else {
+      return decodeMessageWithTemplateIntoNative(
+          logtypeTemplate.getConstants(),
+          logtypeTemplate.getSegments(),
+          logtypeTemplate.getNumPlaceholders(),
+          dictionaryVars.getFlattenedElems(),
+          dictionaryVars.getFlattenedElems().length,
+          dictionaryVars.getElemEndOffsets(),
+          dictionaryVars.getElemEndOffsets().length,
+          encodedVars,
+          null == encodedVars ? 0 : encodedVars.length,
+          destArray,
+          destBuffer,
+          destBeginOffset,
+          destEndOffset
+      );
+    }
+  }
+
+  private static void validateDestination(byte[] dest, int destOffset) {
+    Objects.requireNonNull(dest);
+    if (destOffset < 0 || destOffset > dest.length) {
+      throw new IllegalArgumentException("Invalid destination offset.");
+    }
+  }
+
+  private static void validateDestination(ByteBuffer dest) {
+    Objects.requireNonNull(dest);
+    if (dest.isReadOnly()) {
+      throw new ReadOnlyBufferException();
+    }
+  }
+
+  private static void advancePosition(ByteBuffer buffer, int numBytesWritten) {
+    if (numBytesWritten > 0) {
+      buffer.position(buffer.position() + numBytesWritten);
+    }
+  }
+
+  /**
+   * Decodes a batch of messages stored in a columnar layout (see
+   * {@link EncodedMessageBatch}) in a single native call.
+   * <p></p>
+   * Each message's logtype is either {@code logtypes.get(i)} or, if
+   * {@code logtypeIds} is non-null, {@code logtypes.get(logtypeIds[i])}. The
+   * latter allows decoding messages whose logtypes are stored in a
+   * dictionary, e.g., using a {@link LogtypeDictionary#snapshot()}.
+   * @param logtypes
+   * @param logtypeIds The index of each message's logtype in
+   *                   {@code logtypes}, or null if {@code logtypes} contains
+   *                   one logtype per message.
+   * @param encodedVars The encoded variables of every message, stored
+   *                    back-to-back
+   * @param encodedVarEndOffsets The end offset of each message's encoded
+   *                             variables in {@code encodedVars}
+   * @param dictionaryVars The dictionary variables of every message
+   * @param dictionaryVarEndIndexes The end index of each message's dictionary
+   *                                variables in {@code dictionaryVars}
+   * @return The decoded messages, in order
+   * @throws IOException if decoding any message fails
+   * @throws IllegalArgumentException if the offsets, indexes, or IDs are
+   * invalid
+   */
+  public FlattenedByteArray batchDecodeMessages(
+      @NotNull FlattenedByteArray logtypes,
+      int[] logtypeIds,
+      long[] encodedVars,
+      int @NotNull [] encodedVarEndOffsets,
+      FlattenedByteArray dictionaryVars,
+      int @NotNull [] dictionaryVarEndIndexes
+  ) throws IOException {
+    Objects.requireNonNull(logtypes);
+    Objects.requireNonNull(encodedVarEndOffsets);
+    Objects.requireNonNull(dictionaryVarEndIndexes);
+
+    // Validate the array lengths
+    int numMessages = encodedVarEndOffsets.length;
+    if (dictionaryVarEndIndexes.length != numMessages) {
+      throw new IllegalArgumentException("Number of dictionary variable end indexes doesn't "
+                                             + "match number of messages.");
+    }
+    validateLogtypes(logtypes, logtypeIds, numMessages);
+
+    // Validate the end offsets and indexes
+    validateEndOffsets(encodedVarEndOffsets, null == encodedVars ? 0 : encodedVars.length,
+                       "encoded variable");
+    validateEndOffsets(dictionaryVarEndIndexes,
+                       null == dictionaryVars ? 0 : dictionaryVars.size(),
+                       "dictionary variable");
+
+    int[] messageEndOffsets = new int[numMessages];
+    byte[] messages = batchDecodeMessagesNative(
+        numMessages,
+        logtypes.getFlattenedElems(),
+        logtypes.getElemEndOffsets(),
+        logtypeIds,
+        encodedVars,
+        encodedVarEndOffsets,
+        null == dictionaryVars ? null : dictionaryVars.getFlattenedElems(),
+        null == dictionaryVars ? null : dictionaryVars.getElemEndOffsets(),
+        dictionaryVarEndIndexes,
+        messageEndOffsets
+    );
+    return new FlattenedByteArray(messages, messageEndOffsets);
+  }
+
+  /**
+   * Decodes every message in the given batch in a single native call (see
+   * {@link #batchDecodeMessages(FlattenedByteArray, int[], long[], int[],
+   * FlattenedByteArray, int[])})
+   * @param batch
+   * @return The decoded messages, in order
+   * @throws IOException if decoding any message fails
+   */
+  public FlattenedByteArray batchDecodeMessages(@NotNull EncodedMessageBatch batch)
+      throws IOException
+  {
+    Objects.requireNonNull(batch);
+    FlattenedByteArray logtypes = batch.getLogtypes();
+    if (null == logtypes) {
+      throw new IllegalArgumentException("Batch hasn't been encoded.");
+    }
+
+    // Convert the end offsets of each message's dictionary variable bounds
+    // into end indexes of each message's dictionary variables
+    int[] dictionaryVarBoundsEndOffsets = batch.getDictionaryVarBoundsEndOffsets();
+    int[] dictionaryVarEndIndexes = new int[dictionaryVarBoundsEndOffsets.length];
+    for (int i = 0; i < dictionaryVarEndIndexes.length; ++i) {
+      dictionaryVarEndIndexes[i] = dictionaryVarBoundsEndOffsets[i] / 2;
+    }
+
+    return batchDecodeMessages(logtypes, null, batch.getEncodedVars(),
+                               batch.getEncodedVarEndOffsets(),
+                               batch.getDictionaryVarsAsFlattenedByteArray(),
+                               dictionaryVarEndIndexes);
+  }
+
+  /**
+   * Validates that there's a logtype for each message
+   * @param logtypes
+   * @param logtypeIds The index of each message's logtype in
+   *                   {@code logtypes}, or null if {@code logtypes} contains
+   *                   one logtype per message.
+   * @param numMessages
+   */
+  private static void validateLogtypes(FlattenedByteArray logtypes, int[] logtypeIds,
+                                       int numMessages)
+  {
+    if (null == logtypeIds) {
+      if (logtypes.size() != numMessages) {
+        throw new IllegalArgumentException("Number of logtypes doesn't match number of "
+                                               + "messages.");
+      }
+    } else {
+      if (logtypeIds.length != numMessages) {
+        throw new IllegalArgumentException("Number of logtype IDs doesn't match number of "
+                                               + "messages.");
+      }
+      for (int id : logtypeIds) {
+        if (id < 0 || id >= logtypes.size()) {
+          throw new IllegalArgumentException("Invalid logtype ID: " + id);
+        }
+      }
+    }
+  }
+
+  /**
+   * Validates that the given end offsets are non-decreasing and don't exceed
+   * {@code maxOffset}
+   * @param endOffsets
+   * @param maxOffset
+   * @param description A description of the elements, for error messages
+   */
+  private static void validateEndOffsets(int[] endOffsets, int maxOffset, String description) {
+    int lastOffset = 0;
+    for (int offset : endOffsets) {
+      if (offset < lastOffset) {
+        throw new IllegalArgumentException("Invalid " + description + " end offset: offset ("
+                                               + offset + ") < lastOffset (" + lastOffset + ")");
+      }
+      if (offset > maxOffset) {
+        throw new IllegalArgumentException("Invalid " + description + " end offset: offset ("
+                                               + offset + ") > number of elements ("
+                                               + maxOffset + ")");
+      }
+      lastOffset = offset;
+    }
+  }
+
   /**
    * Decodes the message from the given logtype and variables
    * @param logtype The message's logtype
@@ -169,27 +788,162 @@ public class MessageDecoder {
   ) throws IOException;
 
   /**
-   * Checks whether any encoded integer variable matches the given wildcard
-   * query
-   * @param wildcardQuery
-   * @param logtype
+   * Same as {@link #decodeMessageNative} except the message is decoded from a
+   * compiled logtype
+   * @param constants The template's constant segments, stored back-to-back
+   * @param segments The end-offset of each constant segment in
+   *                 {@code constants}, packed with the placeholder that
+   *                 follows it (see {@link LogtypeTemplate#getSegments()}).
+   *                 There's one more segment than there are placeholders.
+   * @param numPlaceholders
+   * @param allDictionaryVars
+   * @param allDictionaryVarsLen
+   * @param dictionaryVarEndOffsets
+   * @param dictionaryVarEndOffsetsLen
    * @param encodedVars
-   * @return true if a match was found, false otherwise
+   * @param encodedVarsLen
+   * @return The decoded message
+   * @throws IOException if the number of variables doesn't match the
+   * template's placeholders
    */
-  public boolean wildcardQueryMatchesAnyIntVar(
-      @NotNull String wildcardQuery,
-      @NotNull String logtype,
-      long[] encodedVars
-  ) throws IOException {
-    Objects.requireNonNull(wildcardQuery);
-    Objects.requireNonNull(logtype);
-    byte[] wildcardQueryBytes = wildcardQuery.getBytes(StandardCharsets.ISO_8859_1);
-    byte[] logtypeBytes = logtype.getBytes(StandardCharsets.ISO_8859_1);
-    return wildcardQueryMatchesAnyIntVarNative(wildcardQueryBytes, wildcardQueryBytes.length,
-        logtypeBytes, logtypeBytes.length, encodedVars,
-        null == encodedVars ? 0 : encodedVars.length);
-  }
-
+  private native byte[] decodeMessageWithTemplateNative(
+      byte[] constants,
+      long[] segments,
+      int numPlaceholders,
+      byte[] allDictionaryVars,
+      int allDictionaryVarsLen,
+      int[] dictionaryVarEndOffsets,
+      int dictionaryVarEndOffsetsLen,
+      long[] encodedVars,
+      int encodedVarsLen
+  ) throws IOException;
+
+  /**
+   * Same as {@link #decodeMessageNative} except the message is written into
+   * [{@code destBeginOffset}, {@code destEndOffset}) of either
+   * {@code destArray} or {@code destBuffer} (whichever isn't null)
+   * @param logtype
+   * @param logtypeLen
+   * @param allDictionaryVars
+   * @param allDictionaryVarsLen
+   * @param dictionaryVarEndOffsets
+   * @param dictionaryVarEndOffsetsLen
+   * @param encodedVars
+   * @param encodedVarsLen
+   * @param destArray
+   * @param destBuffer A direct buffer
+   * @param destBeginOffset
+   * @param destEndOffset
+   * @return The length of the decoded message if it fit in the destination,
+   * or the negated length otherwise
+   * @throws IOException if the delimiters in the logtype don't match the number
+   * of variables.
+   */
+  private native int decodeMessageIntoNative(
+      byte[] logtype,
+      int logtypeLen,
+      byte[] allDictionaryVars,
+      int allDictionaryVarsLen,
+      int[] dictionaryVarEndOffsets,
+      int dictionaryVarEndOffsetsLen,
+      long[] encodedVars,
+      int encodedVarsLen,
+      byte[] destArray,
+      ByteBuffer destBuffer,
+      int destBeginOffset,
+      int destEndOffset
+  ) throws IOException;
+
+  /**
+   * Same as {@link #decodeMessageWithTemplateNative} except the message is
+   * written into a destination, like {@link #decodeMessageIntoNative}
+   * @param constants
+   * @param segments
+   * @param numPlaceholders
+   * @param allDictionaryVars
+   * @param allDictionaryVarsLen
+   * @param dictionaryVarEndOffsets
+   * @param dictionaryVarEndOffsetsLen
+   * @param encodedVars
+   * @param encodedVarsLen
+   * @param destArray
+   * @param destBuffer A direct buffer
+   * @param destBeginOffset
+   * @param destEndOffset
+   * @return The length of the decoded message if it fit in the destination,
+   * or the negated length otherwise
+   * @throws IOException if the number of variables doesn't match the
+   * template's placeholders
+   */
+  private native int decodeMessageWithTemplateIntoNative(
+      byte[] constants,
+      long[] segments,
+      int numPlaceholders,
+      byte[] allDictionaryVars,
+      int allDictionaryVarsLen,
+      int[] dictionaryVarEndOffsets,
+      int dictionaryVarEndOffsetsLen,
+      long[] encodedVars,
+      int encodedVarsLen,
+      byte[] destArray,
+      ByteBuffer destBuffer,
+      int destBeginOffset,
+      int destEndOffset
+  ) throws IOException;
+
+  /**
+   * Same as {@link #batchDecodeMessages(FlattenedByteArray, int[], long[],
+   * int[], FlattenedByteArray, int[])} except the flattened arrays are passed
+   * as their members
+   * @param numMessages
+   * @param allLogtypes
+   * @param logtypeEndOffsets
+   * @param logtypeIds
+   * @param encodedVars
+   * @param encodedVarEndOffsets
+   * @param allDictionaryVars
+   * @param dictionaryVarEndOffsets The end-offset of each dictionary variable
+   *                                in {@code allDictionaryVars}
+   * @param dictionaryVarEndIndexes
+   * @param messageEndOffsets Returns the end-offset of each decoded message
+   * @return The decoded messages, stored back-to-back
+   * @throws IOException if decoding any message fails
+   */
+  private native byte[] batchDecodeMessagesNative(
+      int numMessages,
+      byte[] allLogtypes,
+      int[] logtypeEndOffsets,
+      int[] logtypeIds,
+      long[] encodedVars,
+      int[] encodedVarEndOffsets,
+      byte[] allDictionaryVars,
+      int[] dictionaryVarEndOffsets,
+      int[] dictionaryVarEndIndexes,
+      int[] messageEndOffsets
+  ) throws IOException;
+
+  /**
+   * Checks whether any encoded integer variable matches the given wildcard
+   * query
+   * @param wildcardQuery
+   * @param logtype
+   * @param encodedVars
+   * @return true if a match was found, false otherwise
+   */
+  public boolean wildcardQueryMatchesAnyIntVar(
+      @NotNull String wildcardQuery,
+      @NotNull String logtype,
+      long[] encodedVars
+  ) throws IOException {
+    Objects.requireNonNull(wildcardQuery);
+    Objects.requireNonNull(logtype);
+    byte[] wildcardQueryBytes = wildcardQuery.getBytes(StandardCharsets.ISO_8859_1);
+    byte[] logtypeBytes = logtype.getBytes(StandardCharsets.ISO_8859_1);
+    return wildcardQueryMatchesAnyIntVarNative(wildcardQueryBytes, wildcardQueryBytes.length,
+        logtypeBytes, logtypeBytes.length, encodedVars,
+        null == encodedVars ? 0 : encodedVars.length);
+  }
+
   private native boolean wildcardQueryMatchesAnyIntVarNative(
       byte[] wildcardQuery,
       int wildcardQueryLen,
@@ -298,7 +1052,678 @@ public class MessageDecoder {
                                              + "size of output array.");
     }
 
-    // Validate the end indexes
+    validateVarWildcardQueryEndIndexes(serializedVarWildcardQueries,
+                                       varWildcardQueryEndIndexes);
+
+    batchEncodedVarsWildcardMatchNative(
+        logtypes.length,
+        logtypes,
+        encodedVarArrays,
+        wildcardVarPlaceholders,
+        wildcardVarPlaceholders.length,
+        serializedVarWildcardQueries,
+        serializedVarWildcardQueries.length,
+        varWildcardQueryEndIndexes,
+        varWildcardQueryEndIndexes.length,
+        matchResults);
+  }
+
+  /**
+   * Same as {@link #batchEncodedVarsWildcardMatch(byte[][], long[][], byte[],
+   * byte[], int[], int[])} except the messages are given in a flattened,
+   * columnar layout (see {@link EncodedMessageBatch}), so the whole batch can
+   * be matched without accessing each message's arrays through JNI.
+   * @param logtypes
+   * @param logtypeIds The index of each message's logtype in
+   *                   {@code logtypes}, or null if {@code logtypes} contains
+   *                   one logtype per message.
+   * @param encodedVars The encoded variables of every message, stored
+   *                    back-to-back
+   * @param encodedVarEndOffsets The end offset of each message's encoded
+   *                             variables in {@code encodedVars}
+   * @param wildcardVarPlaceholders
+   * @param serializedVarWildcardQueries
+   * @param varWildcardQueryEndIndexes
+   * @param matchResults Returns the match result per message
+   */
+  public void batchEncodedVarsWildcardMatch (
+      @NotNull FlattenedByteArray logtypes,
+      int[] logtypeIds,
+      long[] encodedVars,
+      @NotNull int[] encodedVarEndOffsets,
+      @NotNull byte[] wildcardVarPlaceholders,
+      @NotNull byte[] serializedVarWildcardQueries,
+      @NotNull int[] varWildcardQueryEndIndexes,
+      @NotNull int[] matchResults
+  ) throws IOException {
+    validateBatchEncodedVarsWildcardMatchArgs(logtypes, logtypeIds,
+                                              null == encodedVars ? 0 : encodedVars.length,
+                                              encodedVarEndOffsets, wildcardVarPlaceholders,
+                                              serializedVarWildcardQueries,
+                                              varWildcardQueryEndIndexes, matchResults);
+    batchEncodedVarsWildcardMatchFlattenedNative(
+        0,
+        matchResults.length,
+        logtypes.getFlattenedElems(),
+        logtypes.getElemEndOffsets(),
+        logtypeIds,
+        encodedVars,
+        null,
+        0,
+        encodedVarEndOffsets,
+        wildcardVarPlaceholders,
+        wildcardVarPlaceholders.length,
+        serializedVarWildcardQueries,
+        serializedVarWildcardQueries.length,
+        varWildcardQueryEndIndexes,
+        varWildcardQueryEndIndexes.length,
+        matchResults);
+  }
+
+  /**
+   * Same as {@link #batchEncodedVarsWildcardMatch(FlattenedByteArray, int[],
+   * long[], int[], byte[], byte[], int[], int[])} except the batch is split
+   * into ranges of messages that are matched concurrently in the given pool.
+   * Since each message is matched independently, the results are the same as
+   * when matching sequentially.
+   * @param logtypes
+   * @param logtypeIds
+   * @param encodedVars
+   * @param encodedVarEndOffsets
+   * @param wildcardVarPlaceholders
+   * @param serializedVarWildcardQueries
+   * @param varWildcardQueryEndIndexes
+   * @param matchResults Returns the match result per message
+   * @param pool The pool in which to match the ranges. Its parallelism
+   *             determines how many ranges are matched concurrently.
+   */
+  public void batchEncodedVarsWildcardMatch (
+      @NotNull FlattenedByteArray logtypes,
+      int[] logtypeIds,
+      long[] encodedVars,
+      @NotNull int[] encodedVarEndOffsets,
+      @NotNull byte[] wildcardVarPlaceholders,
+      @NotNull byte[] serializedVarWildcardQueries,
+      @NotNull int[] varWildcardQueryEndIndexes,
+      @NotNull int[] matchResults,
+      @NotNull ForkJoinPool pool
+  ) throws IOException {
+    Objects.requireNonNull(pool);
+    validateBatchEncodedVarsWildcardMatchArgs(logtypes, logtypeIds,
+                                              null == encodedVars ? 0 : encodedVars.length,
+                                              encodedVarEndOffsets, wildcardVarPlaceholders,
+                                              serializedVarWildcardQueries,
+                                              varWildcardQueryEndIndexes, matchResults);
+
+    parallelBatchEncodedVarsWildcardMatch(
+        matchResults.length,
+        pool,
+        (beginMessageIdx, endMessageIdx) -> batchEncodedVarsWildcardMatchFlattenedNative(
+            beginMessageIdx,
+            endMessageIdx,
+            logtypes.getFlattenedElems(),
+            logtypes.getElemEndOffsets(),
+            logtypeIds,
+            encodedVars,
+            null,
+            0,
+            encodedVarEndOffsets,
+            wildcardVarPlaceholders,
+            wildcardVarPlaceholders.length,
+            serializedVarWildcardQueries,
+            serializedVarWildcardQueries.length,
+            varWildcardQueryEndIndexes,
+            varWildcardQueryEndIndexes.length,
+            matchResults));
+  }
+
+  /**
+   * Same as {@link #batchEncodedVarsWildcardMatch(FlattenedByteArray, int[],
+   * long[], int[], byte[], byte[], int[], int[])} except the encoded variables
+   * are the remaining elements of the given buffer, which may be direct. The
+   * buffer's position is unchanged. If the buffer is neither direct nor backed
+   * by an accessible array (e.g., it's read-only), its elements are copied.
+   * @param logtypes
+   * @param logtypeIds
+   * @param encodedVars
+   * @param encodedVarEndOffsets The end offset of each message's encoded
+   *                             variables, relative to the buffer's position
+   * @param wildcardVarPlaceholders
+   * @param serializedVarWildcardQueries
+   * @param varWildcardQueryEndIndexes
+   * @param matchResults Returns the match result per message
+   * @throws IllegalArgumentException if {@code encodedVars} is direct and not
+   * in the platform's native byte order
+   */
+  public void batchEncodedVarsWildcardMatch (
+      @NotNull FlattenedByteArray logtypes,
+      int[] logtypeIds,
+      @NotNull LongBuffer encodedVars,
+      @NotNull int[] encodedVarEndOffsets,
+      @NotNull byte[] wildcardVarPlaceholders,
+      @NotNull byte[] serializedVarWildcardQueries,
+      @NotNull int[] varWildcardQueryEndIndexes,
+      @NotNull int[] matchResults
+  ) throws IOException {
+    Objects.requireNonNull(encodedVars);
+    validateBatchEncodedVarsWildcardMatchArgs(logtypes, logtypeIds, encodedVars.remaining(),
+                                              encodedVarEndOffsets, wildcardVarPlaceholders,
+                                              serializedVarWildcardQueries,
+                                              varWildcardQueryEndIndexes, matchResults);
+
+    long[] encodedVarsArray = null;
+    LongBuffer encodedVarsBuffer = null;
+    int encodedVarsBeginOffset;
+    if (encodedVars.isDirect()) {
+      if (encodedVars.order() != ByteOrder.nativeOrder()) {
+        throw new IllegalArgumentException("Direct buffer of encoded variables must be in the "
+                                               + "native byte order.");
+      }
+      encodedVarsBuffer = encodedVars;
+      encodedVarsBeginOffset = encodedVars.position();
+    } else if (encodedVars.hasArray()) {
+      encodedVarsArray = encodedVars.array();
+      encodedVarsBeginOffset = encodedVars.arrayOffset() + encodedVars.position();
+    } else {
+      // The buffer is read-only or a view of a heap ByteBuffer, so it has no
+      // accessible array
+      encodedVarsArray = new long[encodedVars.remaining()];
+      encodedVars.duplicate().get(encodedVarsArray);
+      encodedVarsBeginOffset = 0;
+    }
+
+    batchEncodedVarsWildcardMatchFlattenedNative(
+        0,
+        matchResults.length,
+        logtypes.getFlattenedElems(),
+        logtypes.getElemEndOffsets(),
+        logtypeIds,
+        encodedVarsArray,
+        encodedVarsBuffer,
+        encodedVarsBeginOffset,
+        encodedVarEndOffsets,
+        wildcardVarPlaceholders,
+        wildcardVarPlaceholders.length,
+        serializedVarWildcardQueries,
+        serializedVarWildcardQueries.length,
+        varWildcardQueryEndIndexes,
+        varWildcardQueryEndIndexes.length,
+        matchResults);
+  }
+
+  /**
+   * Same as {@link #batchEncodedVarsWildcardMatch(FlattenedByteArray, int[],
+   * long[], int[], byte[], byte[], int[], int[])} except every given subquery
+   * is matched against each message while the message is in cache, instead of
+   * scanning the batch once per subquery.
+   * <p></p>
+   * The results are returned as a bitmask per message, where bit
+   * {@code j % 64} of word {@code j / 64} is set if the message's encoded
+   * variables match subquery {@code j}. Message {@code i}'s bitmask occupies
+   * {@code matchBitmasks[i * numWords]} to
+   * {@code matchBitmasks[(i + 1) * numWords - 1]}, where
+   * {@code numWords = getNumMatchBitmaskWords(subqueries.length)}.
+   * @param logtypes
+   * @param logtypeIds
+   * @param encodedVars
+   * @param encodedVarEndOffsets
+   * @param subqueries
+   * @param matchBitmasks Returns the match bitmask per message
+   */
+  public void batchEncodedVarsWildcardMatch (
+      @NotNull FlattenedByteArray logtypes,
+      int[] logtypeIds,
+      long[] encodedVars,
+      @NotNull int[] encodedVarEndOffsets,
+      @NotNull EightByteClpEncodedSubquery[] subqueries,
+      @NotNull long[] matchBitmasks
+  ) throws IOException {
+    int numWords = validateBatchEncodedVarsWildcardMatchArgs(
+        logtypes, logtypeIds, null == encodedVars ? 0 : encodedVars.length,
+        encodedVarEndOffsets, subqueries, matchBitmasks);
+    SerializedEncodedVarWildcardQueries queries =
+        new SerializedEncodedVarWildcardQueries(subqueries);
+    batchEncodedVarsWildcardMatchSubqueriesNative(
+        encodedVarEndOffsets.length,
+        logtypes.getFlattenedElems(),
+        logtypes.getElemEndOffsets(),
+        logtypeIds,
+        encodedVars,
+        encodedVarEndOffsets,
+        subqueries.length,
+        queries.subqueryEndIndexes,
+        queries.wildcardVarPlaceholders,
+        queries.serializedVarWildcardQueries,
+        queries.varWildcardQueryEndIndexes,
+        numWords,
+        matchBitmasks);
+  }
+
+  /**
+   * Same as {@link #batchEncodedVarsWildcardMatch(FlattenedByteArray, int[],
+   * long[], int[], byte[], byte[], int[], int[])} except the encoded variables
+   * use the four-byte encoding, so they can be matched without widening them
+   * to eight bytes.
+   * @param logtypes
+   * @param logtypeIds
+   * @param encodedVars
+   * @param encodedVarEndOffsets
+   * @param wildcardVarPlaceholders
+   * @param serializedVarWildcardQueries
+   * @param varWildcardQueryEndIndexes
+   * @param matchResults Returns the match result per message
+   */
+  public void batchEncodedVarsWildcardMatch (
+      @NotNull FlattenedByteArray logtypes,
+      int[] logtypeIds,
+      int[] encodedVars,
+      @NotNull int[] encodedVarEndOffsets,
+      @NotNull byte[] wildcardVarPlaceholders,
+      @NotNull byte[] serializedVarWildcardQueries,
+      @NotNull int[] varWildcardQueryEndIndexes,
+      @NotNull int[] matchResults
+  ) throws IOException {
+    validateBatchEncodedVarsWildcardMatchArgs(logtypes, logtypeIds,
+                                              null == encodedVars ? 0 : encodedVars.length,
+                                              encodedVarEndOffsets, wildcardVarPlaceholders,
+                                              serializedVarWildcardQueries,
+                                              varWildcardQueryEndIndexes, matchResults);
+    batchEncodedVarsWildcardMatchFourByteNative(
+        0,
+        matchResults.length,
+        logtypes.getFlattenedElems(),
+        logtypes.getElemEndOffsets(),
+        logtypeIds,
+        encodedVars,
+        encodedVarEndOffsets,
+        wildcardVarPlaceholders,
+        wildcardVarPlaceholders.length,
+        serializedVarWildcardQueries,
+        serializedVarWildcardQueries.length,
+        varWildcardQueryEndIndexes,
+        varWildcardQueryEndIndexes.length,
+        matchResults);
+  }
+
+  /**
+   * Same as {@link #batchEncodedVarsWildcardMatch(FlattenedByteArray, int[],
+   * int[], int[], byte[], byte[], int[], int[])} except the batch is split into
+   * ranges of messages that are matched concurrently in the given pool.
+   * @param logtypes
+   * @param logtypeIds
+   * @param encodedVars
+   * @param encodedVarEndOffsets
+   * @param wildcardVarPlaceholders
+   * @param serializedVarWildcardQueries
+   * @param varWildcardQueryEndIndexes
+   * @param matchResults Returns the match result per message
+   * @param pool The pool in which to match the ranges. Its parallelism
+   *             determines how many ranges are matched concurrently.
+   */
+  public void batchEncodedVarsWildcardMatch (
+      @NotNull FlattenedByteArray logtypes,
+      int[] logtypeIds,
+      int[] encodedVars,
+      @NotNull int[] encodedVarEndOffsets,
+      @NotNull byte[] wildcardVarPlaceholders,
+      @NotNull byte[] serializedVarWildcardQueries,
+      @NotNull int[] varWildcardQueryEndIndexes,
+      @NotNull int[] matchResults,
+      @NotNull ForkJoinPool pool
+  ) throws IOException {
+    Objects.requireNonNull(pool);
+    validateBatchEncodedVarsWildcardMatchArgs(logtypes, logtypeIds,
+                                              null == encodedVars ? 0 : encodedVars.length,
+                                              encodedVarEndOffsets, wildcardVarPlaceholders,
+                                              serializedVarWildcardQueries,
+                                              varWildcardQueryEndIndexes, matchResults);
+
+    parallelBatchEncodedVarsWildcardMatch(
+        matchResults.length,
+        pool,
+        (beginMessageIdx, endMessageIdx) -> batchEncodedVarsWildcardMatchFourByteNative(
+            beginMessageIdx,
+            endMessageIdx,
+            logtypes.getFlattenedElems(),
+            logtypes.getElemEndOffsets(),
+            logtypeIds,
+            encodedVars,
+            encodedVarEndOffsets,
+            wildcardVarPlaceholders,
+            wildcardVarPlaceholders.length,
+            serializedVarWildcardQueries,
+            serializedVarWildcardQueries.length,
+            varWildcardQueryEndIndexes,
+            varWildcardQueryEndIndexes.length,
+            matchResults));
+  }
+
+  /**
+   * Same as {@link #batchEncodedVarsWildcardMatch(FlattenedByteArray, int[],
+   * long[], int[], EightByteClpEncodedSubquery[], long[])} except the encoded
+   * variables and subqueries use the four-byte encoding.
+   * @param logtypes
+   * @param logtypeIds
+   * @param encodedVars
+   * @param encodedVarEndOffsets
+   * @param subqueries
+   * @param matchBitmasks Returns the match bitmask per message
+   */
+  public void batchEncodedVarsWildcardMatch (
+      @NotNull FlattenedByteArray logtypes,
+      int[] logtypeIds,
+      int[] encodedVars,
+      @NotNull int[] encodedVarEndOffsets,
+      @NotNull FourByteClpEncodedSubquery[] subqueries,
+      @NotNull long[] matchBitmasks
+  ) throws IOException {
+    int numWords = validateBatchEncodedVarsWildcardMatchArgs(
+        logtypes, logtypeIds, null == encodedVars ? 0 : encodedVars.length,
+        encodedVarEndOffsets, subqueries, matchBitmasks);
+    SerializedEncodedVarWildcardQueries queries =
+        new SerializedEncodedVarWildcardQueries(subqueries);
+    batchEncodedVarsWildcardMatchFourByteSubqueriesNative(
+        encodedVarEndOffsets.length,
+        logtypes.getFlattenedElems(),
+        logtypes.getElemEndOffsets(),
+        logtypeIds,
+        encodedVars,
+        encodedVarEndOffsets,
+        subqueries.length,
+        queries.subqueryEndIndexes,
+        queries.wildcardVarPlaceholders,
+        queries.serializedVarWildcardQueries,
+        queries.varWildcardQueryEndIndexes,
+        numWords,
+        matchBitmasks);
+  }
+
+  /**
+   * Validates the arguments of the methods that match multiple subqueries
+   * against a batch
+   * @return The number of words in each message's match bitmask
+   */
+  private static int validateBatchEncodedVarsWildcardMatchArgs(
+      FlattenedByteArray logtypes,
+      int[] logtypeIds,
+      int numEncodedVars,
+      int[] encodedVarEndOffsets,
+      AbstractClpEncodedSubquery[] subqueries,
+      long[] matchBitmasks
+  ) {
+    Objects.requireNonNull(logtypes);
+    Objects.requireNonNull(encodedVarEndOffsets);
+    Objects.requireNonNull(subqueries);
+    Objects.requireNonNull(matchBitmasks);
+
+    // Validate the array lengths
+    int numMessages = encodedVarEndOffsets.length;
+    validateLogtypes(logtypes, logtypeIds, numMessages);
+    int numWords = getNumMatchBitmaskWords(subqueries.length);
+    if ((long)numMessages * numWords != matchBitmasks.length) {
+      throw new IllegalArgumentException("Size of output array doesn't match number of messages "
+                                             + "and subqueries.");
+    }
+    validateEndOffsets(encodedVarEndOffsets, numEncodedVars, "encoded variable");
+    return numWords;
+  }
+
+  /**
+   * @param numBits The number of subqueries or logtypes being matched
+   * @return The number of words in each match bitmask (see
+   * {@link #batchEncodedVarsWildcardMatch(FlattenedByteArray, int[], long[],
+   * int[], EightByteClpEncodedSubquery[], long[])} and
+   * {@link #batchLogtypeQueryMatch(FlattenedByteArray,
+   * AbstractClpEncodedSubquery[], long[])})
+   */
+  public static int getNumMatchBitmaskWords(int numBits) {
+    return (numBits + Long.SIZE - 1) / Long.SIZE;
+  }
+
+  /**
+   * Same as {@link #batchEncodedVarsWildcardMatch(FlattenedByteArray, int[],
+   * long[], int[], byte[], byte[], int[], int[])} except the encoded variable
+   * wildcard queries are taken from the given prepared subquery, so they
+   * don't need to be transferred to and parsed by the native code on each
+   * call.
+   * @param logtypes
+   * @param logtypeIds
+   * @param encodedVars
+   * @param encodedVarEndOffsets
+   * @param subquery
+   * @param matchResults Returns the match result per message
+   * @throws IllegalStateException if {@code subquery} is closed
+   */
+  public void batchEncodedVarsWildcardMatch (
+      @NotNull FlattenedByteArray logtypes,
+      int[] logtypeIds,
+      long[] encodedVars,
+      @NotNull int[] encodedVarEndOffsets,
+      @NotNull PreparedSubquery subquery,
+      @NotNull int[] matchResults
+  ) throws IOException {
+    validateBatchEncodedVarsWildcardMatchArgs(logtypes, logtypeIds, encodedVars,
+                                              encodedVarEndOffsets, subquery, matchResults);
+    batchEncodedVarsWildcardMatchPreparedNative(
+        0,
+        matchResults.length,
+        logtypes.getFlattenedElems(),
+        logtypes.getElemEndOffsets(),
+        logtypeIds,
+        encodedVars,
+        encodedVarEndOffsets,
+        subquery.getNativeSubqueryAddress(),
+        matchResults);
+  }
+
+  /**
+   * Same as {@link #batchEncodedVarsWildcardMatch(FlattenedByteArray, int[],
+   * long[], int[], PreparedSubquery, int[])} except the batch is split into
+   * ranges of messages that are matched concurrently in the given pool.
+   * @param logtypes
+   * @param logtypeIds
+   * @param encodedVars
+   * @param encodedVarEndOffsets
+   * @param subquery
+   * @param matchResults Returns the match result per message
+   * @param pool The pool in which to match the ranges. Its parallelism
+   *             determines how many ranges are matched concurrently.
+   * @throws IllegalStateException if {@code subquery} is closed
+   */
+  public void batchEncodedVarsWildcardMatch (
+      @NotNull FlattenedByteArray logtypes,
+      int[] logtypeIds,
+      long[] encodedVars,
+      @NotNull int[] encodedVarEndOffsets,
+      @NotNull PreparedSubquery subquery,
+      @NotNull int[] matchResults,
+      @NotNull ForkJoinPool pool
+  ) throws IOException {
+    Objects.requireNonNull(pool);
+    validateBatchEncodedVarsWildcardMatchArgs(logtypes, logtypeIds, encodedVars,
+                                              encodedVarEndOffsets, subquery, matchResults);
+    long subqueryAddress = subquery.getNativeSubqueryAddress();
+    parallelBatchEncodedVarsWildcardMatch(
+        matchResults.length,
+        pool,
+        (beginMessageIdx, endMessageIdx) -> batchEncodedVarsWildcardMatchPreparedNative(
+            beginMessageIdx,
+            endMessageIdx,
+            logtypes.getFlattenedElems(),
+            logtypes.getElemEndOffsets(),
+            logtypeIds,
+            encodedVars,
+            encodedVarEndOffsets,
+            subqueryAddress,
+            matchResults));
+  }
+
+  private static void validateBatchEncodedVarsWildcardMatchArgs(
+      FlattenedByteArray logtypes,
+      int[] logtypeIds,
+      long[] encodedVars,
+      int[] encodedVarEndOffsets,
+      PreparedSubquery subquery,
+      int[] matchResults
+  ) {
+    Objects.requireNonNull(logtypes);
+    Objects.requireNonNull(encodedVarEndOffsets);
+    Objects.requireNonNull(subquery);
+    Objects.requireNonNull(matchResults);
+
+    // Validate the array lengths
+    validateLogtypes(logtypes, logtypeIds, matchResults.length);
+    if (encodedVarEndOffsets.length != matchResults.length) {
+      throw new IllegalArgumentException("Number of encoded variable end offsets given doesn't "
+                                             + "match size of output array.");
+    }
+    validateEndOffsets(encodedVarEndOffsets, null == encodedVars ? 0 : encodedVars.length,
+                       "encoded variable");
+  }
+
+  /**
+   * Splits a batch of messages into ranges and matches them concurrently in
+   * the given pool
+   * @param numMessages
+   * @param pool
+   * @param matcher Matches a range of messages
+   * @throws IOException if {@code matcher} throws one
+   */
+  private static void parallelBatchEncodedVarsWildcardMatch(
+      int numMessages,
+      ForkJoinPool pool,
+      BatchRangeMatcher matcher
+  ) throws IOException {
+    int numRanges = pool.getParallelism() * PARALLEL_MATCH_RANGES_PER_THREAD;
+    int maxRangeSize = Math.max(MIN_PARALLEL_MATCH_RANGE_SIZE,
+                                (numMessages + numRanges - 1) / numRanges);
+    try {
+      pool.invoke(new BatchEncodedVarsWildcardMatchTask(matcher, 0, numMessages,
+                                                        maxRangeSize));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Matches each given subquery's logtype query against every logtype in a
+   * logtype dictionary, so that the encoded variables only need to be matched
+   * for messages whose logtype matches. A logtype query that contains
+   * wildcards is wildcard-matched, while one that doesn't must equal the
+   * logtype.
+   * <p></p>
+   * The results are returned as a bitmask per subquery, where bit
+   * {@code i % 64} of word {@code i / 64} is set if logtype {@code i} matches
+   * the subquery's logtype query. Subquery {@code j}'s bitmask occupies
+   * {@code matchBitmasks[j * numWords]} to
+   * {@code matchBitmasks[(j + 1) * numWords - 1]}, where
+   * {@code numWords = getNumMatchBitmaskWords(logtypes.size())}.
+   * @param logtypes The logtype dictionary, where each logtype's index is its
+   *                 ID
+   * @param subqueries
+   * @param matchBitmasks Returns the match bitmask per subquery
+   */
+  public void batchLogtypeQueryMatch (
+      @NotNull FlattenedByteArray logtypes,
+      @NotNull AbstractClpEncodedSubquery[] subqueries,
+      @NotNull long[] matchBitmasks
+  ) {
+    Objects.requireNonNull(logtypes);
+    Objects.requireNonNull(subqueries);
+    Objects.requireNonNull(matchBitmasks);
+
+    int numWords = getNumMatchBitmaskWords(logtypes.size());
+    if ((long)subqueries.length * numWords != matchBitmasks.length) {
+      throw new IllegalArgumentException("Size of output array doesn't match number of logtypes "
+                                             + "and subqueries.");
+    }
+    validateEndOffsets(logtypes.getElemEndOffsets(), logtypes.getFlattenedElems().length,
+                       "logtype");
+
+    // Serialize the subqueries' logtype queries
+    ByteArrayOutputStream serializedLogtypeQueries = new ByteArrayOutputStream();
+    int[] logtypeQueryEndOffsets = new int[subqueries.length];
+    boolean[] logtypeQueriesContainWildcards = new boolean[subqueries.length];
+    for (int i = 0; i < subqueries.length; ++i) {
+      byte[] logtypeQuery = subqueries[i].getLogtypeQuery();
+      serializedLogtypeQueries.write(logtypeQuery, 0, logtypeQuery.length);
+      logtypeQueryEndOffsets[i] = serializedLogtypeQueries.size();
+      logtypeQueriesContainWildcards[i] = subqueries[i].logtypeQueryContainsWildcards();
+    }
+
+    batchLogtypeQueryMatchNative(
+        logtypes.size(),
+        logtypes.getFlattenedElems(),
+        logtypes.getElemEndOffsets(),
+        subqueries.length,
+        serializedLogtypeQueries.toByteArray(),
+        logtypeQueryEndOffsets,
+        logtypeQueriesContainWildcards,
+        numWords,
+        matchBitmasks);
+  }
+
+  /**
+   * Same as {@link #batchLogtypeQueryMatch(FlattenedByteArray,
+   * AbstractClpEncodedSubquery[], long[])} except each subquery's matching
+   * logtypes are returned as a {@code BitSet} of logtype IDs.
+   * @param logtypes The logtype dictionary, where each logtype's index is its
+   *                 ID
+   * @param subqueries
+   * @return The IDs of the logtypes that match each subquery
+   */
+  public BitSet[] batchLogtypeQueryMatch (
+      @NotNull FlattenedByteArray logtypes,
+      @NotNull AbstractClpEncodedSubquery[] subqueries
+  ) {
+    Objects.requireNonNull(logtypes);
+    Objects.requireNonNull(subqueries);
+
+    int numWords = getNumMatchBitmaskWords(logtypes.size());
+    long[] matchBitmasks = new long[subqueries.length * numWords];
+    batchLogtypeQueryMatch(logtypes, subqueries, matchBitmasks);
+
+    BitSet[] matchingLogtypeIds = new BitSet[subqueries.length];
+    for (int i = 0; i < subqueries.length; ++i) {
+      matchingLogtypeIds[i] = BitSet.valueOf(
+          LongBuffer.wrap(matchBitmasks, i * numWords, numWords));
+    }
+    return matchingLogtypeIds;
+  }
+
+  private static void validateBatchEncodedVarsWildcardMatchArgs(
+      FlattenedByteArray logtypes,
+      int[] logtypeIds,
+      int numEncodedVars,
+      int[] encodedVarEndOffsets,
+      byte[] wildcardVarPlaceholders,
+      byte[] serializedVarWildcardQueries,
+      int[] varWildcardQueryEndIndexes,
+      int[] matchResults
+  ) {
+    Objects.requireNonNull(logtypes);
+    Objects.requireNonNull(encodedVarEndOffsets);
+    Objects.requireNonNull(wildcardVarPlaceholders);
+    Objects.requireNonNull(serializedVarWildcardQueries);
+    Objects.requireNonNull(varWildcardQueryEndIndexes);
+    Objects.requireNonNull(matchResults);
+
+    // Validate the array lengths
+    validateLogtypes(logtypes, logtypeIds, matchResults.length);
+    if (encodedVarEndOffsets.length != matchResults.length) {
+      throw new IllegalArgumentException("Number of encoded variable end offsets given doesn't "
+                                             + "match size of output array.");
+    }
+
+    validateEndOffsets(encodedVarEndOffsets, numEncodedVars, "encoded variable");
+    validateVarWildcardQueryEndIndexes(serializedVarWildcardQueries,
+                                       varWildcardQueryEndIndexes);
+  }
+
+  private static void validateVarWildcardQueryEndIndexes(
+      byte[] serializedVarWildcardQueries,
+      int[] varWildcardQueryEndIndexes
+  ) {
     int lastIdx = 0;
     for (int i : varWildcardQueryEndIndexes) {
       if (i < lastIdx) {
@@ -312,18 +1737,6 @@ public class MessageDecoder {
       }
       lastIdx = i;
     }
-
-    batchEncodedVarsWildcardMatchNative(
-        logtypes.length,
-        logtypes,
-        encodedVarArrays,
-        wildcardVarPlaceholders,
-        wildcardVarPlaceholders.length,
-        serializedVarWildcardQueries,
-        serializedVarWildcardQueries.length,
-        varWildcardQueryEndIndexes,
-        varWildcardQueryEndIndexes.length,
-        matchResults);
   }
 
   /**
@@ -353,4 +1766,297 @@ public class MessageDecoder {
       int varWildcardQueryEndIndexesLen,
       int[] matchResults
   ) throws IOException;
+
+  /**
+   * Same as {@link #batchEncodedVarsWildcardMatchNative} except the messages
+   * are given in a flattened, columnar layout. Only the messages in
+   * [{@code beginMessageIdx}, {@code endMessageIdx}) are matched, and only
+   * their elements of {@code matchResults} are written, so disjoint ranges of
+   * a batch can be matched concurrently.
+   * @param beginMessageIdx
+   * @param endMessageIdx
+   * @param allLogtypes
+   * @param logtypeEndOffsets
+   * @param logtypeIds
+   * @param encodedVarsArray
+   * @param encodedVarsBuffer A direct buffer, used if
+   *                          {@code encodedVarsArray} is null
+   * @param encodedVarsBeginOffset The offset of the first encoded variable in
+   *                               the array or buffer
+   * @param encodedVarEndOffsets The end offset of each message's encoded
+   *                             variables, relative to
+   *                             {@code encodedVarsBeginOffset}
+   * @param wildcardVarPlaceholders
+   * @param wildcardVarPlaceholdersLen
+   * @param serializedVarWildcardQueries
+   * @param serializedVarWildcardQueriesLen
+   * @param varWildcardQueryEndIndexes
+   * @param varWildcardQueryEndIndexesLen
+   * @param matchResults
+   */
+  private native void batchEncodedVarsWildcardMatchFlattenedNative (
+      int beginMessageIdx,
+      int endMessageIdx,
+      byte[] allLogtypes,
+      int[] logtypeEndOffsets,
+      int[] logtypeIds,
+      long[] encodedVarsArray,
+      LongBuffer encodedVarsBuffer,
+      int encodedVarsBeginOffset,
+      int[] encodedVarEndOffsets,
+      byte[] wildcardVarPlaceholders,
+      int wildcardVarPlaceholdersLen,
+      byte[] serializedVarWildcardQueries,
+      int serializedVarWildcardQueriesLen,
+      int[] varWildcardQueryEndIndexes,
+      int varWildcardQueryEndIndexesLen,
+      int[] matchResults
+  ) throws IOException;
+
+  /**
+   * Same as {@link #batchEncodedVarsWildcardMatchFlattenedNative} except the
+   * messages are matched against multiple subqueries
+   * @param numMessages
+   * @param allLogtypes
+   * @param logtypeEndOffsets
+   * @param logtypeIds
+   * @param encodedVars
+   * @param encodedVarEndOffsets
+   * @param numSubqueries
+   * @param subqueryEndIndexes The end index of each subquery's queries in
+   *                           {@code varWildcardQueryEndIndexes}
+   * @param wildcardVarPlaceholders The placeholder of every subquery's
+   *                                queries, stored back-to-back
+   * @param serializedVarWildcardQueries Every subquery's queries, stored
+   *                                     back-to-back
+   * @param varWildcardQueryEndIndexes The end index of each query in
+   *                                   {@code serializedVarWildcardQueries}
+   * @param numMatchBitmaskWords
+   * @param matchBitmasks
+   */
+  private native void batchEncodedVarsWildcardMatchSubqueriesNative (
+      int numMessages,
+      byte[] allLogtypes,
+      int[] logtypeEndOffsets,
+      int[] logtypeIds,
+      long[] encodedVars,
+      int[] encodedVarEndOffsets,
+      int numSubqueries,
+      int[] subqueryEndIndexes,
+      byte[] wildcardVarPlaceholders,
+      byte[] serializedVarWildcardQueries,
+      int[] varWildcardQueryEndIndexes,
+      int numMatchBitmaskWords,
+      long[] matchBitmasks
+  ) throws IOException;
+
+  /**
+   * Same as {@link #batchEncodedVarsWildcardMatchFlattenedNative} except the
+   * encoded variables use the four-byte encoding and are always in an array
+   * @param beginMessageIdx
+   * @param endMessageIdx
+   * @param allLogtypes
+   * @param logtypeEndOffsets
+   * @param logtypeIds
+   * @param encodedVars
+   * @param encodedVarEndOffsets
+   * @param wildcardVarPlaceholders
+   * @param wildcardVarPlaceholdersLen
+   * @param serializedVarWildcardQueries
+   * @param serializedVarWildcardQueriesLen
+   * @param varWildcardQueryEndIndexes
+   * @param varWildcardQueryEndIndexesLen
+   * @param matchResults
+   */
+  private native void batchEncodedVarsWildcardMatchFourByteNative (
+      int beginMessageIdx,
+      int endMessageIdx,
+      byte[] allLogtypes,
+      int[] logtypeEndOffsets,
+      int[] logtypeIds,
+      int[] encodedVars,
+      int[] encodedVarEndOffsets,
+      byte[] wildcardVarPlaceholders,
+      int wildcardVarPlaceholdersLen,
+      byte[] serializedVarWildcardQueries,
+      int serializedVarWildcardQueriesLen,
+      int[] varWildcardQueryEndIndexes,
+      int varWildcardQueryEndIndexesLen,
+      int[] matchResults
+  ) throws IOException;
+
+  /**
+   * Same as {@link #batchEncodedVarsWildcardMatchSubqueriesNative} except the
+   * encoded variables use the four-byte encoding
+   * @param numMessages
+   * @param allLogtypes
+   * @param logtypeEndOffsets
+   * @param logtypeIds
+   * @param encodedVars
+   * @param encodedVarEndOffsets
+   * @param numSubqueries
+   * @param subqueryEndIndexes
+   * @param wildcardVarPlaceholders
+   * @param serializedVarWildcardQueries
+   * @param varWildcardQueryEndIndexes
+   * @param numMatchBitmaskWords
+   * @param matchBitmasks
+   */
+  private native void batchEncodedVarsWildcardMatchFourByteSubqueriesNative (
+      int numMessages,
+      byte[] allLogtypes,
+      int[] logtypeEndOffsets,
+      int[] logtypeIds,
+      int[] encodedVars,
+      int[] encodedVarEndOffsets,
+      int numSubqueries,
+      int[] subqueryEndIndexes,
+      byte[] wildcardVarPlaceholders,
+      byte[] serializedVarWildcardQueries,
+      int[] varWildcardQueryEndIndexes,
+      int numMatchBitmaskWords,
+      long[] matchBitmasks
+  ) throws IOException;
+
+  /**
+   * Same as {@link #batchEncodedVarsWildcardMatchFlattenedNative} except the
+   * encoded variable wildcard queries are those of a prepared subquery
+   * @param beginMessageIdx
+   * @param endMessageIdx
+   * @param allLogtypes
+   * @param logtypeEndOffsets
+   * @param logtypeIds
+   * @param encodedVars
+   * @param encodedVarEndOffsets
+   * @param preparedSubqueryAddress
+   * @param matchResults
+   */
+  private native void batchEncodedVarsWildcardMatchPreparedNative (
+      int beginMessageIdx,
+      int endMessageIdx,
+      byte[] allLogtypes,
+      int[] logtypeEndOffsets,
+      int[] logtypeIds,
+      long[] encodedVars,
+      int[] encodedVarEndOffsets,
+      long preparedSubqueryAddress,
+      int[] matchResults
+  ) throws IOException;
+
+  /**
+   * See {@link #batchLogtypeQueryMatch(FlattenedByteArray,
+   * AbstractClpEncodedSubquery[], long[])}
+   * @param numLogtypes
+   * @param allLogtypes
+   * @param logtypeEndOffsets
+   * @param numSubqueries
+   * @param serializedLogtypeQueries Every subquery's logtype query, stored
+   *                                 back-to-back
+   * @param logtypeQueryEndOffsets The end offset of each logtype query in
+   *                               {@code serializedLogtypeQueries}
+   * @param logtypeQueriesContainWildcards Whether each logtype query contains
+   *                                       wildcards
+   * @param numMatchBitmaskWords
+   * @param matchBitmasks
+   */
+  private native void batchLogtypeQueryMatchNative (
+      int numLogtypes,
+      byte[] allLogtypes,
+      int[] logtypeEndOffsets,
+      int numSubqueries,
+      byte[] serializedLogtypeQueries,
+      int[] logtypeQueryEndOffsets,
+      boolean[] logtypeQueriesContainWildcards,
+      int numMatchBitmaskWords,
+      long[] matchBitmasks
+  );
+
+  /**
+   * The encoded variable wildcard queries of multiple subqueries, serialized
+   * back-to-back so that they can be transferred to the native code at once
+   */
+  private static class SerializedEncodedVarWildcardQueries {
+    // The end index of each subquery's queries in varWildcardQueryEndIndexes
+    final int[] subqueryEndIndexes;
+    final byte[] wildcardVarPlaceholders;
+    final byte[] serializedVarWildcardQueries;
+    final int[] varWildcardQueryEndIndexes;
+
+    SerializedEncodedVarWildcardQueries(AbstractClpEncodedSubquery[] subqueries) {
+      int numVarWildcardQueries = 0;
+      for (AbstractClpEncodedSubquery subquery : subqueries) {
+        numVarWildcardQueries += subquery.getNumEncodedVarWildcardQueries();
+      }
+      ByteArrayOutputStream placeholders = new ByteArrayOutputStream();
+      ByteArrayOutputStream queries = new ByteArrayOutputStream();
+      subqueryEndIndexes = new int[subqueries.length];
+      varWildcardQueryEndIndexes = new int[numVarWildcardQueries];
+      int queryIdx = 0;
+      for (int i = 0; i < subqueries.length; ++i) {
+        for (AbstractClpEncodedSubquery.VariableWildcardQuery q
+            : subqueries[i].getEncodedVarWildcardQueries())
+        {
+          placeholders.write(q.getType());
+          byte[] query = q.getQuery().toByteArray();
+          queries.write(query, 0, query.length);
+          varWildcardQueryEndIndexes[queryIdx++] = queries.size();
+        }
+        subqueryEndIndexes[i] = queryIdx;
+      }
+      wildcardVarPlaceholders = placeholders.toByteArray();
+      serializedVarWildcardQueries = queries.toByteArray();
+    }
+  }
+
+  /**
+   * Matches the messages in [{@code beginMessageIdx}, {@code endMessageIdx})
+   * of a batch
+   */
+  private interface BatchRangeMatcher {
+    void match(int beginMessageIdx, int endMessageIdx) throws IOException;
+  }
+
+  /**
+   * Task that matches a range of messages in a batch, splitting the range in
+   * half until it's no larger than {@code maxRangeSize}
+   */
+  private static class BatchEncodedVarsWildcardMatchTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final BatchRangeMatcher matcher;
+    private final int beginMessageIdx;
+    private final int endMessageIdx;
+    private final int maxRangeSize;
+
+    BatchEncodedVarsWildcardMatchTask(
+        BatchRangeMatcher matcher,
+        int beginMessageIdx,
+        int endMessageIdx,
+        int maxRangeSize
+    ) {
+      this.matcher = matcher;
+      this.beginMessageIdx = beginMessageIdx;
+      this.endMessageIdx = endMessageIdx;
+      this.maxRangeSize = maxRangeSize;
+    }
+
+    @Override
+    protected void compute() {
+      if (endMessageIdx - beginMessageIdx > maxRangeSize) {
+        int midMessageIdx = beginMessageIdx + (endMessageIdx - beginMessageIdx) / 2;
+        invokeAll(
+            new BatchEncodedVarsWildcardMatchTask(matcher, beginMessageIdx, midMessageIdx,
+                                                  maxRangeSize),
+            new BatchEncodedVarsWildcardMatchTask(matcher, midMessageIdx, endMessageIdx,
+                                                  maxRangeSize));
+        return;
+      }
+
+      try {
+        matcher.match(beginMessageIdx, endMessageIdx);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
 }
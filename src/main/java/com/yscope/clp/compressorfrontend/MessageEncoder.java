@@ -1,10 +1,12 @@
 package com.yscope.clp.compressorfrontend;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Class to encode log messages
@@ -14,6 +16,9 @@ public class MessageEncoder {
     NativeLibraryLoader.load();
   }
 
+  private final LogtypeDictionary logtypeDictionary;
+  private final VariableDictionary variableDictionary;
+
   /**
    * Constructs an object for encoding log messages using CLP.
    * @param variablesSchemaVersion The version of the variables schema to use to
@@ -27,6 +32,60 @@ public class MessageEncoder {
   public MessageEncoder(
       @NotNull String variablesSchemaVersion,
       @NotNull String variableEncodingMethodsVersion
+  ) throws UnsupportedOperationException {
+    this(variablesSchemaVersion, variableEncodingMethodsVersion, null);
+  }
+
+  /**
+   * Constructs an object for encoding log messages using CLP, where each
+   * message's logtype is looked up in (or added to) the given dictionary.
+   * Encoded messages then contain the logtype's ID (see
+   * {@link EncodedMessage#getLogtypeId()}) rather than a copy of the logtype.
+   * @param variablesSchemaVersion The version of the variables schema to use to
+   *                               parse the log messages.
+   * @param variableEncodingMethodsVersion The version of variable encoding
+   *                                       methods to use to encode the log
+   *                                       messages.
+   * @param logtypeDictionary The dictionary to store logtypes in, or null to
+   *                          return a copy of each logtype instead. The
+   *                          dictionary may be shared with other encoders.
+   * @throws UnsupportedOperationException if either version was unknown or
+   * unsupported.
+   */
+  public MessageEncoder(
+      @NotNull String variablesSchemaVersion,
+      @NotNull String variableEncodingMethodsVersion,
+      @Nullable LogtypeDictionary logtypeDictionary
+  ) throws UnsupportedOperationException {
+    this(variablesSchemaVersion, variableEncodingMethodsVersion, logtypeDictionary, null);
+  }
+
+  /**
+   * Constructs an object for encoding log messages using CLP, where each
+   * message's logtype and dictionary variables are looked up in (or added to)
+   * the given dictionaries. Encoded messages then also contain the ID of each
+   * dictionary variable (see {@link EncodedMessage#getDictionaryVarIds()}).
+   * @param variablesSchemaVersion The version of the variables schema to use to
+   *                               parse the log messages.
+   * @param variableEncodingMethodsVersion The version of variable encoding
+   *                                       methods to use to encode the log
+   *                                       messages.
+   * @param logtypeDictionary The dictionary to store logtypes in, or null to
+   *                          return a copy of each logtype instead.
+   * @param variableDictionary The dictionary to store dictionary variables in,
+   *                           or null to only return their bounds. The
+   *                           dictionary may be shared with other encoders.
+   *                           Its sealed segments must be polled regularly,
+   *                           since encoding fails once they fill the
+   *                           dictionary's memory budget.
+   * @throws UnsupportedOperationException if either version was unknown or
+   * unsupported.
+   */
+  public MessageEncoder(
+      @NotNull String variablesSchemaVersion,
+      @NotNull String variableEncodingMethodsVersion,
+      @Nullable LogtypeDictionary logtypeDictionary,
+      @Nullable VariableDictionary variableDictionary
   ) throws UnsupportedOperationException {
     Objects.requireNonNull(variablesSchemaVersion);
     Objects.requireNonNull(variableEncodingMethodsVersion);
@@ -36,6 +95,16 @@ public class MessageEncoder {
     setVariableHandlingRuleVersions(schemaVersionBytes, schemaVersionBytes.length,
                                     encodingMethodsVersionBytes,
                                     encodingMethodsVersionBytes.length);
+    this.logtypeDictionary = logtypeDictionary;
+    this.variableDictionary = variableDictionary;
+  }
+
+  public LogtypeDictionary getLogtypeDictionary() {
+    return logtypeDictionary;
+  }
+
+  public VariableDictionary getVariableDictionary() {
+    return variableDictionary;
   }
 
   private native void setVariableHandlingRuleVersions (
@@ -54,9 +123,110 @@ public class MessageEncoder {
   public void encodeMessage(String message, EncodedMessage encodedMessage) throws IOException {
     byte[] messageAsBytes = message.getBytes(StandardCharsets.UTF_8);
     encodedMessage.setMessage(messageAsBytes);
-    encodeMessageNative(messageAsBytes, encodedMessage);
+    encodeMessageNative(messageAsBytes, getLogtypeDictionaryAddress(),
+                        getVariableDictionaryAddress(), encodedMessage);
+    encodedMessage.setLogtypeDictionary(logtypeDictionary);
+  }
+
+  private native void encodeMessageNative(
+      byte[] message,
+      long logtypeDictionaryAddress,
+      long variableDictionaryAddress,
+      EncodedMessage encodedMessage
+  ) throws IOException;
+
+  /**
+   * Encodes the UTF-8 encoded log message between the given direct buffer's
+   * position and limit. The message is read directly from the buffer's native
+   * memory, so none of its bytes are copied on the Java side. The buffer's
+   * position and limit are left unchanged.
+   * <p></p>
+   * NOTE: The dictionary variable bounds in {@code encodedMessage} are
+   * relative to the start of the buffer (rather than its position), so the
+   * buffer's content must not be modified while {@code encodedMessage} is in
+   * use.
+   * @param message A direct buffer containing the message
+   * @param encodedMessage
+   * @throws IllegalArgumentException if {@code message} isn't a direct buffer
+   * @throws IOException if encoding fails
+   */
+  public void encodeMessage(@NotNull ByteBuffer message, @NotNull EncodedMessage encodedMessage)
+      throws IOException
+  {
+    Objects.requireNonNull(message);
+    Objects.requireNonNull(encodedMessage);
+    if (false == message.isDirect()) {
+      throw new IllegalArgumentException("message must be a direct buffer.");
+    }
+    encodedMessage.setMessage(message);
+    encodeDirectMessageNative(message, message.position(), message.limit(),
+                              getLogtypeDictionaryAddress(), getVariableDictionaryAddress(),
+                              encodedMessage);
+    encodedMessage.setLogtypeDictionary(logtypeDictionary);
   }
 
-  private native void encodeMessageNative(byte[] message, EncodedMessage encodedMessage)
-      throws IOException;
+  private native void encodeDirectMessageNative(
+      ByteBuffer message,
+      int messageBeginOffset,
+      int messageEndOffset,
+      long logtypeDictionaryAddress,
+      long variableDictionaryAddress,
+      EncodedMessage encodedMessage
+  ) throws IOException;
+
+  /**
+   * Encodes the given batch of log messages using a single native call.
+   * @param messages The UTF-8 encoded messages
+   * @param encodedMessageBatch Returns the encoded messages
+   * @throws IOException if encoding any of the messages fails
+   */
+  public void encodeMessages(
+      @NotNull FlattenedByteArray messages,
+      @NotNull EncodedMessageBatch encodedMessageBatch
+  ) throws IOException {
+    Objects.requireNonNull(messages);
+    Objects.requireNonNull(encodedMessageBatch);
+    encodedMessageBatch.setMessages(messages);
+    encodeMessagesNative(messages.getFlattenedElems(), messages.getElemEndOffsets(),
+                         messages.size(), getLogtypeDictionaryAddress(),
+                         getVariableDictionaryAddress(), encodedMessageBatch);
+    encodedMessageBatch.setLogtypeDictionary(logtypeDictionary);
+  }
+
+  /**
+   * Same as {@link MessageEncoder#encodeMessages} except the messages are
+   * passed as the members of a {@link FlattenedByteArray}.
+   * @param messages The messages, stored back-to-back in a single byte-array
+   * @param messageEndOffsets The end-offset of each message in
+   *                          {@code messages}
+   * @param numMessages
+   * @param logtypeDictionaryAddress
+   * @param variableDictionaryAddress
+   * @param encodedMessageBatch
+   * @throws IOException if encoding any of the messages fails
+   */
+  private native void encodeMessagesNative(
+      byte[] messages,
+      int[] messageEndOffsets,
+      int numMessages,
+      long logtypeDictionaryAddress,
+      long variableDictionaryAddress,
+      EncodedMessageBatch encodedMessageBatch
+  ) throws IOException;
+
+  /**
+   * @return The address of the logtype dictionary's native dictionary, or 0
+   * if the encoder doesn't have a dictionary.
+   */
+  private long getLogtypeDictionaryAddress() {
+    return null == logtypeDictionary ? 0 : logtypeDictionary.getNativeDictionaryAddress();
+  }
+
+  /**
+   * @return The address of the variable dictionary's native dictionary, or 0
+   * if the encoder doesn't have a dictionary.
+   */
+  private long getVariableDictionaryAddress() {
+    return null == variableDictionary ? 0 : variableDictionary.getNativeDictionaryAddress();
+  }
 }
@@ -0,0 +1,86 @@
+package com.yscope.clp.compressorfrontend;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An {@link EightByteClpEncodedSubquery} whose encoded-variable wildcard
+ * queries have been deserialized once into native memory, so that they can be
+ * matched against many batches of messages without transferring and parsing
+ * the queries on every call (see
+ * {@link MessageDecoder#batchEncodedVarsWildcardMatch(FlattenedByteArray,
+ * int[], long[], int[], PreparedSubquery, int[])}).
+ * <p></p>
+ * A prepared subquery can be shared between threads. It must be closed to
+ * free its native memory, and it must not be closed while it's being matched.
+ */
+public class PreparedSubquery implements AutoCloseable {
+  private final EightByteClpEncodedSubquery subquery;
+  private final int numEncodedVarWildcardQueries;
+  private long nativeSubqueryAddress;
+
+  static {
+    NativeLibraryLoader.load();
+  }
+
+  public PreparedSubquery(@NotNull EightByteClpEncodedSubquery subquery) {
+    Objects.requireNonNull(subquery);
+    this.subquery = subquery;
+
+    numEncodedVarWildcardQueries = subquery.getNumEncodedVarWildcardQueries();
+    byte[] wildcardVarPlaceholders = new byte[numEncodedVarWildcardQueries];
+    int[] varWildcardQueryEndIndexes = new int[numEncodedVarWildcardQueries];
+    ByteArrayOutputStream serializedVarWildcardQueries = new ByteArrayOutputStream();
+    int queryIdx = 0;
+    for (AbstractClpEncodedSubquery.VariableWildcardQuery q
+        : subquery.getEncodedVarWildcardQueries())
+    {
+      wildcardVarPlaceholders[queryIdx] = q.getType();
+      byte[] query = q.getQuery().toByteArray();
+      serializedVarWildcardQueries.write(query, 0, query.length);
+      varWildcardQueryEndIndexes[queryIdx] = serializedVarWildcardQueries.size();
+      ++queryIdx;
+    }
+
+    nativeSubqueryAddress = createNativeSubquery(wildcardVarPlaceholders,
+                                                 serializedVarWildcardQueries.toByteArray(),
+                                                 varWildcardQueryEndIndexes,
+                                                 numEncodedVarWildcardQueries);
+  }
+
+  public EightByteClpEncodedSubquery getSubquery() {
+    return subquery;
+  }
+
+  public int getNumEncodedVarWildcardQueries() {
+    return numEncodedVarWildcardQueries;
+  }
+
+  @Override
+  public void close() {
+    if (0 != nativeSubqueryAddress) {
+      destroyNativeSubquery(nativeSubqueryAddress);
+      nativeSubqueryAddress = 0;
+    }
+  }
+
+  /**
+   * @return The address of the native subquery
+   * @throws IllegalStateException if the subquery is closed
+   */
+  long getNativeSubqueryAddress() {
+    if (0 == nativeSubqueryAddress) {
+      throw new IllegalStateException("Prepared subquery closed.");
+    }
+    return nativeSubqueryAddress;
+  }
+
+  private static native long createNativeSubquery(byte[] wildcardVarPlaceholders,
+                                                  byte[] serializedVarWildcardQueries,
+                                                  int[] varWildcardQueryEndIndexes,
+                                                  int numVarWildcardQueries);
+
+  private static native void destroyNativeSubquery(long subqueryAddress);
+}
@@ -0,0 +1,232 @@
+package com.yscope.clp.compressorfrontend;
+
+import java.util.Objects;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A thread-safe dictionary that assigns a {@code long} ID to each unique
+ * dictionary variable, stored in an open-addressing hash table in native
+ * memory.
+ * <p></p>
+ * When a dictionary is attached to a {@link MessageEncoder}, the encoder adds
+ * each message's dictionary variables to the dictionary in native code and
+ * returns their IDs (see {@link EncodedMessage#getDictionaryVarIds()}), so the
+ * variables never need to be copied into Java arrays.
+ * <p></p>
+ * To bound its memory usage, the dictionary is split into segments. Variables
+ * are added to the active segment until it would exceed half of the
+ * dictionary's memory budget, at which point the active segment is sealed and
+ * a new one is started. Each ID contains the ID of the segment (see
+ * {@link #getSegmentId(long)}) and the variable's index within that segment
+ * (see {@link #getLocalId(long)}). Sealed segments are kept until they're
+ * exported with {@link #pollSealedSegment()}, so callers should poll them
+ * regularly (e.g., to persist them alongside the data encoded with them).
+ * <p></p>
+ * Sealed segments count toward the memory budget, so the dictionary's memory
+ * usage stays bounded. Since the IDs of a sealed segment's variables may
+ * already be in use, the dictionary never drops a sealed segment before it's
+ * polled. Instead, if sealing the active segment would exceed the budget,
+ * adding a variable to it fails until enough sealed segments are polled.
+ * <p></p>
+ * The dictionary is stored in native memory, so it must be closed to free
+ * that memory. It must not be closed while an encoder is using it.
+ */
+public class VariableDictionary implements AutoCloseable {
+  public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+  private long nativeDictionaryAddress;
+
+  static {
+    NativeLibraryLoader.load();
+  }
+
+  public VariableDictionary() {
+    this(DEFAULT_MEMORY_BUDGET);
+  }
+
+  /**
+   * @param memoryBudget The approximate number of bytes of native memory the
+   * dictionary (the active segment and the sealed segments) may use
+   * @throws IllegalArgumentException if the memory budget isn't positive
+   */
+  public VariableDictionary(long memoryBudget) {
+    if (memoryBudget <= 0) {
+      throw new IllegalArgumentException("memoryBudget must be positive.");
+    }
+    nativeDictionaryAddress = createNativeDictionary(memoryBudget);
+  }
+
+  /**
+   * @param id
+   * @return The ID of the segment containing the variable with the given ID
+   */
+  public static int getSegmentId(long id) {
+    return (int)(id >>> 32);
+  }
+
+  /**
+   * @param id
+   * @return The index of the variable with the given ID within its segment
+   */
+  public static int getLocalId(long id) {
+    return (int)id;
+  }
+
+  /**
+   * Gets the ID of the given variable, adding it to the active segment if it
+   * doesn't exist there. This may seal the active segment.
+   * @param variable
+   * @return The variable's ID
+   * @throws RuntimeException if the active segment is full and sealing it
+   * would exceed the memory budget, i.e., sealed segments must be polled
+   * before the variable can be added
+   */
+  public long getOrAddVariable(byte @NotNull [] variable) {
+    Objects.requireNonNull(variable);
+    return getOrAddVariableNative(getNativeDictionaryAddress(), variable, variable.length);
+  }
+
+  /**
+   * @param id
+   * @return The variable with the given ID
+   * @throws IllegalArgumentException if the ID doesn't exist in the active
+   * segment
+   */
+  public byte[] getVariable(long id) {
+    return getVariableNative(getNativeDictionaryAddress(), id);
+  }
+
+  public int getActiveSegmentId() {
+    return getActiveSegmentIdNative(getNativeDictionaryAddress());
+  }
+
+  /**
+   * @return The number of variables in the active segment
+   */
+  public int getNumVariables() {
+    return getNumVariablesNative(getNativeDictionaryAddress());
+  }
+
+  /**
+   * @return The approximate number of bytes of native memory used by the
+   * active segment and the sealed segments
+   */
+  public long getMemoryUsage() {
+    return getMemoryUsageNative(getNativeDictionaryAddress());
+  }
+
+  /**
+   * @return The number of sealed segments that haven't been polled yet
+   */
+  public int getNumSealedSegments() {
+    return getNumSealedSegmentsNative(getNativeDictionaryAddress());
+  }
+
+  /**
+   * Seals the active segment (unless it's empty) and starts a new one
+   * @throws RuntimeException if sealing the active segment would exceed the
+   * memory budget
+   */
+  public void rollOver() {
+    rollOverNative(getNativeDictionaryAddress());
+  }
+
+  /**
+   * Takes a consistent snapshot of the active segment
+   * @return The segment
+   */
+  public Segment exportActiveSegment() {
+    int[] segmentId = new int[1];
+    FlattenedByteArray variables =
+        exportActiveSegmentNative(getNativeDictionaryAddress(), segmentId);
+    return new Segment(segmentId[0], variables);
+  }
+
+  /**
+   * Removes the oldest sealed segment from the dictionary
+   * @return The segment, or null if there are no sealed segments
+   */
+  public @Nullable Segment pollSealedSegment() {
+    int[] segmentId = new int[1];
+    FlattenedByteArray variables =
+        pollSealedSegmentNative(getNativeDictionaryAddress(), segmentId);
+    return null == variables ? null : new Segment(segmentId[0], variables);
+  }
+
+  @Override
+  public void close() {
+    if (0 != nativeDictionaryAddress) {
+      destroyNativeDictionary(nativeDictionaryAddress);
+      nativeDictionaryAddress = 0;
+    }
+  }
+
+  /**
+   * @return The address of the native dictionary
+   * @throws IllegalStateException if the dictionary is closed
+   */
+  long getNativeDictionaryAddress() {
+    if (0 == nativeDictionaryAddress) {
+      throw new IllegalStateException("Dictionary closed.");
+    }
+    return nativeDictionaryAddress;
+  }
+
+  /**
+   * The variables of a segment, where each variable's index is its local ID
+   */
+  public static class Segment {
+    private final int id;
+    private final FlattenedByteArray variables;
+
+    Segment(int id, @NotNull FlattenedByteArray variables) {
+      this.id = id;
+      this.variables = variables;
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    public @NotNull FlattenedByteArray getVariables() {
+      return variables;
+    }
+  }
+
+  private static native long createNativeDictionary(long memoryBudget);
+
+  private static native void destroyNativeDictionary(long dictionaryAddress);
+
+  private static native long getOrAddVariableNative(long dictionaryAddress, byte[] variable,
+                                                    int variableLength);
+
+  private static native byte[] getVariableNative(long dictionaryAddress, long id);
+
+  private static native int getActiveSegmentIdNative(long dictionaryAddress);
+
+  private static native int getNumVariablesNative(long dictionaryAddress);
+
+  private static native long getMemoryUsageNative(long dictionaryAddress);
+
+  private static native int getNumSealedSegmentsNative(long dictionaryAddress);
+
+  private static native void rollOverNative(long dictionaryAddress);
+
+  /**
+   * @param dictionaryAddress
+   * @param segmentId Returns the segment's ID
+   * @return The segment's variables
+   */
+  private static native FlattenedByteArray exportActiveSegmentNative(long dictionaryAddress,
+                                                                     int[] segmentId);
+
+  /**
+   * @param dictionaryAddress
+   * @param segmentId Returns the segment's ID
+   * @return The segment's variables, or null if there are no sealed segments
+   */
+  private static native FlattenedByteArray pollSealedSegmentNative(long dictionaryAddress,
+                                                                   int[] segmentId);
+}
@@ -0,0 +1,388 @@
+package com.yscope.clp.irstream;
+
+import com.yscope.clp.compressorfrontend.NativeLibraryLoader;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Base class for CLP IR input streams. An input stream parses the stream's
+ * preamble on construction and then iterates over the stream's log events,
+ * returning each either in its encoded form ({@link EncodedLogEvent}) or
+ * decoded ({@link LogEvent}).
+ * <p></p>
+ * The stream is read incrementally and events are read into caller-provided,
+ * reusable objects, so memory usage is bounded by the largest event rather than
+ * the size of the stream.
+ * <p></p>
+ * Streams created from a {@link FileChannel} (see
+ * {@link ClpIrInputStreamFactory#fromFileChannel}) can also use an
+ * {@link IrStreamIndex} to seek to a timestamp.
+ */
+public abstract class AbstractClpIrInputStream implements AutoCloseable {
+  private DataInputStream inputStream;
+  private final IrStreamMetadata metadata;
+
+  private final EncodedLogEvent encodedLogEventBuffer = new EncodedLogEvent();
+  private boolean endOfStreamReached = false;
+  // Whether the end of the input marks the end of the stream, for streams
+  // over a segment of another stream that has no EOF tag of its own
+  private final boolean endOfInputIsEndOfStream;
+
+  private FileChannel seekableChannel = null;
+  // The log event found by the last seek, which is returned by the next read
+  private EncodedLogEvent pendingLogEvent = null;
+  private boolean hasPendingLogEvent = false;
+
+  static {
+    NativeLibraryLoader.load();
+  }
+
+  /**
+   * Abstract constructor for input streams
+   * @param inputStream Stream from which the IR should be read
+   * @param magicNumber The magic number that the stream should start with
+   * @throws IOException if the preamble couldn't be read or was invalid
+   */
+  protected AbstractClpIrInputStream (InputStream inputStream, byte[] magicNumber)
+      throws IOException
+  {
+    if (inputStream instanceof BufferedInputStream) {
+      this.inputStream = new DataInputStream(inputStream);
+    } else {
+      this.inputStream = new DataInputStream(new BufferedInputStream(inputStream));
+    }
+
+    byte[] streamMagicNumber = new byte[IrStreamProtocol.MAGIC_NUMBER_LENGTH];
+    this.inputStream.readFully(streamMagicNumber);
+    if (false == Arrays.equals(magicNumber, streamMagicNumber)) {
+      throw new IOException("Invalid magic number.");
+    }
+
+    metadata = readMetadata();
+    endOfInputIsEndOfStream = false;
+  }
+
+  /**
+   * Constructor for input streams over a segment of a stream whose preamble
+   * has already been read, e.g., a segment of a memory-mapped file. The
+   * segment must begin at a log event, and reaching the end of the input at
+   * the end of a log event ends the stream.
+   * @param inputStream Stream from which the segment should be read. It isn't
+   * buffered, so it should support cheap single-byte reads.
+   * @param metadata The metadata from the stream's preamble
+   */
+  AbstractClpIrInputStream (InputStream inputStream, IrStreamMetadata metadata) {
+    this.inputStream = new DataInputStream(inputStream);
+    this.metadata = metadata;
+    endOfInputIsEndOfStream = true;
+  }
+
+  /**
+   * @return The metadata from the stream's preamble
+   */
+  public IrStreamMetadata getMetadata () {
+    return metadata;
+  }
+
+  /**
+   * Closes the stream
+   * @throws IOException on I/O error
+   */
+  @Override
+  public void close () throws IOException {
+    if (null != inputStream) {
+      inputStream.close();
+      inputStream = null;
+    }
+    if (null != seekableChannel) {
+      seekableChannel.close();
+      seekableChannel = null;
+    }
+  }
+
+  /**
+   * Seeks to the first log event with a timestamp at or after the given
+   * timestamp, so that it's the event returned by the next read. The index is
+   * used to jump close to the event, so only a small part of the stream needs
+   * to be scanned.
+   * @param timestamp Timestamp as milliseconds since the Unix epoch
+   * @param index The index written alongside the stream
+   * @return true if such an event exists, false if the end of the stream was
+   * reached
+   * @throws IOException on I/O error, if the stream is corrupt, or if the
+   * stream wasn't created from a {@link FileChannel}
+   */
+  public boolean seekToTimestamp (long timestamp, IrStreamIndex index) throws IOException {
+    if (null == inputStream) {
+      throw new IOException("Stream closed.");
+    }
+    if (null == seekableChannel) {
+      throw new IOException("Stream isn't seekable.");
+    }
+
+    hasPendingLogEvent = false;
+    int entryIdx = index.findEntry(timestamp);
+    if (-1 == entryIdx) {
+      // The stream has no log events
+      endOfStreamReached = true;
+      return false;
+    }
+
+    seekableChannel.position(index.getByteOffset(entryIdx));
+    InputStream channelInputStream = newChannelInputStream(seekableChannel);
+    if (index.isForCompressedStream()) {
+      channelInputStream = new ZstdFrameInputStream(channelInputStream);
+    }
+    inputStream.close();
+    inputStream = new DataInputStream(new BufferedInputStream(channelInputStream));
+    setReferenceTimestamp(index.getReferenceTimestamp(entryIdx));
+    endOfStreamReached = false;
+
+    if (null == pendingLogEvent) {
+      pendingLogEvent = new EncodedLogEvent();
+    }
+    while (readNextEncodedLogEventFromStream(pendingLogEvent)) {
+      if (pendingLogEvent.getTimestamp() >= timestamp) {
+        hasPendingLogEvent = true;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Reads the next log event from the stream without decoding its message
+   * @param logEvent Returns the log event
+   * @return true if an event was read, false if the end of the stream was
+   * reached
+   * @throws IOException on I/O error or if the stream is corrupt
+   */
+  public boolean readNextEncodedLogEvent (EncodedLogEvent logEvent) throws IOException {
+    if (null == inputStream) {
+      throw new IOException("Stream closed.");
+    }
+    if (hasPendingLogEvent) {
+      logEvent.copyFrom(pendingLogEvent);
+      hasPendingLogEvent = false;
+      return true;
+    }
+    return readNextEncodedLogEventFromStream(logEvent);
+  }
+
+  /**
+   * Reads the next log event from the stream and decodes its message
+   * @param logEvent Returns the log event
+   * @return true if an event was read, false if the end of the stream was
+   * reached
+   * @throws IOException on I/O error, if the stream is corrupt, or if the
+   * event couldn't be decoded
+   */
+  public boolean readNextLogEvent (LogEvent logEvent) throws IOException {
+    if (false == readNextEncodedLogEvent(encodedLogEventBuffer)) {
+      return false;
+    }
+    decodeLogEvent(encodedLogEventBuffer, logEvent);
+    return true;
+  }
+
+  /**
+   * Decodes an encoded log event read from this stream
+   * @param encodedLogEvent
+   * @param logEvent Returns the decoded log event
+   * @throws IOException if the event couldn't be decoded
+   */
+  public void decodeLogEvent (EncodedLogEvent encodedLogEvent, LogEvent logEvent)
+      throws IOException
+  {
+    int messageLength = decodeMessage(encodedLogEvent, logEvent.getMessage());
+    if (messageLength < 0) {
+      // The buffer was too small, so grow it and try again
+      logEvent.ensureMessageCapacity(-messageLength);
+      messageLength = decodeMessage(encodedLogEvent, logEvent.getMessage());
+    }
+    logEvent.set(encodedLogEvent.getTimestamp(), messageLength);
+  }
+
+  /**
+   * Resets the timestamp that the next log event's timestamp is relative to,
+   * for encodings that store timestamp deltas. This is called after seeking.
+   * @param referenceTimestamp
+   */
+  protected void setReferenceTimestamp (long referenceTimestamp) {
+  }
+
+  /**
+   * @return The tag that precedes encoded variables in this stream
+   */
+  protected abstract byte getEncodedVarTag ();
+
+  /**
+   * Reads an encoded variable (without its tag) from the stream
+   * @param inputStream
+   * @return The encoded variable, sign-extended to a {@code long}
+   * @throws IOException on I/O error
+   */
+  protected abstract long readEncodedVar (DataInputStream inputStream) throws IOException;
+
+  /**
+   * Reads a log event's timestamp from the stream
+   * @param inputStream
+   * @param tag The tag preceding the timestamp
+   * @return The timestamp as milliseconds since the Unix epoch
+   * @throws IOException on I/O error or if the tag is invalid
+   */
+  protected abstract long readTimestamp (DataInputStream inputStream, byte tag)
+      throws IOException;
+
+  /**
+   * Decodes the given encoded log event's message into the given buffer
+   * @param logEvent
+   * @param buffer
+   * @return The length of the decoded message if it fit in the buffer.
+   * Otherwise, the negated length of the decoded message.
+   * @throws IOException if the message couldn't be decoded
+   */
+  protected abstract int decodeMessage (EncodedLogEvent logEvent, byte[] buffer)
+      throws IOException;
+
+  /**
+   * Sets the channel that this stream reads from, which makes the stream
+   * seekable. The stream should have been created on top of a stream returned
+   * by {@link #newChannelInputStream}.
+   * @param seekableChannel
+   */
+  void setSeekableChannel (FileChannel seekableChannel) {
+    this.seekableChannel = seekableChannel;
+  }
+
+  /**
+   * @param channel
+   * @return An input stream that reads from the channel's current position
+   * but doesn't close the channel when it's closed
+   */
+  static InputStream newChannelInputStream (FileChannel channel) {
+    return new FilterInputStream(Channels.newInputStream(channel)) {
+      @Override
+      public void close () {
+      }
+    };
+  }
+
+  /**
+   * Reads the next log event from the underlying stream
+   * @param logEvent Returns the log event
+   * @return true if an event was read, false if the end of the stream was
+   * reached
+   * @throws IOException on I/O error or if the stream is corrupt
+   */
+  private boolean readNextEncodedLogEventFromStream (EncodedLogEvent logEvent)
+      throws IOException
+  {
+    if (endOfStreamReached) {
+      return false;
+    }
+
+    logEvent.clear();
+    boolean logEventStarted = false;
+    while (true) {
+      byte tag = readTag(logEventStarted);
+      switch (tag) {
+        case IrStreamProtocol.EOF:
+          if (logEventStarted) {
+            throw new IOException("Stream ended in the middle of a log event.");
+          }
+          endOfStreamReached = true;
+          return false;
+        case IrStreamProtocol.Payload.VAR_STR_LEN_UBYTE:
+          logEvent.readDictVar(inputStream, inputStream.readUnsignedByte());
+          break;
+        case IrStreamProtocol.Payload.VAR_STR_LEN_USHORT:
+          logEvent.readDictVar(inputStream, inputStream.readUnsignedShort());
+          break;
+        case IrStreamProtocol.Payload.VAR_STR_LEN_INT:
+          logEvent.readDictVar(inputStream, readLength());
+          break;
+        case IrStreamProtocol.Payload.LOGTYPE_STR_LEN_UBYTE:
+          logEvent.readLogtype(inputStream, inputStream.readUnsignedByte());
+          logEvent.setTimestamp(readTimestamp(inputStream, readTag(true)));
+          return true;
+        case IrStreamProtocol.Payload.LOGTYPE_STR_LEN_USHORT:
+          logEvent.readLogtype(inputStream, inputStream.readUnsignedShort());
+          logEvent.setTimestamp(readTimestamp(inputStream, readTag(true)));
+          return true;
+        case IrStreamProtocol.Payload.LOGTYPE_STR_LEN_INT:
+          logEvent.readLogtype(inputStream, readLength());
+          logEvent.setTimestamp(readTimestamp(inputStream, readTag(true)));
+          return true;
+        default:
+          if (getEncodedVarTag() != tag) {
+            throw new IOException("Unexpected tag: " + tag);
+          }
+          logEvent.addEncodedVar(readEncodedVar(inputStream));
+          break;
+      }
+      logEventStarted = true;
+    }
+  }
+
+  private IrStreamMetadata readMetadata () throws IOException {
+    byte encodingType = inputStream.readByte();
+    if (IrStreamProtocol.Metadata.ENCODING_JSON != encodingType) {
+      throw new IOException("Unsupported metadata encoding: " + encodingType);
+    }
+
+    int length;
+    byte lengthTag = inputStream.readByte();
+    if (IrStreamProtocol.Metadata.LENGTH_UBYTE == lengthTag) {
+      length = inputStream.readUnsignedByte();
+    } else if (IrStreamProtocol.Metadata.LENGTH_USHORT == lengthTag) {
+      length = inputStream.readUnsignedShort();
+    } else {
+      throw new IOException("Invalid metadata length tag: " + lengthTag);
+    }
+
+    byte[] json = new byte[length];
+    inputStream.readFully(json);
+    return IrStreamMetadata.parse(json, length);
+  }
+
+  /**
+   * Reads a tag from the stream
+   * @param logEventStarted Whether we're in the middle of reading a log event
+   * @return The tag
+   * @throws IOException on I/O error or if the stream ended unexpectedly
+   */
+  private byte readTag (boolean logEventStarted) throws IOException {
+    int tag = inputStream.read();
+    if (-1 == tag) {
+      if (logEventStarted) {
+        throw new EOFException("Stream ended in the middle of a log event.");
+      }
+      if (endOfInputIsEndOfStream) {
+        return IrStreamProtocol.EOF;
+      }
+      throw new EOFException("Stream ended without an EOF tag.");
+    }
+    return (byte)tag;
+  }
+
+  /**
+   * Reads a signed four-byte length from the stream
+   * @return The length
+   * @throws IOException on I/O error or if the length is negative
+   */
+  private int readLength () throws IOException {
+    int length = inputStream.readInt();
+    if (length < 0) {
+      throw new IOException("Invalid length: " + length);
+    }
+    return length;
+  }
+}
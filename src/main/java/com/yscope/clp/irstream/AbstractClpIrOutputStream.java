@@ -1,21 +1,53 @@
 package com.yscope.clp.irstream;
 
+import com.yscope.clp.compressorfrontend.FlattenedByteArray;
 import com.yscope.clp.compressorfrontend.NativeLibraryLoader;
 import java.io.Flushable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * Base class for CLP IR output streams.
+ * <p></p>
+ * IR can either be written to an {@link OutputStream} or to a
+ * {@link WritableByteChannel}. When writing to a channel, log events are
+ * encoded directly into a direct output buffer which is drained to the channel
+ * when it's full or when the stream is flushed or closed. Combined with
+ * messages in direct buffers, this allows IR to be written without copying any
+ * bytes through the Java heap.
+ * <p></p>
+ * If the output stream is a {@link ZstdFrameOutputStream}, the IR is
+ * compressed as it's written. The preamble is written as its own frame and
+ * frames are only ended at log event boundaries (once they reach the target
+ * frame size), so every subsequent frame contains whole log events.
+ * <p></p>
+ * A timestamp index sidecar can be written alongside the stream by setting an
+ * {@link IrStreamIndexWriter}, and a sidecar of per-chunk Bloom filters by
+ * setting an {@link IrStreamChunkFilterWriter}.
  */
 public abstract class AbstractClpIrOutputStream implements AutoCloseable, Flushable {
+  public static final int DEFAULT_OUTPUT_BUFFER_CAPACITY = 64 * 1024;
+
   protected long nativeStateAddress;
 
   protected String timestampPattern;
   protected String timeZoneId;
 
   private final OutputStream outputStream;
+  private final WritableByteChannel outputChannel;
+  private final ByteBuffer outputBuffer;
+  private final ZstdFrameOutputStream zstdFrameOutputStream;
+
+  // The number of (uncompressed) IR bytes written so far
+  private long numBytesWritten = 0;
+  // The timestamp of the last log event written (or the preamble's reference
+  // timestamp if no events have been written)
+  private long previousTimestamp = 0;
+  private IrStreamIndexWriter indexWriter = null;
+  private long numZstdFramesAtLastIndexEntry = 0;
+  private IrStreamChunkFilterWriter chunkFilterWriter = null;
 
   static {
     NativeLibraryLoader.load();
@@ -34,6 +66,38 @@ public abstract class AbstractClpIrOutputStream implements AutoCloseable, Flusha
     this.timestampPattern = timestampPattern;
     this.timeZoneId = timeZoneId;
     this.outputStream = outputStream;
+    this.outputChannel = null;
+    this.outputBuffer = null;
+    if (outputStream instanceof ZstdFrameOutputStream) {
+      this.zstdFrameOutputStream = (ZstdFrameOutputStream)outputStream;
+    } else {
+      this.zstdFrameOutputStream = null;
+    }
+  }
+
+  /**
+   * Abstract constructor for output streams that write to a channel
+   * @param timestampPattern Timestamp pattern used by log events in this stream
+   * @param timeZoneId Time zone of log events in this stream
+   * @param outputChannel Channel which IR should be written to
+   * @param outputBuffer Direct buffer into which IR is encoded before it's
+   * written to the channel. The buffer's existing content is discarded.
+   * @throws IllegalArgumentException if {@code outputBuffer} isn't direct
+   */
+  public AbstractClpIrOutputStream (String timestampPattern, String timeZoneId,
+                                    WritableByteChannel outputChannel, ByteBuffer outputBuffer)
+  {
+    if (false == outputBuffer.isDirect()) {
+      throw new IllegalArgumentException("outputBuffer must be a direct buffer.");
+    }
+    this.nativeStateAddress = createNativeState();
+    this.timestampPattern = timestampPattern;
+    this.timeZoneId = timeZoneId;
+    this.outputStream = null;
+    this.outputChannel = outputChannel;
+    this.outputBuffer = outputBuffer;
+    this.zstdFrameOutputStream = null;
+    this.outputBuffer.clear();
   }
 
   /**
@@ -50,8 +114,20 @@ public abstract class AbstractClpIrOutputStream implements AutoCloseable, Flusha
       writePreamble(0);
     }
 
-    outputStream.write(getEofByte());
-    outputStream.close();
+    if (null == outputChannel) {
+      outputStream.write(getEofByte());
+      outputStream.close();
+    } else {
+      write(new byte[] {getEofByte()});
+      drainOutputBuffer();
+      outputChannel.close();
+    }
+    if (null != indexWriter) {
+      indexWriter.close();
+    }
+    if (null != chunkFilterWriter) {
+      chunkFilterWriter.close();
+    }
 
     destroyNativeState(nativeStateAddress);
     nativeStateAddress = 0;
@@ -63,14 +139,60 @@ public abstract class AbstractClpIrOutputStream implements AutoCloseable, Flusha
    */
   @Override
   public void flush () throws IOException {
-    outputStream.flush();
+    if (null == outputChannel) {
+      outputStream.flush();
+    } else {
+      drainOutputBuffer();
+    }
+  }
+
+  /**
+   * Sets the writer for the stream's timestamp index sidecar. Byte offsets in
+   * the index are relative to the first byte this stream writes, so the
+   * stream should be written at the start of a file to be seekable. The index
+   * writer is closed when this stream is closed.
+   * @param indexWriter
+   * @throws IOException on I/O error
+   * @throws IllegalStateException if any log events have already been
+   * written
+   */
+  public void setIndexWriter (IrStreamIndexWriter indexWriter) throws IOException {
+    if (null == timestampPattern || null != this.indexWriter) {
+      throw new IllegalStateException(
+          "The index writer must be set once, before any log events are written.");
+    }
+    indexWriter.writeHeader(null != zstdFrameOutputStream);
+    this.indexWriter = indexWriter;
+  }
+
+  /**
+   * Sets the writer for the stream's chunk filter sidecar. Byte offsets in the
+   * sidecar are offsets in the uncompressed IR, relative to the first byte
+   * this stream writes. The chunk filter writer is closed when this stream is
+   * closed.
+   * @param chunkFilterWriter
+   * @throws IOException on I/O error
+   * @throws IllegalStateException if any log events have already been
+   * written
+   */
+  public void setChunkFilterWriter (IrStreamChunkFilterWriter chunkFilterWriter)
+      throws IOException
+  {
+    if (null == timestampPattern || null != this.chunkFilterWriter) {
+      throw new IllegalStateException(
+          "The chunk filter writer must be set once, before any log events are written.");
+    }
+    chunkFilterWriter.writeHeader();
+    this.chunkFilterWriter = chunkFilterWriter;
   }
 
   /**
    * Writes the given log event to the stream
    * @param timestamp Timestamp of the event as milliseconds since the Unix
    * epoch
-   * @param message
+   * @param message The UTF-8 encoded message between the buffer's position
+   * and limit. Any kind of buffer (heap, direct, or read-only) is supported.
+   * The buffer's position and limit are left unchanged.
    * @throws IOException on failure to encode the message or I/O error
    */
   public void writeLogEvent (long timestamp, ByteBuffer message) throws IOException {
@@ -81,9 +203,96 @@ public abstract class AbstractClpIrOutputStream implements AutoCloseable, Flusha
     if (null != timestampPattern) {
       writePreamble(timestamp);
     }
+    addIndexEntryIfDue(timestamp);
+
+    if (null == outputChannel) {
+      byte[] encodedLogEvent = encodeLogEvent(timestamp, message);
+      addToChunkFilters(ByteBuffer.wrap(encodedLogEvent));
+      write(encodedLogEvent);
+      onLogEventsWritten(timestamp, 1);
+      return;
+    }
+
+    int numBytesEncoded = encodeLogEvent(timestamp, message, outputBuffer);
+    if (numBytesEncoded < 0) {
+      // Drain the buffer to make space and try again
+      drainOutputBuffer();
+      numBytesEncoded = encodeLogEvent(timestamp, message, outputBuffer);
+    }
+    if (numBytesEncoded < 0) {
+      // The event is larger than the buffer
+      byte[] encodedLogEvent = encodeLogEvent(timestamp, message);
+      addToChunkFilters(ByteBuffer.wrap(encodedLogEvent));
+      write(encodedLogEvent);
+    } else {
+      if (null != chunkFilterWriter) {
+        ByteBuffer encodedLogEvent = outputBuffer.duplicate();
+        encodedLogEvent.limit(outputBuffer.position() + numBytesEncoded);
+        addToChunkFilters(encodedLogEvent);
+      }
+      outputBuffer.position(outputBuffer.position() + numBytesEncoded);
+      numBytesWritten += numBytesEncoded;
+    }
+    onLogEventsWritten(timestamp, 1);
+  }
+
+  /**
+   * Writes the given batch of log events to the stream. All events are encoded
+   * in a single native call and written to the underlying stream as one
+   * contiguous chunk, so there are no per-event allocations.
+   * @param timestamps The timestamp of each event as milliseconds since the
+   * Unix epoch
+   * @param messages The UTF-8 encoded message of each event
+   * @throws IOException on failure to encode the messages or I/O error
+   */
+  public void writeLogEvents (long[] timestamps, FlattenedByteArray messages)
+      throws IOException
+  {
+    writeLogEvents(timestamps, messages.getFlattenedElems(), messages.getElemEndOffsets(),
+                   messages.size());
+  }
+
+  /**
+   * Same as {@link #writeLogEvents(long[], FlattenedByteArray)} except the
+   * messages are given as the members of a {@link FlattenedByteArray}. This
+   * allows callers to reuse the same arrays across batches.
+   * @param timestamps The timestamp of each event as milliseconds since the
+   * Unix epoch
+   * @param messages The UTF-8 encoded messages, stored back-to-back
+   * @param messageEndOffsets The end offset of each message in
+   * {@code messages}
+   * @param numEvents The number of events in the batch
+   * @throws IOException on failure to encode the messages or I/O error
+   */
+  public void writeLogEvents (long[] timestamps, byte[] messages, int[] messageEndOffsets,
+                              int numEvents) throws IOException
+  {
+    if (0 == nativeStateAddress) {
+      throw new IOException("Stream closed.");
+    }
+
+    if (numEvents < 0 || numEvents > timestamps.length
+        || numEvents > messageEndOffsets.length)
+    {
+      throw new IllegalArgumentException("Invalid number of events: " + numEvents);
+    }
+    if (0 == numEvents) {
+      return;
+    }
+    if (messageEndOffsets[numEvents - 1] > messages.length) {
+      throw new IllegalArgumentException("Message end offset exceeds the messages' length.");
+    }
+
+    if (null != timestampPattern) {
+      writePreamble(timestamps[0]);
+    }
+    addIndexEntryIfDue(timestamps[0]);
 
-    byte[] encodedLogEvent = encodeLogEvent(timestamp, message);
-    outputStream.write(encodedLogEvent);
+    byte[] encodedLogEvents = encodeLogEvents(timestamps, messages, messageEndOffsets,
+                                              numEvents);
+    addToChunkFilters(ByteBuffer.wrap(encodedLogEvents));
+    write(encodedLogEvents);
+    onLogEventsWritten(timestamps[numEvents - 1], numEvents);
   }
 
   /**
@@ -104,6 +313,60 @@ public abstract class AbstractClpIrOutputStream implements AutoCloseable, Flusha
    */
   protected abstract byte[] encodeLogEvent (long timestamp, ByteBuffer message) throws IOException;
 
+  /**
+   * Encodes the log event into the IR stream format, writing it into the
+   * given direct buffer starting at the buffer's position. The buffer's
+   * position is left unchanged.
+   * @param timestamp Timestamp of the event as milliseconds from the Unix epoch
+   * @param message
+   * @param outputBuffer
+   * @return The number of bytes written if the encoded log event fit between
+   * the buffer's position and limit. Otherwise, the negated length of the
+   * encoded log event (and nothing is written).
+   * @throws IOException on encode failure
+   */
+  protected abstract int encodeLogEvent (long timestamp, ByteBuffer message,
+                                         ByteBuffer outputBuffer) throws IOException;
+
+  /**
+   * Encodes the batch of log events into the IR stream format
+   * @param timestamps The timestamp of each event as milliseconds from the
+   * Unix epoch
+   * @param messages The messages, stored back-to-back
+   * @param messageEndOffsets The end offset of each message in
+   * {@code messages}
+   * @param numEvents
+   * @return The encoded log events
+   * @throws IOException on encode failure
+   */
+  protected abstract byte[] encodeLogEvents (long[] timestamps, byte[] messages,
+                                             int[] messageEndOffsets, int numEvents)
+      throws IOException;
+
+  /**
+   * @param message
+   * @return The heap array containing the given non-direct message. If the
+   * buffer isn't backed by an accessible array (e.g., it's read-only), this
+   * is a copy of the message.
+   */
+  protected static byte[] getMessageArray (ByteBuffer message) {
+    if (message.hasArray()) {
+      return message.array();
+    }
+    byte[] messageArray = new byte[message.remaining()];
+    message.duplicate().get(messageArray);
+    return messageArray;
+  }
+
+  /**
+   * @param message
+   * @return The offset of the given non-direct message in the array returned
+   * by {@link #getMessageArray}
+   */
+  protected static int getMessageArrayOffset (ByteBuffer message) {
+    return message.hasArray() ? message.arrayOffset() + message.position() : 0;
+  }
+
   /**
    * Writes the preamble to the stream
    * @param firstMessageTimestamp Timestamp of the first message in this stream
@@ -111,12 +374,107 @@ public abstract class AbstractClpIrOutputStream implements AutoCloseable, Flusha
    * @throws IOException on I/O error
    */
   private void writePreamble (long firstMessageTimestamp) throws IOException {
-    outputStream.write(encodePreamble(firstMessageTimestamp));
+    write(encodePreamble(firstMessageTimestamp));
+    previousTimestamp = firstMessageTimestamp;
+    if (null != zstdFrameOutputStream) {
+      zstdFrameOutputStream.endFrame();
+    }
     // Clear these members now that they've been written to the preamble
     timestampPattern = null;
     timeZoneId = null;
   }
 
+  /**
+   * Adds an entry to the index for the log event about to be written, if
+   * there's an index and an entry is due
+   * @param timestamp The timestamp of the log event about to be written
+   * @throws IOException on I/O error
+   */
+  private void addIndexEntryIfDue (long timestamp) throws IOException {
+    if (null == indexWriter) {
+      return;
+    }
+
+    if (null == zstdFrameOutputStream) {
+      if (indexWriter.isEntryDue(numBytesWritten)) {
+        indexWriter.addEntry(timestamp, numBytesWritten, previousTimestamp);
+      }
+    } else {
+      // Add an entry for the first event in each frame
+      long numFramesWritten = zstdFrameOutputStream.getNumFramesWritten();
+      if (numFramesWritten != numZstdFramesAtLastIndexEntry) {
+        indexWriter.addEntry(timestamp, zstdFrameOutputStream.getNumCompressedBytesWritten(),
+                             previousTimestamp);
+        numZstdFramesAtLastIndexEntry = numFramesWritten;
+      }
+    }
+  }
+
+  /**
+   * Adds the given encoded log events to the chunk filters, if there are any.
+   * This must be called before the events are written.
+   * @param encodedLogEvents
+   * @throws IOException on I/O error
+   */
+  private void addToChunkFilters (ByteBuffer encodedLogEvents) throws IOException {
+    if (null != chunkFilterWriter) {
+      chunkFilterWriter.addLogEvents(encodedLogEvents, numBytesWritten, previousTimestamp);
+    }
+  }
+
+  /**
+   * Updates the stream's state after log events were written
+   * @param lastTimestamp The timestamp of the last log event written
+   * @param numEvents The number of log events written
+   * @throws IOException on compression failure or I/O error
+   */
+  private void onLogEventsWritten (long lastTimestamp, int numEvents) throws IOException {
+    previousTimestamp = lastTimestamp;
+    if (null != indexWriter) {
+      indexWriter.addEvents(numEvents);
+    }
+    if (null != zstdFrameOutputStream) {
+      zstdFrameOutputStream.endFrameIfFull();
+    }
+  }
+
+  /**
+   * Writes the given bytes to the stream or channel
+   * @param bytes
+   * @throws IOException on I/O error
+   */
+  private void write (byte[] bytes) throws IOException {
+    numBytesWritten += bytes.length;
+    if (null == outputChannel) {
+      outputStream.write(bytes);
+      return;
+    }
+
+    if (bytes.length > outputBuffer.remaining()) {
+      drainOutputBuffer();
+    }
+    if (bytes.length <= outputBuffer.remaining()) {
+      outputBuffer.put(bytes);
+    } else {
+      ByteBuffer wrappedBytes = ByteBuffer.wrap(bytes);
+      while (wrappedBytes.hasRemaining()) {
+        outputChannel.write(wrappedBytes);
+      }
+    }
+  }
+
+  /**
+   * Writes the content of the output buffer to the channel
+   * @throws IOException on I/O error
+   */
+  private void drainOutputBuffer () throws IOException {
+    outputBuffer.flip();
+    while (outputBuffer.hasRemaining()) {
+      outputChannel.write(outputBuffer);
+    }
+    outputBuffer.clear();
+  }
+
   /**
    * Creates the native state necessary for this output stream
    * @return A native address for the state
@@ -0,0 +1,653 @@
+package com.yscope.clp.irstream;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An asynchronous front-end for an {@link AbstractClpIrOutputStream}. Callers
+ * only copy each log event into a preallocated queue, while a dedicated
+ * consumer thread encodes queued events in batches (see
+ * {@link AbstractClpIrOutputStream#writeLogEvents}) and writes them.
+ * <p></p>
+ * The queue is a lock-free, multi-producer single-consumer ring buffer whose
+ * slots own reusable message buffers, so enqueuing doesn't allocate unless a
+ * message is larger than any message previously stored in its slot. When the
+ * queue is full, the stream's {@link OverflowPolicy} decides what happens to
+ * new events.
+ * <p></p>
+ * Events from a single thread are written in the order they were enqueued.
+ * Errors from the consumer thread are reported by subsequent calls to
+ * {@link #writeLogEvent}, {@link #flush()}, or {@link #close()}.
+ */
+public class AsyncClpIrOutputStream implements AutoCloseable, Flushable {
+  public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+  public static final int DEFAULT_SLOT_CAPACITY = 512;
+
+  private static final int MAX_BATCH_SIZE = 1024;
+  private static final long CONSUMER_PARK_NANOS = 1_000_000;
+  private static final long PRODUCER_PARK_NANOS = 10_000;
+  private static final int CANCELLED_SLOT_MESSAGE_LENGTH = -1;
+
+  /**
+   * What to do with a new event when the queue is full
+   */
+  public enum OverflowPolicy {
+    /**
+     * Wait until there's space in the queue
+     */
+    BLOCK,
+    /**
+     * Drop the event
+     */
+    DROP,
+    /**
+     * Copy the event into an unbounded overflow queue. This allocates memory
+     * for each overflowing event.
+     */
+    SPILL
+  }
+
+  private final AbstractClpIrOutputStream outputStream;
+  private final OverflowPolicy overflowPolicy;
+
+  // The ring buffer
+  private final int queueCapacity;
+  private final int queueIndexMask;
+  private final long[] slotTimestamps;
+  private final byte[][] slotMessages;
+  private final int[] slotMessageLengths;
+  // The sequence number of the event published in each slot
+  private final AtomicLongArray slotSequences;
+  // The sequence number of the next slot to be claimed by a producer
+  private final AtomicLong nextProducerSequence = new AtomicLong(0);
+  // The sequence number of the next slot to be consumed
+  private volatile long nextConsumerSequence = 0;
+
+  // The overflow queue (for OverflowPolicy.SPILL)
+  private final ConcurrentLinkedQueue<SpilledLogEvent> spilledLogEvents =
+      new ConcurrentLinkedQueue<>();
+  private final AtomicLong numEventsSpilled = new AtomicLong(0);
+  private volatile long numSpilledEventsConsumed = 0;
+
+  // The consumer's batch
+  private final long[] batchTimestamps;
+  private byte[] batchMessages;
+  private final int[] batchMessageEndOffsets;
+
+  private final Thread consumerThread;
+  private volatile boolean consumerParked = false;
+  private volatile boolean flushRequested = false;
+  private volatile long flushedConsumerSequence = 0;
+  private volatile long flushedNumSpilledEvents = 0;
+  private volatile boolean closed = false;
+  private volatile IOException failure = null;
+
+  // Metrics
+  private final LongAdder numEventsDropped = new LongAdder();
+  private volatile long numEventsWritten = 0;
+  private volatile long maxQueueDepth = 0;
+
+  /**
+   * Constructs a stream with a queue of {@link #DEFAULT_QUEUE_CAPACITY} slots
+   * of {@link #DEFAULT_SLOT_CAPACITY} bytes, which blocks when the queue is
+   * full
+   * @param outputStream
+   */
+  public AsyncClpIrOutputStream (AbstractClpIrOutputStream outputStream) {
+    this(outputStream, DEFAULT_QUEUE_CAPACITY, DEFAULT_SLOT_CAPACITY, OverflowPolicy.BLOCK);
+  }
+
+  /**
+   * @param outputStream The stream to write events to. This stream takes
+   * ownership of it, i.e., it's closed when this stream is closed.
+   * @param queueCapacity The number of events the queue can hold. This is
+   * rounded up to a power of two.
+   * @param slotCapacity The initial capacity of each slot's message buffer.
+   * Larger messages grow the buffer of the slot they're stored in.
+   * @param overflowPolicy What to do with new events when the queue is full
+   * @throws IllegalArgumentException if either capacity isn't positive or is
+   * too large
+   */
+  public AsyncClpIrOutputStream (AbstractClpIrOutputStream outputStream, int queueCapacity,
+                                 int slotCapacity, OverflowPolicy overflowPolicy)
+  {
+    if (queueCapacity <= 0 || queueCapacity > (1 << 30) || slotCapacity <= 0) {
+      throw new IllegalArgumentException("Invalid queue or slot capacity.");
+    }
+    this.outputStream = outputStream;
+    this.overflowPolicy = overflowPolicy;
+
+    this.queueCapacity = 1 == Integer.bitCount(queueCapacity)
+        ? queueCapacity : Integer.highestOneBit(queueCapacity) << 1;
+    queueIndexMask = this.queueCapacity - 1;
+    slotTimestamps = new long[this.queueCapacity];
+    slotMessages = new byte[this.queueCapacity][];
+    for (int i = 0; i < this.queueCapacity; ++i) {
+      slotMessages[i] = new byte[slotCapacity];
+    }
+    slotMessageLengths = new int[this.queueCapacity];
+    slotSequences = new AtomicLongArray(this.queueCapacity);
+    for (int i = 0; i < this.queueCapacity; ++i) {
+      // Mark every slot as unpublished
+      slotSequences.set(i, -1);
+    }
+
+    int maxBatchSize = Math.min(this.queueCapacity, MAX_BATCH_SIZE);
+    batchTimestamps = new long[maxBatchSize];
+    batchMessages = new byte[maxBatchSize * slotCapacity];
+    batchMessageEndOffsets = new int[maxBatchSize];
+
+    consumerThread = new Thread(this::runConsumer, "clp-ir-async-writer");
+    consumerThread.setDaemon(true);
+    consumerThread.start();
+  }
+
+  /**
+   * Enqueues the given log event
+   * @param timestamp Timestamp of the event as milliseconds since the Unix
+   * epoch
+   * @param message The UTF-8 encoded message between the buffer's position
+   * and limit. The buffer's position and limit are left unchanged.
+   * @return true if the event was enqueued, false if it was dropped
+   * @throws IOException if the stream is closed, if the consumer thread
+   * failed, or if the thread was interrupted while blocked
+   */
+  public boolean writeLogEvent (long timestamp, ByteBuffer message) throws IOException {
+    if (message.hasArray()) {
+      return writeLogEvent(timestamp, message.array(),
+                           message.arrayOffset() + message.position(), message.remaining());
+    }
+
+    int messageLength = message.remaining();
+    long sequence = claimSlot();
+    if (-1 == sequence) {
+      if (OverflowPolicy.DROP == overflowPolicy) {
+        numEventsDropped.increment();
+        return false;
+      }
+      byte[] spilledMessage = new byte[messageLength];
+      int position = message.position();
+      message.get(spilledMessage);
+      message.position(position);
+      spill(timestamp, spilledMessage);
+      return true;
+    }
+
+    int slotIdx = (int)sequence & queueIndexMask;
+    int slotMessageLength = CANCELLED_SLOT_MESSAGE_LENGTH;
+    try {
+      byte[] slotMessage = getSlotMessage(slotIdx, messageLength);
+      int position = message.position();
+      message.get(slotMessage, 0, messageLength);
+      message.position(position);
+      slotMessageLength = messageLength;
+    } finally {
+      // Always publish the claimed slot (cancelled if copying failed) so that
+      // the consumer doesn't wait for it forever
+      publish(sequence, slotIdx, timestamp, slotMessageLength);
+    }
+    return true;
+  }
+
+  /**
+   * Enqueues the given log event
+   * @param timestamp Timestamp of the event as milliseconds since the Unix
+   * epoch
+   * @param message
+   * @param messageOffset The offset of the UTF-8 encoded message in
+   * {@code message}
+   * @param messageLength
+   * @return true if the event was enqueued, false if it was dropped
+   * @throws IOException if the stream is closed, if the consumer thread
+   * failed, or if the thread was interrupted while blocked
+   */
+  public boolean writeLogEvent (long timestamp, byte[] message, int messageOffset,
+                                int messageLength) throws IOException
+  {
+    if (messageOffset < 0 || messageLength < 0 || messageLength > message.length - messageOffset)
+    {
+      throw new IndexOutOfBoundsException();
+    }
+
+    long sequence = claimSlot();
+    if (-1 == sequence) {
+      if (OverflowPolicy.DROP == overflowPolicy) {
+        numEventsDropped.increment();
+        return false;
+      }
+      spill(timestamp, Arrays.copyOfRange(message, messageOffset, messageOffset + messageLength));
+      return true;
+    }
+
+    int slotIdx = (int)sequence & queueIndexMask;
+    int slotMessageLength = CANCELLED_SLOT_MESSAGE_LENGTH;
+    try {
+      byte[] slotMessage = getSlotMessage(slotIdx, messageLength);
+      System.arraycopy(message, messageOffset, slotMessage, 0, messageLength);
+      slotMessageLength = messageLength;
+    } finally {
+      // Always publish the claimed slot (cancelled if copying failed) so that
+      // the consumer doesn't wait for it forever
+      publish(sequence, slotIdx, timestamp, slotMessageLength);
+    }
+    return true;
+  }
+
+  /**
+   * Waits until every event enqueued before this call has been written and
+   * then flushes the underlying stream
+   * @throws IOException if the stream is closed, if the consumer thread
+   * failed, or if the thread was interrupted while waiting
+   */
+  @Override
+  public void flush () throws IOException {
+    ensureWritable();
+    long targetConsumerSequence = nextProducerSequence.get();
+    long targetNumSpilledEvents = numEventsSpilled.get();
+    while (flushedConsumerSequence < targetConsumerSequence
+        || flushedNumSpilledEvents < targetNumSpilledEvents)
+    {
+      ensureWritable();
+      flushRequested = true;
+      LockSupport.unpark(consumerThread);
+      parkProducer();
+    }
+  }
+
+  /**
+   * Writes all enqueued events, stops the consumer thread, and closes the
+   * underlying stream
+   * @throws IOException if the consumer thread failed, or if the thread was
+   * interrupted while waiting for the consumer thread
+   */
+  @Override
+  public void close () throws IOException {
+    if (false == closed) {
+      closed = true;
+      LockSupport.unpark(consumerThread);
+    }
+    try {
+      consumerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the consumer thread.");
+    }
+    if (null != failure) {
+      throw new IOException("Async IR writer failed.", failure);
+    }
+  }
+
+  public OverflowPolicy getOverflowPolicy () {
+    return overflowPolicy;
+  }
+
+  /**
+   * @return The number of events the queue can hold
+   */
+  public int getQueueCapacity () {
+    return queueCapacity;
+  }
+
+  /**
+   * @return The approximate number of events waiting to be written, including
+   * spilled events
+   */
+  public long getQueueDepth () {
+    long queueDepth = nextProducerSequence.get() - nextConsumerSequence;
+    return Math.max(queueDepth, 0) + (numEventsSpilled.get() - numSpilledEventsConsumed);
+  }
+
+  /**
+   * @return The largest queue depth (excluding spilled events) the consumer
+   * thread has observed
+   */
+  public long getMaxQueueDepth () {
+    return maxQueueDepth;
+  }
+
+  /**
+   * @return The number of events dropped because the queue was full
+   */
+  public long getNumEventsDropped () {
+    return numEventsDropped.sum();
+  }
+
+  /**
+   * @return The number of events spilled to the overflow queue because the
+   * queue was full
+   */
+  public long getNumEventsSpilled () {
+    return numEventsSpilled.get();
+  }
+
+  /**
+   * @return The number of events written to the underlying stream
+   */
+  public long getNumEventsWritten () {
+    return numEventsWritten;
+  }
+
+  private void ensureWritable () throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed.");
+    }
+    if (null != failure) {
+      throw new IOException("Async IR writer failed.", failure);
+    }
+  }
+
+  /**
+   * Claims a slot in the ring buffer, waiting for one if the queue is full and
+   * the overflow policy is {@link OverflowPolicy#BLOCK}
+   * @return The sequence number of the claimed slot, or -1 if the queue is
+   * full (or events are being spilled) and the event should be dropped or
+   * spilled
+   * @throws IOException if the stream is closed, if the consumer thread
+   * failed, or if the thread was interrupted while blocked
+   */
+  private long claimSlot () throws IOException {
+    ensureWritable();
+    if (OverflowPolicy.SPILL == overflowPolicy && false == spilledLogEvents.isEmpty()) {
+      // Keep spilling until the overflow queue is drained so that events from
+      // a single thread stay in order
+      return -1;
+    }
+
+    while (true) {
+      long sequence = nextProducerSequence.get();
+      if (sequence - nextConsumerSequence >= queueCapacity) {
+        if (OverflowPolicy.BLOCK != overflowPolicy) {
+          return -1;
+        }
+        wakeConsumer();
+        parkProducer();
+        ensureWritable();
+        continue;
+      }
+      if (nextProducerSequence.compareAndSet(sequence, sequence + 1)) {
+        return sequence;
+      }
+    }
+  }
+
+  /**
+   * @param slotIdx
+   * @param messageLength
+   * @return The given slot's message buffer, grown if necessary to fit the
+   * given message length
+   */
+  private byte[] getSlotMessage (int slotIdx, int messageLength) {
+    byte[] slotMessage = slotMessages[slotIdx];
+    if (messageLength > slotMessage.length) {
+      slotMessage = new byte[messageLength];
+      slotMessages[slotIdx] = slotMessage;
+    }
+    return slotMessage;
+  }
+
+  /**
+   * Publishes the event in the given slot to the consumer
+   * @param sequence
+   * @param slotIdx
+   * @param timestamp
+   * @param messageLength The message's length, or
+   * {@link #CANCELLED_SLOT_MESSAGE_LENGTH} to publish the slot without an event
+   * @throws IOException if the stream was closed while the event was being
+   * enqueued
+   */
+  private void publish (long sequence, int slotIdx, long timestamp, int messageLength)
+      throws IOException
+  {
+    slotTimestamps[slotIdx] = timestamp;
+    // NOTE: If the stream was closed after the slot was claimed, the consumer
+    // may have already exited, so cancel the event
+    boolean closedWhileEnqueuing = closed && CANCELLED_SLOT_MESSAGE_LENGTH != messageLength;
+    slotMessageLengths[slotIdx] =
+        closedWhileEnqueuing ? CANCELLED_SLOT_MESSAGE_LENGTH : messageLength;
+    // NOTE: This must be a volatile write (not lazySet) so that it can't be
+    // reordered after wakeConsumer's read of consumerParked; otherwise, the
+    // consumer could park without seeing the event while we see it as awake.
+    slotSequences.set(slotIdx, sequence);
+    if (closedWhileEnqueuing) {
+      throw new IOException("Stream closed.");
+    }
+    wakeConsumer();
+  }
+
+  /**
+   * Adds the given event to the overflow queue
+   * @param timestamp
+   * @param message
+   * @throws IOException if the stream was closed while the event was being
+   * enqueued
+   */
+  private void spill (long timestamp, byte[] message) throws IOException {
+    // Any slot this thread claimed earlier has a sequence number below the
+    // current producer sequence
+    SpilledLogEvent spilledLogEvent =
+        new SpilledLogEvent(nextProducerSequence.get(), timestamp, message);
+    spilledLogEvents.add(spilledLogEvent);
+    if (closed && spilledLogEvents.remove(spilledLogEvent)) {
+      throw new IOException("Stream closed.");
+    }
+    numEventsSpilled.incrementAndGet();
+    wakeConsumer();
+  }
+
+  private void wakeConsumer () {
+    if (consumerParked) {
+      LockSupport.unpark(consumerThread);
+    }
+  }
+
+  private void parkProducer () throws IOException {
+    LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+    if (Thread.interrupted()) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for space in the queue.");
+    }
+  }
+
+  /**
+   * The consumer thread's main loop
+   */
+  private void runConsumer () {
+    while (true) {
+      boolean stopping = closed;
+      int numEventsWrittenInIteration = writeQueuedEvents();
+      numEventsWrittenInIteration += writeSpilledEvents();
+
+      if (flushRequested) {
+        flushRequested = false;
+        long consumerSequence = nextConsumerSequence;
+        long numSpilledEventsConsumedBeforeFlush = numSpilledEventsConsumed;
+        try {
+          if (null == failure) {
+            outputStream.flush();
+          }
+        } catch (IOException e) {
+          failure = e;
+        }
+        flushedConsumerSequence = consumerSequence;
+        flushedNumSpilledEvents = numSpilledEventsConsumedBeforeFlush;
+      }
+
+      if (0 == numEventsWrittenInIteration) {
+        if (stopping && nextConsumerSequence == nextProducerSequence.get()
+            && spilledLogEvents.isEmpty())
+        {
+          break;
+        }
+        consumerParked = true;
+        if (false == hasPublishedEvent() && false == hasWritableSpilledEvent() && false == closed
+            && false == flushRequested)
+        {
+          LockSupport.parkNanos(this, CONSUMER_PARK_NANOS);
+        }
+        consumerParked = false;
+      }
+    }
+
+    try {
+      outputStream.close();
+    } catch (IOException e) {
+      if (null == failure) {
+        failure = e;
+      }
+    }
+  }
+
+  /**
+   * @return Whether the next slot to be consumed has been published
+   */
+  private boolean hasPublishedEvent () {
+    long sequence = nextConsumerSequence;
+    return slotSequences.get((int)sequence & queueIndexMask) == sequence;
+  }
+
+  /**
+   * @return Whether the next spilled event can be written, i.e., whether
+   * every slot claimed before it was spilled has been consumed
+   */
+  private boolean hasWritableSpilledEvent () {
+    SpilledLogEvent spilledLogEvent = spilledLogEvents.peek();
+    return null != spilledLogEvent && spilledLogEvent.producerSequence <= nextConsumerSequence;
+  }
+
+  /**
+   * Copies the published events from the ring buffer into a batch, releases
+   * their slots, and writes the batch
+   * @return The number of events consumed
+   */
+  private int writeQueuedEvents () {
+    long sequence = nextConsumerSequence;
+    long queueDepth = nextProducerSequence.get() - sequence;
+    if (queueDepth > maxQueueDepth) {
+      maxQueueDepth = queueDepth;
+    }
+
+    int numEventsConsumed = 0;
+    int batchSize = 0;
+    int batchMessagesLength = 0;
+    while (batchSize < batchTimestamps.length) {
+      int slotIdx = (int)sequence & queueIndexMask;
+      if (slotSequences.get(slotIdx) != sequence) {
+        break;
+      }
+
+      int messageLength = slotMessageLengths[slotIdx];
+      if (CANCELLED_SLOT_MESSAGE_LENGTH != messageLength) {
+        ensureBatchMessagesCapacity(batchMessagesLength + messageLength);
+        System.arraycopy(slotMessages[slotIdx], 0, batchMessages, batchMessagesLength,
+                         messageLength);
+        batchMessagesLength += messageLength;
+        batchTimestamps[batchSize] = slotTimestamps[slotIdx];
+        batchMessageEndOffsets[batchSize] = batchMessagesLength;
+        ++batchSize;
+      }
+      ++numEventsConsumed;
+      ++sequence;
+    }
+    // Release the slots
+    nextConsumerSequence = sequence;
+
+    writeBatch(batchSize);
+    return numEventsConsumed;
+  }
+
+  /**
+   * Writes the events in the overflow queue that can be written. A spilled
+   * event is only written once every slot claimed before it was spilled has
+   * been consumed, since those slots may hold earlier events from the same
+   * thread.
+   * @return The number of events consumed
+   */
+  private int writeSpilledEvents () {
+    int numEventsConsumed = 0;
+    while (true) {
+      int batchSize = 0;
+      int batchMessagesLength = 0;
+      while (batchSize < batchTimestamps.length) {
+        SpilledLogEvent spilledLogEvent = spilledLogEvents.peek();
+        if (null == spilledLogEvent
+            || spilledLogEvent.producerSequence > nextConsumerSequence)
+        {
+          break;
+        }
+        if (false == spilledLogEvents.remove(spilledLogEvent)) {
+          // The producer removed the event since the stream was closed
+          continue;
+        }
+        int messageLength = spilledLogEvent.message.length;
+        ensureBatchMessagesCapacity(batchMessagesLength + messageLength);
+        System.arraycopy(spilledLogEvent.message, 0, batchMessages, batchMessagesLength,
+                         messageLength);
+        batchMessagesLength += messageLength;
+        batchTimestamps[batchSize] = spilledLogEvent.timestamp;
+        batchMessageEndOffsets[batchSize] = batchMessagesLength;
+        ++batchSize;
+      }
+      if (0 == batchSize) {
+        return numEventsConsumed;
+      }
+
+      writeBatch(batchSize);
+      numEventsConsumed += batchSize;
+      numSpilledEventsConsumed += batchSize;
+    }
+  }
+
+  /**
+   * Writes the current batch to the underlying stream. After a failure,
+   * batches are discarded and counted as dropped.
+   * @param batchSize
+   */
+  private void writeBatch (int batchSize) {
+    if (0 == batchSize) {
+      return;
+    }
+    if (null != failure) {
+      numEventsDropped.add(batchSize);
+      return;
+    }
+
+    try {
+      outputStream.writeLogEvents(batchTimestamps, batchMessages, batchMessageEndOffsets,
+                                  batchSize);
+      numEventsWritten += batchSize;
+    } catch (IOException | RuntimeException e) {
+      failure = e instanceof IOException ? (IOException)e : new IOException(e);
+      numEventsDropped.add(batchSize);
+    }
+  }
+
+  private void ensureBatchMessagesCapacity (int capacity) {
+    if (capacity > batchMessages.length) {
+      batchMessages = Arrays.copyOf(batchMessages, Math.max(capacity, batchMessages.length * 2));
+    }
+  }
+
+  /**
+   * An event in the overflow queue
+   */
+  private static class SpilledLogEvent {
+    // The producer sequence when the event was spilled
+    final long producerSequence;
+    final long timestamp;
+    final byte[] message;
+
+    SpilledLogEvent (long producerSequence, long timestamp, byte[] message) {
+      this.producerSequence = producerSequence;
+      this.timestamp = timestamp;
+      this.message = message;
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package com.yscope.clp.irstream;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Factory to create the appropriate IR input stream for a stream's encoding.
+ */
+public class ClpIrInputStreamFactory {
+  /**
+   * Creates an IR input stream by detecting the stream's encoding from its
+   * magic number. Zstandard-compressed streams (e.g., those written through a
+   * {@link ZstdFrameOutputStream}) are decompressed transparently.
+   * @param inputStream
+   * @return The IR input stream
+   * @throws IOException if the stream's encoding couldn't be detected or its
+   * preamble couldn't be read
+   */
+  public static AbstractClpIrInputStream fromInputStream (InputStream inputStream)
+      throws IOException
+  {
+    BufferedInputStream bufferedInputStream;
+    if (inputStream instanceof BufferedInputStream) {
+      bufferedInputStream = (BufferedInputStream)inputStream;
+    } else {
+      bufferedInputStream = new BufferedInputStream(inputStream);
+    }
+
+    // Peek at the magic number
+    byte[] magicNumber = new byte[IrStreamProtocol.MAGIC_NUMBER_LENGTH];
+    bufferedInputStream.mark(magicNumber.length);
+    new DataInputStream(bufferedInputStream).readFully(magicNumber);
+    bufferedInputStream.reset();
+
+    if (Arrays.equals(IrStreamProtocol.FOUR_BYTE_ENCODING_MAGIC_NUMBER, magicNumber)) {
+      return new FourByteClpIrInputStream(bufferedInputStream);
+    } else if (Arrays.equals(IrStreamProtocol.EIGHT_BYTE_ENCODING_MAGIC_NUMBER, magicNumber)) {
+      return new EightByteClpIrInputStream(bufferedInputStream);
+    } else if (Arrays.equals(ZstdFrameInputStream.MAGIC_NUMBER, magicNumber)) {
+      return fromInputStream(new ZstdFrameInputStream(bufferedInputStream));
+    } else {
+      throw new IOException("Invalid magic number.");
+    }
+  }
+
+  /**
+   * Creates a seekable IR input stream that reads from the given channel,
+   * starting at the beginning of the channel. The channel is closed when the
+   * returned stream is closed.
+   * @param channel
+   * @return The IR input stream
+   * @throws IOException if the stream's encoding couldn't be detected or its
+   * preamble couldn't be read
+   * @see AbstractClpIrInputStream#seekToTimestamp
+   */
+  public static AbstractClpIrInputStream fromFileChannel (FileChannel channel)
+      throws IOException
+  {
+    channel.position(0);
+    AbstractClpIrInputStream irInputStream =
+        fromInputStream(AbstractClpIrInputStream.newChannelInputStream(channel));
+    irInputStream.setSeekableChannel(channel);
+    return irInputStream;
+  }
+}
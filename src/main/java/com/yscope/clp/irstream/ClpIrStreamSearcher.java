@@ -0,0 +1,664 @@
+package com.yscope.clp.irstream;
+
+import com.yscope.clp.compressorfrontend.AbstractClpEncodedSubquery;
+import com.yscope.clp.compressorfrontend.BuiltInVariableHandlingRuleVersions;
+import com.yscope.clp.compressorfrontend.ByteSegment;
+import com.yscope.clp.compressorfrontend.EightByteClpEncodedSubquery;
+import com.yscope.clp.compressorfrontend.FlattenedByteArray;
+import com.yscope.clp.compressorfrontend.FourByteClpEncodedSubquery;
+import com.yscope.clp.compressorfrontend.MessageDecoder;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Searches an IR stream for log events matching a wildcard query, evaluating
+ * the query's subqueries (see
+ * {@link com.yscope.clp.compressorfrontend.EightByteClpWildcardQueryEncoder}
+ * and {@link com.yscope.clp.compressorfrontend.FourByteClpWildcardQueryEncoder})
+ * on each event's encoded form, so that only candidate events are decoded.
+ * <p></p>
+ * An event matches if it matches any subquery. For each event, the searcher:
+ * <ol>
+ *   <li>matches the event's logtype against each subquery's logtype query.
+ *   The results are cached per unique logtype, so each logtype is only
+ *   matched once;</li>
+ *   <li>checks that the subquery's exact encoded variables, exact dictionary
+ *   variables, and dictionary variable wildcard queries appear in the event's
+ *   variables, in order;</li>
+ *   <li>matches the subquery's encoded variable wildcard queries against the
+ *   event's encoded variables. Events that reach this step are buffered, so
+ *   that they can be matched in batches in native code;</li>
+ *   <li>decodes the event and matches its message against the original
+ *   wildcard query, since the previous steps only check each variable in
+ *   isolation.</li>
+ * </ol>
+ * Only the events that pass every step are reported to a
+ * {@link MatchHandler}, in stream order.
+ * <p></p>
+ * This class is not thread-safe, but separate instances can search separate
+ * streams concurrently.
+ */
+public class ClpIrStreamSearcher {
+  // The number of events whose encoded variables are matched per native call
+  private static final int MATCH_BATCH_SIZE = 1024;
+  // The maximum number of unique logtypes whose match results are cached. The
+  // cache is cleared when it's full.
+  private static final int MAX_CACHED_LOGTYPES = 1 << 16;
+
+  private final MessageDecoder messageDecoder = new MessageDecoder(
+      BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+      BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1);
+
+  private final AbstractClpEncodedSubquery[] subqueries;
+  private final byte[] query;
+  private final boolean useFourByteEncoding;
+  private final int numSubqueryWords;
+  private final long[][] subqueryExactEncodedVars;
+  private final byte[][][] subqueryExactDictVars;
+  private final byte[][][] subqueryDictVarWildcardQueries;
+
+  // The subqueries with encoded variable wildcard queries, which are the only
+  // ones that need to be matched in native code
+  private final int[] encodedVarWildcardSubqueryIndexes;
+  private final EightByteClpEncodedSubquery[] eightByteEncodedVarWildcardSubqueries;
+  private final FourByteClpEncodedSubquery[] fourByteEncodedVarWildcardSubqueries;
+
+  private final HashMap<LogtypeKey, CachedLogtype> logtypeCache = new HashMap<>();
+  // Reused to look up each event's logtype without copying it
+  private final LogtypeKey logtypeLookupKey = new LogtypeKey();
+
+  // Events buffered for batch matching, and each event's cached logtype and
+  // candidate subqueries
+  private final EncodedLogEvent[] pendingEvents = new EncodedLogEvent[MATCH_BATCH_SIZE];
+  private final CachedLogtype[] pendingEventLogtypes = new CachedLogtype[MATCH_BATCH_SIZE];
+  private final long[] pendingEventCandidateSubqueries;
+  private int numPendingEvents = 0;
+  private final LogEvent matchedLogEvent = new LogEvent();
+
+  // Buffers that the pending events are flattened into for native matching.
+  // They're reused across batches, and the variable-length ones only grow.
+  // Each batch's logtypes contains each of its unique logtypes once.
+  private int batchId = 0;
+  private byte[] batchLogtypes = new byte[0];
+  private final int[] batchLogtypeEndOffsets = new int[MATCH_BATCH_SIZE];
+  private final int[] batchLogtypeIds = new int[MATCH_BATCH_SIZE];
+  private final int[] batchEncodedVarEndOffsets = new int[MATCH_BATCH_SIZE];
+  private long[] batchEightByteEncodedVars = new long[0];
+  private int[] batchFourByteEncodedVars = new int[0];
+  private final long[] batchMatchBitmasks;
+
+  /**
+   * Callback for log events that match the query
+   */
+  public interface MatchHandler {
+    /**
+     * @param logEvent The matching log event. The event is reused for the
+     * next match, so it must be copied if it needs to be retained.
+     * @return Whether to continue searching
+     * @throws IOException to abort the search
+     */
+    boolean handleMatch(LogEvent logEvent) throws IOException;
+  }
+
+  /**
+   * @param subqueries The subqueries of the query. Their encoding must match
+   * the encoding of the streams that will be searched.
+   * @throws IllegalArgumentException if the subqueries don't all use the same
+   * encoding
+   */
+  public ClpIrStreamSearcher(@NotNull AbstractClpEncodedSubquery[] subqueries) {
+    Objects.requireNonNull(subqueries);
+    this.subqueries = subqueries;
+
+    int numFourByteSubqueries = 0;
+    for (AbstractClpEncodedSubquery subquery : subqueries) {
+      if (subquery instanceof FourByteClpEncodedSubquery) {
+        ++numFourByteSubqueries;
+      } else if (false == (subquery instanceof EightByteClpEncodedSubquery)) {
+        throw new IllegalArgumentException("Unsupported subquery type.");
+      }
+    }
+    if (0 != numFourByteSubqueries && subqueries.length != numFourByteSubqueries) {
+      throw new IllegalArgumentException("Subqueries must all use the same encoding.");
+    }
+    useFourByteEncoding = 0 != numFourByteSubqueries;
+    // All subqueries are derived from the same query
+    query = 0 == subqueries.length ? null : subqueries[0].getQuery();
+
+    numSubqueryWords = MessageDecoder.getNumMatchBitmaskWords(subqueries.length);
+    subqueryExactEncodedVars = new long[subqueries.length][];
+    subqueryExactDictVars = new byte[subqueries.length][][];
+    subqueryDictVarWildcardQueries = new byte[subqueries.length][][];
+    List<Integer> encodedVarWildcardSubqueryIndexList = new ArrayList<>();
+    for (int i = 0; i < subqueries.length; ++i) {
+      AbstractClpEncodedSubquery subquery = subqueries[i];
+      if (useFourByteEncoding) {
+        int[] encodedVars = ((FourByteClpEncodedSubquery)subquery).getEncodedVars();
+        subqueryExactEncodedVars[i] = new long[encodedVars.length];
+        for (int j = 0; j < encodedVars.length; ++j) {
+          subqueryExactEncodedVars[i][j] = encodedVars[j];
+        }
+      } else {
+        subqueryExactEncodedVars[i] = ((EightByteClpEncodedSubquery)subquery).getEncodedVars();
+      }
+
+      List<byte[]> dictVars = new ArrayList<>();
+      for (ByteSegment dictVar : subquery.getDictVars()) {
+        dictVars.add(dictVar.toByteArray());
+      }
+      subqueryExactDictVars[i] = dictVars.toArray(new byte[0][]);
+
+      List<byte[]> dictVarWildcardQueries = new ArrayList<>();
+      for (AbstractClpEncodedSubquery.VariableWildcardQuery q
+          : subquery.getDictVarWildcardQueries())
+      {
+        dictVarWildcardQueries.add(q.getQuery().toByteArray());
+      }
+      subqueryDictVarWildcardQueries[i] = dictVarWildcardQueries.toArray(new byte[0][]);
+
+      if (subquery.getNumEncodedVarWildcardQueries() > 0) {
+        encodedVarWildcardSubqueryIndexList.add(i);
+      }
+    }
+
+    int numEncodedVarWildcardSubqueries = encodedVarWildcardSubqueryIndexList.size();
+    encodedVarWildcardSubqueryIndexes = new int[numEncodedVarWildcardSubqueries];
+    eightByteEncodedVarWildcardSubqueries =
+        new EightByteClpEncodedSubquery[useFourByteEncoding ? 0 : numEncodedVarWildcardSubqueries];
+    fourByteEncodedVarWildcardSubqueries =
+        new FourByteClpEncodedSubquery[useFourByteEncoding ? numEncodedVarWildcardSubqueries : 0];
+    for (int i = 0; i < numEncodedVarWildcardSubqueries; ++i) {
+      int subqueryIdx = encodedVarWildcardSubqueryIndexList.get(i);
+      encodedVarWildcardSubqueryIndexes[i] = subqueryIdx;
+      if (useFourByteEncoding) {
+        fourByteEncodedVarWildcardSubqueries[i] =
+            (FourByteClpEncodedSubquery)subqueries[subqueryIdx];
+      } else {
+        eightByteEncodedVarWildcardSubqueries[i] =
+            (EightByteClpEncodedSubquery)subqueries[subqueryIdx];
+      }
+    }
+
+    for (int i = 0; i < pendingEvents.length; ++i) {
+      pendingEvents[i] = new EncodedLogEvent();
+    }
+    pendingEventCandidateSubqueries = new long[MATCH_BATCH_SIZE * numSubqueryWords];
+    batchMatchBitmasks = new long[MATCH_BATCH_SIZE
+        * MessageDecoder.getNumMatchBitmaskWords(numEncodedVarWildcardSubqueries)];
+  }
+
+  /**
+   * Searches the remainder of the given stream, reporting each matching event
+   * to the given handler
+   * @param inputStream
+   * @param handler
+   * @return The number of matching events
+   * @throws IllegalArgumentException if the stream's encoding doesn't match
+   * the subqueries' encoding
+   * @throws IOException on I/O error, if the stream is corrupt, or if the
+   * handler throws one
+   */
+  public long search(
+      @NotNull AbstractClpIrInputStream inputStream,
+      @NotNull MatchHandler handler
+  ) throws IOException {
+    Objects.requireNonNull(inputStream);
+    Objects.requireNonNull(handler);
+    if ((inputStream instanceof FourByteClpIrInputStream) != useFourByteEncoding) {
+      throw new IllegalArgumentException("Stream's encoding doesn't match the subqueries' "
+                                             + "encoding.");
+    }
+
+    long numMatches = 0;
+    numPendingEvents = 0;
+    try {
+      while (inputStream.readNextEncodedLogEvent(pendingEvents[numPendingEvents])) {
+        if (false == filterPendingEvent()) {
+          // Reuse the event's slot for the next event
+          continue;
+        }
+        ++numPendingEvents;
+        if (MATCH_BATCH_SIZE == numPendingEvents) {
+          long numBatchMatches = matchPendingEvents(inputStream, handler);
+          if (numBatchMatches < 0) {
+            return numMatches - numBatchMatches - 1;
+          }
+          numMatches += numBatchMatches;
+        }
+      }
+      long numBatchMatches = matchPendingEvents(inputStream, handler);
+      return numMatches + (numBatchMatches < 0 ? -numBatchMatches - 1 : numBatchMatches);
+    } finally {
+      numPendingEvents = 0;
+    }
+  }
+
+  /**
+   * Evaluates the subqueries on the logtype and variables of the pending
+   * event at index {@code numPendingEvents}, storing the subqueries that
+   * still need their encoded variable wildcard queries to be matched
+   * @return Whether the event may match any subquery
+   */
+  private boolean filterPendingEvent() {
+    EncodedLogEvent event = pendingEvents[numPendingEvents];
+    CachedLogtype cachedLogtype = getCachedLogtype(event);
+    pendingEventLogtypes[numPendingEvents] = cachedLogtype;
+    long[] logtypeCandidates = cachedLogtype.candidateSubqueries;
+    int candidatesOffset = numPendingEvents * numSubqueryWords;
+    boolean hasCandidate = false;
+    for (int word = 0; word < numSubqueryWords; ++word) {
+      long candidates = logtypeCandidates[word];
+      long remainingCandidates = 0;
+      while (0 != candidates) {
+        int bit = Long.numberOfTrailingZeros(candidates);
+        candidates &= candidates - 1;
+        if (variablesMatch(word * Long.SIZE + bit, event)) {
+          remainingCandidates |= 1L << bit;
+        }
+      }
+      pendingEventCandidateSubqueries[candidatesOffset + word] = remainingCandidates;
+      hasCandidate |= 0 != remainingCandidates;
+    }
+    return hasCandidate;
+  }
+
+  /**
+   * Gets the cache entry of the event's logtype, matching the logtype against
+   * the subqueries' logtype queries if it isn't cached. The event's logtype
+   * is only copied if it isn't cached.
+   * @param event
+   * @return The cache entry
+   */
+  private CachedLogtype getCachedLogtype(EncodedLogEvent event) {
+    logtypeLookupKey.set(event.getLogtype(), event.getLogtypeLength());
+    CachedLogtype cachedLogtype = logtypeCache.get(logtypeLookupKey);
+    if (null != cachedLogtype) {
+      return cachedLogtype;
+    }
+
+    byte[] logtypeCopy = event.copyLogtype();
+    long[] matchBitmasks = new long[subqueries.length];
+    messageDecoder.batchLogtypeQueryMatch(
+        new FlattenedByteArray(logtypeCopy, new int[] {logtypeCopy.length}), subqueries,
+        matchBitmasks);
+    long[] candidates = new long[numSubqueryWords];
+    for (int i = 0; i < subqueries.length; ++i) {
+      if (0 != matchBitmasks[i]) {
+        candidates[i / Long.SIZE] |= 1L << (i % Long.SIZE);
+      }
+    }
+
+    if (logtypeCache.size() == MAX_CACHED_LOGTYPES) {
+      // NOTE: Pending events keep their entries, so this doesn't affect them
+      logtypeCache.clear();
+    }
+    cachedLogtype = new CachedLogtype(logtypeCopy, candidates);
+    LogtypeKey key = new LogtypeKey();
+    key.set(logtypeCopy, logtypeCopy.length);
+    logtypeCache.put(key, cachedLogtype);
+    return cachedLogtype;
+  }
+
+  /**
+   * @param subqueryIdx
+   * @param event
+   * @return Whether the subquery's exact variables and dictionary variable
+   * wildcard queries match the event's variables
+   */
+  private boolean variablesMatch(int subqueryIdx, EncodedLogEvent event) {
+    // Match the exact encoded variables
+    long[] exactEncodedVars = subqueryExactEncodedVars[subqueryIdx];
+    long[] encodedVars = event.getEncodedVars();
+    int numEncodedVars = event.getNumEncodedVars();
+    int varIdx = 0;
+    for (long exactEncodedVar : exactEncodedVars) {
+      while (varIdx < numEncodedVars && encodedVars[varIdx] != exactEncodedVar) {
+        ++varIdx;
+      }
+      if (varIdx == numEncodedVars) {
+        return false;
+      }
+      ++varIdx;
+    }
+
+    // Match the exact dictionary variables
+    byte[] dictVars = event.getDictVars();
+    int[] dictVarEndOffsets = event.getDictVarEndOffsets();
+    int numDictVars = event.getNumDictVars();
+    varIdx = 0;
+    for (byte[] exactDictVar : subqueryExactDictVars[subqueryIdx]) {
+      boolean found = false;
+      while (varIdx < numDictVars) {
+        int beginOffset = 0 == varIdx ? 0 : dictVarEndOffsets[varIdx - 1];
+        int endOffset = dictVarEndOffsets[varIdx++];
+        if (endOffset - beginOffset == exactDictVar.length
+            && rangeEquals(dictVars, beginOffset, exactDictVar))
+        {
+          found = true;
+          break;
+        }
+      }
+      if (false == found) {
+        return false;
+      }
+    }
+
+    // Match the dictionary variable wildcard queries
+    varIdx = 0;
+    for (byte[] query : subqueryDictVarWildcardQueries[subqueryIdx]) {
+      boolean found = false;
+      while (varIdx < numDictVars) {
+        int beginOffset = 0 == varIdx ? 0 : dictVarEndOffsets[varIdx - 1];
+        int endOffset = dictVarEndOffsets[varIdx++];
+        if (wildcardMatch(dictVars, beginOffset, endOffset, query)) {
+          found = true;
+          break;
+        }
+      }
+      if (false == found) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Matches the encoded variable wildcard queries of the pending events'
+   * candidate subqueries, then decodes the candidate events and reports the
+   * ones that match the query
+   * @param inputStream
+   * @param handler
+   * @return The number of matching events, or if the handler stopped the
+   * search, the negated number of matching events minus one
+   * @throws IOException if the events couldn't be matched or decoded, or if
+   * the handler throws one
+   */
+  private long matchPendingEvents(AbstractClpIrInputStream inputStream, MatchHandler handler)
+      throws IOException
+  {
+    int numEvents = numPendingEvents;
+    numPendingEvents = 0;
+    if (0 == numEvents) {
+      return 0;
+    }
+
+    int numEncodedVarWildcardSubqueries = encodedVarWildcardSubqueryIndexes.length;
+    int numWildcardWords = MessageDecoder.getNumMatchBitmaskWords(
+        numEncodedVarWildcardSubqueries);
+    long[] wildcardMatchBitmasks = null;
+    if (numEncodedVarWildcardSubqueries > 0) {
+      wildcardMatchBitmasks = matchEncodedVarWildcardQueries(numEvents, numWildcardWords);
+    }
+
+    long numMatches = 0;
+    for (int i = 0; i < numEvents; ++i) {
+      if (false == eventMatches(i, wildcardMatchBitmasks, numWildcardWords)) {
+        continue;
+      }
+      inputStream.decodeLogEvent(pendingEvents[i], matchedLogEvent);
+      if (false == wildcardMatch(matchedLogEvent.getMessage(), 0,
+                                 matchedLogEvent.getMessageLength(), query))
+      {
+        continue;
+      }
+      ++numMatches;
+      if (false == handler.handleMatch(matchedLogEvent)) {
+        return -numMatches - 1;
+      }
+    }
+    return numMatches;
+  }
+
+  /**
+   * @param numEvents
+   * @param numWildcardWords
+   * @return The match bitmask of each pending event, with one bit per
+   * subquery that has encoded variable wildcard queries
+   * @throws IOException if the events couldn't be matched
+   */
+  private long[] matchEncodedVarWildcardQueries(int numEvents, int numWildcardWords)
+      throws IOException
+  {
+    // Flatten each of the batch's unique logtypes once, and each event's
+    // encoded variables
+    ++batchId;
+    int numBatchLogtypes = 0;
+    int batchLogtypesLength = 0;
+    int numEncodedVars = 0;
+    for (int i = 0; i < numEvents; ++i) {
+      CachedLogtype cachedLogtype = pendingEventLogtypes[i];
+      if (cachedLogtype.batchId != batchId) {
+        byte[] logtype = cachedLogtype.logtype;
+        if (batchLogtypesLength + logtype.length > batchLogtypes.length) {
+          batchLogtypes = Arrays.copyOf(batchLogtypes, Math.max(
+              batchLogtypesLength + logtype.length, batchLogtypes.length * 2));
+        }
+        System.arraycopy(logtype, 0, batchLogtypes, batchLogtypesLength, logtype.length);
+        batchLogtypesLength += logtype.length;
+        batchLogtypeEndOffsets[numBatchLogtypes] = batchLogtypesLength;
+        cachedLogtype.batchId = batchId;
+        cachedLogtype.batchLogtypeId = numBatchLogtypes++;
+      }
+      batchLogtypeIds[i] = cachedLogtype.batchLogtypeId;
+
+      EncodedLogEvent event = pendingEvents[i];
+      int numEventEncodedVars = event.getNumEncodedVars();
+      long[] eventEncodedVars = event.getEncodedVars();
+      if (useFourByteEncoding) {
+        if (numEncodedVars + numEventEncodedVars > batchFourByteEncodedVars.length) {
+          batchFourByteEncodedVars = Arrays.copyOf(batchFourByteEncodedVars, Math.max(
+              numEncodedVars + numEventEncodedVars, batchFourByteEncodedVars.length * 2));
+        }
+        for (int j = 0; j < numEventEncodedVars; ++j) {
+          batchFourByteEncodedVars[numEncodedVars + j] = (int)eventEncodedVars[j];
+        }
+      } else {
+        if (numEncodedVars + numEventEncodedVars > batchEightByteEncodedVars.length) {
+          batchEightByteEncodedVars = Arrays.copyOf(batchEightByteEncodedVars, Math.max(
+              numEncodedVars + numEventEncodedVars, batchEightByteEncodedVars.length * 2));
+        }
+        System.arraycopy(eventEncodedVars, 0, batchEightByteEncodedVars, numEncodedVars,
+                         numEventEncodedVars);
+      }
+      numEncodedVars += numEventEncodedVars;
+      batchEncodedVarEndOffsets[i] = numEncodedVars;
+    }
+    // NOTE: The logtypes' end offsets array may be longer than the number of
+    // logtypes in the batch, but only the logtypes referenced by ID are read
+    FlattenedByteArray logtypes = new FlattenedByteArray(batchLogtypes, batchLogtypeEndOffsets);
+
+    // The per-event arrays must be exactly as long as the batch, which they
+    // only are for full batches
+    int[] logtypeIds = batchLogtypeIds;
+    int[] encodedVarEndOffsets = batchEncodedVarEndOffsets;
+    long[] matchBitmasks = batchMatchBitmasks;
+    if (MATCH_BATCH_SIZE != numEvents) {
+      logtypeIds = Arrays.copyOf(batchLogtypeIds, numEvents);
+      encodedVarEndOffsets = Arrays.copyOf(batchEncodedVarEndOffsets, numEvents);
+      matchBitmasks = new long[numEvents * numWildcardWords];
+    }
+
+    if (useFourByteEncoding) {
+      messageDecoder.batchEncodedVarsWildcardMatch(logtypes, logtypeIds,
+                                                   batchFourByteEncodedVars,
+                                                   encodedVarEndOffsets,
+                                                   fourByteEncodedVarWildcardSubqueries,
+                                                   matchBitmasks);
+    } else {
+      messageDecoder.batchEncodedVarsWildcardMatch(logtypes, logtypeIds,
+                                                   batchEightByteEncodedVars,
+                                                   encodedVarEndOffsets,
+                                                   eightByteEncodedVarWildcardSubqueries,
+                                                   matchBitmasks);
+    }
+    return matchBitmasks;
+  }
+
+  /**
+   * @param eventIdx
+   * @param wildcardMatchBitmasks
+   * @param numWildcardWords
+   * @return Whether the pending event matches any of its candidate subqueries
+   */
+  private boolean eventMatches(int eventIdx, long[] wildcardMatchBitmasks, int numWildcardWords) {
+    int candidatesOffset = eventIdx * numSubqueryWords;
+    int wildcardIdx = 0;
+    for (int word = 0; word < numSubqueryWords; ++word) {
+      long candidates = pendingEventCandidateSubqueries[candidatesOffset + word];
+      while (0 != candidates) {
+        int subqueryIdx = word * Long.SIZE + Long.numberOfTrailingZeros(candidates);
+        candidates &= candidates - 1;
+
+        // Subqueries without encoded variable wildcard queries match as-is
+        while (wildcardIdx < encodedVarWildcardSubqueryIndexes.length
+            && encodedVarWildcardSubqueryIndexes[wildcardIdx] < subqueryIdx)
+        {
+          ++wildcardIdx;
+        }
+        if (wildcardIdx == encodedVarWildcardSubqueryIndexes.length
+            || encodedVarWildcardSubqueryIndexes[wildcardIdx] != subqueryIdx)
+        {
+          return true;
+        }
+        long wildcardWord =
+            wildcardMatchBitmasks[eventIdx * numWildcardWords + wildcardIdx / Long.SIZE];
+        if (0 != (wildcardWord & (1L << (wildcardIdx % Long.SIZE)))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean rangeEquals(byte[] bytes, int offset, byte[] other) {
+    for (int i = 0; i < other.length; ++i) {
+      if (bytes[offset + i] != other[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Matches the given range of bytes against a wildcard query, with the same
+   * semantics as CLP's wildcard matching: '*' matches zero or more
+   * characters, '?' matches any single character, and '\' escapes the
+   * character after it.
+   * @param tame
+   * @param tameBegin
+   * @param tameEnd
+   * @param wild
+   * @return Whether the range matches the query
+   */
+  static boolean wildcardMatch(byte[] tame, int tameBegin, int tameEnd, byte[] wild) {
+    int tameIdx = tameBegin;
+    int wildIdx = 0;
+    // The positions to backtrack to when a character after a '*' mismatches
+    int backtrackTameIdx = -1;
+    int backtrackWildIdx = -1;
+    while (tameIdx < tameEnd) {
+      if (wildIdx < wild.length) {
+        byte w = wild[wildIdx];
+        if ('*' == w) {
+          backtrackWildIdx = ++wildIdx;
+          backtrackTameIdx = tameIdx;
+          continue;
+        }
+        if ('?' == w) {
+          ++wildIdx;
+          ++tameIdx;
+          continue;
+        }
+        if ('\\' == w && wildIdx + 1 < wild.length) {
+          ++wildIdx;
+          w = wild[wildIdx];
+        }
+        if (w == tame[tameIdx]) {
+          ++wildIdx;
+          ++tameIdx;
+          continue;
+        }
+      }
+      if (-1 == backtrackWildIdx) {
+        return false;
+      }
+      // Let the last '*' consume one more character
+      wildIdx = backtrackWildIdx;
+      tameIdx = ++backtrackTameIdx;
+    }
+    while (wildIdx < wild.length && '*' == wild[wildIdx]) {
+      ++wildIdx;
+    }
+    return wildIdx == wild.length;
+  }
+
+  /**
+   * A logtype's cache entry
+   */
+  private static class CachedLogtype {
+    final byte[] logtype;
+    // A bitmask of the subqueries whose logtype query matches the logtype
+    final long[] candidateSubqueries;
+    // The last batch that the logtype was flattened into, and its ID in that
+    // batch
+    int batchId = 0;
+    int batchLogtypeId;
+
+    CachedLogtype(byte[] logtype, long[] candidateSubqueries) {
+      this.logtype = logtype;
+      this.candidateSubqueries = candidateSubqueries;
+    }
+  }
+
+  /**
+   * A view of a logtype in a byte array, compared by content. Cached keys view
+   * their own copy of a logtype, while the lookup key is repointed at each
+   * event's logtype.
+   */
+  private static class LogtypeKey {
+    private byte[] bytes;
+    private int length;
+    private int hashCode;
+
+    void set(byte[] bytes, int length) {
+      this.bytes = bytes;
+      this.length = length;
+      int h = 1;
+      for (int i = 0; i < length; ++i) {
+        h = 31 * h + bytes[i];
+      }
+      hashCode = h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (false == o instanceof LogtypeKey) {
+        return false;
+      }
+      LogtypeKey other = (LogtypeKey)o;
+      if (length != other.length || hashCode != other.hashCode) {
+        return false;
+      }
+      for (int i = 0; i < length; ++i) {
+        if (bytes[i] != other.bytes[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
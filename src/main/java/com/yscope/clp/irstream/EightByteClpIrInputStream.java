@@ -0,0 +1,118 @@
+package com.yscope.clp.irstream;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * CLP IR input stream using the eight-byte encoding
+ */
+public class EightByteClpIrInputStream extends AbstractClpIrInputStream {
+  /**
+   * @see AbstractClpIrInputStream#AbstractClpIrInputStream
+   */
+  public EightByteClpIrInputStream (InputStream inputStream) throws IOException {
+    super(inputStream, IrStreamProtocol.EIGHT_BYTE_ENCODING_MAGIC_NUMBER);
+  }
+
+  /**
+   * @see AbstractClpIrInputStream#AbstractClpIrInputStream(InputStream,
+   * IrStreamMetadata)
+   */
+  EightByteClpIrInputStream (InputStream inputStream, IrStreamMetadata metadata) {
+    super(inputStream, metadata);
+  }
+
+  /**
+   * @see #decodeLogEventsNative
+   */
+  static int decodeLogEvents (ByteBuffer irBuffer, int limit, long[] cursor, long[] timestamps,
+                              byte[] messages, int[] messageEndOffsets) throws IOException
+  {
+    return decodeLogEventsNative(irBuffer, limit, cursor, timestamps, messages,
+                                 messageEndOffsets);
+  }
+
+  @Override
+  protected byte getEncodedVarTag () {
+    return IrStreamProtocol.Payload.VAR_EIGHT_BYTE_ENCODING;
+  }
+
+  @Override
+  protected long readEncodedVar (DataInputStream inputStream) throws IOException {
+    return inputStream.readLong();
+  }
+
+  @Override
+  protected long readTimestamp (DataInputStream inputStream, byte tag) throws IOException {
+    if (IrStreamProtocol.Payload.TIMESTAMP_VAL != tag) {
+      throw new IOException("Unexpected timestamp tag: " + tag);
+    }
+    return inputStream.readLong();
+  }
+
+  @Override
+  protected int decodeMessage (EncodedLogEvent logEvent, byte[] buffer) throws IOException {
+    return decodeMessageNative(logEvent.getLogtype(), logEvent.getLogtypeLength(),
+                               logEvent.getEncodedVars(), logEvent.getNumEncodedVars(),
+                               logEvent.getDictVars(), logEvent.getDictVarsLength(),
+                               logEvent.getDictVarEndOffsets(), logEvent.getNumDictVars(),
+                               buffer);
+  }
+
+  /**
+   * Decodes a log event's message
+   * @param logtype
+   * @param logtypeLength
+   * @param encodedVars
+   * @param numEncodedVars
+   * @param dictVars The dictionary variables, stored back-to-back
+   * @param dictVarsLength
+   * @param dictVarEndOffsets The end offset of each dictionary variable in
+   * {@code dictVars}
+   * @param numDictVars
+   * @param buffer The buffer to decode the message into
+   * @return The length of the decoded message if it fit in the buffer.
+   * Otherwise, the negated length of the decoded message.
+   * @throws IOException if the message couldn't be decoded
+   */
+  private native int decodeMessageNative (
+      byte[] logtype,
+      int logtypeLength,
+      long[] encodedVars,
+      int numEncodedVars,
+      byte[] dictVars,
+      int dictVarsLength,
+      int[] dictVarEndOffsets,
+      int numDictVars,
+      byte[] buffer
+  ) throws IOException;
+
+  /**
+   * Decodes consecutive log events straight from a direct buffer containing
+   * part of an IR stream. Decoding stops before an EOF tag, before a log
+   * event that doesn't end before {@code limit}, or once the output arrays are
+   * full.
+   * @param irBuffer A direct buffer containing the encoded log events
+   * @param limit The offset in {@code irBuffer} to stop decoding at
+   * @param cursor The offset in {@code irBuffer} of the first event, followed
+   * by a reference timestamp that's unused by this encoding. The offset is
+   * advanced past the decoded events.
+   * @param timestamps Returns the events' timestamps
+   * @param messages Returns the events' messages, back-to-back
+   * @param messageEndOffsets Returns the end offset of each message in
+   * {@code messages}
+   * @return The number of events decoded, or the negated length of the first
+   * event's message if it doesn't fit in {@code messages}
+   * @throws IOException if the events are corrupt or couldn't be decoded
+   */
+  private static native int decodeLogEventsNative (
+      ByteBuffer irBuffer,
+      int limit,
+      long[] cursor,
+      long[] timestamps,
+      byte[] messages,
+      int[] messageEndOffsets
+  ) throws IOException;
+}
@@ -3,6 +3,7 @@ package com.yscope.clp.irstream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 
 /**
@@ -18,6 +19,30 @@ public class EightByteClpIrOutputStream extends AbstractClpIrOutputStream {
     super(timestampPattern, timeZoneId, outputStream);
   }
 
+  /**
+   * Constructs a stream that writes to the given channel using a newly
+   * allocated direct output buffer with a capacity of
+   * {@link AbstractClpIrOutputStream#DEFAULT_OUTPUT_BUFFER_CAPACITY}.
+   * @see AbstractClpIrOutputStream#AbstractClpIrOutputStream(String, String,
+   * WritableByteChannel, ByteBuffer)
+   */
+  public EightByteClpIrOutputStream (String timestampPattern, String timeZoneId,
+                                     WritableByteChannel outputChannel)
+  {
+    this(timestampPattern, timeZoneId, outputChannel,
+         ByteBuffer.allocateDirect(DEFAULT_OUTPUT_BUFFER_CAPACITY));
+  }
+
+  /**
+   * @see AbstractClpIrOutputStream#AbstractClpIrOutputStream(String, String,
+   * WritableByteChannel, ByteBuffer)
+   */
+  public EightByteClpIrOutputStream (String timestampPattern, String timeZoneId,
+                                     WritableByteChannel outputChannel, ByteBuffer outputBuffer)
+  {
+    super(timestampPattern, timeZoneId, outputChannel, outputBuffer);
+  }
+
   @Override
   protected byte[] encodePreamble (long firstMessageTimestamp) throws IOException {
     byte[] timestampPatternBytes = timestampPattern.getBytes(StandardCharsets.UTF_8);
@@ -36,10 +61,45 @@ public class EightByteClpIrOutputStream extends AbstractClpIrOutputStream {
 
   @Override
   protected byte[] encodeLogEvent (long timestamp, ByteBuffer message) throws IOException {
-    byte[] messageBytes = message.array();
-    int messageLength = message.limit();
-    byte[] encoded = encodeLogEventNative(nativeStateAddress, timestamp, messageBytes,
-                                          messageLength);
+    byte[] encoded;
+    if (message.isDirect()) {
+      encoded = encodeLogEventNative(nativeStateAddress, timestamp, null,
+                                     message, message.position(), message.remaining());
+    } else {
+      encoded = encodeLogEventNative(nativeStateAddress, timestamp,
+                                     getMessageArray(message), null,
+                                     getMessageArrayOffset(message), message.remaining());
+    }
+    if (null == encoded) {
+      throw new IOException("Encoding failed.");
+    }
+    return encoded;
+  }
+
+  @Override
+  protected int encodeLogEvent (long timestamp, ByteBuffer message, ByteBuffer outputBuffer)
+      throws IOException
+  {
+    int numBytesEncoded;
+    if (message.isDirect()) {
+      numBytesEncoded = encodeLogEventIntoBufferNative(
+          nativeStateAddress, timestamp, null, message, message.position(),
+          message.remaining(), outputBuffer, outputBuffer.position(), outputBuffer.limit());
+    } else {
+      numBytesEncoded = encodeLogEventIntoBufferNative(
+          nativeStateAddress, timestamp, getMessageArray(message), null,
+          getMessageArrayOffset(message), message.remaining(), outputBuffer,
+          outputBuffer.position(), outputBuffer.limit());
+    }
+    return numBytesEncoded;
+  }
+
+  @Override
+  protected byte[] encodeLogEvents (long[] timestamps, byte[] messages, int[] messageEndOffsets,
+                                    int numEvents) throws IOException
+  {
+    byte[] encoded = encodeLogEventsNative(nativeStateAddress, timestamps, messages,
+                                           messageEndOffsets, numEvents);
     if (null == encoded) {
       throw new IOException("Encoding failed.");
     }
@@ -69,10 +129,15 @@ public class EightByteClpIrOutputStream extends AbstractClpIrOutputStream {
   ) throws IOException;
 
   /**
-   * Encodes the log event
+   * Encodes the log event. The message is given either as a byte array or as
+   * a direct buffer.
    * @param nativeStateAddress
    * @param timestamp Timestamp as milliseconds from the Unix epoch
-   * @param message
+   * @param message The array containing the message, or null if the message
+   * is in {@code directMessage}
+   * @param directMessage The direct buffer containing the message, or null if
+   * the message is in {@code message}
+   * @param messageOffset The offset of the message in its array or buffer
    * @param messageLength
    * @return The encoded log event
    * @throws IOException on encode failure
@@ -81,6 +146,56 @@ public class EightByteClpIrOutputStream extends AbstractClpIrOutputStream {
       long nativeStateAddress,
       long timestamp,
       byte[] message,
+      ByteBuffer directMessage,
+      int messageOffset,
       int messageLength
   ) throws IOException;
+
+  /**
+   * Same as {@link #encodeLogEventNative} except the encoded log event is
+   * written into the given direct buffer
+   * @param nativeStateAddress
+   * @param timestamp
+   * @param message
+   * @param directMessage
+   * @param messageOffset
+   * @param messageLength
+   * @param outputBuffer
+   * @param outputBufferOffset The offset in {@code outputBuffer} to start
+   * writing at
+   * @param outputBufferLimit The offset in {@code outputBuffer} to stop
+   * writing at
+   * @return The number of bytes written if the encoded log event fit.
+   * Otherwise, the negated length of the encoded log event.
+   * @throws IOException on encode failure
+   */
+  private native int encodeLogEventIntoBufferNative (
+      long nativeStateAddress,
+      long timestamp,
+      byte[] message,
+      ByteBuffer directMessage,
+      int messageOffset,
+      int messageLength,
+      ByteBuffer outputBuffer,
+      int outputBufferOffset,
+      int outputBufferLimit
+  ) throws IOException;
+
+  /**
+   * Encodes the batch of log events
+   * @param nativeStateAddress
+   * @param timestamps Timestamps as milliseconds from the Unix epoch
+   * @param messages
+   * @param messageEndOffsets
+   * @param numEvents
+   * @return The encoded log events
+   * @throws IOException on encode failure
+   */
+  private native byte[] encodeLogEventsNative (
+      long nativeStateAddress,
+      long[] timestamps,
+      byte[] messages,
+      int[] messageEndOffsets,
+      int numEvents
+  ) throws IOException;
 }
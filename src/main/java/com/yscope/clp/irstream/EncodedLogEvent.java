@@ -0,0 +1,218 @@
+package com.yscope.clp.irstream;
+
+import com.yscope.clp.compressorfrontend.EmptyArrayUtils;
+import com.yscope.clp.compressorfrontend.FlattenedByteArray;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A log event read from an IR stream, in its encoded form (i.e., without
+ * materializing the message's text).
+ * <p></p>
+ * Instances are meant to be reused across reads to avoid allocations: the
+ * arrays returned by the getters are internal buffers that are overwritten by
+ * the next read, and only their first {@code get*Length()} or
+ * {@code getNum*()} elements are valid.
+ * <p></p>
+ * For streams using the four-byte encoding, the encoded variables are
+ * sign-extended to {@code long}s.
+ */
+public class EncodedLogEvent {
+  private static final int INITIAL_LOGTYPE_CAPACITY = 256;
+  private static final int INITIAL_NUM_VARS_CAPACITY = 16;
+  private static final int INITIAL_DICT_VARS_CAPACITY = 256;
+
+  private long timestamp;
+
+  private byte[] logtype = new byte[INITIAL_LOGTYPE_CAPACITY];
+  private int logtypeLength;
+
+  private long[] encodedVars = new long[INITIAL_NUM_VARS_CAPACITY];
+  private int numEncodedVars;
+
+  private byte[] dictVars = new byte[INITIAL_DICT_VARS_CAPACITY];
+  private int dictVarsLength;
+  private int[] dictVarEndOffsets = new int[INITIAL_NUM_VARS_CAPACITY];
+  private int numDictVars;
+
+  /**
+   * @return The event's timestamp as milliseconds since the Unix epoch
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * @return The buffer containing the logtype. Only the first
+   * {@link #getLogtypeLength()} bytes are valid.
+   */
+  public byte[] getLogtype() {
+    return logtype;
+  }
+
+  public int getLogtypeLength() {
+    return logtypeLength;
+  }
+
+  public String getLogtypeAsString() {
+    return new String(logtype, 0, logtypeLength, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * @return The buffer containing the encoded variables. Only the first
+   * {@link #getNumEncodedVars()} elements are valid.
+   */
+  public long[] getEncodedVars() {
+    return encodedVars;
+  }
+
+  public int getNumEncodedVars() {
+    return numEncodedVars;
+  }
+
+  /**
+   * @return The buffer containing the dictionary variables stored
+   * back-to-back. Only the first {@link #getDictVarsLength()} bytes are valid.
+   */
+  public byte[] getDictVars() {
+    return dictVars;
+  }
+
+  public int getDictVarsLength() {
+    return dictVarsLength;
+  }
+
+  /**
+   * @return The end offset of each dictionary variable in
+   * {@link #getDictVars()}. Only the first {@link #getNumDictVars()} elements
+   * are valid.
+   */
+  public int[] getDictVarEndOffsets() {
+    return dictVarEndOffsets;
+  }
+
+  public int getNumDictVars() {
+    return numDictVars;
+  }
+
+  /**
+   * @return A copy of the logtype that's exactly as long as the logtype.
+   */
+  public byte[] copyLogtype() {
+    return Arrays.copyOf(logtype, logtypeLength);
+  }
+
+  /**
+   * @return A copy of the encoded variables that's exactly as long as the
+   * number of encoded variables.
+   */
+  public long[] copyEncodedVars() {
+    if (0 == numEncodedVars) {
+      return EmptyArrayUtils.EMPTY_LONG_ARRAY;
+    }
+    return Arrays.copyOf(encodedVars, numEncodedVars);
+  }
+
+  /**
+   * @return A copy of the dictionary variables as a {@link FlattenedByteArray}.
+   */
+  public FlattenedByteArray copyDictVars() {
+    if (0 == numDictVars) {
+      return EmptyArrayUtils.EMPTY_FLATTENED_BYTE_ARRAY;
+    }
+    return new FlattenedByteArray(Arrays.copyOf(dictVars, dictVarsLength),
+                                  Arrays.copyOf(dictVarEndOffsets, numDictVars));
+  }
+
+  /**
+   * Clears the event so that it can be filled by the next read.
+   */
+  void clear() {
+    timestamp = 0;
+    logtypeLength = 0;
+    numEncodedVars = 0;
+    dictVarsLength = 0;
+    numDictVars = 0;
+  }
+
+  /**
+   * Copies the content of the given event into this event
+   * @param other
+   */
+  void copyFrom(EncodedLogEvent other) {
+    timestamp = other.timestamp;
+
+    if (other.logtypeLength > logtype.length) {
+      logtype = new byte[other.logtypeLength];
+    }
+    System.arraycopy(other.logtype, 0, logtype, 0, other.logtypeLength);
+    logtypeLength = other.logtypeLength;
+
+    if (other.numEncodedVars > encodedVars.length) {
+      encodedVars = new long[other.numEncodedVars];
+    }
+    System.arraycopy(other.encodedVars, 0, encodedVars, 0, other.numEncodedVars);
+    numEncodedVars = other.numEncodedVars;
+
+    if (other.dictVarsLength > dictVars.length) {
+      dictVars = new byte[other.dictVarsLength];
+    }
+    System.arraycopy(other.dictVars, 0, dictVars, 0, other.dictVarsLength);
+    dictVarsLength = other.dictVarsLength;
+    if (other.numDictVars > dictVarEndOffsets.length) {
+      dictVarEndOffsets = new int[other.numDictVars];
+    }
+    System.arraycopy(other.dictVarEndOffsets, 0, dictVarEndOffsets, 0, other.numDictVars);
+    numDictVars = other.numDictVars;
+  }
+
+  void setTimestamp(long timestamp) {
+    this.timestamp = timestamp;
+  }
+
+  void addEncodedVar(long encodedVar) {
+    if (numEncodedVars == encodedVars.length) {
+      encodedVars = Arrays.copyOf(encodedVars, encodedVars.length * 2);
+    }
+    encodedVars[numEncodedVars++] = encodedVar;
+  }
+
+  /**
+   * Reads a dictionary variable from the given stream
+   * @param inputStream
+   * @param length The variable's length
+   * @throws IOException on I/O error
+   */
+  void readDictVar(DataInputStream inputStream, int length) throws IOException {
+    int newLength = dictVarsLength + length;
+    if (newLength < 0) {
+      throw new IOException("Dictionary variables are too large.");
+    }
+    if (newLength > dictVars.length) {
+      dictVars = Arrays.copyOf(dictVars, Math.max(newLength, dictVars.length * 2));
+    }
+    inputStream.readFully(dictVars, dictVarsLength, length);
+    dictVarsLength = newLength;
+
+    if (numDictVars == dictVarEndOffsets.length) {
+      dictVarEndOffsets = Arrays.copyOf(dictVarEndOffsets, dictVarEndOffsets.length * 2);
+    }
+    dictVarEndOffsets[numDictVars++] = dictVarsLength;
+  }
+
+  /**
+   * Reads the logtype from the given stream
+   * @param inputStream
+   * @param length The logtype's length
+   * @throws IOException on I/O error
+   */
+  void readLogtype(DataInputStream inputStream, int length) throws IOException {
+    if (length > logtype.length) {
+      logtype = new byte[Math.max(length, logtype.length * 2)];
+    }
+    inputStream.readFully(logtype, 0, length);
+    logtypeLength = length;
+  }
+}
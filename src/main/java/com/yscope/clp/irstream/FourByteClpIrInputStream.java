@@ -0,0 +1,156 @@
+package com.yscope.clp.irstream;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * CLP IR input stream using the four-byte encoding
+ */
+public class FourByteClpIrInputStream extends AbstractClpIrInputStream {
+  private long previousMessageTimestamp;
+
+  /**
+   * @see AbstractClpIrInputStream#AbstractClpIrInputStream
+   */
+  public FourByteClpIrInputStream (InputStream inputStream) throws IOException {
+    super(inputStream, IrStreamProtocol.FOUR_BYTE_ENCODING_MAGIC_NUMBER);
+
+    String referenceTimestamp =
+        getMetadata().getFields().get(IrStreamProtocol.Metadata.REFERENCE_TIMESTAMP_KEY);
+    if (null == referenceTimestamp) {
+      throw new IOException("Metadata is missing the reference timestamp.");
+    }
+    try {
+      previousMessageTimestamp = Long.parseLong(referenceTimestamp);
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid reference timestamp: " + referenceTimestamp, e);
+    }
+  }
+
+  /**
+   * @param referenceTimestamp The timestamp that the first log event's
+   * timestamp delta is relative to
+   * @see AbstractClpIrInputStream#AbstractClpIrInputStream(InputStream,
+   * IrStreamMetadata)
+   */
+  FourByteClpIrInputStream (InputStream inputStream, IrStreamMetadata metadata,
+                            long referenceTimestamp)
+  {
+    super(inputStream, metadata);
+    previousMessageTimestamp = referenceTimestamp;
+  }
+
+  /**
+   * @see #decodeLogEventsNative
+   */
+  static int decodeLogEvents (ByteBuffer irBuffer, int limit, long[] cursor, long[] timestamps,
+                              byte[] messages, int[] messageEndOffsets) throws IOException
+  {
+    return decodeLogEventsNative(irBuffer, limit, cursor, timestamps, messages,
+                                 messageEndOffsets);
+  }
+
+  @Override
+  protected void setReferenceTimestamp (long referenceTimestamp) {
+    previousMessageTimestamp = referenceTimestamp;
+  }
+
+  @Override
+  protected byte getEncodedVarTag () {
+    return IrStreamProtocol.Payload.VAR_FOUR_BYTE_ENCODING;
+  }
+
+  @Override
+  protected long readEncodedVar (DataInputStream inputStream) throws IOException {
+    return inputStream.readInt();
+  }
+
+  @Override
+  protected long readTimestamp (DataInputStream inputStream, byte tag) throws IOException {
+    long timestampDelta;
+    switch (tag) {
+      case IrStreamProtocol.Payload.TIMESTAMP_DELTA_BYTE:
+        timestampDelta = inputStream.readByte();
+        break;
+      case IrStreamProtocol.Payload.TIMESTAMP_DELTA_SHORT:
+        timestampDelta = inputStream.readShort();
+        break;
+      case IrStreamProtocol.Payload.TIMESTAMP_DELTA_INT:
+        timestampDelta = inputStream.readInt();
+        break;
+      case IrStreamProtocol.Payload.TIMESTAMP_DELTA_LONG:
+        timestampDelta = inputStream.readLong();
+        break;
+      default:
+        throw new IOException("Unexpected timestamp tag: " + tag);
+    }
+    previousMessageTimestamp += timestampDelta;
+    return previousMessageTimestamp;
+  }
+
+  @Override
+  protected int decodeMessage (EncodedLogEvent logEvent, byte[] buffer) throws IOException {
+    return decodeMessageNative(logEvent.getLogtype(), logEvent.getLogtypeLength(),
+                               logEvent.getEncodedVars(), logEvent.getNumEncodedVars(),
+                               logEvent.getDictVars(), logEvent.getDictVarsLength(),
+                               logEvent.getDictVarEndOffsets(), logEvent.getNumDictVars(),
+                               buffer);
+  }
+
+  /**
+   * Decodes a log event's message
+   * @param logtype
+   * @param logtypeLength
+   * @param encodedVars The encoded variables, sign-extended to {@code long}s
+   * @param numEncodedVars
+   * @param dictVars The dictionary variables, stored back-to-back
+   * @param dictVarsLength
+   * @param dictVarEndOffsets The end offset of each dictionary variable in
+   * {@code dictVars}
+   * @param numDictVars
+   * @param buffer The buffer to decode the message into
+   * @return The length of the decoded message if it fit in the buffer.
+   * Otherwise, the negated length of the decoded message.
+   * @throws IOException if the message couldn't be decoded
+   */
+  private native int decodeMessageNative (
+      byte[] logtype,
+      int logtypeLength,
+      long[] encodedVars,
+      int numEncodedVars,
+      byte[] dictVars,
+      int dictVarsLength,
+      int[] dictVarEndOffsets,
+      int numDictVars,
+      byte[] buffer
+  ) throws IOException;
+
+  /**
+   * Decodes consecutive log events straight from a direct buffer containing
+   * part of an IR stream. Decoding stops before an EOF tag, before a log
+   * event that doesn't end before {@code limit}, or once the output arrays are
+   * full.
+   * @param irBuffer A direct buffer containing the encoded log events
+   * @param limit The offset in {@code irBuffer} to stop decoding at
+   * @param cursor The offset in {@code irBuffer} of the first event, followed
+   * by the timestamp that its timestamp delta is relative to. Both are
+   * advanced past the decoded events.
+   * @param timestamps Returns the events' timestamps
+   * @param messages Returns the events' messages, back-to-back
+   * @param messageEndOffsets Returns the end offset of each message in
+   * {@code messages}
+   * @return The number of events decoded, or the negated length of the first
+   * event's message if it doesn't fit in {@code messages}
+   * @throws IOException if the events are corrupt or couldn't be decoded
+   */
+  private static native int decodeLogEventsNative (
+      ByteBuffer irBuffer,
+      int limit,
+      long[] cursor,
+      long[] timestamps,
+      byte[] messages,
+      int[] messageEndOffsets
+  ) throws IOException;
+}
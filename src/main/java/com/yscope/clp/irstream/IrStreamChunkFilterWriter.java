@@ -0,0 +1,285 @@
+package com.yscope.clp.irstream;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Writes a sidecar of Bloom filters for an IR stream, with one filter per
+ * chunk of {@code numEventsPerChunk} log events. Each filter contains the
+ * chunk's logtypes and dictionary variables, so that a search can skip the
+ * chunks which can't contain a query's exact logtype or dictionary variables.
+ * <p></p>
+ * To use it, pass it to {@link AbstractClpIrOutputStream#setChunkFilterWriter}
+ * before writing any log events; the IR output stream then adds each encoded
+ * log event to the current chunk's filter and closes the filter writer (which
+ * writes the last, partial chunk) when it's closed.
+ * <p></p>
+ * Each filter is sized for the number of unique elements in its chunk, using
+ * {@code numBitsPerElement} bits per element. The default of
+ * {@link #DEFAULT_NUM_BITS_PER_ELEMENT} gives a false positive rate of about
+ * 1%.
+ * @see IrStreamChunkFilters
+ */
+public class IrStreamChunkFilterWriter implements AutoCloseable, Flushable {
+  public static final int DEFAULT_NUM_EVENTS_PER_CHUNK = 4096;
+  public static final int DEFAULT_NUM_BITS_PER_ELEMENT = 10;
+
+  private static final int INITIAL_NUM_ELEMENTS_CAPACITY = 1024;
+
+  private final DataOutputStream outputStream;
+  private final int numEventsPerChunk;
+  private final int numBitsPerElement;
+  private final int numHashFunctions;
+
+  private boolean headerWritten = false;
+  private long numChunks = 0;
+
+  // The current chunk's state
+  private long chunkByteOffset;
+  private long chunkReferenceTimestamp;
+  private int numEventsInChunk = 0;
+  private long[] elementHashes = new long[INITIAL_NUM_ELEMENTS_CAPACITY];
+  private int numElements = 0;
+
+  /**
+   * Constructs a writer using {@link #DEFAULT_NUM_EVENTS_PER_CHUNK} and
+   * {@link #DEFAULT_NUM_BITS_PER_ELEMENT}
+   * @param outputStream Stream which the filters should be written to
+   */
+  public IrStreamChunkFilterWriter (OutputStream outputStream) {
+    this(outputStream, DEFAULT_NUM_EVENTS_PER_CHUNK, DEFAULT_NUM_BITS_PER_ELEMENT);
+  }
+
+  /**
+   * @param outputStream Stream which the filters should be written to
+   * @param numEventsPerChunk The number of log events in each chunk
+   * @param numBitsPerElement The number of filter bits per unique logtype or
+   * dictionary variable in a chunk
+   * @throws IllegalArgumentException if either argument isn't positive
+   */
+  public IrStreamChunkFilterWriter (OutputStream outputStream, int numEventsPerChunk,
+                                    int numBitsPerElement)
+  {
+    if (numEventsPerChunk <= 0 || numBitsPerElement <= 0) {
+      throw new IllegalArgumentException("Chunk size and bits per element must be positive.");
+    }
+    this.outputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+    this.numEventsPerChunk = numEventsPerChunk;
+    this.numBitsPerElement = numBitsPerElement;
+    // The optimal number of hash functions is (bits per element) * ln(2)
+    numHashFunctions = Math.max(1, Math.min(IrStreamChunkFilters.MAX_NUM_HASH_FUNCTIONS,
+                                            (int)Math.round(numBitsPerElement * Math.log(2))));
+  }
+
+  /**
+   * @return The number of chunks written so far
+   */
+  public long getNumChunks () {
+    return numChunks;
+  }
+
+  @Override
+  public void flush () throws IOException {
+    outputStream.flush();
+  }
+
+  /**
+   * Writes the last chunk (if it has any events) and closes the writer
+   * @throws IOException on I/O error
+   */
+  @Override
+  public void close () throws IOException {
+    if (numEventsInChunk > 0) {
+      writeChunk();
+    }
+    outputStream.close();
+  }
+
+  /**
+   * Writes the sidecar's header
+   * @throws IOException on I/O error
+   */
+  void writeHeader () throws IOException {
+    if (headerWritten) {
+      throw new IllegalStateException("Chunk filter writer is already in use.");
+    }
+    outputStream.write(IrStreamChunkFilters.MAGIC_NUMBER);
+    outputStream.writeByte(IrStreamChunkFilters.VERSION);
+    outputStream.writeByte(numHashFunctions);
+    headerWritten = true;
+  }
+
+  /**
+   * Adds the given encoded log events to the filters
+   * @param encodedLogEvents The encoded log events between the buffer's
+   * position and limit. The buffer's position is advanced to its limit.
+   * @param byteOffset The offset in the IR stream of the first event
+   * @param referenceTimestamp The timestamp that the first event's timestamp
+   * delta is relative to
+   * @throws IOException on I/O error or if the events are corrupt
+   */
+  void addLogEvents (ByteBuffer encodedLogEvents, long byteOffset, long referenceTimestamp)
+      throws IOException
+  {
+    int beginPosition = encodedLogEvents.position();
+    try {
+      while (encodedLogEvents.hasRemaining()) {
+        if (0 == numEventsInChunk) {
+          chunkByteOffset = byteOffset + (encodedLogEvents.position() - beginPosition);
+          chunkReferenceTimestamp = referenceTimestamp;
+        }
+        referenceTimestamp = addLogEvent(encodedLogEvents, referenceTimestamp);
+        ++numEventsInChunk;
+        if (numEventsInChunk == numEventsPerChunk) {
+          writeChunk();
+        }
+      }
+    } catch (RuntimeException e) {
+      // Thrown by the buffer if an event is truncated
+      throw new IOException("Encoded log events are corrupt.", e);
+    }
+  }
+
+  /**
+   * Adds the logtype and dictionary variables of the log event at the
+   * buffer's position to the current chunk's filter
+   * @param encodedLogEvents
+   * @param referenceTimestamp
+   * @return The event's timestamp
+   * @throws IOException if the event is corrupt
+   */
+  private long addLogEvent (ByteBuffer encodedLogEvents, long referenceTimestamp)
+      throws IOException
+  {
+    while (true) {
+      byte tag = encodedLogEvents.get();
+      switch (tag) {
+        case IrStreamProtocol.Payload.VAR_STR_LEN_UBYTE:
+          addElement(encodedLogEvents, encodedLogEvents.get() & 0xFF,
+                     IrStreamChunkFilters.DICT_VAR_HASH_SEED);
+          break;
+        case IrStreamProtocol.Payload.VAR_STR_LEN_USHORT:
+          addElement(encodedLogEvents, encodedLogEvents.getShort() & 0xFFFF,
+                     IrStreamChunkFilters.DICT_VAR_HASH_SEED);
+          break;
+        case IrStreamProtocol.Payload.VAR_STR_LEN_INT:
+          addElement(encodedLogEvents, encodedLogEvents.getInt(),
+                     IrStreamChunkFilters.DICT_VAR_HASH_SEED);
+          break;
+        case IrStreamProtocol.Payload.VAR_FOUR_BYTE_ENCODING:
+          encodedLogEvents.position(encodedLogEvents.position() + Integer.BYTES);
+          break;
+        case IrStreamProtocol.Payload.VAR_EIGHT_BYTE_ENCODING:
+          encodedLogEvents.position(encodedLogEvents.position() + Long.BYTES);
+          break;
+        case IrStreamProtocol.Payload.LOGTYPE_STR_LEN_UBYTE:
+          addElement(encodedLogEvents, encodedLogEvents.get() & 0xFF,
+                     IrStreamChunkFilters.LOGTYPE_HASH_SEED);
+          return readTimestamp(encodedLogEvents, referenceTimestamp);
+        case IrStreamProtocol.Payload.LOGTYPE_STR_LEN_USHORT:
+          addElement(encodedLogEvents, encodedLogEvents.getShort() & 0xFFFF,
+                     IrStreamChunkFilters.LOGTYPE_HASH_SEED);
+          return readTimestamp(encodedLogEvents, referenceTimestamp);
+        case IrStreamProtocol.Payload.LOGTYPE_STR_LEN_INT:
+          addElement(encodedLogEvents, encodedLogEvents.getInt(),
+                     IrStreamChunkFilters.LOGTYPE_HASH_SEED);
+          return readTimestamp(encodedLogEvents, referenceTimestamp);
+        default:
+          throw new IOException("Unexpected tag: " + tag);
+      }
+    }
+  }
+
+  /**
+   * Reads a log event's timestamp
+   * @param encodedLogEvents
+   * @param referenceTimestamp The timestamp that a timestamp delta is
+   * relative to
+   * @return The timestamp
+   * @throws IOException if the timestamp tag is invalid
+   */
+  private static long readTimestamp (ByteBuffer encodedLogEvents, long referenceTimestamp)
+      throws IOException
+  {
+    byte tag = encodedLogEvents.get();
+    switch (tag) {
+      case IrStreamProtocol.Payload.TIMESTAMP_VAL:
+        return encodedLogEvents.getLong();
+      case IrStreamProtocol.Payload.TIMESTAMP_DELTA_BYTE:
+        return referenceTimestamp + encodedLogEvents.get();
+      case IrStreamProtocol.Payload.TIMESTAMP_DELTA_SHORT:
+        return referenceTimestamp + encodedLogEvents.getShort();
+      case IrStreamProtocol.Payload.TIMESTAMP_DELTA_INT:
+        return referenceTimestamp + encodedLogEvents.getInt();
+      case IrStreamProtocol.Payload.TIMESTAMP_DELTA_LONG:
+        return referenceTimestamp + encodedLogEvents.getLong();
+      default:
+        throw new IOException("Unexpected timestamp tag: " + tag);
+    }
+  }
+
+  /**
+   * Adds the hash of the next {@code length} bytes in the buffer to the
+   * current chunk's elements, advancing the buffer's position past them
+   * @param encodedLogEvents
+   * @param length
+   * @param seed
+   * @throws IOException if the length is invalid
+   */
+  private void addElement (ByteBuffer encodedLogEvents, int length, long seed)
+      throws IOException
+  {
+    if (length < 0 || length > encodedLogEvents.remaining()) {
+      throw new IOException("Invalid length: " + length);
+    }
+    int offset = encodedLogEvents.position();
+    if (numElements == elementHashes.length) {
+      elementHashes = Arrays.copyOf(elementHashes, numElements * 2);
+    }
+    elementHashes[numElements++] =
+        IrStreamChunkFilters.hash(encodedLogEvents, offset, length, seed);
+    encodedLogEvents.position(offset + length);
+  }
+
+  /**
+   * Writes the current chunk's entry and resets the chunk
+   * @throws IOException on I/O error
+   */
+  private void writeChunk () throws IOException {
+    // Size the filter for the chunk's unique elements
+    Arrays.sort(elementHashes, 0, numElements);
+    int numUniqueElements = 0;
+    for (int i = 0; i < numElements; ++i) {
+      if (0 == i || elementHashes[i] != elementHashes[i - 1]) {
+        elementHashes[numUniqueElements++] = elementHashes[i];
+      }
+    }
+    long numBits = Math.max(Long.SIZE, (long)numUniqueElements * numBitsPerElement);
+    int numWords = (int)Math.min(Integer.MAX_VALUE, (numBits + Long.SIZE - 1) / Long.SIZE);
+    long[] filter = new long[numWords];
+    for (int i = 0; i < numUniqueElements; ++i) {
+      IrStreamChunkFilters.addToFilter(filter, elementHashes[i], numHashFunctions);
+    }
+
+    outputStream.writeLong(chunkByteOffset);
+    outputStream.writeLong(chunkReferenceTimestamp);
+    outputStream.writeInt(numEventsInChunk);
+    outputStream.writeInt(numWords);
+    for (long word : filter) {
+      outputStream.writeLong(word);
+    }
+    ++numChunks;
+
+    numEventsInChunk = 0;
+    numElements = 0;
+    if (elementHashes.length > INITIAL_NUM_ELEMENTS_CAPACITY * 16) {
+      // Don't hold onto the memory from an unusually large chunk
+      elementHashes = new long[INITIAL_NUM_ELEMENTS_CAPACITY];
+    }
+  }
+}
@@ -0,0 +1,272 @@
+package com.yscope.clp.irstream;
+
+import com.yscope.clp.compressorfrontend.AbstractClpEncodedSubquery;
+import com.yscope.clp.compressorfrontend.ByteSegment;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The per-chunk Bloom filters of an IR stream, read from the sidecar written
+ * by an {@link IrStreamChunkFilterWriter}. Each entry records the byte offset
+ * in the (uncompressed) IR stream where a chunk begins, the reference
+ * timestamp needed to decode the chunk's first timestamp (for the four-byte
+ * encoding), the number of events in the chunk, and a filter containing the
+ * chunk's logtypes and dictionary variables.
+ * <p></p>
+ * A chunk can only match a subquery if its filter contains the subquery's
+ * exact dictionary variables and, if the subquery's logtype query has no
+ * wildcards, the logtype query itself. Filters have no false negatives, so
+ * chunks that can't match are skipped without missing any results.
+ * @see MappedClpIrFileReader#MappedClpIrFileReader(java.nio.file.Path,
+ * IrStreamChunkFilters)
+ */
+public class IrStreamChunkFilters {
+  static final byte[] MAGIC_NUMBER = {'C', 'L', 'P', 'B'};
+  static final byte VERSION = 1;
+  static final int MAX_NUM_HASH_FUNCTIONS = 16;
+
+  // Seeds that keep a logtype and a dictionary variable with the same bytes
+  // from hashing to the same bits
+  static final long LOGTYPE_HASH_SEED = 0x6c6f6774797065L;
+  static final long DICT_VAR_HASH_SEED = 0x64696374766172L;
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final int numHashFunctions;
+  private final long[] byteOffsets;
+  private final long[] referenceTimestamps;
+  private final int[] numEvents;
+  private final long[][] filters;
+
+  private IrStreamChunkFilters (int numHashFunctions, long[] byteOffsets,
+                                long[] referenceTimestamps, int[] numEvents, long[][] filters)
+  {
+    this.numHashFunctions = numHashFunctions;
+    this.byteOffsets = byteOffsets;
+    this.referenceTimestamps = referenceTimestamps;
+    this.numEvents = numEvents;
+    this.filters = filters;
+  }
+
+  /**
+   * Reads the filters from the given stream. The stream is read to its end
+   * but isn't closed.
+   * @param inputStream
+   * @return The filters
+   * @throws IOException on I/O error or if the sidecar is invalid
+   */
+  public static IrStreamChunkFilters read (InputStream inputStream) throws IOException {
+    DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(inputStream));
+
+    byte[] magicNumber = new byte[MAGIC_NUMBER.length];
+    dataInputStream.readFully(magicNumber);
+    if (false == Arrays.equals(MAGIC_NUMBER, magicNumber)) {
+      throw new IOException("Invalid chunk filters magic number.");
+    }
+    byte version = dataInputStream.readByte();
+    if (VERSION != version) {
+      throw new IOException("Unsupported chunk filters version: " + version);
+    }
+    int numHashFunctions = dataInputStream.readByte();
+    if (numHashFunctions < 1 || numHashFunctions > MAX_NUM_HASH_FUNCTIONS) {
+      throw new IOException("Invalid number of hash functions: " + numHashFunctions);
+    }
+
+    List<long[]> entries = new ArrayList<>();
+    List<long[]> filters = new ArrayList<>();
+    while (true) {
+      long byteOffset;
+      try {
+        byteOffset = dataInputStream.readLong();
+      } catch (EOFException e) {
+        break;
+      }
+      long referenceTimestamp = dataInputStream.readLong();
+      int numChunkEvents = dataInputStream.readInt();
+      int numWords = dataInputStream.readInt();
+      if (numChunkEvents <= 0 || numWords <= 0) {
+        throw new IOException("Invalid chunk filter entry.");
+      }
+      if (false == entries.isEmpty() && byteOffset <= entries.get(entries.size() - 1)[0]) {
+        throw new IOException("Chunk filter entries aren't in stream order.");
+      }
+      long[] filter = new long[numWords];
+      for (int i = 0; i < numWords; ++i) {
+        filter[i] = dataInputStream.readLong();
+      }
+      entries.add(new long[] {byteOffset, referenceTimestamp, numChunkEvents});
+      filters.add(filter);
+    }
+
+    int numChunks = entries.size();
+    long[] byteOffsets = new long[numChunks];
+    long[] referenceTimestamps = new long[numChunks];
+    int[] numEvents = new int[numChunks];
+    for (int i = 0; i < numChunks; ++i) {
+      long[] entry = entries.get(i);
+      byteOffsets[i] = entry[0];
+      referenceTimestamps[i] = entry[1];
+      numEvents[i] = (int)entry[2];
+    }
+    return new IrStreamChunkFilters(numHashFunctions, byteOffsets, referenceTimestamps,
+                                    numEvents, filters.toArray(new long[0][]));
+  }
+
+  public int getNumChunks () {
+    return byteOffsets.length;
+  }
+
+  /**
+   * @param chunkIdx
+   * @return The offset in the IR stream where the chunk begins
+   */
+  public long getByteOffset (int chunkIdx) {
+    checkChunkIdx(chunkIdx);
+    return byteOffsets[chunkIdx];
+  }
+
+  /**
+   * @param chunkIdx
+   * @return The timestamp that the timestamp delta of the chunk's first log
+   * event is relative to
+   */
+  public long getReferenceTimestamp (int chunkIdx) {
+    checkChunkIdx(chunkIdx);
+    return referenceTimestamps[chunkIdx];
+  }
+
+  /**
+   * @param chunkIdx
+   * @return The number of log events in the chunk
+   */
+  public int getNumEvents (int chunkIdx) {
+    checkChunkIdx(chunkIdx);
+    return numEvents[chunkIdx];
+  }
+
+  /**
+   * Finds the chunks that may contain log events matching any of the given
+   * subqueries
+   * @param subqueries
+   * @return The indices of the chunks that may match
+   */
+  public BitSet findCandidateChunks (@NotNull AbstractClpEncodedSubquery[] subqueries) {
+    Objects.requireNonNull(subqueries);
+
+    // Hash each subquery's exact elements once
+    long[][] subqueryHashes = new long[subqueries.length][];
+    for (int i = 0; i < subqueries.length; ++i) {
+      AbstractClpEncodedSubquery subquery = subqueries[i];
+      List<Long> hashes = new ArrayList<>();
+      if (false == subquery.logtypeQueryContainsWildcards()) {
+        byte[] logtypeQuery = subquery.getLogtypeQuery();
+        hashes.add(hash(ByteBuffer.wrap(logtypeQuery), 0, logtypeQuery.length,
+                        LOGTYPE_HASH_SEED));
+      }
+      for (ByteSegment dictVar : subquery.getDictVars()) {
+        byte[] dictVarBytes = dictVar.toByteArray();
+        hashes.add(hash(ByteBuffer.wrap(dictVarBytes), 0, dictVarBytes.length,
+                        DICT_VAR_HASH_SEED));
+      }
+      subqueryHashes[i] = new long[hashes.size()];
+      for (int j = 0; j < subqueryHashes[i].length; ++j) {
+        subqueryHashes[i][j] = hashes.get(j);
+      }
+    }
+
+    BitSet candidateChunks = new BitSet(filters.length);
+    for (int chunkIdx = 0; chunkIdx < filters.length; ++chunkIdx) {
+      for (long[] hashes : subqueryHashes) {
+        boolean mayMatch = true;
+        for (long hash : hashes) {
+          if (false == filterMayContain(filters[chunkIdx], hash, numHashFunctions)) {
+            mayMatch = false;
+            break;
+          }
+        }
+        if (mayMatch) {
+          candidateChunks.set(chunkIdx);
+          break;
+        }
+      }
+    }
+    return candidateChunks;
+  }
+
+  /**
+   * Hashes a range of bytes with 64-bit FNV-1a followed by a finalizer to mix
+   * the bits
+   * @param bytes
+   * @param offset
+   * @param length
+   * @param seed
+   * @return The hash
+   */
+  static long hash (ByteBuffer bytes, int offset, int length, long seed) {
+    long h = FNV_OFFSET_BASIS ^ seed;
+    for (int i = offset; i < offset + length; ++i) {
+      h ^= bytes.get(i) & 0xFF;
+      h *= FNV_PRIME;
+    }
+    // MurmurHash3's fmix64
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Sets the filter bits for the given element hash, deriving each hash
+   * function from the two halves of the hash (double hashing)
+   * @param filter
+   * @param hash
+   * @param numHashFunctions
+   */
+  static void addToFilter (long[] filter, long hash, int numHashFunctions) {
+    long numBits = (long)filter.length * Long.SIZE;
+    long h1 = hash & 0xFFFFFFFFL;
+    long h2 = hash >>> 32;
+    for (int i = 0; i < numHashFunctions; ++i) {
+      long bitIdx = (h1 + i * h2) % numBits;
+      filter[(int)(bitIdx / Long.SIZE)] |= 1L << (bitIdx % Long.SIZE);
+    }
+  }
+
+  /**
+   * @param filter
+   * @param hash
+   * @param numHashFunctions
+   * @return Whether the filter may contain the element with the given hash
+   */
+  static boolean filterMayContain (long[] filter, long hash, int numHashFunctions) {
+    long numBits = (long)filter.length * Long.SIZE;
+    long h1 = hash & 0xFFFFFFFFL;
+    long h2 = hash >>> 32;
+    for (int i = 0; i < numHashFunctions; ++i) {
+      long bitIdx = (h1 + i * h2) % numBits;
+      if (0 == (filter[(int)(bitIdx / Long.SIZE)] & (1L << (bitIdx % Long.SIZE)))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void checkChunkIdx (int chunkIdx) {
+    if (chunkIdx < 0 || chunkIdx >= byteOffsets.length) {
+      throw new IndexOutOfBoundsException("Invalid chunk index: " + chunkIdx);
+    }
+  }
+}
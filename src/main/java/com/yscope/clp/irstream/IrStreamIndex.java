@@ -0,0 +1,170 @@
+package com.yscope.clp.irstream;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A timestamp index for an IR stream, read from the sidecar written by an
+ * {@link IrStreamIndexWriter}. Each entry records the timestamp of a log
+ * event, the byte offset in the IR stream where the event begins, and the
+ * reference timestamp needed to decode the event's timestamp (for the
+ * four-byte encoding).
+ * <p></p>
+ * For Zstandard-compressed IR streams, entries are only recorded at the start
+ * of frames, and byte offsets are offsets of frames in the compressed stream.
+ * <p></p>
+ * The index assumes the stream's timestamps are non-decreasing, which is the
+ * case for typical logs.
+ * @see AbstractClpIrInputStream#seekToTimestamp
+ */
+public class IrStreamIndex {
+  static final byte[] MAGIC_NUMBER = {'C', 'L', 'P', 'X'};
+  static final byte VERSION = 1;
+  static final byte FLAG_COMPRESSED_STREAM = 0x01;
+  static final int ENTRY_SIZE = 3 * Long.BYTES;
+
+  private static final int INITIAL_NUM_ENTRIES_CAPACITY = 64;
+
+  private final boolean forCompressedStream;
+  private final long[] timestamps;
+  private final long[] byteOffsets;
+  private final long[] referenceTimestamps;
+  private final int numEntries;
+
+  private IrStreamIndex (boolean forCompressedStream, long[] timestamps, long[] byteOffsets,
+                         long[] referenceTimestamps, int numEntries)
+  {
+    this.forCompressedStream = forCompressedStream;
+    this.timestamps = timestamps;
+    this.byteOffsets = byteOffsets;
+    this.referenceTimestamps = referenceTimestamps;
+    this.numEntries = numEntries;
+  }
+
+  /**
+   * Reads an index from the given stream. The stream is read to its end but
+   * isn't closed.
+   * @param inputStream
+   * @return The index
+   * @throws IOException on I/O error or if the index is invalid
+   */
+  public static IrStreamIndex read (InputStream inputStream) throws IOException {
+    DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(inputStream));
+
+    byte[] magicNumber = new byte[MAGIC_NUMBER.length];
+    dataInputStream.readFully(magicNumber);
+    if (false == Arrays.equals(MAGIC_NUMBER, magicNumber)) {
+      throw new IOException("Invalid index magic number.");
+    }
+    byte version = dataInputStream.readByte();
+    if (VERSION != version) {
+      throw new IOException("Unsupported index version: " + version);
+    }
+    byte flags = dataInputStream.readByte();
+
+    long[] timestamps = new long[INITIAL_NUM_ENTRIES_CAPACITY];
+    long[] byteOffsets = new long[INITIAL_NUM_ENTRIES_CAPACITY];
+    long[] referenceTimestamps = new long[INITIAL_NUM_ENTRIES_CAPACITY];
+    int numEntries = 0;
+    while (true) {
+      long timestamp;
+      try {
+        timestamp = dataInputStream.readLong();
+      } catch (EOFException e) {
+        break;
+      }
+      if (numEntries == timestamps.length) {
+        timestamps = Arrays.copyOf(timestamps, numEntries * 2);
+        byteOffsets = Arrays.copyOf(byteOffsets, numEntries * 2);
+        referenceTimestamps = Arrays.copyOf(referenceTimestamps, numEntries * 2);
+      }
+      timestamps[numEntries] = timestamp;
+      byteOffsets[numEntries] = dataInputStream.readLong();
+      referenceTimestamps[numEntries] = dataInputStream.readLong();
+      if (numEntries > 0 && byteOffsets[numEntries] <= byteOffsets[numEntries - 1]) {
+        throw new IOException("Index entries aren't in stream order.");
+      }
+      ++numEntries;
+    }
+
+    return new IrStreamIndex(0 != (flags & FLAG_COMPRESSED_STREAM), timestamps, byteOffsets,
+                             referenceTimestamps, numEntries);
+  }
+
+  /**
+   * @return Whether the indexed stream is Zstandard-compressed
+   */
+  public boolean isForCompressedStream () {
+    return forCompressedStream;
+  }
+
+  public int getNumEntries () {
+    return numEntries;
+  }
+
+  /**
+   * @param entryIdx
+   * @return The timestamp of the first log event at the entry's byte offset
+   */
+  public long getTimestamp (int entryIdx) {
+    checkEntryIdx(entryIdx);
+    return timestamps[entryIdx];
+  }
+
+  /**
+   * @param entryIdx
+   * @return The offset in the IR stream (or compressed stream) that the entry
+   * points to
+   */
+  public long getByteOffset (int entryIdx) {
+    checkEntryIdx(entryIdx);
+    return byteOffsets[entryIdx];
+  }
+
+  /**
+   * @param entryIdx
+   * @return The timestamp that the timestamp delta of the first log event at
+   * the entry's byte offset is relative to
+   */
+  public long getReferenceTimestamp (int entryIdx) {
+    checkEntryIdx(entryIdx);
+    return referenceTimestamps[entryIdx];
+  }
+
+  /**
+   * Finds the entry to start scanning from to find the first log event with a
+   * timestamp at or after the given timestamp. This is the last entry with a
+   * timestamp before the given timestamp or, if there's no such entry, the
+   * first entry.
+   * @param timestamp
+   * @return The index of the entry, or -1 if the index is empty
+   */
+  public int findEntry (long timestamp) {
+    if (0 == numEntries) {
+      return -1;
+    }
+
+    // Binary search for the first entry with a timestamp >= the given one
+    int low = 0;
+    int high = numEntries;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (timestamps[mid] < timestamp) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return Math.max(low - 1, 0);
+  }
+
+  private void checkEntryIdx (int entryIdx) {
+    if (entryIdx < 0 || entryIdx >= numEntries) {
+      throw new IndexOutOfBoundsException("Invalid entry index: " + entryIdx);
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package com.yscope.clp.irstream;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a timestamp index sidecar for an IR stream. To use it, pass it to
+ * {@link AbstractClpIrOutputStream#setIndexWriter} before writing any log
+ * events; the IR output stream then adds an entry whenever one is due and
+ * closes the index writer when it's closed.
+ * <p></p>
+ * For uncompressed IR streams, an entry is added for the first log event and
+ * then whenever either {@code eventInterval} events or {@code byteInterval}
+ * bytes have been written since the last entry. For IR streams compressed with
+ * a {@link ZstdFrameOutputStream}, an entry is added at the start of every
+ * frame since frames are the smallest unit that can be seeked to.
+ * <p></p>
+ * NOTE: Batches written with {@link AbstractClpIrOutputStream#writeLogEvents}
+ * are indexed as a whole, so entries can only point to the start of a batch.
+ * @see IrStreamIndex
+ */
+public class IrStreamIndexWriter implements AutoCloseable, Flushable {
+  public static final int DEFAULT_EVENT_INTERVAL = 4096;
+  public static final long DEFAULT_BYTE_INTERVAL = 1024 * 1024;
+
+  private final DataOutputStream outputStream;
+  private final int eventInterval;
+  private final long byteInterval;
+
+  private boolean headerWritten = false;
+  private long numEntries = 0;
+  private int numEventsSinceLastEntry = 0;
+  private long lastEntryByteOffset = 0;
+
+  /**
+   * Constructs a writer using {@link #DEFAULT_EVENT_INTERVAL} and
+   * {@link #DEFAULT_BYTE_INTERVAL}
+   * @param outputStream Stream which the index should be written to
+   */
+  public IrStreamIndexWriter (OutputStream outputStream) {
+    this(outputStream, DEFAULT_EVENT_INTERVAL, DEFAULT_BYTE_INTERVAL);
+  }
+
+  /**
+   * @param outputStream Stream which the index should be written to
+   * @param eventInterval The number of events after which an entry is added
+   * @param byteInterval The number of IR bytes after which an entry is added
+   * @throws IllegalArgumentException if either interval isn't positive
+   */
+  public IrStreamIndexWriter (OutputStream outputStream, int eventInterval, long byteInterval) {
+    if (eventInterval <= 0 || byteInterval <= 0) {
+      throw new IllegalArgumentException("Index intervals must be positive.");
+    }
+    this.outputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+    this.eventInterval = eventInterval;
+    this.byteInterval = byteInterval;
+  }
+
+  /**
+   * @return The number of entries written so far
+   */
+  public long getNumEntries () {
+    return numEntries;
+  }
+
+  @Override
+  public void flush () throws IOException {
+    outputStream.flush();
+  }
+
+  @Override
+  public void close () throws IOException {
+    outputStream.close();
+  }
+
+  /**
+   * Writes the index's header
+   * @param forCompressedStream Whether the indexed stream is
+   * Zstandard-compressed
+   * @throws IOException on I/O error
+   */
+  void writeHeader (boolean forCompressedStream) throws IOException {
+    if (headerWritten) {
+      throw new IllegalStateException("Index writer is already in use.");
+    }
+    outputStream.write(IrStreamIndex.MAGIC_NUMBER);
+    outputStream.writeByte(IrStreamIndex.VERSION);
+    outputStream.writeByte(forCompressedStream ? IrStreamIndex.FLAG_COMPRESSED_STREAM : 0);
+    headerWritten = true;
+  }
+
+  /**
+   * @param byteOffset The offset in the IR stream where the next log event
+   * will be written
+   * @return Whether an entry should be added for the next log event
+   */
+  boolean isEntryDue (long byteOffset) {
+    return 0 == numEntries || numEventsSinceLastEntry >= eventInterval
+        || byteOffset - lastEntryByteOffset >= byteInterval;
+  }
+
+  /**
+   * Adds an entry
+   * @param timestamp The timestamp of the log event at {@code byteOffset}
+   * @param byteOffset
+   * @param referenceTimestamp The timestamp that the log event's timestamp
+   * delta is relative to
+   * @throws IOException on I/O error
+   */
+  void addEntry (long timestamp, long byteOffset, long referenceTimestamp) throws IOException {
+    outputStream.writeLong(timestamp);
+    outputStream.writeLong(byteOffset);
+    outputStream.writeLong(referenceTimestamp);
+    ++numEntries;
+    numEventsSinceLastEntry = 0;
+    lastEntryByteOffset = byteOffset;
+  }
+
+  /**
+   * Records that the given number of log events were written
+   * @param numEvents
+   */
+  void addEvents (int numEvents) {
+    numEventsSinceLastEntry += numEvents;
+  }
+}
@@ -0,0 +1,209 @@
+package com.yscope.clp.irstream;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The metadata stored in an IR stream's preamble.
+ */
+public class IrStreamMetadata {
+  private final Map<String, String> fields;
+
+  private IrStreamMetadata(Map<String, String> fields) {
+    this.fields = Collections.unmodifiableMap(fields);
+  }
+
+  public String getVersion() {
+    return fields.get(IrStreamProtocol.Metadata.VERSION_KEY);
+  }
+
+  public String getVariablesSchemaId() {
+    return fields.get(IrStreamProtocol.Metadata.VARIABLES_SCHEMA_ID_KEY);
+  }
+
+  public String getVariableEncodingMethodsId() {
+    return fields.get(IrStreamProtocol.Metadata.VARIABLE_ENCODING_METHODS_ID_KEY);
+  }
+
+  public String getTimestampPattern() {
+    return fields.get(IrStreamProtocol.Metadata.TIMESTAMP_PATTERN_KEY);
+  }
+
+  public String getTimestampPatternSyntax() {
+    return fields.get(IrStreamProtocol.Metadata.TIMESTAMP_PATTERN_SYNTAX_KEY);
+  }
+
+  public String getTimeZoneId() {
+    return fields.get(IrStreamProtocol.Metadata.TIME_ZONE_ID_KEY);
+  }
+
+  /**
+   * @return All metadata fields. Non-string values are returned as their JSON
+   * representation.
+   */
+  public Map<String, String> getFields() {
+    return fields;
+  }
+
+  /**
+   * Parses the given JSON metadata. Only a flat JSON object is supported since
+   * that's all the IR stream protocol currently uses.
+   * @param json
+   * @param length
+   * @return The parsed metadata
+   * @throws IOException if the metadata couldn't be parsed
+   */
+  static IrStreamMetadata parse(byte[] json, int length) throws IOException {
+    JsonParser parser = new JsonParser(new String(json, 0, length, StandardCharsets.UTF_8));
+    return new IrStreamMetadata(parser.parseFlatObject());
+  }
+
+  /**
+   * A minimal parser for a flat JSON object
+   */
+  private static class JsonParser {
+    private final String json;
+    private int pos;
+
+    JsonParser(String json) {
+      this.json = json;
+      pos = 0;
+    }
+
+    Map<String, String> parseFlatObject() throws IOException {
+      Map<String, String> fields = new HashMap<>();
+      skipWhitespace();
+      expect('{');
+      skipWhitespace();
+      if (peek() == '}') {
+        ++pos;
+      } else {
+        while (true) {
+          skipWhitespace();
+          String key = parseString();
+          skipWhitespace();
+          expect(':');
+          skipWhitespace();
+          String value = peek() == '"' ? parseString() : parseLiteral();
+          fields.put(key, value);
+          skipWhitespace();
+          char c = next();
+          if ('}' == c) {
+            break;
+          } else if (',' != c) {
+            throw new IOException("Invalid IR stream metadata: unexpected '" + c + "' at "
+                                      + (pos - 1) + ".");
+          }
+        }
+      }
+      skipWhitespace();
+      if (pos != json.length()) {
+        throw new IOException("Invalid IR stream metadata: trailing content.");
+      }
+      return fields;
+    }
+
+    private String parseString() throws IOException {
+      expect('"');
+      StringBuilder sb = new StringBuilder();
+      while (true) {
+        char c = next();
+        if ('"' == c) {
+          return sb.toString();
+        } else if ('\\' != c) {
+          sb.append(c);
+          continue;
+        }
+
+        c = next();
+        switch (c) {
+          case '"':
+          case '\\':
+          case '/':
+            sb.append(c);
+            break;
+          case 'b':
+            sb.append('\b');
+            break;
+          case 'f':
+            sb.append('\f');
+            break;
+          case 'n':
+            sb.append('\n');
+            break;
+          case 'r':
+            sb.append('\r');
+            break;
+          case 't':
+            sb.append('\t');
+            break;
+          case 'u':
+            if (pos + 4 > json.length()) {
+              throw new IOException("Invalid IR stream metadata: truncated escape sequence.");
+            }
+            try {
+              sb.append((char)Integer.parseInt(json.substring(pos, pos + 4), 16));
+            } catch (NumberFormatException e) {
+              throw new IOException("Invalid IR stream metadata: invalid escape sequence.", e);
+            }
+            pos += 4;
+            break;
+          default:
+            throw new IOException("Invalid IR stream metadata: invalid escape sequence.");
+        }
+      }
+    }
+
+    /**
+     * Parses a number, boolean, or null, returning it as its JSON
+     * representation
+     */
+    private String parseLiteral() throws IOException {
+      int beginPos = pos;
+      while (pos < json.length()) {
+        char c = json.charAt(pos);
+        if (',' == c || '}' == c || Character.isWhitespace(c)) {
+          break;
+        }
+        if ('{' == c || '[' == c || '"' == c) {
+          throw new IOException("Invalid IR stream metadata: nested values are unsupported.");
+        }
+        ++pos;
+      }
+      if (beginPos == pos) {
+        throw new IOException("Invalid IR stream metadata: missing value.");
+      }
+      return json.substring(beginPos, pos);
+    }
+
+    private void skipWhitespace() {
+      while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+        ++pos;
+      }
+    }
+
+    private char peek() throws IOException {
+      if (pos >= json.length()) {
+        throw new IOException("Invalid IR stream metadata: unexpected end.");
+      }
+      return json.charAt(pos);
+    }
+
+    private char next() throws IOException {
+      char c = peek();
+      ++pos;
+      return c;
+    }
+
+    private void expect(char expected) throws IOException {
+      char c = next();
+      if (expected != c) {
+        throw new IOException("Invalid IR stream metadata: expected '" + expected + "' but found '"
+                                  + c + "' at " + (pos - 1) + ".");
+      }
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.yscope.clp.irstream;
+
+/**
+ * Constants from CLP's IR stream protocol.
+ * <p></p>
+ * NOTE: These must be kept in sync with
+ * src/main/cpp/submodules/clp/components/core/src/ffi/ir_stream/protocol_constants.hpp
+ */
+final class IrStreamProtocol {
+  static final byte[] FOUR_BYTE_ENCODING_MAGIC_NUMBER =
+      {(byte)0xFD, (byte)0x2F, (byte)0xB5, (byte)0x29};
+  static final byte[] EIGHT_BYTE_ENCODING_MAGIC_NUMBER =
+      {(byte)0xFD, (byte)0x2F, (byte)0xB5, (byte)0x30};
+  static final int MAGIC_NUMBER_LENGTH = 4;
+
+  static final byte EOF = 0x00;
+
+  static final class Metadata {
+    static final byte ENCODING_JSON = 0x01;
+    static final byte LENGTH_UBYTE = 0x11;
+    static final byte LENGTH_USHORT = 0x12;
+
+    static final String VERSION_KEY = "VERSION";
+    static final String VARIABLES_SCHEMA_ID_KEY = "VARIABLES_SCHEMA_ID";
+    static final String VARIABLE_ENCODING_METHODS_ID_KEY = "VARIABLE_ENCODING_METHODS_ID";
+    static final String TIMESTAMP_PATTERN_KEY = "TIMESTAMP_PATTERN";
+    static final String TIMESTAMP_PATTERN_SYNTAX_KEY = "TIMESTAMP_PATTERN_SYNTAX";
+    static final String TIME_ZONE_ID_KEY = "TZ_ID";
+    static final String REFERENCE_TIMESTAMP_KEY = "REFERENCE_TIMESTAMP";
+
+    private Metadata() {}
+  }
+
+  static final class Payload {
+    static final byte VAR_FOUR_BYTE_ENCODING = 0x18;
+    static final byte VAR_EIGHT_BYTE_ENCODING = 0x19;
+
+    static final byte VAR_STR_LEN_UBYTE = 0x11;
+    static final byte VAR_STR_LEN_USHORT = 0x12;
+    static final byte VAR_STR_LEN_INT = 0x13;
+
+    static final byte LOGTYPE_STR_LEN_UBYTE = 0x21;
+    static final byte LOGTYPE_STR_LEN_USHORT = 0x22;
+    static final byte LOGTYPE_STR_LEN_INT = 0x23;
+
+    static final byte TIMESTAMP_VAL = 0x30;
+    static final byte TIMESTAMP_DELTA_BYTE = 0x31;
+    static final byte TIMESTAMP_DELTA_SHORT = 0x32;
+    static final byte TIMESTAMP_DELTA_INT = 0x33;
+    static final byte TIMESTAMP_DELTA_LONG = 0x34;
+
+    private Payload() {}
+  }
+
+  private IrStreamProtocol() {}
+}
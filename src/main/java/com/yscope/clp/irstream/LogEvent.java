@@ -0,0 +1,95 @@
+package com.yscope.clp.irstream;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A decoded log event read from an IR stream.
+ * <p></p>
+ * Instances are meant to be reused across reads to avoid allocations: the
+ * array returned by {@link #getMessage()} is an internal buffer that's
+ * overwritten by the next read, and only its first {@link #getMessageLength()}
+ * bytes are valid.
+ */
+public class LogEvent {
+  private static final int INITIAL_MESSAGE_CAPACITY = 1024;
+
+  private long timestamp;
+  private byte[] message;
+  private int messageLength;
+
+  public LogEvent() {
+    message = new byte[INITIAL_MESSAGE_CAPACITY];
+  }
+
+  /**
+   * Creates a copy of the given event whose message buffer is exactly as long
+   * as the message, for retaining events beyond the next read.
+   * @param other
+   */
+  LogEvent(LogEvent other) {
+    timestamp = other.timestamp;
+    message = other.copyMessage();
+    messageLength = other.messageLength;
+  }
+
+  /**
+   * Creates an event whose message is copied from the given range of a
+   * buffer
+   * @param timestamp
+   * @param messages
+   * @param messageBeginOffset
+   * @param messageEndOffset
+   */
+  LogEvent(long timestamp, byte[] messages, int messageBeginOffset, int messageEndOffset) {
+    this.timestamp = timestamp;
+    message = Arrays.copyOfRange(messages, messageBeginOffset, messageEndOffset);
+    messageLength = message.length;
+  }
+
+  /**
+   * @return The event's timestamp as milliseconds since the Unix epoch
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * @return The buffer containing the UTF-8 encoded message. Only the first
+   * {@link #getMessageLength()} bytes are valid.
+   */
+  public byte[] getMessage() {
+    return message;
+  }
+
+  public int getMessageLength() {
+    return messageLength;
+  }
+
+  public String getMessageAsString() {
+    return new String(message, 0, messageLength, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return A copy of the message that's exactly as long as the message.
+   */
+  public byte[] copyMessage() {
+    return Arrays.copyOf(message, messageLength);
+  }
+
+  void set(long timestamp, int messageLength) {
+    this.timestamp = timestamp;
+    this.messageLength = messageLength;
+  }
+
+  /**
+   * Ensures the message buffer can hold at least the given number of bytes.
+   * The buffer's existing content is discarded if it needs to grow.
+   * @param capacity
+   */
+  void ensureMessageCapacity(int capacity) {
+    if (capacity > message.length) {
+      message = new byte[Math.max(capacity, message.length * 2)];
+    }
+  }
+}
@@ -0,0 +1,911 @@
+package com.yscope.clp.irstream;
+
+import com.yscope.clp.compressorfrontend.AbstractClpEncodedSubquery;
+import com.yscope.clp.compressorfrontend.FourByteClpEncodedSubquery;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads an uncompressed IR file by memory-mapping it, so that disjoint
+ * segments of the file can be searched or decoded concurrently.
+ * <p></p>
+ * Segments begin at sync points, i.e., log events whose byte offsets and
+ * reference timestamps (for the four-byte encoding) are known. Sync points are
+ * either taken from the file's {@link IrStreamIndex} or, if there's no index,
+ * recorded when the reader is created by skipping over the file's log events
+ * without decoding them. Since an index may lag behind its file, sync points
+ * for the events after the index's last entry are also recorded by skipping
+ * over them. Either way, consecutive sync points are at least
+ * {@code segmentSize} bytes apart. Alternatively, the chunks of the file's
+ * {@link IrStreamChunkFilters} can be used as the segments, so that a search
+ * skips the chunks whose filters rule out every subquery; any events after the
+ * last chunk in the filters are always scanned. The last segment ends at the
+ * file's EOF tag or, if the file is still being written, after its last
+ * complete log event.
+ * <p></p>
+ * Segments are scanned straight from the mapping in a {@link ForkJoinPool}:
+ * decoding passes the mapped buffer to the native decoder, while searching
+ * reads each event's encoded form from the mapping without buffering the
+ * segment. Up to {@code 2 * parallelism} segments are scanned at a time, each
+ * into a bounded buffer of results, and the results are reported in file
+ * order as they're produced. So memory usage is bounded regardless of the size
+ * of the file or the number of results. NOTE: Results aren't sorted by
+ * timestamp; they're in the order the events were written, which is only
+ * timestamp order if the events were logged in timestamp order.
+ * <p></p>
+ * Files larger than 2 GiB are mapped in multiple chunks. NOTE: The mapping is
+ * only released once it's garbage-collected, since Java 8 has no API to unmap
+ * a file.
+ */
+public class MappedClpIrFileReader implements AutoCloseable {
+  public static final long DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+  // Each chunk's mapping extends to the maximum size of a mapping, so that
+  // the mappings of consecutive chunks overlap and any log event smaller than
+  // a chunk can be decoded from the mapping of the chunk it begins in
+  private static final int CHUNK_SIZE_BITS = 30;
+  private static final long CHUNK_SIZE = 1L << CHUNK_SIZE_BITS;
+  private static final long MAX_MAPPING_SIZE = Integer.MAX_VALUE;
+  private static final int SEGMENTS_PER_THREAD = 2;
+  // The maximum number of results buffered for each segment being scanned
+  private static final int SEGMENT_RESULTS_CAPACITY = 1024;
+  // The maximum number of events decoded per native call
+  private static final int DECODE_BATCH_SIZE = 256;
+  private static final int INITIAL_DECODE_BUFFER_SIZE = 64 * 1024;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer[] chunks;
+  private final long fileSize;
+  private final boolean useFourByteEncoding;
+  // The magic number and metadata
+  private final byte[] preamble;
+  private final IrStreamMetadata metadata;
+  // The offset where the file's log events end
+  private final long eventsEndOffset;
+
+  private long[] syncPointOffsets = new long[16];
+  private long[] syncPointReferenceTimestamps = new long[16];
+  private int numSyncPoints = 0;
+  // The chunk filters for the segments, if the segments are chunks
+  private final IrStreamChunkFilters chunkFilters;
+
+  private volatile boolean closed = false;
+
+  /**
+   * Callback for the log events produced by a scan
+   */
+  public interface LogEventHandler {
+    /**
+     * @param logEvent The log event. The reader doesn't reuse the event.
+     * @return Whether to continue scanning
+     * @throws IOException to abort the scan
+     */
+    boolean handleLogEvent(LogEvent logEvent) throws IOException;
+  }
+
+  /**
+   * Constructs a reader that records its own sync points, using
+   * {@link #DEFAULT_SEGMENT_SIZE}
+   * @see #MappedClpIrFileReader(Path, IrStreamIndex, long)
+   */
+  public MappedClpIrFileReader (@NotNull Path path) throws IOException {
+    this(path, null, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Constructs a reader using the given index's entries as sync points and
+   * {@link #DEFAULT_SEGMENT_SIZE}
+   * @see #MappedClpIrFileReader(Path, IrStreamIndex, long)
+   */
+  public MappedClpIrFileReader (@NotNull Path path, IrStreamIndex index) throws IOException {
+    this(path, index, DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * Constructs a reader using the chunks of the given filters as segments.
+   * {@link #search} only scans the chunks that may match the query, along
+   * with any events after the last chunk in the filters.
+   * @param path The IR file
+   * @param chunkFilters The chunk filters written alongside the file
+   * @throws IOException on I/O error, if the file is compressed, if the file
+   * is corrupt, or if a chunk is outside the file
+   */
+  public MappedClpIrFileReader (@NotNull Path path, @NotNull IrStreamChunkFilters chunkFilters)
+      throws IOException
+  {
+    this(path, null, Long.MAX_VALUE, Objects.requireNonNull(chunkFilters));
+  }
+
+  /**
+   * @param path The IR file
+   * @param index The index written alongside the file, or null to record
+   * sync points by skipping over the file's log events. Events after the
+   * index's last entry are always skipped over to record their sync points.
+   * @param segmentSize The minimum number of bytes between sync points
+   * @throws IllegalArgumentException if {@code segmentSize} isn't positive or
+   * the index is for a compressed stream
+   * @throws IOException on I/O error, if the file is compressed, or if the
+   * file is corrupt
+   */
+  public MappedClpIrFileReader (@NotNull Path path, IrStreamIndex index, long segmentSize)
+      throws IOException
+  {
+    this(path, index, segmentSize, null);
+  }
+
+  private MappedClpIrFileReader (Path path, IrStreamIndex index, long segmentSize,
+                                 IrStreamChunkFilters chunkFilters) throws IOException
+  {
+    Objects.requireNonNull(path);
+    this.chunkFilters = chunkFilters;
+    if (segmentSize <= 0) {
+      throw new IllegalArgumentException("Segment size must be positive.");
+    }
+    if (null != index && index.isForCompressedStream()) {
+      throw new IllegalArgumentException("Index is for a compressed stream.");
+    }
+
+    channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      fileSize = channel.size();
+      int numChunks = (int)((fileSize + CHUNK_SIZE - 1) >>> CHUNK_SIZE_BITS);
+      chunks = new MappedByteBuffer[numChunks];
+      for (int i = 0; i < numChunks; ++i) {
+        long chunkOffset = (long)i << CHUNK_SIZE_BITS;
+        chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, chunkOffset,
+                                Math.min(MAX_MAPPING_SIZE, fileSize - chunkOffset));
+      }
+
+      byte[] magicNumber = new byte[IrStreamProtocol.MAGIC_NUMBER_LENGTH];
+      for (int i = 0; i < magicNumber.length; ++i) {
+        magicNumber[i] = getByte(i);
+      }
+      if (Arrays.equals(IrStreamProtocol.FOUR_BYTE_ENCODING_MAGIC_NUMBER, magicNumber)) {
+        useFourByteEncoding = true;
+      } else if (Arrays.equals(IrStreamProtocol.EIGHT_BYTE_ENCODING_MAGIC_NUMBER, magicNumber)) {
+        useFourByteEncoding = false;
+      } else if (Arrays.equals(ZstdFrameInputStream.MAGIC_NUMBER, magicNumber)) {
+        throw new IOException("Compressed IR files can't be memory-mapped.");
+      } else {
+        throw new IOException("Invalid magic number.");
+      }
+
+      preamble = readPreamble();
+      AbstractClpIrInputStream preambleInputStream = ClpIrInputStreamFactory.fromInputStream(
+          new ByteArrayInputStream(preamble));
+      metadata = preambleInputStream.getMetadata();
+      preambleInputStream.close();
+
+      long referenceTimestamp = 0;
+      if (useFourByteEncoding) {
+        // The four-byte stream validated the reference timestamp when it
+        // parsed the metadata
+        referenceTimestamp = Long.parseLong(
+            metadata.getFields().get(IrStreamProtocol.Metadata.REFERENCE_TIMESTAMP_KEY));
+      }
+      if (null != chunkFilters) {
+        eventsEndOffset = addSyncPointsFromChunkFilters(referenceTimestamp);
+      } else if (null == index) {
+        eventsEndOffset = recordSyncPoints(new long[] {preamble.length, referenceTimestamp},
+                                           -1, segmentSize);
+      } else {
+        eventsEndOffset = addSyncPointsFromIndex(index, referenceTimestamp, segmentSize);
+      }
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return The metadata from the file's preamble
+   */
+  public IrStreamMetadata getMetadata () {
+    return metadata;
+  }
+
+  /**
+   * @return The number of segments that the file is scanned in
+   */
+  public int getNumSegments () {
+    return numSyncPoints;
+  }
+
+  /**
+   * Searches the file for log events matching a wildcard query. If the reader
+   * has chunk filters, only the chunks that may match are scanned.
+   * @param subqueries The subqueries of the query, using the file's encoding
+   * @param pool The pool to search the segments in
+   * @param handler Receives the matching events
+   * @return The number of matching events reported to the handler
+   * @throws IllegalArgumentException if the subqueries' encoding doesn't
+   * match the file's encoding
+   * @throws IOException on I/O error, if the file is corrupt, or if the
+   * handler throws one
+   * @see ClpIrStreamSearcher
+   */
+  public long search (
+      @NotNull AbstractClpEncodedSubquery[] subqueries,
+      @NotNull ForkJoinPool pool,
+      @NotNull LogEventHandler handler
+  ) throws IOException {
+    // Validate the subqueries before scanning any segments
+    new ClpIrStreamSearcher(subqueries);
+    if (subqueries.length > 0
+        && (subqueries[0] instanceof FourByteClpEncodedSubquery) != useFourByteEncoding)
+    {
+      throw new IllegalArgumentException("File's encoding doesn't match the subqueries' "
+                                             + "encoding.");
+    }
+
+    BitSet segmentsToScan;
+    if (null == chunkFilters) {
+      segmentsToScan = new BitSet(numSyncPoints);
+      segmentsToScan.set(0, numSyncPoints);
+    } else {
+      segmentsToScan = chunkFilters.findCandidateChunks(subqueries);
+      // The events after the last chunk have no filter
+      segmentsToScan.set(chunkFilters.getNumChunks(), numSyncPoints);
+    }
+    return scanSegments(pool, handler, segmentsToScan, (segmentIdx, results) -> {
+      try (AbstractClpIrInputStream inputStream = openSegment(segmentIdx)) {
+        ClpIrStreamSearcher searcher = new ClpIrStreamSearcher(subqueries);
+        searcher.search(inputStream, logEvent -> results.add(new LogEvent(logEvent)));
+      }
+    });
+  }
+
+  /**
+   * Decodes every log event in the file, in file order
+   * @param pool The pool to decode the segments in
+   * @param handler Receives the decoded events
+   * @return The number of events reported to the handler
+   * @throws IOException on I/O error, if the file is corrupt, or if the
+   * handler throws one
+   */
+  public long decodeAll (@NotNull ForkJoinPool pool, @NotNull LogEventHandler handler)
+      throws IOException
+  {
+    BitSet segmentsToScan = new BitSet(numSyncPoints);
+    segmentsToScan.set(0, numSyncPoints);
+    return scanSegments(pool, handler, segmentsToScan, this::decodeSegment);
+  }
+
+  /**
+   * Closes the reader's channel
+   * @throws IOException on I/O error
+   */
+  @Override
+  public void close () throws IOException {
+    closed = true;
+    channel.close();
+  }
+
+  /**
+   * Scans the given segments, reporting their results in file order as
+   * they're produced. A window of segments is scanned concurrently, each into
+   * its own bounded buffer; the next segment is submitted whenever the first
+   * segment in the window has been fully reported.
+   * @param pool
+   * @param handler
+   * @param segmentsToScan The indices of the segments to scan
+   * @param scanner
+   * @return The number of events reported to the handler
+   * @throws IOException if the reader is closed, if {@code scanner} throws
+   * one, or if the handler throws one
+   */
+  private long scanSegments (ForkJoinPool pool, LogEventHandler handler, BitSet segmentsToScan,
+                             SegmentScanner scanner) throws IOException
+  {
+    Objects.requireNonNull(pool);
+    Objects.requireNonNull(handler);
+    if (closed) {
+      throw new IOException("Reader closed.");
+    }
+
+    int[] segmentIdxs = segmentsToScan.stream().toArray();
+    int windowSize = pool.getParallelism() * SEGMENTS_PER_THREAD;
+    ArrayDeque<SegmentResults> window = new ArrayDeque<>(windowSize);
+    int nextIdx = 0;
+    long numEvents = 0;
+    try {
+      while (true) {
+        while (window.size() < windowSize && nextIdx < segmentIdxs.length) {
+          SegmentResults results = new SegmentResults();
+          window.add(results);
+          pool.execute(new SegmentScanTask(scanner, segmentIdxs[nextIdx++], results));
+        }
+        SegmentResults results = window.peek();
+        if (null == results) {
+          return numEvents;
+        }
+        LogEvent logEvent = results.take();
+        if (null == logEvent) {
+          window.poll();
+          continue;
+        }
+        ++numEvents;
+        if (false == handler.handleLogEvent(logEvent)) {
+          return numEvents;
+        }
+      }
+    } finally {
+      for (SegmentResults results : window) {
+        results.cancel();
+      }
+    }
+  }
+
+  /**
+   * @param segmentIdx
+   * @return The offset where the given segment ends
+   */
+  private long getSegmentEndOffset (int segmentIdx) {
+    return segmentIdx + 1 < numSyncPoints ? syncPointOffsets[segmentIdx + 1] : eventsEndOffset;
+  }
+
+  /**
+   * Opens an IR input stream that reads the given segment's log events
+   * straight from the mapping
+   * @param segmentIdx
+   * @return The input stream
+   */
+  private AbstractClpIrInputStream openSegment (int segmentIdx) {
+    InputStream segmentInputStream = new MappedRangeInputStream(
+        syncPointOffsets[segmentIdx], getSegmentEndOffset(segmentIdx));
+    if (useFourByteEncoding) {
+      return new FourByteClpIrInputStream(segmentInputStream, metadata,
+                                          syncPointReferenceTimestamps[segmentIdx]);
+    } else {
+      return new EightByteClpIrInputStream(segmentInputStream, metadata);
+    }
+  }
+
+  /**
+   * Decodes the given segment's log events by passing the mapping of the
+   * chunk containing the next event to the native decoder, in batches
+   * @param segmentIdx
+   * @param results Receives the decoded events
+   * @throws IOException if the reader is closed, if the segment is corrupt,
+   * or if an event is too large to be decoded from a single mapping
+   */
+  private void decodeSegment (int segmentIdx, SegmentResults results) throws IOException {
+    long offset = syncPointOffsets[segmentIdx];
+    long endOffset = getSegmentEndOffset(segmentIdx);
+    // The offset of the next event in its chunk's mapping, followed by its
+    // reference timestamp
+    long[] cursor = {0, syncPointReferenceTimestamps[segmentIdx]};
+    long[] timestamps = new long[DECODE_BATCH_SIZE];
+    int[] messageEndOffsets = new int[DECODE_BATCH_SIZE];
+    byte[] messages = new byte[INITIAL_DECODE_BUFFER_SIZE];
+    while (offset < endOffset) {
+      if (closed) {
+        throw new IOException("Reader closed.");
+      }
+      int chunkIdx = (int)(offset >>> CHUNK_SIZE_BITS);
+      long chunkOffset = (long)chunkIdx << CHUNK_SIZE_BITS;
+      MappedByteBuffer chunk = chunks[chunkIdx];
+      int limit = (int)Math.min(chunk.capacity(), endOffset - chunkOffset);
+      cursor[0] = offset - chunkOffset;
+      int numEvents;
+      if (useFourByteEncoding) {
+        numEvents = FourByteClpIrInputStream.decodeLogEvents(chunk, limit, cursor, timestamps,
+                                                             messages, messageEndOffsets);
+      } else {
+        numEvents = EightByteClpIrInputStream.decodeLogEvents(chunk, limit, cursor, timestamps,
+                                                              messages, messageEndOffsets);
+      }
+      if (numEvents < 0) {
+        messages = new byte[Math.max(-numEvents, messages.length * 2)];
+        continue;
+      }
+      if (0 == numEvents) {
+        if (IrStreamProtocol.EOF == getByte(offset)) {
+          return;
+        }
+        if (chunkOffset + limit == endOffset) {
+          throw new EOFException("Segment ended in the middle of a log event.");
+        }
+        // Since the event begins in this chunk, it must be larger than a chunk
+        throw new IOException("Log event at offset " + offset + " is too large to be mapped.");
+      }
+
+      offset = chunkOffset + cursor[0];
+      int messageBeginOffset = 0;
+      for (int i = 0; i < numEvents; ++i) {
+        LogEvent logEvent = new LogEvent(timestamps[i], messages, messageBeginOffset,
+                                         messageEndOffsets[i]);
+        if (false == results.add(logEvent)) {
+          return;
+        }
+        messageBeginOffset = messageEndOffsets[i];
+      }
+    }
+  }
+
+  /**
+   * @return The file's magic number and metadata
+   * @throws IOException if the metadata is truncated or its length tag is
+   * invalid
+   */
+  private byte[] readPreamble () throws IOException {
+    long offset = IrStreamProtocol.MAGIC_NUMBER_LENGTH;
+    // Skip the metadata encoding type, which the input stream validates
+    ++offset;
+    byte lengthTag = getByte(offset++);
+    int length;
+    if (IrStreamProtocol.Metadata.LENGTH_UBYTE == lengthTag) {
+      length = (int)getBigEndian(offset, Byte.BYTES) & 0xFF;
+      offset += Byte.BYTES;
+    } else if (IrStreamProtocol.Metadata.LENGTH_USHORT == lengthTag) {
+      length = (int)getBigEndian(offset, Short.BYTES) & 0xFFFF;
+      offset += Short.BYTES;
+    } else {
+      throw new IOException("Invalid metadata length tag: " + lengthTag);
+    }
+    long preambleLength = offset + length;
+    if (preambleLength > fileSize) {
+      throw new EOFException("File ended in the middle of the metadata.");
+    }
+    byte[] preambleBytes = new byte[(int)preambleLength];
+    for (int i = 0; i < preambleBytes.length; ++i) {
+      preambleBytes[i] = getByte(i);
+    }
+    return preambleBytes;
+  }
+
+  /**
+   * Records a sync point at the first log event after {@code cursor} that's
+   * at least {@code segmentSize} bytes after the previous sync point, and so
+   * on, by skipping over the events' contents. If the file has no EOF tag
+   * because it's still being written, the events end at the end of the file,
+   * or before an incomplete last event.
+   * @param cursor The offset of the first event and the timestamp that its
+   * timestamp delta is relative to
+   * @param lastSyncPointOffset The offset of the previous sync point, or -1 to
+   * record a sync point at the first event
+   * @param segmentSize
+   * @return The offset where the file's log events end
+   * @throws IOException if the file is corrupt
+   */
+  private long recordSyncPoints (long[] cursor, long lastSyncPointOffset, long segmentSize)
+      throws IOException
+  {
+    while (cursor[0] < fileSize && IrStreamProtocol.EOF != getByte(cursor[0])) {
+      long eventOffset = cursor[0];
+      long eventReferenceTimestamp = cursor[1];
+      try {
+        skipLogEvent(cursor);
+      } catch (EOFException e) {
+        // The event is still being written
+        return eventOffset;
+      }
+
+      if (lastSyncPointOffset < 0 || eventOffset - lastSyncPointOffset >= segmentSize) {
+        addSyncPoint(eventOffset, eventReferenceTimestamp);
+        lastSyncPointOffset = eventOffset;
+      }
+    }
+    return cursor[0];
+  }
+
+  /**
+   * Skips over the contents of the log event at {@code cursor}
+   * @param cursor The offset of the event and the timestamp that its
+   * timestamp delta is relative to. Both are advanced past the event.
+   * @throws EOFException if the file ends in the middle of the event
+   * @throws IOException if the event is corrupt
+   */
+  private void skipLogEvent (long[] cursor) throws IOException {
+    long offset = cursor[0];
+    long referenceTimestamp = cursor[1];
+    boolean logtypeReached = false;
+    while (false == logtypeReached) {
+      byte tag = getByte(offset++);
+      switch (tag) {
+        case IrStreamProtocol.Payload.VAR_STR_LEN_UBYTE:
+        case IrStreamProtocol.Payload.LOGTYPE_STR_LEN_UBYTE:
+          offset += Byte.BYTES + (getBigEndian(offset, Byte.BYTES) & 0xFF);
+          break;
+        case IrStreamProtocol.Payload.VAR_STR_LEN_USHORT:
+        case IrStreamProtocol.Payload.LOGTYPE_STR_LEN_USHORT:
+          offset += Short.BYTES + (getBigEndian(offset, Short.BYTES) & 0xFFFF);
+          break;
+        case IrStreamProtocol.Payload.VAR_STR_LEN_INT:
+        case IrStreamProtocol.Payload.LOGTYPE_STR_LEN_INT: {
+          long length = getBigEndian(offset, Integer.BYTES);
+          if (length < 0) {
+            throw new IOException("Invalid length: " + length);
+          }
+          offset += Integer.BYTES + length;
+          break;
+        }
+        case IrStreamProtocol.Payload.VAR_FOUR_BYTE_ENCODING:
+          if (false == useFourByteEncoding) {
+            throw new IOException("Unexpected tag: " + tag);
+          }
+          offset += Integer.BYTES;
+          break;
+        case IrStreamProtocol.Payload.VAR_EIGHT_BYTE_ENCODING:
+          if (useFourByteEncoding) {
+            throw new IOException("Unexpected tag: " + tag);
+          }
+          offset += Long.BYTES;
+          break;
+        default:
+          throw new IOException("Unexpected tag: " + tag);
+      }
+      logtypeReached = tag == IrStreamProtocol.Payload.LOGTYPE_STR_LEN_UBYTE
+          || tag == IrStreamProtocol.Payload.LOGTYPE_STR_LEN_USHORT
+          || tag == IrStreamProtocol.Payload.LOGTYPE_STR_LEN_INT;
+    }
+
+    // Skip the timestamp, tracking the reference timestamp of the next event
+    byte timestampTag = getByte(offset++);
+    int timestampSize;
+    switch (timestampTag) {
+      case IrStreamProtocol.Payload.TIMESTAMP_VAL:
+        timestampSize = Long.BYTES;
+        break;
+      case IrStreamProtocol.Payload.TIMESTAMP_DELTA_BYTE:
+        timestampSize = Byte.BYTES;
+        break;
+      case IrStreamProtocol.Payload.TIMESTAMP_DELTA_SHORT:
+        timestampSize = Short.BYTES;
+        break;
+      case IrStreamProtocol.Payload.TIMESTAMP_DELTA_INT:
+        timestampSize = Integer.BYTES;
+        break;
+      case IrStreamProtocol.Payload.TIMESTAMP_DELTA_LONG:
+        timestampSize = Long.BYTES;
+        break;
+      default:
+        throw new IOException("Unexpected timestamp tag: " + timestampTag);
+    }
+    if ((IrStreamProtocol.Payload.TIMESTAMP_VAL == timestampTag) == useFourByteEncoding) {
+      throw new IOException("Unexpected timestamp tag: " + timestampTag);
+    }
+    if (useFourByteEncoding) {
+      referenceTimestamp += getBigEndian(offset, timestampSize);
+    }
+    offset += timestampSize;
+    if (offset > fileSize) {
+      // The event's last string is still being written
+      throw new EOFException("File ended in the middle of a log event.");
+    }
+    cursor[0] = offset;
+    cursor[1] = referenceTimestamp;
+  }
+
+  /**
+   * Adds a sync point for the first index entry and then for the first entry
+   * after every {@code segmentSize} bytes. Since the index may not have been
+   * flushed as far as the file, sync points for the events after the last
+   * entry (or for every event, if the index is empty) are then recorded by
+   * skipping over them.
+   * @param index
+   * @param referenceTimestamp The reference timestamp from the metadata
+   * @param segmentSize
+   * @return The offset where the file's log events end
+   * @throws IOException if an entry is outside the file or the file is
+   * corrupt
+   */
+  private long addSyncPointsFromIndex (IrStreamIndex index, long referenceTimestamp,
+                                       long segmentSize) throws IOException
+  {
+    int numEntries = index.getNumEntries();
+    for (int i = 0; i < numEntries; ++i) {
+      long offset = index.getByteOffset(i);
+      if (offset < preamble.length || offset >= fileSize) {
+        throw new IOException("Index entry is outside the file: " + offset);
+      }
+      if (0 == numSyncPoints || offset - syncPointOffsets[numSyncPoints - 1] >= segmentSize) {
+        addSyncPoint(offset, index.getReferenceTimestamp(i));
+      }
+    }
+
+    if (0 == numEntries) {
+      return recordSyncPoints(new long[] {preamble.length, referenceTimestamp}, -1,
+                              segmentSize);
+    }
+    int lastEntryIdx = numEntries - 1;
+    long[] cursor = {index.getByteOffset(lastEntryIdx), index.getReferenceTimestamp(lastEntryIdx)};
+    return recordSyncPoints(cursor, syncPointOffsets[numSyncPoints - 1], segmentSize);
+  }
+
+  /**
+   * Adds a sync point for every chunk in the chunk filters. Each chunk ends
+   * where the next one begins, while the last chunk ends after its recorded
+   * number of events. If the sidecar is missing trailing chunks (e.g., because
+   * it wasn't flushed before the file), a sync point is also added for the
+   * events after the last chunk, so that they form a segment without a filter.
+   * @param referenceTimestamp The reference timestamp from the metadata
+   * @return The offset where the file's log events end
+   * @throws IOException if a chunk is outside the file or the file is corrupt
+   */
+  private long addSyncPointsFromChunkFilters (long referenceTimestamp) throws IOException {
+    int numChunks = chunkFilters.getNumChunks();
+    for (int i = 0; i < numChunks; ++i) {
+      long offset = chunkFilters.getByteOffset(i);
+      if (offset < preamble.length || offset >= fileSize) {
+        throw new IOException("Chunk is outside the file: " + offset);
+      }
+      addSyncPoint(offset, chunkFilters.getReferenceTimestamp(i));
+    }
+
+    long[] cursor = {preamble.length, referenceTimestamp};
+    if (numChunks > 0) {
+      int lastChunkIdx = numChunks - 1;
+      cursor[0] = chunkFilters.getByteOffset(lastChunkIdx);
+      cursor[1] = chunkFilters.getReferenceTimestamp(lastChunkIdx);
+      for (int i = 0; i < chunkFilters.getNumEvents(lastChunkIdx); ++i) {
+        long eventOffset = cursor[0];
+        try {
+          skipLogEvent(cursor);
+        } catch (EOFException e) {
+          // The file is behind the sidecar
+          return eventOffset;
+        }
+      }
+    }
+    return recordSyncPoints(cursor, -1, Long.MAX_VALUE);
+  }
+
+  private void addSyncPoint (long offset, long referenceTimestamp) {
+    if (numSyncPoints == syncPointOffsets.length) {
+      syncPointOffsets = Arrays.copyOf(syncPointOffsets, numSyncPoints * 2);
+      syncPointReferenceTimestamps =
+          Arrays.copyOf(syncPointReferenceTimestamps, numSyncPoints * 2);
+    }
+    syncPointOffsets[numSyncPoints] = offset;
+    syncPointReferenceTimestamps[numSyncPoints] = referenceTimestamp;
+    ++numSyncPoints;
+  }
+
+  /**
+   * @param offset
+   * @return The byte at the given offset in the file
+   * @throws EOFException if the offset is past the end of the file
+   */
+  private byte getByte (long offset) throws EOFException {
+    if (offset >= fileSize) {
+      throw new EOFException("File ended in the middle of a log event.");
+    }
+    return chunks[(int)(offset >>> CHUNK_SIZE_BITS)].get((int)(offset & (CHUNK_SIZE - 1)));
+  }
+
+  /**
+   * @param offset
+   * @param numBytes
+   * @return The sign-extended big-endian integer with the given number of
+   * bytes at the given offset in the file
+   * @throws EOFException if the integer extends past the end of the file
+   */
+  private long getBigEndian (long offset, int numBytes) throws EOFException {
+    long value = getByte(offset);
+    for (int i = 1; i < numBytes; ++i) {
+      value = (value << 8) | (getByte(offset + i) & 0xFF);
+    }
+    return value;
+  }
+
+  /**
+   * Scans a segment, adding the events it produces to {@code results}
+   */
+  private interface SegmentScanner {
+    void scan(int segmentIdx, SegmentResults results) throws IOException;
+  }
+
+  /**
+   * Task that scans a single segment
+   */
+  private class SegmentScanTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final SegmentScanner scanner;
+    private final int segmentIdx;
+    private final SegmentResults results;
+
+    SegmentScanTask (SegmentScanner scanner, int segmentIdx, SegmentResults results) {
+      this.scanner = scanner;
+      this.segmentIdx = segmentIdx;
+      this.results = results;
+    }
+
+    @Override
+    protected void compute () {
+      Throwable failure = null;
+      try {
+        scanner.scan(segmentIdx, results);
+      } catch (IOException | RuntimeException | Error e) {
+        failure = e;
+      } finally {
+        results.finish(failure);
+      }
+    }
+  }
+
+  /**
+   * A bounded buffer of the events produced by a segment's scan. The scan
+   * blocks while the buffer is full, using {@link ForkJoinPool#managedBlock}
+   * so that the pool can compensate for the blocked worker, until the events
+   * are taken in file order or the buffer is cancelled.
+   */
+  private static class SegmentResults implements ForkJoinPool.ManagedBlocker {
+    private final ArrayDeque<LogEvent> events = new ArrayDeque<>();
+    private boolean finished = false;
+    private boolean cancelled = false;
+    private Throwable failure = null;
+
+    /**
+     * Adds an event, blocking while the buffer is full
+     * @param logEvent
+     * @return Whether the scan should continue, i.e., false if the buffer was
+     * cancelled
+     * @throws InterruptedIOException if the thread was interrupted while
+     * waiting
+     */
+    boolean add (LogEvent logEvent) throws InterruptedIOException {
+      try {
+        ForkJoinPool.managedBlock(this);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for results to be taken.");
+      }
+      synchronized (this) {
+        if (cancelled) {
+          return false;
+        }
+        events.add(logEvent);
+        if (1 == events.size()) {
+          notifyAll();
+        }
+        return true;
+      }
+    }
+
+    /**
+     * @return The next event, or null if the scan finished and every event
+     * was taken
+     * @throws IOException if the scan failed, or if the thread was interrupted
+     * while waiting
+     */
+    synchronized LogEvent take () throws IOException {
+      while (events.isEmpty() && false == finished) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for a segment's results.");
+        }
+      }
+      if (SEGMENT_RESULTS_CAPACITY == events.size()) {
+        notifyAll();
+      }
+      LogEvent logEvent = events.poll();
+      if (null != logEvent) {
+        return logEvent;
+      }
+      if (failure instanceof IOException) {
+        throw (IOException)failure;
+      } else if (failure instanceof RuntimeException) {
+        throw (RuntimeException)failure;
+      } else if (failure instanceof Error) {
+        throw (Error)failure;
+      }
+      return null;
+    }
+
+    /**
+     * Marks the scan as finished
+     * @param failure The exception that ended the scan, or null if it
+     * succeeded
+     */
+    synchronized void finish (Throwable failure) {
+      finished = true;
+      this.failure = failure;
+      notifyAll();
+    }
+
+    /**
+     * Discards the buffered events and stops the scan at its next event
+     */
+    synchronized void cancel () {
+      cancelled = true;
+      events.clear();
+      notifyAll();
+    }
+
+    @Override
+    public synchronized boolean isReleasable () {
+      return cancelled || events.size() < SEGMENT_RESULTS_CAPACITY;
+    }
+
+    @Override
+    public synchronized boolean block () throws InterruptedException {
+      while (false == isReleasable()) {
+        wait();
+      }
+      return true;
+    }
+  }
+
+  /**
+   * An input stream over a range of the mapped file. Each stream reads from
+   * its own views of the chunks, since a buffer's position can't be shared
+   * between threads.
+   */
+  private class MappedRangeInputStream extends InputStream {
+    private long offset;
+    private final long endOffset;
+    private ByteBuffer chunk = null;
+    private int chunkIdx = -1;
+
+    MappedRangeInputStream (long beginOffset, long endOffset) {
+      this.offset = beginOffset;
+      this.endOffset = endOffset;
+    }
+
+    @Override
+    public int read () throws IOException {
+      if (offset >= endOffset) {
+        return -1;
+      }
+      return getByte(offset++) & 0xFF;
+    }
+
+    @Override
+    public int read (byte[] b, int off, int len) throws IOException {
+      if (closed) {
+        throw new IOException("Reader closed.");
+      }
+      if (0 == len) {
+        return 0;
+      }
+      if (offset >= endOffset) {
+        return -1;
+      }
+
+      int nextChunkIdx = (int)(offset >>> CHUNK_SIZE_BITS);
+      if (nextChunkIdx != chunkIdx) {
+        chunk = chunks[nextChunkIdx].duplicate();
+        chunkIdx = nextChunkIdx;
+      }
+      int chunkOffset = (int)(offset & (CHUNK_SIZE - 1));
+      // Read at most to the end of the chunk or the range
+      int numBytes = (int)Math.min(len, Math.min(chunk.capacity() - chunkOffset,
+                                                 endOffset - offset));
+      chunk.position(chunkOffset);
+      chunk.get(b, off, numBytes);
+      offset += numBytes;
+      return numBytes;
+    }
+
+    @Override
+    public long skip (long n) {
+      long numBytes = Math.max(0, Math.min(n, endOffset - offset));
+      offset += numBytes;
+      return numBytes;
+    }
+
+    @Override
+    public int available () {
+      return (int)Math.min(Integer.MAX_VALUE, endOffset - offset);
+    }
+  }
+}
@@ -0,0 +1,233 @@
+package com.yscope.clp.irstream;
+
+import com.yscope.clp.compressorfrontend.FlattenedByteArray;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe IR writer that spreads log events across several independent
+ * IR output streams (shards), each with its own native encoder state, so that
+ * multiple threads can encode in parallel.
+ * <p></p>
+ * Each shard is guarded by its own lock and events are encoded on the calling
+ * thread while holding only that shard's lock. Events are routed either:
+ * <ul>
+ *   <li>by key, in which case all events with the same key go to the same
+ *   shard and stay in order; or</li>
+ *   <li>round-robin, in which case an event goes to the next shard that isn't
+ *   in use, so that threads rarely wait on each other.</li>
+ * </ul>
+ * With at least as many shards as writing threads, encoding throughput scales
+ * with the number of cores.
+ * <p></p>
+ * Each shard produces a separate, complete IR stream, so events from different
+ * shards aren't ordered relative to each other.
+ */
+public class ShardedClpIrOutputStream implements AutoCloseable, Flushable {
+  private final AbstractClpIrOutputStream[] shards;
+  private final ReentrantLock[] shardLocks;
+  private final AtomicInteger nextShardIdx = new AtomicInteger(0);
+  private volatile boolean closed = false;
+
+  /**
+   * @param shards The IR output streams to write to. This stream takes
+   * ownership of them, i.e., they're closed when this stream is closed.
+   * @throws IllegalArgumentException if no shards are given
+   */
+  public ShardedClpIrOutputStream (AbstractClpIrOutputStream[] shards) {
+    if (0 == shards.length) {
+      throw new IllegalArgumentException("At least one shard is required.");
+    }
+    this.shards = shards.clone();
+    shardLocks = new ReentrantLock[shards.length];
+    for (int i = 0; i < shardLocks.length; ++i) {
+      shardLocks[i] = new ReentrantLock();
+    }
+  }
+
+  public int getNumShards () {
+    return shards.length;
+  }
+
+  /**
+   * Writes the given log event to the next available shard
+   * @param timestamp Timestamp of the event as milliseconds since the Unix
+   * epoch
+   * @param message
+   * @throws IOException on failure to encode the message or I/O error
+   * @see AbstractClpIrOutputStream#writeLogEvent
+   */
+  public void writeLogEvent (long timestamp, ByteBuffer message) throws IOException {
+    int shardIdx = lockAvailableShard();
+    try {
+      shards[shardIdx].writeLogEvent(timestamp, message);
+    } finally {
+      shardLocks[shardIdx].unlock();
+    }
+  }
+
+  /**
+   * Writes the given log event to the shard for the given key
+   * @param key The routing key (e.g., a hash of the event's source). Events
+   * with the same key are written to the same shard, in order.
+   * @param timestamp Timestamp of the event as milliseconds since the Unix
+   * epoch
+   * @param message
+   * @throws IOException on failure to encode the message or I/O error
+   * @see AbstractClpIrOutputStream#writeLogEvent
+   */
+  public void writeLogEvent (int key, long timestamp, ByteBuffer message) throws IOException {
+    int shardIdx = lockShardForKey(key);
+    try {
+      shards[shardIdx].writeLogEvent(timestamp, message);
+    } finally {
+      shardLocks[shardIdx].unlock();
+    }
+  }
+
+  /**
+   * Writes the given batch of log events to the next available shard
+   * @param timestamps
+   * @param messages
+   * @throws IOException on failure to encode the messages or I/O error
+   * @see AbstractClpIrOutputStream#writeLogEvents(long[], FlattenedByteArray)
+   */
+  public void writeLogEvents (long[] timestamps, FlattenedByteArray messages)
+      throws IOException
+  {
+    int shardIdx = lockAvailableShard();
+    try {
+      shards[shardIdx].writeLogEvents(timestamps, messages);
+    } finally {
+      shardLocks[shardIdx].unlock();
+    }
+  }
+
+  /**
+   * Writes the given batch of log events to the shard for the given key
+   * @param key The routing key
+   * @param timestamps
+   * @param messages
+   * @throws IOException on failure to encode the messages or I/O error
+   * @see AbstractClpIrOutputStream#writeLogEvents(long[], FlattenedByteArray)
+   */
+  public void writeLogEvents (int key, long[] timestamps, FlattenedByteArray messages)
+      throws IOException
+  {
+    int shardIdx = lockShardForKey(key);
+    try {
+      shards[shardIdx].writeLogEvents(timestamps, messages);
+    } finally {
+      shardLocks[shardIdx].unlock();
+    }
+  }
+
+  /**
+   * Flushes every shard
+   * @throws IOException on I/O error
+   */
+  @Override
+  public void flush () throws IOException {
+    ensureOpen();
+    for (int i = 0; i < shards.length; ++i) {
+      shardLocks[i].lock();
+      try {
+        ensureOpen();
+        shards[i].flush();
+      } finally {
+        shardLocks[i].unlock();
+      }
+    }
+  }
+
+  /**
+   * Closes every shard. All shards are closed even if closing one of them
+   * fails.
+   * @throws IOException on I/O error. If closing multiple shards failed, the
+   * other failures are added as suppressed exceptions.
+   */
+  @Override
+  public void close () throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+
+    IOException exception = null;
+    for (int i = 0; i < shards.length; ++i) {
+      shardLocks[i].lock();
+      try {
+        shards[i].close();
+      } catch (IOException e) {
+        if (null == exception) {
+          exception = e;
+        } else {
+          exception.addSuppressed(e);
+        }
+      } finally {
+        shardLocks[i].unlock();
+      }
+    }
+    if (null != exception) {
+      throw exception;
+    }
+  }
+
+  private void ensureOpen () throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed.");
+    }
+  }
+
+  /**
+   * Locks the next shard (in round-robin order) that isn't in use. If all
+   * shards are in use, waits for the next shard in round-robin order.
+   * @return The index of the locked shard
+   * @throws IOException if the stream is closed
+   */
+  private int lockAvailableShard () throws IOException {
+    ensureOpen();
+    int firstShardIdx = Math.floorMod(nextShardIdx.getAndIncrement(), shards.length);
+    for (int i = 0; i < shards.length; ++i) {
+      int shardIdx = (firstShardIdx + i) % shards.length;
+      if (shardLocks[shardIdx].tryLock()) {
+        ensureOpenWhileLocked(shardIdx);
+        return shardIdx;
+      }
+    }
+    shardLocks[firstShardIdx].lock();
+    ensureOpenWhileLocked(firstShardIdx);
+    return firstShardIdx;
+  }
+
+  /**
+   * Locks the shard for the given key
+   * @param key
+   * @return The index of the locked shard
+   * @throws IOException if the stream is closed
+   */
+  private int lockShardForKey (int key) throws IOException {
+    ensureOpen();
+    int shardIdx = Math.floorMod(key, shards.length);
+    shardLocks[shardIdx].lock();
+    ensureOpenWhileLocked(shardIdx);
+    return shardIdx;
+  }
+
+  /**
+   * Checks that the stream is still open after locking the given shard, since
+   * {@link #close()} may have closed the shard while this thread was waiting
+   * for its lock. The shard is unlocked if the stream is closed.
+   * @param shardIdx
+   * @throws IOException if the stream is closed
+   */
+  private void ensureOpenWhileLocked (int shardIdx) throws IOException {
+    if (closed) {
+      shardLocks[shardIdx].unlock();
+      throw new IOException("Stream closed.");
+    }
+  }
+}
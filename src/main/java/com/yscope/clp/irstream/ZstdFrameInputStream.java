@@ -0,0 +1,170 @@
+package com.yscope.clp.irstream;
+
+import com.yscope.clp.compressorfrontend.NativeLibraryLoader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that decompresses a Zstandard stream made up of one or more
+ * frames (e.g., a stream written by {@link ZstdFrameOutputStream}).
+ * <p></p>
+ * {@link ClpIrInputStreamFactory#fromInputStream} wraps Zstandard-compressed
+ * IR streams with this class automatically.
+ */
+public class ZstdFrameInputStream extends InputStream {
+  static final byte[] MAGIC_NUMBER = {(byte)0x28, (byte)0xB5, (byte)0x2F, (byte)0xFD};
+
+  // The sizes recommended by ZSTD_DStreamInSize and ZSTD_DStreamOutSize
+  private static final int COMPRESSED_BUFFER_CAPACITY = 128 * 1024;
+  private static final int DECOMPRESSED_BUFFER_CAPACITY = 128 * 1024;
+
+  private InputStream inputStream;
+  private long nativeContextAddress;
+
+  private final byte[] compressedBuffer = new byte[COMPRESSED_BUFFER_CAPACITY];
+  private int compressedBufferBegin = 0;
+  private int compressedBufferEnd = 0;
+  private final byte[] decompressedBuffer = new byte[DECOMPRESSED_BUFFER_CAPACITY];
+  private int decompressedBufferBegin = 0;
+  private int decompressedBufferEnd = 0;
+  // The buffer positions passed to and returned from native code
+  private final int[] bufferPositions = new int[2];
+
+  private boolean frameInProgress = false;
+  // Whether the last decompression filled the decompressed buffer, in which
+  // case the decompressor may still have buffered content
+  private boolean decompressedBufferWasFilled = false;
+
+  static {
+    NativeLibraryLoader.load();
+  }
+
+  /**
+   * @param inputStream Stream from which the compressed frames should be read
+   */
+  public ZstdFrameInputStream (InputStream inputStream) {
+    this.inputStream = inputStream;
+    nativeContextAddress = createContextNative();
+  }
+
+  @Override
+  public int read () throws IOException {
+    if (false == fillDecompressedBuffer()) {
+      return -1;
+    }
+    return decompressedBuffer[decompressedBufferBegin++] & 0xFF;
+  }
+
+  @Override
+  public int read (byte[] b, int off, int len) throws IOException {
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (0 == len) {
+      return 0;
+    }
+    if (false == fillDecompressedBuffer()) {
+      return -1;
+    }
+
+    int numBytesToCopy = Math.min(len, decompressedBufferEnd - decompressedBufferBegin);
+    System.arraycopy(decompressedBuffer, decompressedBufferBegin, b, off, numBytesToCopy);
+    decompressedBufferBegin += numBytesToCopy;
+    return numBytesToCopy;
+  }
+
+  @Override
+  public int available () throws IOException {
+    ensureOpen();
+    return decompressedBufferEnd - decompressedBufferBegin;
+  }
+
+  @Override
+  public void close () throws IOException {
+    if (null == inputStream) {
+      return;
+    }
+
+    try {
+      inputStream.close();
+    } finally {
+      inputStream = null;
+      destroyContextNative(nativeContextAddress);
+      nativeContextAddress = 0;
+    }
+  }
+
+  private void ensureOpen () throws IOException {
+    if (null == inputStream) {
+      throw new IOException("Stream closed.");
+    }
+  }
+
+  /**
+   * Decompresses more content into the decompressed buffer if it's empty
+   * @return true if the decompressed buffer has content, false if the end of
+   * the stream was reached
+   * @throws IOException on I/O error, if the stream is corrupt, or if the
+   * stream ends in the middle of a frame
+   */
+  private boolean fillDecompressedBuffer () throws IOException {
+    ensureOpen();
+    while (decompressedBufferBegin == decompressedBufferEnd) {
+      // If the decompressed buffer was filled (possibly in a previous call),
+      // flush the decompressor's buffered content before reading more input
+      if (compressedBufferBegin == compressedBufferEnd && false == decompressedBufferWasFilled) {
+        int numBytesRead = inputStream.read(compressedBuffer);
+        if (-1 == numBytesRead) {
+          if (frameInProgress) {
+            throw new EOFException("Stream ended in the middle of a Zstandard frame.");
+          }
+          return false;
+        }
+        compressedBufferBegin = 0;
+        compressedBufferEnd = numBytesRead;
+      }
+
+      bufferPositions[0] = compressedBufferBegin;
+      bufferPositions[1] = 0;
+      frameInProgress = decompressNative(nativeContextAddress, compressedBuffer,
+                                         compressedBufferEnd, decompressedBuffer,
+                                         bufferPositions);
+      compressedBufferBegin = bufferPositions[0];
+      decompressedBufferBegin = 0;
+      decompressedBufferEnd = bufferPositions[1];
+      decompressedBufferWasFilled = decompressedBuffer.length == decompressedBufferEnd;
+    }
+    return true;
+  }
+
+  /**
+   * Creates the native decompression context
+   * @return The address of the native context
+   */
+  private static native long createContextNative ();
+
+  /**
+   * Destroys the native decompression context
+   * @param contextAddress
+   */
+  private static native void destroyContextNative (long contextAddress);
+
+  /**
+   * Decompresses as much of the given compressed content as fits in the
+   * given buffer
+   * @param contextAddress
+   * @param compressed
+   * @param compressedEnd The end offset of the compressed content
+   * @param decompressed The buffer to decompress into
+   * @param bufferPositions The offset in {@code compressed} to start reading
+   * from and the offset in {@code decompressed} to start writing at. Returns
+   * the offsets after the decompressed content was read and written.
+   * @return Whether a frame is still in progress, i.e., whether the
+   * decompressor needs more input or output space to finish the current frame
+   * @throws IOException if the content is corrupt
+   */
+  private static native boolean decompressNative (long contextAddress, byte[] compressed,
+                                                  int compressedEnd, byte[] decompressed,
+                                                  int[] bufferPositions) throws IOException;
+}
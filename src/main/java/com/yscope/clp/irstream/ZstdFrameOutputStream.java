@@ -0,0 +1,230 @@
+package com.yscope.clp.irstream;
+
+import com.yscope.clp.compressorfrontend.EmptyArrayUtils;
+import com.yscope.clp.compressorfrontend.NativeLibraryLoader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * An output stream that compresses its content with Zstandard as a sequence of
+ * independent frames. The result is a standard Zstandard stream (e.g., it can
+ * be decompressed with the {@code zstd} CLI) that can also be read with
+ * {@link ZstdFrameInputStream}.
+ * <p></p>
+ * Content is buffered until a frame is ended, so a frame never ends in the
+ * middle of a write. A frame is ended when:
+ * <ul>
+ *   <li>{@link #endFrameIfFull()} is called and the frame has reached the
+ *   target frame size;</li>
+ *   <li>{@link #endFrame()} or {@link #flush()} is called;</li>
+ *   <li>the stream is closed.</li>
+ * </ul>
+ * When used as the output stream of an {@link AbstractClpIrOutputStream}, the
+ * IR output stream ends a frame after the preamble and ends frames only at log
+ * event boundaries, so every frame after the first contains whole log events.
+ */
+public class ZstdFrameOutputStream extends OutputStream {
+  public static final int DEFAULT_TARGET_FRAME_SIZE = 1024 * 1024;
+  public static final int DEFAULT_COMPRESSION_LEVEL = 3;
+
+  private static final int MAX_INITIAL_FRAME_BUFFER_CAPACITY = 64 * 1024;
+
+  private OutputStream outputStream;
+  private final int targetFrameSize;
+  private long nativeContextAddress;
+
+  private byte[] frameBuffer;
+  private int frameLength = 0;
+  private byte[] compressedFrameBuffer = EmptyArrayUtils.EMPTY_BYTE_ARRAY;
+  private long numFramesWritten = 0;
+  private long numCompressedBytesWritten = 0;
+
+  static {
+    NativeLibraryLoader.load();
+  }
+
+  /**
+   * Constructs a stream using {@link #DEFAULT_TARGET_FRAME_SIZE} and
+   * {@link #DEFAULT_COMPRESSION_LEVEL}
+   * @param outputStream Stream which the compressed frames should be written
+   * to
+   */
+  public ZstdFrameOutputStream (OutputStream outputStream) {
+    this(outputStream, DEFAULT_TARGET_FRAME_SIZE, DEFAULT_COMPRESSION_LEVEL);
+  }
+
+  /**
+   * @param outputStream Stream which the compressed frames should be written
+   * to
+   * @param targetFrameSize The uncompressed size after which
+   * {@link #endFrameIfFull()} ends the current frame
+   * @param compressionLevel The Zstandard compression level
+   * @throws IllegalArgumentException if {@code targetFrameSize} isn't positive
+   */
+  public ZstdFrameOutputStream (OutputStream outputStream, int targetFrameSize,
+                                int compressionLevel)
+  {
+    if (targetFrameSize <= 0) {
+      throw new IllegalArgumentException("targetFrameSize must be positive.");
+    }
+    this.outputStream = outputStream;
+    this.targetFrameSize = targetFrameSize;
+    frameBuffer = new byte[Math.min(targetFrameSize, MAX_INITIAL_FRAME_BUFFER_CAPACITY)];
+    nativeContextAddress = createContextNative(compressionLevel);
+  }
+
+  /**
+   * @return The number of frames written to the underlying stream so far
+   */
+  public long getNumFramesWritten () {
+    return numFramesWritten;
+  }
+
+  /**
+   * @return The number of bytes written to the underlying stream so far. This
+   * is also the offset of the next frame in the underlying stream.
+   */
+  public long getNumCompressedBytesWritten () {
+    return numCompressedBytesWritten;
+  }
+
+  @Override
+  public void write (int b) throws IOException {
+    ensureOpen();
+    ensureFrameBufferCapacity(1);
+    frameBuffer[frameLength++] = (byte)b;
+  }
+
+  @Override
+  public void write (byte[] b, int off, int len) throws IOException {
+    ensureOpen();
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    ensureFrameBufferCapacity(len);
+    System.arraycopy(b, off, frameBuffer, frameLength, len);
+    frameLength += len;
+  }
+
+  /**
+   * Ends the current frame if its uncompressed size has reached the target
+   * frame size. Callers should only call this at a point where it's safe to
+   * end a frame (e.g., between log events).
+   * @throws IOException on compression failure or I/O error
+   */
+  public void endFrameIfFull () throws IOException {
+    if (frameLength >= targetFrameSize) {
+      endFrame();
+    }
+  }
+
+  /**
+   * Compresses the buffered content as a frame and writes it to the
+   * underlying stream. Nothing is written if no content is buffered.
+   * @throws IOException on compression failure or I/O error
+   */
+  public void endFrame () throws IOException {
+    ensureOpen();
+    if (0 == frameLength) {
+      return;
+    }
+
+    int compressedLength = compressFrameNative(nativeContextAddress, frameBuffer, frameLength,
+                                               compressedFrameBuffer);
+    if (compressedLength < 0) {
+      // The buffer was too small, so grow it and try again
+      compressedFrameBuffer = new byte[-compressedLength];
+      compressedLength = compressFrameNative(nativeContextAddress, frameBuffer, frameLength,
+                                             compressedFrameBuffer);
+    }
+    outputStream.write(compressedFrameBuffer, 0, compressedLength);
+    frameLength = 0;
+    ++numFramesWritten;
+    numCompressedBytesWritten += compressedLength;
+  }
+
+  /**
+   * Ends the current frame and flushes the underlying stream
+   * @throws IOException on compression failure or I/O error
+   */
+  @Override
+  public void flush () throws IOException {
+    endFrame();
+    outputStream.flush();
+  }
+
+  /**
+   * Ends the current frame and closes the underlying stream
+   * @throws IOException on compression failure or I/O error
+   */
+  @Override
+  public void close () throws IOException {
+    if (null == outputStream) {
+      return;
+    }
+
+    try {
+      endFrame();
+      outputStream.close();
+    } finally {
+      outputStream = null;
+      frameBuffer = null;
+      destroyContextNative(nativeContextAddress);
+      nativeContextAddress = 0;
+    }
+  }
+
+  private void ensureOpen () throws IOException {
+    if (null == outputStream) {
+      throw new IOException("Stream closed.");
+    }
+  }
+
+  /**
+   * Ensures the frame buffer can fit the given number of additional bytes
+   * @param numBytes
+   * @throws IOException if the frame would be larger than a Java array
+   */
+  private void ensureFrameBufferCapacity (int numBytes) throws IOException {
+    int requiredCapacity = frameLength + numBytes;
+    if (requiredCapacity < 0) {
+      throw new IOException("Frame is too large.");
+    }
+    if (requiredCapacity > frameBuffer.length) {
+      int newCapacity = Math.max(requiredCapacity, frameBuffer.length * 2);
+      if (newCapacity < 0) {
+        newCapacity = requiredCapacity;
+      }
+      frameBuffer = Arrays.copyOf(frameBuffer, newCapacity);
+    }
+  }
+
+  /**
+   * Creates the native compression context
+   * @param compressionLevel
+   * @return The address of the native context
+   */
+  private static native long createContextNative (int compressionLevel);
+
+  /**
+   * Destroys the native compression context
+   * @param contextAddress
+   */
+  private static native void destroyContextNative (long contextAddress);
+
+  /**
+   * Compresses the given content into a single Zstandard frame
+   * @param contextAddress
+   * @param frame
+   * @param frameLength
+   * @param compressedFrame The buffer to write the compressed frame into
+   * @return The length of the compressed frame if it fit in
+   * {@code compressedFrame}. Otherwise, the negated capacity that
+   * {@code compressedFrame} needs to have.
+   * @throws IOException on compression failure
+   */
+  private static native int compressFrameNative (long contextAddress, byte[] frame,
+                                                 int frameLength, byte[] compressedFrame)
+      throws IOException;
+}
@@ -1,8 +1,21 @@
 package com.yscope.clp.compressorfrontend;
 
 import com.yscope.clp.compressorfrontend.AbstractClpEncodedSubquery.VariableWildcardQuery;
+import com.yscope.clp.irstream.EncodedLogEvent;
+import com.yscope.clp.irstream.FourByteClpIrInputStream;
+import com.yscope.clp.irstream.FourByteClpIrOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -66,6 +79,623 @@ public class EncodingTests {
     }
   }
 
+  @Test
+  void testBatchEncodingMessages () {
+    MessageEncoder messageEncoder =
+        new MessageEncoder(BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+                           BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1);
+    String[] messages = {
+        "Static text only",
+        "dictVar1Only",
+        "",
+        "1 encoded var",
+        "Static text, dictVar1, 123, 456.7, dictVar2, 987, 654.3"
+    };
+    FlattenedByteArray flattenedMessages = FlattenedByteArrayFactory.fromStrings(messages);
+    EncodedMessageBatch encodedMessageBatch = new EncodedMessageBatch();
+    EncodedMessage encodedMessage = new EncodedMessage();
+    try {
+      messageEncoder.encodeMessages(flattenedMessages, encodedMessageBatch);
+      assertEquals(messages.length, encodedMessageBatch.getNumMessages());
+
+      // Validate that each message in the batch was encoded the same way as
+      // when it's encoded individually
+      Iterator<byte[]> logtypes = encodedMessageBatch.getLogtypes().iterator();
+      Iterator<byte[]> dictVars =
+          encodedMessageBatch.getDictionaryVarsAsFlattenedByteArray().iterator();
+      long[] encodedVars = encodedMessageBatch.getEncodedVars();
+      int[] encodedVarEndOffsets = encodedMessageBatch.getEncodedVarEndOffsets();
+      int[] dictVarBoundsEndOffsets = encodedMessageBatch.getDictionaryVarBoundsEndOffsets();
+      int encodedVarsBeginOffset = 0;
+      int dictVarBoundsBeginOffset = 0;
+      for (int i = 0; i < messages.length; ++i) {
+        messageEncoder.encodeMessage(messages[i], encodedMessage);
+
+        assertArrayEquals(encodedMessage.getLogtype(), logtypes.next());
+        assertArrayEquals(encodedMessage.getEncodedVars(), Arrays.copyOfRange(
+            encodedVars, encodedVarsBeginOffset, encodedVarEndOffsets[i]));
+        byte[][] expectedDictVars = encodedMessage.getDictionaryVarsAsByteArrays();
+        assertEquals(expectedDictVars.length,
+                     (dictVarBoundsEndOffsets[i] - dictVarBoundsBeginOffset) / 2);
+        for (byte[] expectedDictVar : expectedDictVars) {
+          assertArrayEquals(expectedDictVar, dictVars.next());
+        }
+
+        encodedVarsBeginOffset = encodedVarEndOffsets[i];
+        dictVarBoundsBeginOffset = dictVarBoundsEndOffsets[i];
+      }
+      assertFalse(logtypes.hasNext());
+      assertFalse(dictVars.hasNext());
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+  }
+
+  @Test
+  void testBatchDecodingMessages () {
+    MessageDecoder messageDecoder =
+        new MessageDecoder(BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+                           BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1);
+    String[] messages = {
+        "Static text, dictVar1, 123, 456.7",
+        "Static text only",
+        "",
+        "dictVar2Only",
+        "Static text, dictVar3, 789, 012.3"
+    };
+    FlattenedByteArray flattenedMessages = FlattenedByteArrayFactory.fromStrings(messages);
+    EncodedMessageBatch encodedMessageBatch = new EncodedMessageBatch();
+    try (LogtypeDictionary logtypeDictionary = new LogtypeDictionary()) {
+      MessageEncoder messageEncoder =
+          new MessageEncoder(BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+                             BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1,
+                             logtypeDictionary);
+      messageEncoder.encodeMessages(flattenedMessages, encodedMessageBatch);
+
+      // Decode the batch as is
+      FlattenedByteArray decodedMessages = messageDecoder.batchDecodeMessages(encodedMessageBatch);
+      assertArrayEquals(flattenedMessages.getFlattenedElems(),
+                        decodedMessages.getFlattenedElems());
+      assertArrayEquals(flattenedMessages.getElemEndOffsets(),
+                        decodedMessages.getElemEndOffsets());
+
+      // Decode the batch using the logtype IDs
+      int[] dictVarBoundsEndOffsets = encodedMessageBatch.getDictionaryVarBoundsEndOffsets();
+      int[] dictVarEndIndexes = new int[dictVarBoundsEndOffsets.length];
+      for (int i = 0; i < dictVarEndIndexes.length; ++i) {
+        dictVarEndIndexes[i] = dictVarBoundsEndOffsets[i] / 2;
+      }
+      FlattenedByteArray dictVars = encodedMessageBatch.getDictionaryVarsAsFlattenedByteArray();
+      decodedMessages = messageDecoder.batchDecodeMessages(
+          logtypeDictionary.snapshot(), encodedMessageBatch.getLogtypeIds(),
+          encodedMessageBatch.getEncodedVars(), encodedMessageBatch.getEncodedVarEndOffsets(),
+          dictVars, dictVarEndIndexes);
+      Iterator<byte[]> decodedMessagesIter = decodedMessages.iterator();
+      for (String message : messages) {
+        assertEquals(message, new String(decodedMessagesIter.next(), StandardCharsets.UTF_8));
+      }
+      assertFalse(decodedMessagesIter.hasNext());
+
+      // Validate that an empty batch decodes to no messages
+      decodedMessages = messageDecoder.batchDecodeMessages(
+          logtypeDictionary.snapshot(), new int[0], null, new int[0], null, new int[0]);
+      assertEquals(0, decodedMessages.size());
+
+      // Validate that invalid IDs and offsets are rejected
+      int[] invalidLogtypeIds = encodedMessageBatch.getLogtypeIds().clone();
+      invalidLogtypeIds[0] = logtypeDictionary.size();
+      assertThrows(IllegalArgumentException.class, () -> messageDecoder.batchDecodeMessages(
+          logtypeDictionary.snapshot(), invalidLogtypeIds, encodedMessageBatch.getEncodedVars(),
+          encodedMessageBatch.getEncodedVarEndOffsets(), dictVars, dictVarEndIndexes));
+      int[] invalidDictVarEndIndexes = dictVarEndIndexes.clone();
+      invalidDictVarEndIndexes[invalidDictVarEndIndexes.length - 1] = dictVars.size() + 1;
+      assertThrows(IllegalArgumentException.class, () -> messageDecoder.batchDecodeMessages(
+          encodedMessageBatch.getLogtypes(), null, encodedMessageBatch.getEncodedVars(),
+          encodedMessageBatch.getEncodedVarEndOffsets(), dictVars, invalidDictVarEndIndexes));
+
+      // Validate that decoding a message with too few variables fails
+      assertThrows(IOException.class, () -> messageDecoder.batchDecodeMessages(
+          encodedMessageBatch.getLogtypes(), null, encodedMessageBatch.getEncodedVars(),
+          encodedMessageBatch.getEncodedVarEndOffsets(), null, new int[messages.length]));
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+  }
+
+  @Test
+  void testEncodingMessagesWithLogtypeDictionary () {
+    MessageEncoder messageEncoder =
+        new MessageEncoder(BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+                           BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1);
+    String[] messages = {
+        "Static text, dictVar1, 123, 456.7",
+        "Static text only",
+        "Static text, dictVar2, 789, 012.3",
+        "Static text only",
+        ""
+    };
+    int[] expectedLogtypeIds = {0, 1, 0, 1, 2};
+
+    EncodedMessage encodedMessage = new EncodedMessage();
+    EncodedMessage dictEncodedMessage = new EncodedMessage();
+    EncodedMessageBatch encodedMessageBatch = new EncodedMessageBatch();
+    try (LogtypeDictionary logtypeDictionary = new LogtypeDictionary()) {
+      MessageEncoder dictMessageEncoder =
+          new MessageEncoder(BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+                             BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1,
+                             logtypeDictionary);
+      assertSame(logtypeDictionary, dictMessageEncoder.getLogtypeDictionary());
+
+      // Validate that identical logtypes get the same ID and that the encoded
+      // values match those from an encoder without a dictionary
+      for (int i = 0; i < messages.length; ++i) {
+        messageEncoder.encodeMessage(messages[i], encodedMessage);
+        assertEquals(-1, encodedMessage.getLogtypeId());
+        dictMessageEncoder.encodeMessage(messages[i], dictEncodedMessage);
+        assertEquals(expectedLogtypeIds[i], dictEncodedMessage.getLogtypeId());
+        assertArrayEquals(encodedMessage.getLogtype(), dictEncodedMessage.getLogtype());
+        assertArrayEquals(encodedMessage.getLogtype(),
+                          logtypeDictionary.getLogtype(expectedLogtypeIds[i]));
+        assertArrayEquals(encodedMessage.getEncodedVars(), dictEncodedMessage.getEncodedVars());
+        assertArrayEquals(encodedMessage.getDictionaryVarsAsByteArrays(),
+                          dictEncodedMessage.getDictionaryVarsAsByteArrays());
+      }
+      assertEquals(3, logtypeDictionary.size());
+      assertThrows(IllegalArgumentException.class, () -> logtypeDictionary.getLogtype(3));
+
+      // Validate batch encoding
+      dictMessageEncoder.encodeMessages(FlattenedByteArrayFactory.fromStrings(messages),
+                                        encodedMessageBatch);
+      assertArrayEquals(expectedLogtypeIds, encodedMessageBatch.getLogtypeIds());
+      Iterator<byte[]> logtypes = encodedMessageBatch.getLogtypes().iterator();
+      for (int expectedLogtypeId : expectedLogtypeIds) {
+        assertArrayEquals(logtypeDictionary.getLogtype(expectedLogtypeId), logtypes.next());
+      }
+      assertFalse(logtypes.hasNext());
+
+      // Validate that concurrent encoders sharing the dictionary agree on IDs
+      int numThreads = 4;
+      int numLogtypes = 1000;
+      Thread[] threads = new Thread[numThreads];
+      Throwable[] failures = new Throwable[numThreads];
+      for (int t = 0; t < numThreads; ++t) {
+        final int threadIdx = t;
+        threads[t] = new Thread(() -> {
+          EncodedMessage threadEncodedMessage = new EncodedMessage();
+          try {
+            for (int i = 0; i < numLogtypes; ++i) {
+              // Each thread adds the logtypes in a different order
+              int logtypeIdx = (i + threadIdx * numLogtypes / numThreads) % numLogtypes;
+              dictMessageEncoder.encodeMessage(toLetters(logtypeIdx) + " 123",
+                                               threadEncodedMessage);
+              assertArrayEquals(threadEncodedMessage.getLogtype(),
+                                logtypeDictionary.getLogtype(threadEncodedMessage.getLogtypeId()));
+            }
+          } catch (Throwable e) {
+            failures[threadIdx] = e;
+          }
+        });
+        threads[t].start();
+      }
+      for (int t = 0; t < numThreads; ++t) {
+        threads[t].join();
+        assertNull(failures[t]);
+      }
+      assertEquals(3 + numLogtypes, logtypeDictionary.size());
+
+      // Validate that a serialized snapshot of the dictionary can be restored
+      FlattenedByteArray snapshot = logtypeDictionary.snapshot();
+      assertEquals(logtypeDictionary.size(), snapshot.size());
+      ByteArrayOutputStream serializedDictionary = new ByteArrayOutputStream();
+      logtypeDictionary.serialize(serializedDictionary);
+      try (LogtypeDictionary deserializedDictionary = LogtypeDictionary.deserialize(
+          new ByteArrayInputStream(serializedDictionary.toByteArray())))
+      {
+        assertEquals(snapshot.size(), deserializedDictionary.size());
+        int id = 0;
+        for (byte[] logtype : snapshot) {
+          assertArrayEquals(logtype, deserializedDictionary.getLogtype(id));
+          assertEquals(id, deserializedDictionary.getOrAddLogtype(logtype));
+          ++id;
+        }
+      }
+      assertThrows(IOException.class, () -> LogtypeDictionary.deserialize(
+          new ByteArrayInputStream(new byte[] {'C', 'L', 'P'})));
+    } catch (IOException | InterruptedException e) {
+      fail(e.getMessage());
+    }
+  }
+
+  @Test
+  void testEncodingMessagesWithVariableDictionary () {
+    String[] messages = {
+        "Static text, dictVar1, 123, dictVar2",
+        "Static text only",
+        "Static text, dictVar2, 789, dictVar3",
+        ""
+    };
+    long[][] expectedDictVarIds = {{0, 1}, null, {1, 2}, null};
+
+    EncodedMessage encodedMessage = new EncodedMessage();
+    EncodedMessageBatch encodedMessageBatch = new EncodedMessageBatch();
+    try (VariableDictionary variableDictionary = new VariableDictionary()) {
+      MessageEncoder messageEncoder =
+          new MessageEncoder(BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+                             BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1,
+                             null, variableDictionary);
+      assertSame(variableDictionary, messageEncoder.getVariableDictionary());
+
+      // Validate that identical variables get the same ID
+      for (int i = 0; i < messages.length; ++i) {
+        messageEncoder.encodeMessage(messages[i], encodedMessage);
+        assertArrayEquals(expectedDictVarIds[i], encodedMessage.getDictionaryVarIds());
+        byte[][] dictVars = encodedMessage.getDictionaryVarsAsByteArrays();
+        for (int j = 0; null != dictVars && j < dictVars.length; ++j) {
+          assertArrayEquals(dictVars[j],
+                            variableDictionary.getVariable(expectedDictVarIds[i][j]));
+        }
+      }
+      assertEquals(3, variableDictionary.getNumVariables());
+
+      // Validate batch encoding
+      messageEncoder.encodeMessages(FlattenedByteArrayFactory.fromStrings(messages),
+                                    encodedMessageBatch);
+      assertArrayEquals(new long[] {0, 1, 1, 2}, encodedMessageBatch.getDictionaryVarIds());
+      assertArrayEquals(new int[] {4, 4, 8, 8},
+                        encodedMessageBatch.getDictionaryVarBoundsEndOffsets());
+
+      FlattenedByteArray activeSegment = variableDictionary.exportActiveSegment().getVariables();
+      assertArrayEquals(new String[] {"dictVar1", "dictVar2", "dictVar3"},
+                        toStrings(activeSegment));
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+
+    // Validate that the active segment is sealed once it would exceed the
+    // memory budget
+    long memoryBudget = 32 * 1024;
+    try (VariableDictionary variableDictionary = new VariableDictionary(memoryBudget)) {
+      int numVariables = 0;
+      while (0 == variableDictionary.getNumSealedSegments()) {
+        byte[] variable = ("var" + numVariables).getBytes(StandardCharsets.UTF_8);
+        long id = variableDictionary.getOrAddVariable(variable);
+        assertEquals(id, variableDictionary.getOrAddVariable(variable));
+        assertTrue(variableDictionary.getMemoryUsage() <= memoryBudget);
+        ++numVariables;
+      }
+      assertEquals(1, variableDictionary.getActiveSegmentId());
+      assertEquals(1, variableDictionary.getNumVariables());
+      long lastId = variableDictionary.getOrAddVariable(
+          ("var" + (numVariables - 1)).getBytes(StandardCharsets.UTF_8));
+      assertEquals(1, VariableDictionary.getSegmentId(lastId));
+      assertEquals(0, VariableDictionary.getLocalId(lastId));
+
+      VariableDictionary.Segment sealedSegment = variableDictionary.pollSealedSegment();
+      assertNotNull(sealedSegment);
+      assertEquals(0, sealedSegment.getId());
+      String[] sealedVariables = toStrings(sealedSegment.getVariables());
+      assertEquals(numVariables - 1, sealedVariables.length);
+      for (int i = 0; i < sealedVariables.length; ++i) {
+        assertEquals("var" + i, sealedVariables[i]);
+      }
+      assertNull(variableDictionary.pollSealedSegment());
+
+      // IDs from sealed segments are no longer resolvable
+      assertThrows(IllegalArgumentException.class, () -> variableDictionary.getVariable(0));
+
+      variableDictionary.rollOver();
+      assertEquals(2, variableDictionary.getActiveSegmentId());
+      assertEquals(0, variableDictionary.getNumVariables());
+      assertEquals(1, variableDictionary.pollSealedSegment().getId());
+    }
+
+    // Validate that sealed segments count toward the memory budget and are
+    // never dropped before they're polled: once they fill the budget, adding
+    // variables fails instead of invalidating IDs that were already returned
+    try (VariableDictionary variableDictionary = new VariableDictionary(memoryBudget)) {
+      long[] ids = new long[100_000];
+      int numVariables = 0;
+      while (true) {
+        assertTrue(numVariables < ids.length);
+        byte[] variable = ("var" + numVariables).getBytes(StandardCharsets.UTF_8);
+        try {
+          ids[numVariables] = variableDictionary.getOrAddVariable(variable);
+        } catch (RuntimeException e) {
+          break;
+        }
+        assertTrue(variableDictionary.getMemoryUsage() <= memoryBudget);
+        ++numVariables;
+      }
+      int activeSegmentId = variableDictionary.getActiveSegmentId();
+      assertTrue(activeSegmentId > 0);
+      assertEquals(activeSegmentId, variableDictionary.getNumSealedSegments());
+      assertThrows(RuntimeException.class, variableDictionary::rollOver);
+      assertEquals(activeSegmentId, variableDictionary.getActiveSegmentId());
+
+      // Every ID that was returned still resolves to its variable
+      String[][] sealedVariables = new String[activeSegmentId][];
+      for (int i = 0; i < activeSegmentId; ++i) {
+        VariableDictionary.Segment sealedSegment = variableDictionary.pollSealedSegment();
+        assertNotNull(sealedSegment);
+        assertEquals(i, sealedSegment.getId());
+        sealedVariables[i] = toStrings(sealedSegment.getVariables());
+      }
+      assertNull(variableDictionary.pollSealedSegment());
+      for (int i = 0; i < numVariables; ++i) {
+        int segmentId = VariableDictionary.getSegmentId(ids[i]);
+        int localId = VariableDictionary.getLocalId(ids[i]);
+        if (activeSegmentId == segmentId) {
+          assertArrayEquals(("var" + i).getBytes(StandardCharsets.UTF_8),
+                            variableDictionary.getVariable(ids[i]));
+        } else {
+          assertEquals("var" + i, sealedVariables[segmentId][localId]);
+        }
+      }
+
+      // Once the sealed segments are polled, variables can be added again
+      long id = variableDictionary.getOrAddVariable(
+          ("var" + numVariables).getBytes(StandardCharsets.UTF_8));
+      assertEquals(activeSegmentId + 1, VariableDictionary.getSegmentId(id));
+    }
+    assertThrows(IllegalArgumentException.class, () -> new VariableDictionary(0));
+  }
+
+  /**
+   * @param array
+   * @return The elements of the given array decoded as UTF-8 strings
+   */
+  private static String[] toStrings (FlattenedByteArray array) {
+    String[] strings = new String[array.size()];
+    int i = 0;
+    for (byte[] elem : array) {
+      strings[i++] = new String(elem, StandardCharsets.UTF_8);
+    }
+    return strings;
+  }
+
+  /**
+   * @param value
+   * @return The value written in base 26 using the letters a-z, so that it's
+   * treated as static text rather than as a variable
+   */
+  private static String toLetters (int value) {
+    StringBuilder letters = new StringBuilder();
+    do {
+      letters.append((char)('a' + value % 26));
+      value /= 26;
+    } while (value > 0);
+    return letters.toString();
+  }
+
+  @Test
+  void testDecodingMessagesWithLogtypeTemplateCache () {
+    String[] messages = {
+        "Static text, dictVar1, 123, 456.7",
+        "Other text, dictVar2, -789, 012.3",
+        "Escaped \\ and \u0011 text, dictVar3 0.5",
+        "Static text only",
+        ""
+    };
+    MessageEncoder messageEncoder =
+        new MessageEncoder(BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+                           BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1);
+    MessageDecoder messageDecoder =
+        new MessageDecoder(BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+                           BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1, 3);
+    EncodedMessage encodedMessage = new EncodedMessage();
+    try {
+      // Decode each message twice through each kind of cache key. Each message
+      // has a different logtype, so only the second decode of each hits.
+      for (int i = 0; i < messages.length; ++i) {
+        messageEncoder.encodeMessage(messages[i], encodedMessage);
+        for (int j = 0; j < 2; ++j) {
+          assertEquals(messages[i], messageDecoder.decodeMessage(
+              encodedMessage.getLogTypeAsString(), encodedMessage.getDictionaryVarsAsStrings(),
+              encodedMessage.getEncodedVars()));
+          assertEquals(messages[i], messageDecoder.decodeMessage(
+              encodedMessage.getLogtype(), encodedMessage.getDictionaryVarsAsFlattenedByteArray(),
+              encodedMessage.getEncodedVars()));
+          assertEquals(messages[i], messageDecoder.decodeMessage(
+              i, encodedMessage.getLogtype(),
+              encodedMessage.getDictionaryVarsAsFlattenedByteArray(),
+              encodedMessage.getEncodedVars()));
+        }
+
+        LogtypeTemplate logtypeTemplate = LogtypeTemplate.compile(encodedMessage.getLogtype());
+        int numDictVars = null == encodedMessage.getDictionaryVarsAsByteArrays()
+            ? 0 : encodedMessage.getDictionaryVarsAsByteArrays().length;
+        int numEncodedVars = null == encodedMessage.getEncodedVars()
+            ? 0 : encodedMessage.getEncodedVars().length;
+        assertEquals(numDictVars, logtypeTemplate.getNumDictionaryVars());
+        assertEquals(numEncodedVars, logtypeTemplate.getNumEncodedVars());
+      }
+      assertEquals(3 * messages.length, messageDecoder.getNumLogtypeTemplateCacheMisses());
+      assertEquals(3 * messages.length, messageDecoder.getNumLogtypeTemplateCacheHits());
+      assertEquals(3, messageDecoder.getNumCachedLogtypeTemplates());
+
+      // Validate that a template used since the last eviction survives the
+      // next one, while the unused template after it is evicted
+      LogtypeTemplateCache cache = new LogtypeTemplateCache(3);
+      for (int i = 0; i < 3; ++i) {
+        cache.get(i, ("Logtype " + (char)('a' + i)).getBytes(StandardCharsets.ISO_8859_1));
+      }
+      cache.get(0, "Logtype a".getBytes(StandardCharsets.ISO_8859_1));
+      assertEquals(1, cache.getNumHits());
+      cache.get(3, "Logtype d".getBytes(StandardCharsets.ISO_8859_1));
+      assertEquals(3, cache.size());
+      cache.get(0, "Logtype a".getBytes(StandardCharsets.ISO_8859_1));
+      assertEquals(2, cache.getNumHits());
+      cache.get(1, "Logtype b".getBytes(StandardCharsets.ISO_8859_1));
+      assertEquals(2, cache.getNumHits());
+      assertEquals(5, cache.getNumMisses());
+
+      // Validate that decoding with too few variables fails
+      messageEncoder.encodeMessage(messages[0], encodedMessage);
+      assertThrows(IOException.class, () -> messageDecoder.decodeMessage(
+          encodedMessage.getLogtype(), null, encodedMessage.getEncodedVars()));
+      assertThrows(IOException.class,
+                   () -> LogtypeTemplate.compile(new byte[] {'a', '\\'}));
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+    assertThrows(IllegalArgumentException.class, () -> new MessageDecoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1, -1));
+  }
+
+  @Test
+  void testDecodingMessagesIntoDestinations () {
+    String message = "Static text, dictVar1, 123, 456.7, dictVar2, 987, 654.3";
+    byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+    MessageEncoder messageEncoder =
+        new MessageEncoder(BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+                           BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1);
+    MessageDecoder[] messageDecoders = {
+        new MessageDecoder(BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+                           BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1),
+        new MessageDecoder(BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+                           BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1, 1)
+    };
+    EncodedMessage encodedMessage = new EncodedMessage();
+    try {
+      messageEncoder.encodeMessage(message, encodedMessage);
+      byte[] logtype = encodedMessage.getLogtype();
+      FlattenedByteArray dictVars = encodedMessage.getDictionaryVarsAsFlattenedByteArray();
+      long[] encodedVars = encodedMessage.getEncodedVars();
+      LogtypeTemplate logtypeTemplate = LogtypeTemplate.compile(logtype);
+      int offset = 3;
+
+      for (MessageDecoder messageDecoder : messageDecoders) {
+        // Decode into an array after some existing content
+        byte[] dest = new byte[offset + messageBytes.length];
+        assertEquals(messageBytes.length,
+                     messageDecoder.decodeMessageInto(logtype, dictVars, encodedVars, dest,
+                                                      offset));
+        assertArrayEquals(messageBytes, Arrays.copyOfRange(dest, offset, dest.length));
+        Arrays.fill(dest, (byte)0);
+        assertEquals(messageBytes.length,
+                     messageDecoder.decodeMessageInto(0, logtype, dictVars, encodedVars, dest,
+                                                      offset));
+        assertArrayEquals(messageBytes, Arrays.copyOfRange(dest, offset, dest.length));
+        Arrays.fill(dest, (byte)0);
+        assertEquals(messageBytes.length,
+                     messageDecoder.decodeMessageInto(logtypeTemplate, dictVars, encodedVars,
+                                                      dest, offset));
+        assertArrayEquals(messageBytes, Arrays.copyOfRange(dest, offset, dest.length));
+
+        // Validate that nothing is written when the destination is too small
+        Arrays.fill(dest, (byte)0);
+        assertEquals(-messageBytes.length,
+                     messageDecoder.decodeMessageInto(logtype, dictVars, encodedVars, dest,
+                                                      offset + 1));
+        assertEquals(-messageBytes.length,
+                     messageDecoder.decodeMessageInto(logtypeTemplate, dictVars, encodedVars,
+                                                      dest, offset + 1));
+        assertArrayEquals(new byte[dest.length], dest);
+        assertThrows(IllegalArgumentException.class,
+                     () -> messageDecoder.decodeMessageInto(logtype, dictVars, encodedVars,
+                                                            dest, dest.length + 1));
+
+        // Decode into heap and direct buffers
+        ByteBuffer[] buffers = {
+            ByteBuffer.allocate(offset + messageBytes.length),
+            ByteBuffer.allocateDirect(offset + messageBytes.length)
+        };
+        for (ByteBuffer buffer : buffers) {
+          byte[] decodedMessage = new byte[messageBytes.length];
+
+          buffer.position(offset);
+          assertEquals(messageBytes.length,
+                       messageDecoder.decodeMessageInto(logtype, dictVars, encodedVars, buffer));
+          assertEquals(buffer.limit(), buffer.position());
+          buffer.position(offset);
+          buffer.get(decodedMessage);
+          assertArrayEquals(messageBytes, decodedMessage);
+
+          buffer.position(offset);
+          assertEquals(messageBytes.length,
+                       messageDecoder.decodeMessageInto(0, logtype, dictVars, encodedVars,
+                                                        buffer));
+          buffer.position(offset);
+          buffer.get(decodedMessage);
+          assertArrayEquals(messageBytes, decodedMessage);
+
+          buffer.position(offset);
+          assertEquals(messageBytes.length,
+                       messageDecoder.decodeMessageInto(logtypeTemplate, dictVars, encodedVars,
+                                                        buffer));
+          buffer.position(offset);
+          buffer.get(decodedMessage);
+          assertArrayEquals(messageBytes, decodedMessage);
+
+          // Validate that the buffer is unchanged when it's too small
+          buffer.position(offset + 1);
+          assertEquals(-messageBytes.length,
+                       messageDecoder.decodeMessageInto(logtype, dictVars, encodedVars, buffer));
+          assertEquals(offset + 1, buffer.position());
+
+          // Validate that a buffer's slice is written at the correct position
+          buffer.clear();
+          buffer.position(offset);
+          ByteBuffer slice = buffer.slice();
+          assertEquals(messageBytes.length,
+                       messageDecoder.decodeMessageInto(logtype, dictVars, encodedVars, slice));
+          buffer.get(decodedMessage);
+          assertArrayEquals(messageBytes, decodedMessage);
+
+          buffer.clear();
+          assertThrows(ReadOnlyBufferException.class,
+                       () -> messageDecoder.decodeMessageInto(logtype, dictVars, encodedVars,
+                                                              buffer.asReadOnlyBuffer()));
+        }
+      }
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+  }
+
+  @Test
+  void testEncodingDirectBufferMessages () {
+    MessageEncoder messageEncoder =
+        new MessageEncoder(BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+                           BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1);
+    String message = "Static text, dictVar1, 123, 456.7, dictVar2, 987, 654.3";
+    byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+
+    // Place the message after some other content so that the dictionary
+    // variable bounds need to be relative to the start of the buffer
+    byte[] prefix = "prefix ".getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(prefix.length + messageBytes.length);
+    buffer.put(prefix);
+    buffer.put(messageBytes);
+    buffer.flip();
+    buffer.position(prefix.length);
+
+    EncodedMessage expectedEncodedMessage = new EncodedMessage();
+    EncodedMessage encodedMessage = new EncodedMessage();
+    try {
+      messageEncoder.encodeMessage(message, expectedEncodedMessage);
+      messageEncoder.encodeMessage(buffer, encodedMessage);
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+    assertEquals(prefix.length, buffer.position());
+    assertEquals(prefix.length + messageBytes.length, buffer.limit());
+
+    assertArrayEquals(expectedEncodedMessage.getLogtype(), encodedMessage.getLogtype());
+    assertArrayEquals(expectedEncodedMessage.getEncodedVars(), encodedMessage.getEncodedVars());
+    assertArrayEquals(expectedEncodedMessage.getDictionaryVarsAsStrings(),
+                      encodedMessage.getDictionaryVarsAsStrings());
+    assertArrayEquals(expectedEncodedMessage.getDictionaryVarsAsFlattenedByteArray()
+                          .getFlattenedElems(),
+                      encodedMessage.getDictionaryVarsAsFlattenedByteArray().getFlattenedElems());
+
+    // Heap buffers aren't supported
+    assertThrows(IllegalArgumentException.class, () -> {
+      messageEncoder.encodeMessage(ByteBuffer.wrap(messageBytes), encodedMessage);
+    });
+  }
+
   private void testEncodeAndDecode (String originalMessage, MessageEncoder messageEncoder, MessageDecoder messageDecoder,
       EncodedMessage encodedMessage)
       throws IOException {
@@ -157,6 +787,180 @@ public class EncodingTests {
     // TODO Add some more tests
   }
 
+  @Test
+  void testBatchLogtypeQueryMatch () {
+    String[] messages = {
+        "Static text, dictVar1, 123, 456.7, dictVar2, 987, 654.3",
+        "Message with only static text.",
+        "Static text, dictVar3, 321, 456.7, dictVar4, 986, 654.3"
+    };
+    MessageEncoder messageEncoder = new MessageEncoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1);
+    MessageDecoder messageDecoder = new MessageDecoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1);
+    EightByteClpWildcardQueryEncoder queryEncoder = new EightByteClpWildcardQueryEncoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+    );
+    EncodedMessageBatch batch = new EncodedMessageBatch();
+    try {
+      messageEncoder.encodeMessages(FlattenedByteArrayFactory.fromStrings(messages), batch);
+    } catch (IOException e) {
+      fail(e.getMessage(), e);
+    }
+    // The first and last messages share a logtype, so use every message's
+    // logtype as the dictionary
+    FlattenedByteArray logtypes = batch.getLogtypes();
+
+    // Validate matching queries without wildcards
+    EightByteClpEncodedSubquery[] subqueries = {
+        queryEncoder.encode(messages[0])[0],
+        queryEncoder.encode(messages[1])[0]
+    };
+    BitSet[] matchingLogtypeIds = messageDecoder.batchLogtypeQueryMatch(logtypes, subqueries);
+    assertEquals(subqueries.length, matchingLogtypeIds.length);
+    assertEquals(BitSet.valueOf(new long[] {0b101}), matchingLogtypeIds[0]);
+    assertEquals(BitSet.valueOf(new long[] {0b010}), matchingLogtypeIds[1]);
+
+    // Validate matching queries with wildcards
+    subqueries = queryEncoder.encode("*456.7*");
+    matchingLogtypeIds = messageDecoder.batchLogtypeQueryMatch(logtypes, subqueries);
+    BitSet allMatchingLogtypeIds = new BitSet();
+    for (BitSet ids : matchingLogtypeIds) {
+      allMatchingLogtypeIds.or(ids);
+    }
+    assertEquals(BitSet.valueOf(new long[] {0b101}), allMatchingLogtypeIds);
+
+    // Validate that the bitmasks match the bit sets
+    int numWords = MessageDecoder.getNumMatchBitmaskWords(logtypes.size());
+    long[] matchBitmasks = new long[subqueries.length * numWords];
+    messageDecoder.batchLogtypeQueryMatch(logtypes, subqueries, matchBitmasks);
+    for (int i = 0; i < subqueries.length; ++i) {
+      assertEquals(matchingLogtypeIds[i], BitSet.valueOf(
+          Arrays.copyOfRange(matchBitmasks, i * numWords, (i + 1) * numWords)));
+    }
+
+    // Validate error for an output array of the wrong size
+    EightByteClpEncodedSubquery[] finalSubqueries = subqueries;
+    assertThrows(IllegalArgumentException.class,
+                 () -> messageDecoder.batchLogtypeQueryMatch(logtypes, finalSubqueries,
+                                                             new long[0]));
+  }
+
+  @Test
+  void testFourByteEncodedVarsWildcardMatch () {
+    String[] messages = {
+        "Static text, dictVar1, 123, 456.7, dictVar2, 987, 654.3",
+        "Message with only static text.",
+        "Static text, dictVar3, 321, 456.7, dictVar4, 986, 654.3"
+    };
+    MessageDecoder messageDecoder = new MessageDecoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1);
+    FourByteClpWildcardQueryEncoder queryEncoder = new FourByteClpWildcardQueryEncoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+    );
+    ForkJoinPool pool = new ForkJoinPool(2);
+
+    try {
+      // Encode the messages using the four-byte encoding by round-tripping
+      // them through an IR stream
+      ByteArrayOutputStream irBytes = new ByteArrayOutputStream();
+      FourByteClpIrOutputStream irOutputStream = new FourByteClpIrOutputStream(
+          "yyyy-MM-dd HH:mm:ss,SSS", "America/Toronto", irBytes);
+      for (String message : messages) {
+        irOutputStream.writeLogEvent(0,
+                                     ByteBuffer.wrap(message.getBytes(StandardCharsets.UTF_8)));
+      }
+      irOutputStream.close();
+
+      byte[][] logtypes = new byte[messages.length][];
+      int[] encodedVarEndOffsets = new int[messages.length];
+      int[] encodedVars = new int[0];
+      FourByteClpIrInputStream irInputStream =
+          new FourByteClpIrInputStream(new ByteArrayInputStream(irBytes.toByteArray()));
+      EncodedLogEvent logEvent = new EncodedLogEvent();
+      for (int i = 0; i < messages.length; ++i) {
+        assertTrue(irInputStream.readNextEncodedLogEvent(logEvent));
+        logtypes[i] = Arrays.copyOf(logEvent.getLogtype(), logEvent.getLogtypeLength());
+        int beginOffset = encodedVars.length;
+        encodedVars = Arrays.copyOf(encodedVars, beginOffset + logEvent.getNumEncodedVars());
+        for (int j = 0; j < logEvent.getNumEncodedVars(); ++j) {
+          encodedVars[beginOffset + j] = (int)logEvent.getEncodedVars()[j];
+        }
+        encodedVarEndOffsets[i] = encodedVars.length;
+      }
+      irInputStream.close();
+      FlattenedByteArray flattenedLogtypes = FlattenedByteArrayFactory.fromByteArrays(logtypes);
+
+      // Validate that encoding a message as a query produces the same encoded
+      // variables as encoding the message
+      FourByteClpEncodedSubquery[] subqueries = queryEncoder.encode(messages[0]);
+      assertEquals(1, subqueries.length);
+      assertFalse(subqueries[0].logtypeQueryContainsWildcards());
+      assertArrayEquals(Arrays.copyOf(encodedVars, encodedVarEndOffsets[0]),
+                        subqueries[0].getEncodedVars());
+
+      // Validate matching each subquery of a wildcard query, both separately
+      // and at once
+      subqueries = queryEncoder.encode("*987*");
+      int numWords = MessageDecoder.getNumMatchBitmaskWords(subqueries.length);
+      long[] matchBitmasks = new long[messages.length * numWords];
+      messageDecoder.batchEncodedVarsWildcardMatch(flattenedLogtypes, null, encodedVars,
+                                                   encodedVarEndOffsets, subqueries,
+                                                   matchBitmasks);
+      int[] numMatchingSubqueries = new int[messages.length];
+      for (int i = 0; i < subqueries.length; ++i) {
+        int numEncodedVarWildcardQueries = subqueries[i].getNumEncodedVarWildcardQueries();
+        byte[] encodedVarWildcardTypes = new byte[numEncodedVarWildcardQueries];
+        int[] encodedVarWildcardQueryEndIndexes = new int[numEncodedVarWildcardQueries];
+        ByteArrayOutputStream serializedEncodedVarWildcardQueries = new ByteArrayOutputStream();
+        int wildcardEncodedVarIdx = 0;
+        for (VariableWildcardQuery q : subqueries[i].getEncodedVarWildcardQueries()) {
+          encodedVarWildcardTypes[wildcardEncodedVarIdx] = q.getType();
+          serializedEncodedVarWildcardQueries.write(q.getQuery().toByteArray());
+          encodedVarWildcardQueryEndIndexes[wildcardEncodedVarIdx] =
+              serializedEncodedVarWildcardQueries.size();
+          ++wildcardEncodedVarIdx;
+        }
+
+        int[] matchResults = new int[messages.length];
+        messageDecoder.batchEncodedVarsWildcardMatch(
+            flattenedLogtypes, null, encodedVars, encodedVarEndOffsets, encodedVarWildcardTypes,
+            serializedEncodedVarWildcardQueries.toByteArray(), encodedVarWildcardQueryEndIndexes,
+            matchResults);
+        int[] parallelMatchResults = new int[messages.length];
+        messageDecoder.batchEncodedVarsWildcardMatch(
+            flattenedLogtypes, null, encodedVars, encodedVarEndOffsets, encodedVarWildcardTypes,
+            serializedEncodedVarWildcardQueries.toByteArray(), encodedVarWildcardQueryEndIndexes,
+            parallelMatchResults, pool);
+        assertArrayEquals(matchResults, parallelMatchResults);
+        for (int j = 0; j < messages.length; ++j) {
+          boolean bitIsSet = 0 != (matchBitmasks[j * numWords + i / 64] & (1L << (i % 64)));
+          assertEquals(1 == matchResults[j], bitIsSet);
+          if (0 == numEncodedVarWildcardQueries) {
+            // Every message matches a subquery without encoded variable
+            // constraints (even one without encoded variables)
+            assertEquals(1, matchResults[j]);
+          } else {
+            numMatchingSubqueries[j] += matchResults[j];
+          }
+        }
+      }
+      // Only the first message contains an encoded variable matching the query
+      assertTrue(numMatchingSubqueries[0] > 0);
+      assertEquals(0, numMatchingSubqueries[1]);
+      assertEquals(0, numMatchingSubqueries[2]);
+    } catch (IOException e) {
+      fail(e.getMessage(), e);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
   @Test
   void testBatchEncodedVarsWildcardMatchNative () {
     MessageEncoder messageEncoder = new MessageEncoder(
@@ -257,4 +1061,273 @@ public class EncodingTests {
     // Fifth row is invalid and shouldn't match any subquery
     assertEquals(0, matchingRows[rowIdx++]);
   }
+
+  @Test
+  void testBatchEncodedVarsWildcardMatchFlattened () {
+    String[] messages = {
+        "Static text, dictVar1, 123, 456.7, dictVar2, 987, 654.3",
+        "Message with only static text.",
+        "Message with 1 + 1 encoded variables.",
+        "Message with dictVar1 and dictVar2.",
+        "Static text, dictVar3, 321, 456.7, dictVar4, 987, 654.3"
+    };
+    MessageEncoder messageEncoder = new MessageEncoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1);
+    MessageDecoder messageDecoder = new MessageDecoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1);
+    EightByteClpWildcardQueryEncoder queryEncoder = new EightByteClpWildcardQueryEncoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+    );
+    EncodedMessageBatch batch = new EncodedMessageBatch();
+    try {
+      messageEncoder.encodeMessages(FlattenedByteArrayFactory.fromStrings(messages), batch);
+
+      // Split the batch into per-message arrays for comparison
+      FlattenedByteArray logtypes = batch.getLogtypes();
+      long[] encodedVars = batch.getEncodedVars();
+      int[] encodedVarEndOffsets = batch.getEncodedVarEndOffsets();
+      byte[][] logtypeArrays = new byte[messages.length][];
+      long[][] encodedVarArrays = new long[messages.length][];
+      Iterator<byte[]> logtypesIter = logtypes.iterator();
+      int encodedVarsBeginOffset = 0;
+      for (int i = 0; i < messages.length; ++i) {
+        logtypeArrays[i] = logtypesIter.next();
+        // NOTE: Messages without encoded variables get an empty (rather than
+        // null) array, since only a null array means the message can't match
+        encodedVarArrays[i] = Arrays.copyOfRange(encodedVars, encodedVarsBeginOffset,
+                                                 encodedVarEndOffsets[i]);
+        encodedVarsBeginOffset = encodedVarEndOffsets[i];
+      }
+
+      // Place the encoded variables after some other content in the buffers
+      // so that the offsets need to be relative to the buffers' positions
+      int prefixLength = 2;
+      LongBuffer heapBuffer = LongBuffer.allocate(prefixLength + encodedVars.length);
+      LongBuffer directBuffer = ByteBuffer.allocateDirect(
+          (prefixLength + encodedVars.length) * Long.BYTES)
+          .order(ByteOrder.nativeOrder()).asLongBuffer();
+      // A buffer whose array begins before the buffer (a non-zero array offset)
+      LongBuffer slicedHeapBuffer = LongBuffer.allocate(1 + prefixLength + encodedVars.length);
+      slicedHeapBuffer.position(1);
+      slicedHeapBuffer = slicedHeapBuffer.slice();
+      // A view of a heap ByteBuffer, which has no accessible array
+      LongBuffer viewBuffer =
+          ByteBuffer.allocate((prefixLength + encodedVars.length) * Long.BYTES).asLongBuffer();
+      LongBuffer[] writableBuffers = {heapBuffer, directBuffer, slicedHeapBuffer, viewBuffer};
+      for (LongBuffer buffer : writableBuffers) {
+        buffer.position(prefixLength);
+        buffer.put(encodedVars);
+        buffer.position(prefixLength);
+      }
+      LongBuffer readOnlyBuffer = heapBuffer.asReadOnlyBuffer();
+      LongBuffer[] buffers = {heapBuffer, directBuffer, slicedHeapBuffer, viewBuffer,
+                              readOnlyBuffer};
+
+      int numMatches = 0;
+      EightByteClpEncodedSubquery[] subqueries = queryEncoder.encode("*1* *987*");
+      int numWords = MessageDecoder.getNumMatchBitmaskWords(subqueries.length);
+      long[] expectedMatchBitmasks = new long[messages.length * numWords];
+      for (int subqueryIdx = 0; subqueryIdx < subqueries.length; ++subqueryIdx) {
+        EightByteClpEncodedSubquery subquery = subqueries[subqueryIdx];
+        int numEncodedVarWildcardQueries = subquery.getNumEncodedVarWildcardQueries();
+        byte[] encodedVarWildcardTypes = new byte[numEncodedVarWildcardQueries];
+        int[] encodedVarWildcardQueryEndIndexes = new int[numEncodedVarWildcardQueries];
+        ByteArrayOutputStream serializedEncodedVarWildcardQueries = new ByteArrayOutputStream();
+        int wildcardEncodedVarIdx = 0;
+        for (VariableWildcardQuery q : subquery.getEncodedVarWildcardQueries()) {
+          encodedVarWildcardTypes[wildcardEncodedVarIdx] = q.getType();
+          serializedEncodedVarWildcardQueries.write(q.getQuery().toByteArray());
+          encodedVarWildcardQueryEndIndexes[wildcardEncodedVarIdx] =
+              serializedEncodedVarWildcardQueries.size();
+          ++wildcardEncodedVarIdx;
+        }
+        byte[] serializedQueries = serializedEncodedVarWildcardQueries.toByteArray();
+
+        int[] expectedMatchResults = new int[messages.length];
+        messageDecoder.batchEncodedVarsWildcardMatch(logtypeArrays, encodedVarArrays,
+                                                     encodedVarWildcardTypes, serializedQueries,
+                                                     encodedVarWildcardQueryEndIndexes,
+                                                     expectedMatchResults);
+        for (int i = 0; i < messages.length; ++i) {
+          numMatches += expectedMatchResults[i];
+          if (0 != expectedMatchResults[i]) {
+            expectedMatchBitmasks[i * numWords + subqueryIdx / Long.SIZE] |=
+                1L << (subqueryIdx % Long.SIZE);
+          }
+        }
+
+        int[] matchResults = new int[messages.length];
+        messageDecoder.batchEncodedVarsWildcardMatch(logtypes, null, encodedVars,
+                                                     encodedVarEndOffsets,
+                                                     encodedVarWildcardTypes, serializedQueries,
+                                                     encodedVarWildcardQueryEndIndexes,
+                                                     matchResults);
+        assertArrayEquals(expectedMatchResults, matchResults);
+
+        for (LongBuffer buffer : buffers) {
+          matchResults = new int[messages.length];
+          messageDecoder.batchEncodedVarsWildcardMatch(logtypes, null, buffer,
+                                                       encodedVarEndOffsets,
+                                                       encodedVarWildcardTypes,
+                                                       serializedQueries,
+                                                       encodedVarWildcardQueryEndIndexes,
+                                                       matchResults);
+          assertArrayEquals(expectedMatchResults, matchResults);
+          assertEquals(prefixLength, buffer.position());
+        }
+      }
+      assertTrue(numMatches > 0);
+
+      // Validate that matching all subqueries in one pass gives the same
+      // results as matching them one at a time
+      long[] matchBitmasks = new long[messages.length * numWords];
+      Arrays.fill(matchBitmasks, -1);
+      messageDecoder.batchEncodedVarsWildcardMatch(logtypes, null, encodedVars,
+                                                   encodedVarEndOffsets, subqueries,
+                                                   matchBitmasks);
+      assertArrayEquals(expectedMatchBitmasks, matchBitmasks);
+      assertThrows(IllegalArgumentException.class,
+                   () -> messageDecoder.batchEncodedVarsWildcardMatch(
+                       logtypes, null, encodedVars, encodedVarEndOffsets, subqueries,
+                       new long[messages.length * numWords + 1]));
+
+      // Validate that messages without encoded variables (including the
+      // message with only static text) match a query without any encoded
+      // variable constraints, as they do when matched one array at a time
+      int[] expectedMatchResults = new int[messages.length];
+      messageDecoder.batchEncodedVarsWildcardMatch(logtypeArrays, encodedVarArrays, new byte[0],
+                                                   new byte[0], new int[0],
+                                                   expectedMatchResults);
+      int[] allMatchResults = new int[messages.length];
+      Arrays.fill(allMatchResults, 1);
+      assertArrayEquals(allMatchResults, expectedMatchResults);
+      int[] matchResults = new int[messages.length];
+      messageDecoder.batchEncodedVarsWildcardMatch(logtypes, null, encodedVars,
+                                                   encodedVarEndOffsets, new byte[0],
+                                                   new byte[0], new int[0], matchResults);
+      assertArrayEquals(expectedMatchResults, matchResults);
+      EightByteClpEncodedSubquery subqueryWithoutEncodedVars = null;
+      for (EightByteClpEncodedSubquery subquery : queryEncoder.encode("Message with*")) {
+        if (0 == subquery.getNumEncodedVarWildcardQueries()) {
+          subqueryWithoutEncodedVars = subquery;
+        }
+      }
+      assertNotNull(subqueryWithoutEncodedVars);
+      matchBitmasks = new long[messages.length];
+      messageDecoder.batchEncodedVarsWildcardMatch(
+          logtypes, null, encodedVars, encodedVarEndOffsets,
+          new EightByteClpEncodedSubquery[] {subqueryWithoutEncodedVars}, matchBitmasks);
+      for (int i = 0; i < messages.length; ++i) {
+        assertEquals(1, matchBitmasks[i]);
+      }
+
+      // Validate that out-of-bounds offsets are rejected
+      int[] invalidEncodedVarEndOffsets = encodedVarEndOffsets.clone();
+      invalidEncodedVarEndOffsets[messages.length - 1] = encodedVars.length + 1;
+      assertThrows(IllegalArgumentException.class,
+                   () -> messageDecoder.batchEncodedVarsWildcardMatch(
+                       logtypes, null, encodedVars, invalidEncodedVarEndOffsets, new byte[0],
+                       new byte[0], new int[0], new int[messages.length]));
+    } catch (IOException e) {
+      fail(e.getMessage(), e);
+    }
+  }
+
+  @Test
+  void testParallelBatchEncodedVarsWildcardMatch () {
+    String[] uniqueMessages = {
+        "Static text, dictVar1, 123, 456.7, dictVar2, 987, 654.3",
+        "Message with only static text.",
+        "Message with 1 + 1 encoded variables.",
+        "Static text, dictVar3, 321, 456.7, dictVar4, 986, 654.3"
+    };
+    // Use enough messages that the batch is split into multiple ranges
+    String[] messages = new String[5000];
+    for (int i = 0; i < messages.length; ++i) {
+      messages[i] = uniqueMessages[i % uniqueMessages.length];
+    }
+    MessageEncoder messageEncoder = new MessageEncoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1);
+    MessageDecoder messageDecoder = new MessageDecoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1);
+    EightByteClpWildcardQueryEncoder queryEncoder = new EightByteClpWildcardQueryEncoder(
+        BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+        BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+    );
+    EncodedMessageBatch batch = new EncodedMessageBatch();
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      messageEncoder.encodeMessages(FlattenedByteArrayFactory.fromStrings(messages), batch);
+
+      int numMatches = 0;
+      for (EightByteClpEncodedSubquery subquery : queryEncoder.encode("*1* *987*")) {
+        int numEncodedVarWildcardQueries = subquery.getNumEncodedVarWildcardQueries();
+        byte[] encodedVarWildcardTypes = new byte[numEncodedVarWildcardQueries];
+        int[] encodedVarWildcardQueryEndIndexes = new int[numEncodedVarWildcardQueries];
+        ByteArrayOutputStream serializedEncodedVarWildcardQueries = new ByteArrayOutputStream();
+        int wildcardEncodedVarIdx = 0;
+        for (VariableWildcardQuery q : subquery.getEncodedVarWildcardQueries()) {
+          encodedVarWildcardTypes[wildcardEncodedVarIdx] = q.getType();
+          serializedEncodedVarWildcardQueries.write(q.getQuery().toByteArray());
+          encodedVarWildcardQueryEndIndexes[wildcardEncodedVarIdx] =
+              serializedEncodedVarWildcardQueries.size();
+          ++wildcardEncodedVarIdx;
+        }
+        byte[] serializedQueries = serializedEncodedVarWildcardQueries.toByteArray();
+
+        int[] expectedMatchResults = new int[messages.length];
+        messageDecoder.batchEncodedVarsWildcardMatch(batch.getLogtypes(), null,
+                                                     batch.getEncodedVars(),
+                                                     batch.getEncodedVarEndOffsets(),
+                                                     encodedVarWildcardTypes, serializedQueries,
+                                                     encodedVarWildcardQueryEndIndexes,
+                                                     expectedMatchResults);
+        for (int result : expectedMatchResults) {
+          numMatches += result;
+        }
+
+        int[] matchResults = new int[messages.length];
+        messageDecoder.batchEncodedVarsWildcardMatch(batch.getLogtypes(), null,
+                                                     batch.getEncodedVars(),
+                                                     batch.getEncodedVarEndOffsets(),
+                                                     encodedVarWildcardTypes, serializedQueries,
+                                                     encodedVarWildcardQueryEndIndexes,
+                                                     matchResults, pool);
+        assertArrayEquals(expectedMatchResults, matchResults);
+
+        // Match using a prepared subquery, both sequentially and in parallel
+        PreparedSubquery preparedSubquery = new PreparedSubquery(subquery);
+        try (PreparedSubquery ignored = preparedSubquery) {
+          Arrays.fill(matchResults, 0);
+          messageDecoder.batchEncodedVarsWildcardMatch(batch.getLogtypes(), null,
+                                                       batch.getEncodedVars(),
+                                                       batch.getEncodedVarEndOffsets(),
+                                                       preparedSubquery, matchResults);
+          assertArrayEquals(expectedMatchResults, matchResults);
+
+          Arrays.fill(matchResults, 0);
+          messageDecoder.batchEncodedVarsWildcardMatch(batch.getLogtypes(), null,
+                                                       batch.getEncodedVars(),
+                                                       batch.getEncodedVarEndOffsets(),
+                                                       preparedSubquery, matchResults, pool);
+          assertArrayEquals(expectedMatchResults, matchResults);
+        }
+        assertThrows(IllegalStateException.class, () ->
+            messageDecoder.batchEncodedVarsWildcardMatch(batch.getLogtypes(), null,
+                                                         batch.getEncodedVars(),
+                                                         batch.getEncodedVarEndOffsets(),
+                                                         preparedSubquery, matchResults));
+      }
+      assertTrue(numMatches > 0);
+    } catch (IOException e) {
+      fail(e.getMessage(), e);
+    } finally {
+      pool.shutdown();
+    }
+  }
 }
@@ -0,0 +1,712 @@
+package com.yscope.clp.irstream;
+
+import com.yscope.clp.compressorfrontend.AbstractClpEncodedSubquery;
+import com.yscope.clp.compressorfrontend.BuiltInVariableHandlingRuleVersions;
+import com.yscope.clp.compressorfrontend.EightByteClpWildcardQueryEncoder;
+import com.yscope.clp.compressorfrontend.FlattenedByteArrayFactory;
+import com.yscope.clp.compressorfrontend.FourByteClpWildcardQueryEncoder;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestClpIrInputStream {
+  private static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss,SSS";
+  private static final String TIME_ZONE_ID = "America/Toronto";
+
+  @Test
+  void testReadingEightByteEncodedIrStream () {
+    testReadingIrStream(false);
+  }
+
+  @Test
+  void testReadingFourByteEncodedIrStream () {
+    testReadingIrStream(true);
+  }
+
+  @Test
+  void testReadingZstdCompressedEightByteEncodedIrStream () {
+    testReadingIrStream(false, true);
+  }
+
+  @Test
+  void testReadingZstdCompressedFourByteEncodedIrStream () {
+    testReadingIrStream(true, true);
+  }
+
+  @Test
+  void testReadingLargeZstdFrame () throws IOException {
+    // A highly compressible frame that's much larger than the decompressed
+    // buffer, so that all of the compressed input is consumed while the
+    // decompressor still has content to flush
+    byte[] content = new byte[1024 * 1024];
+    for (int i = 0; i < content.length; ++i) {
+      content[i] = (byte)(i % 251);
+    }
+    ByteArrayOutputStream compressedBytes = new ByteArrayOutputStream();
+    ZstdFrameOutputStream zstdFrameOutputStream = new ZstdFrameOutputStream(
+        compressedBytes, content.length, ZstdFrameOutputStream.DEFAULT_COMPRESSION_LEVEL);
+    zstdFrameOutputStream.write(content);
+    zstdFrameOutputStream.close();
+    assertEquals(1, zstdFrameOutputStream.getNumFramesWritten());
+    assertTrue(compressedBytes.size() < 128 * 1024);
+
+    ByteArrayOutputStream decompressedBytes = new ByteArrayOutputStream();
+    try (ZstdFrameInputStream zstdFrameInputStream =
+             new ZstdFrameInputStream(new ByteArrayInputStream(compressedBytes.toByteArray())))
+    {
+      byte[] buffer = new byte[4096];
+      int numBytesRead;
+      while ((numBytesRead = zstdFrameInputStream.read(buffer)) != -1) {
+        decompressedBytes.write(buffer, 0, numBytesRead);
+      }
+    }
+    assertArrayEquals(content, decompressedBytes.toByteArray());
+  }
+
+  private void testReadingIrStream (boolean useFourByteEncoding) {
+    testReadingIrStream(useFourByteEncoding, false);
+  }
+
+  private void testReadingIrStream (boolean useFourByteEncoding, boolean useZstd) {
+    String[] messages = {
+        " INFO Static text, dictVar1, 123, 456.7, dictVar2, 987, 654.3\n",
+        " INFO Static text only\n",
+        " WARN 1 encoded var\n",
+        // Long enough to require a larger length tag and to grow the buffers
+        " ERROR " + String.join(" ", generateTokens(2000)) + "\n"
+    };
+    // Include deltas that need each size of timestamp-delta tag
+    long[] timestamps = {
+        1700000000000L,
+        1700000000001L,
+        1700000000001L + Short.MAX_VALUE,
+        1700000000001L + Short.MAX_VALUE + Integer.MAX_VALUE + 1L,
+        1700000000000L - 1000
+    };
+    int numEvents = timestamps.length;
+
+    try {
+      ByteArrayOutputStream irBytes = new ByteArrayOutputStream();
+      OutputStream outputStream = irBytes;
+      ZstdFrameOutputStream zstdFrameOutputStream = null;
+      if (useZstd) {
+        // Use a small frame size so that the stream contains several frames
+        zstdFrameOutputStream = new ZstdFrameOutputStream(
+            irBytes, 256, ZstdFrameOutputStream.DEFAULT_COMPRESSION_LEVEL);
+        outputStream = zstdFrameOutputStream;
+      }
+      AbstractClpIrOutputStream clpIrOutputStream;
+      if (useFourByteEncoding) {
+        clpIrOutputStream = new FourByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID,
+                                                          outputStream);
+      } else {
+        clpIrOutputStream = new EightByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID,
+                                                           outputStream);
+      }
+      for (int i = 0; i < numEvents; ++i) {
+        byte[] message = messages[i % messages.length].getBytes(StandardCharsets.UTF_8);
+        clpIrOutputStream.writeLogEvent(timestamps[i], ByteBuffer.wrap(message));
+      }
+      clpIrOutputStream.close();
+      if (useZstd) {
+        // The preamble, the large event, and the rest of the events should
+        // each be in their own frame
+        assertTrue(zstdFrameOutputStream.getNumFramesWritten() >= 3);
+      }
+
+      // Read the events back decoded
+      AbstractClpIrInputStream clpIrInputStream = ClpIrInputStreamFactory.fromInputStream(
+          new ByteArrayInputStream(irBytes.toByteArray()));
+      assertEquals(useFourByteEncoding, clpIrInputStream instanceof FourByteClpIrInputStream);
+      IrStreamMetadata metadata = clpIrInputStream.getMetadata();
+      assertEquals(TIMESTAMP_PATTERN, metadata.getTimestampPattern());
+      assertEquals(TIME_ZONE_ID, metadata.getTimeZoneId());
+
+      LogEvent logEvent = new LogEvent();
+      for (int i = 0; i < numEvents; ++i) {
+        assertTrue(clpIrInputStream.readNextLogEvent(logEvent));
+        assertEquals(timestamps[i], logEvent.getTimestamp());
+        assertEquals(messages[i % messages.length], logEvent.getMessageAsString());
+      }
+      assertFalse(clpIrInputStream.readNextLogEvent(logEvent));
+      assertFalse(clpIrInputStream.readNextLogEvent(logEvent));
+      clpIrInputStream.close();
+      assertThrows(IOException.class, () -> clpIrInputStream.readNextLogEvent(logEvent));
+
+      // Read the events back encoded
+      AbstractClpIrInputStream encodedInputStream = ClpIrInputStreamFactory.fromInputStream(
+          new ByteArrayInputStream(irBytes.toByteArray()));
+      EncodedLogEvent encodedLogEvent = new EncodedLogEvent();
+      assertTrue(encodedInputStream.readNextEncodedLogEvent(encodedLogEvent));
+      assertEquals(timestamps[0], encodedLogEvent.getTimestamp());
+      assertEquals(2, encodedLogEvent.getNumDictVars());
+      assertEquals(4, encodedLogEvent.getNumEncodedVars());
+      encodedInputStream.decodeLogEvent(encodedLogEvent, logEvent);
+      assertEquals(messages[0], logEvent.getMessageAsString());
+      encodedInputStream.close();
+
+      // Validate that a truncated stream is detected
+      byte[] truncatedIrBytes = Arrays.copyOf(irBytes.toByteArray(), irBytes.size() - 8);
+      AbstractClpIrInputStream truncatedInputStream = ClpIrInputStreamFactory.fromInputStream(
+          new ByteArrayInputStream(truncatedIrBytes));
+      assertThrows(IOException.class, () -> {
+        while (truncatedInputStream.readNextEncodedLogEvent(encodedLogEvent)) {
+        }
+      });
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+  }
+
+  @Test
+  void testSeekingToTimestamp () {
+    for (boolean useFourByteEncoding : new boolean[] {false, true}) {
+      for (boolean useZstd : new boolean[] {false, true}) {
+        testSeekingToTimestamp(useFourByteEncoding, useZstd);
+      }
+    }
+  }
+
+  private void testSeekingToTimestamp (boolean useFourByteEncoding, boolean useZstd) {
+    int numEvents = 1000;
+    long firstTimestamp = 1700000000000L;
+    // Timestamps increase by 10ms, with pairs of events sharing a timestamp
+    long[] timestamps = new long[numEvents];
+    for (int i = 0; i < numEvents; ++i) {
+      timestamps[i] = firstTimestamp + (i / 2) * 10L;
+    }
+
+    Path irPath = null;
+    try {
+      irPath = Files.createTempFile("seek-test", ".clp");
+      ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+      OutputStream outputStream = Files.newOutputStream(irPath);
+      if (useZstd) {
+        outputStream = new ZstdFrameOutputStream(
+            outputStream, 1024, ZstdFrameOutputStream.DEFAULT_COMPRESSION_LEVEL);
+      }
+      AbstractClpIrOutputStream clpIrOutputStream;
+      if (useFourByteEncoding) {
+        clpIrOutputStream = new FourByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID,
+                                                          outputStream);
+      } else {
+        clpIrOutputStream = new EightByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID,
+                                                           outputStream);
+      }
+      clpIrOutputStream.setIndexWriter(new IrStreamIndexWriter(indexBytes, 50, 4096));
+      for (int i = 0; i < numEvents; ++i) {
+        byte[] message = (" INFO Event " + i + " for dictVar" + i + "\n")
+            .getBytes(StandardCharsets.UTF_8);
+        clpIrOutputStream.writeLogEvent(timestamps[i], ByteBuffer.wrap(message));
+      }
+      clpIrOutputStream.close();
+
+      IrStreamIndex index = IrStreamIndex.read(
+          new ByteArrayInputStream(indexBytes.toByteArray()));
+      assertEquals(useZstd, index.isForCompressedStream());
+      assertTrue(index.getNumEntries() > 1);
+
+      AbstractClpIrInputStream clpIrInputStream = ClpIrInputStreamFactory.fromFileChannel(
+          FileChannel.open(irPath, StandardOpenOption.READ));
+      LogEvent logEvent = new LogEvent();
+      // Seek forwards and backwards, to timestamps both at and between events
+      long[] targetTimestamps = {
+          timestamps[700], timestamps[3] + 5, timestamps[0], timestamps[0] - 100,
+          timestamps[numEvents - 1]
+      };
+      int[] expectedEventIndices = {700, 4, 0, 0, numEvents - 2};
+      for (int i = 0; i < targetTimestamps.length; ++i) {
+        assertTrue(clpIrInputStream.seekToTimestamp(targetTimestamps[i], index));
+        int expectedIdx = expectedEventIndices[i];
+        // Read a few events to validate that the stream continues correctly
+        for (int j = expectedIdx; j < Math.min(expectedIdx + 3, numEvents); ++j) {
+          assertTrue(clpIrInputStream.readNextLogEvent(logEvent));
+          assertEquals(timestamps[j], logEvent.getTimestamp());
+          assertEquals(" INFO Event " + j + " for dictVar" + j + "\n",
+                       logEvent.getMessageAsString());
+        }
+      }
+      assertFalse(clpIrInputStream.seekToTimestamp(timestamps[numEvents - 1] + 1, index));
+      assertFalse(clpIrInputStream.readNextLogEvent(logEvent));
+      clpIrInputStream.close();
+
+      // Streams that weren't created from a channel can't seek
+      AbstractClpIrInputStream unseekableInputStream =
+          ClpIrInputStreamFactory.fromInputStream(Files.newInputStream(irPath));
+      assertThrows(IOException.class,
+                   () -> unseekableInputStream.seekToTimestamp(timestamps[0], index));
+      unseekableInputStream.close();
+    } catch (IOException e) {
+      fail(e.getMessage());
+    } finally {
+      if (null != irPath) {
+        try {
+          Files.deleteIfExists(irPath);
+        } catch (IOException e) {
+          // Ignore since the file is in a temporary directory
+        }
+      }
+    }
+  }
+
+  @Test
+  void testSearchingIrStream () {
+    testSearchingIrStream(false);
+    testSearchingIrStream(true);
+  }
+
+  private void testSearchingIrStream (boolean useFourByteEncoding) {
+    // Use enough events that the searcher has to match several batches
+    int numEvents = 5000;
+    String[] messages = new String[numEvents];
+    for (int i = 0; i < numEvents; ++i) {
+      if (0 == i % 5) {
+        messages[i] = " WARN Static text only\n";
+      } else {
+        messages[i] = " INFO Job " + i + " finished in " + (i % 100) + ".5s for user"
+            + (i % 7) + "\n";
+      }
+    }
+    String[] queries = {
+        "* INFO *",
+        "*Job 10?? finished*",
+        "*finished in 42.5s*",
+        "*for user3*",
+        "*for use?4*",
+        "*Job 1* user2*",
+        "*Static*",
+        "*no such text*"
+    };
+
+    try {
+      ByteArrayOutputStream irBytes = new ByteArrayOutputStream();
+      AbstractClpIrOutputStream clpIrOutputStream;
+      if (useFourByteEncoding) {
+        clpIrOutputStream = new FourByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID,
+                                                          irBytes);
+      } else {
+        clpIrOutputStream = new EightByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID,
+                                                           irBytes);
+      }
+      long firstTimestamp = 1700000000000L;
+      for (int i = 0; i < numEvents; ++i) {
+        clpIrOutputStream.writeLogEvent(
+            firstTimestamp + i, ByteBuffer.wrap(messages[i].getBytes(StandardCharsets.UTF_8)));
+      }
+      clpIrOutputStream.close();
+
+      for (String query : queries) {
+        AbstractClpEncodedSubquery[] subqueries;
+        if (useFourByteEncoding) {
+          subqueries = new FourByteClpWildcardQueryEncoder(
+              BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+              BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+          ).encode(query);
+        } else {
+          subqueries = new EightByteClpWildcardQueryEncoder(
+              BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+              BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+          ).encode(query);
+        }
+
+        List<Long> expectedTimestamps = new ArrayList<>();
+        Pattern pattern = wildcardQueryToPattern(query);
+        for (int i = 0; i < numEvents; ++i) {
+          if (pattern.matcher(messages[i]).matches()) {
+            expectedTimestamps.add(firstTimestamp + i);
+          }
+        }
+
+        List<Long> matchedTimestamps = new ArrayList<>();
+        ClpIrStreamSearcher searcher = new ClpIrStreamSearcher(subqueries);
+        AbstractClpIrInputStream clpIrInputStream = ClpIrInputStreamFactory.fromInputStream(
+            new ByteArrayInputStream(irBytes.toByteArray()));
+        long numMatches = searcher.search(clpIrInputStream, logEvent -> {
+          int eventIdx = (int)(logEvent.getTimestamp() - firstTimestamp);
+          assertEquals(messages[eventIdx], logEvent.getMessageAsString());
+          matchedTimestamps.add(logEvent.getTimestamp());
+          return true;
+        });
+        clpIrInputStream.close();
+        assertEquals(expectedTimestamps, matchedTimestamps, query);
+        assertEquals(expectedTimestamps.size(), numMatches, query);
+
+        // Validate that the handler can stop the search
+        if (expectedTimestamps.size() > 1) {
+          AbstractClpIrInputStream stoppedInputStream = ClpIrInputStreamFactory.fromInputStream(
+              new ByteArrayInputStream(irBytes.toByteArray()));
+          assertEquals(1, searcher.search(stoppedInputStream, logEvent -> false));
+          stoppedInputStream.close();
+        }
+
+        // Validate that the stream's encoding must match the subqueries'
+        ByteArrayOutputStream mismatchedIrBytes = new ByteArrayOutputStream();
+        if (useFourByteEncoding) {
+          new EightByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID, mismatchedIrBytes)
+              .close();
+        } else {
+          new FourByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID, mismatchedIrBytes)
+              .close();
+        }
+        AbstractClpIrInputStream mismatchedInputStream = ClpIrInputStreamFactory.fromInputStream(
+            new ByteArrayInputStream(mismatchedIrBytes.toByteArray()));
+        assertThrows(IllegalArgumentException.class,
+                     () -> searcher.search(mismatchedInputStream, logEvent -> true));
+        mismatchedInputStream.close();
+      }
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+  }
+
+  @Test
+  void testMappedParallelScan () {
+    for (boolean useFourByteEncoding : new boolean[] {false, true}) {
+      for (boolean useIndex : new boolean[] {false, true}) {
+        testMappedParallelScan(useFourByteEncoding, useIndex);
+      }
+    }
+  }
+
+  private void testMappedParallelScan (boolean useFourByteEncoding, boolean useIndex) {
+    int numEvents = 20000;
+    long firstTimestamp = 1700000000000L;
+    String[] messages = new String[numEvents];
+    long[] timestamps = new long[numEvents];
+    for (int i = 0; i < numEvents; ++i) {
+      messages[i] = " INFO Job " + i + " finished for user" + (i % 7) + "\n";
+      // Pairs of events share a timestamp
+      timestamps[i] = firstTimestamp + (i / 2) * 10L;
+    }
+
+    Path irPath = null;
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      irPath = Files.createTempFile("mapped-scan-test", ".clp");
+      ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+      OutputStream outputStream = Files.newOutputStream(irPath);
+      AbstractClpIrOutputStream clpIrOutputStream;
+      if (useFourByteEncoding) {
+        clpIrOutputStream = new FourByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID,
+                                                          outputStream);
+      } else {
+        clpIrOutputStream = new EightByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID,
+                                                           outputStream);
+      }
+      if (useIndex) {
+        clpIrOutputStream.setIndexWriter(new IrStreamIndexWriter(indexBytes, 100, 4096));
+      }
+      for (int i = 0; i < numEvents; ++i) {
+        clpIrOutputStream.writeLogEvent(
+            timestamps[i], ByteBuffer.wrap(messages[i].getBytes(StandardCharsets.UTF_8)));
+      }
+      clpIrOutputStream.close();
+
+      IrStreamIndex index = null;
+      if (useIndex) {
+        index = IrStreamIndex.read(new ByteArrayInputStream(indexBytes.toByteArray()));
+      }
+      // Use small segments so that the file is scanned in many windows
+      MappedClpIrFileReader reader = new MappedClpIrFileReader(irPath, index, 8192);
+      assertEquals(TIMESTAMP_PATTERN, reader.getMetadata().getTimestampPattern());
+      assertTrue(reader.getNumSegments() > 8);
+
+      // Decode every event
+      List<LogEvent> decodedEvents = new ArrayList<>();
+      assertEquals(numEvents, reader.decodeAll(pool, decodedEvents::add));
+      assertEquals(numEvents, decodedEvents.size());
+      for (int i = 0; i < numEvents; ++i) {
+        assertEquals(timestamps[i], decodedEvents.get(i).getTimestamp());
+        assertEquals(messages[i], decodedEvents.get(i).getMessageAsString());
+      }
+
+      // Search for events
+      String query = "*Job 1?? finished for user3*";
+      AbstractClpEncodedSubquery[] subqueries;
+      if (useFourByteEncoding) {
+        subqueries = new FourByteClpWildcardQueryEncoder(
+            BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+            BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+        ).encode(query);
+      } else {
+        subqueries = new EightByteClpWildcardQueryEncoder(
+            BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+            BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+        ).encode(query);
+      }
+      Pattern pattern = wildcardQueryToPattern(query);
+      List<String> expectedMessages = new ArrayList<>();
+      for (String message : messages) {
+        if (pattern.matcher(message).matches()) {
+          expectedMessages.add(message);
+        }
+      }
+      List<String> matchedMessages = new ArrayList<>();
+      long numMatches = reader.search(subqueries, pool, logEvent -> {
+        matchedMessages.add(logEvent.getMessageAsString());
+        return true;
+      });
+      assertEquals(expectedMessages.size(), numMatches);
+      assertEquals(expectedMessages, matchedMessages);
+
+      // Validate that the handler can stop the scan
+      assertEquals(1, reader.decodeAll(pool, logEvent -> false));
+
+      reader.close();
+      assertThrows(IOException.class, () -> reader.decodeAll(pool, logEvent -> true));
+
+      if (useIndex) {
+        // An index that lags behind its file (or hasn't been flushed at all)
+        // shouldn't hide the events after its last entry
+        byte[] indexArray = indexBytes.toByteArray();
+        int indexHeaderLength = IrStreamIndex.MAGIC_NUMBER.length + 2;
+        for (int numKeptEntries : new int[] {0, index.getNumEntries() / 2}) {
+          IrStreamIndex laggingIndex = IrStreamIndex.read(new ByteArrayInputStream(
+              indexArray, 0, indexHeaderLength + numKeptEntries * IrStreamIndex.ENTRY_SIZE));
+          assertEquals(numKeptEntries, laggingIndex.getNumEntries());
+          try (MappedClpIrFileReader laggingReader =
+                   new MappedClpIrFileReader(irPath, laggingIndex, 8192)) {
+            assertTrue(laggingReader.getNumSegments() > 8);
+            List<LogEvent> events = new ArrayList<>();
+            assertEquals(numEvents, laggingReader.decodeAll(pool, events::add));
+            for (int i = 0; i < numEvents; ++i) {
+              assertEquals(messages[i], events.get(i).getMessageAsString());
+            }
+            assertEquals(expectedMessages.size(),
+                         laggingReader.search(subqueries, pool, logEvent -> true));
+          }
+        }
+      }
+
+      // A file that's still being written has no EOF tag and may end with a
+      // partial event, which should be left out
+      try (FileChannel channel = FileChannel.open(irPath, StandardOpenOption.WRITE)) {
+        channel.truncate(channel.size() - 1);
+      }
+      try (MappedClpIrFileReader unterminatedReader =
+               new MappedClpIrFileReader(irPath, index, 8192)) {
+        List<LogEvent> events = new ArrayList<>();
+        assertEquals(numEvents, unterminatedReader.decodeAll(pool, events::add));
+        assertEquals(messages[numEvents - 1], events.get(numEvents - 1).getMessageAsString());
+      }
+      try (FileChannel channel = FileChannel.open(irPath, StandardOpenOption.WRITE)) {
+        channel.truncate(channel.size() - 2);
+      }
+      try (MappedClpIrFileReader unterminatedReader =
+               new MappedClpIrFileReader(irPath, index, 8192)) {
+        List<LogEvent> events = new ArrayList<>();
+        assertEquals(numEvents - 1, unterminatedReader.decodeAll(pool, events::add));
+        assertEquals(messages[numEvents - 2], events.get(numEvents - 2).getMessageAsString());
+        assertEquals(expectedMessages.size(),
+                     unterminatedReader.search(subqueries, pool, logEvent -> true));
+      }
+    } catch (IOException e) {
+      fail(e.getMessage());
+    } finally {
+      pool.shutdown();
+      if (null != irPath) {
+        try {
+          Files.deleteIfExists(irPath);
+        } catch (IOException e) {
+          // Ignore since the file is in a temporary directory
+        }
+      }
+    }
+  }
+
+  @Test
+  void testChunkFilters () {
+    testChunkFilters(false);
+    testChunkFilters(true);
+  }
+
+  private void testChunkFilters (boolean useFourByteEncoding) {
+    int numEvents = 20000;
+    int numEventsPerChunk = 500;
+    int numEventsPerRequest = 1000;
+    long firstTimestamp = 1700000000000L;
+    String[] messages = new String[numEvents];
+    for (int i = 0; i < numEvents; ++i) {
+      messages[i] = " INFO Handled request_id=req" + (i / numEventsPerRequest) + " in " + i
+          + " ms\n";
+    }
+
+    Path irPath = null;
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      irPath = Files.createTempFile("chunk-filter-test", ".clp");
+      ByteArrayOutputStream chunkFilterBytes = new ByteArrayOutputStream();
+      OutputStream outputStream = Files.newOutputStream(irPath);
+      AbstractClpIrOutputStream clpIrOutputStream;
+      if (useFourByteEncoding) {
+        clpIrOutputStream = new FourByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID,
+                                                          outputStream);
+      } else {
+        clpIrOutputStream = new EightByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID,
+                                                           outputStream);
+      }
+      clpIrOutputStream.setChunkFilterWriter(new IrStreamChunkFilterWriter(
+          chunkFilterBytes, numEventsPerChunk,
+          IrStreamChunkFilterWriter.DEFAULT_NUM_BITS_PER_ELEMENT));
+      // Write events both individually and in a batch that spans chunks
+      int numIndividualEvents = numEvents / 2 + numEventsPerChunk / 3;
+      for (int i = 0; i < numIndividualEvents; ++i) {
+        clpIrOutputStream.writeLogEvent(
+            firstTimestamp + i, ByteBuffer.wrap(messages[i].getBytes(StandardCharsets.UTF_8)));
+      }
+      byte[][] batchMessages = new byte[numEvents - numIndividualEvents][];
+      long[] batchTimestamps = new long[batchMessages.length];
+      for (int i = 0; i < batchMessages.length; ++i) {
+        batchMessages[i] = messages[numIndividualEvents + i].getBytes(StandardCharsets.UTF_8);
+        batchTimestamps[i] = firstTimestamp + numIndividualEvents + i;
+      }
+      clpIrOutputStream.writeLogEvents(batchTimestamps,
+                                       FlattenedByteArrayFactory.fromByteArrays(batchMessages));
+      clpIrOutputStream.close();
+
+      IrStreamChunkFilters chunkFilters =
+          IrStreamChunkFilters.read(new ByteArrayInputStream(chunkFilterBytes.toByteArray()));
+      assertEquals(numEvents / numEventsPerChunk, chunkFilters.getNumChunks());
+      for (int i = 0; i < chunkFilters.getNumChunks(); ++i) {
+        assertEquals(numEventsPerChunk, chunkFilters.getNumEvents(i));
+      }
+
+      String query = "*request_id=req7 in*";
+      AbstractClpEncodedSubquery[] subqueries;
+      if (useFourByteEncoding) {
+        subqueries = new FourByteClpWildcardQueryEncoder(
+            BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+            BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+        ).encode(query);
+      } else {
+        subqueries = new EightByteClpWildcardQueryEncoder(
+            BuiltInVariableHandlingRuleVersions.VariablesSchemaV2,
+            BuiltInVariableHandlingRuleVersions.VariableEncodingMethodsV1
+        ).encode(query);
+      }
+
+      // The chunks containing the request must be candidates, and (barring an
+      // unlikely number of false positives) most chunks must be skipped
+      BitSet candidateChunks = chunkFilters.findCandidateChunks(subqueries);
+      int firstRequestChunk = 7 * numEventsPerRequest / numEventsPerChunk;
+      int numRequestChunks = numEventsPerRequest / numEventsPerChunk;
+      for (int i = firstRequestChunk; i < firstRequestChunk + numRequestChunks; ++i) {
+        assertTrue(candidateChunks.get(i));
+      }
+      assertTrue(candidateChunks.cardinality() < chunkFilters.getNumChunks() / 4);
+
+      MappedClpIrFileReader reader = new MappedClpIrFileReader(irPath, chunkFilters);
+      assertEquals(chunkFilters.getNumChunks(), reader.getNumSegments());
+      Pattern pattern = wildcardQueryToPattern(query);
+      List<String> expectedMessages = new ArrayList<>();
+      for (String message : messages) {
+        if (pattern.matcher(message).matches()) {
+          expectedMessages.add(message);
+        }
+      }
+      List<String> matchedMessages = new ArrayList<>();
+      reader.search(subqueries, pool, logEvent -> {
+        matchedMessages.add(logEvent.getMessageAsString());
+        return true;
+      });
+      assertEquals(expectedMessages, matchedMessages);
+
+      // Decoding uses every chunk
+      List<LogEvent> decodedEvents = new ArrayList<>();
+      assertEquals(numEvents, reader.decodeAll(pool, decodedEvents::add));
+      for (int i = 0; i < numEvents; ++i) {
+        assertEquals(firstTimestamp + i, decodedEvents.get(i).getTimestamp());
+        assertEquals(messages[i], decodedEvents.get(i).getMessageAsString());
+      }
+      reader.close();
+
+      // Drop the sidecar's trailing chunks (as if it wasn't flushed before the
+      // IR file) so that the request's events are only after the last chunk
+      int numKeptChunks = firstRequestChunk - 2;
+      byte[] sidecar = chunkFilterBytes.toByteArray();
+      ByteBuffer sidecarBuffer = ByteBuffer.wrap(sidecar);
+      int truncatedLength = IrStreamChunkFilters.MAGIC_NUMBER.length + 2;
+      for (int i = 0; i < numKeptChunks; ++i) {
+        truncatedLength += Long.BYTES + Long.BYTES + Integer.BYTES;
+        int numWords = sidecarBuffer.getInt(truncatedLength);
+        truncatedLength += Integer.BYTES + numWords * Long.BYTES;
+      }
+      IrStreamChunkFilters truncatedChunkFilters = IrStreamChunkFilters.read(
+          new ByteArrayInputStream(sidecar, 0, truncatedLength));
+      assertEquals(numKeptChunks, truncatedChunkFilters.getNumChunks());
+      try (MappedClpIrFileReader truncatedReader =
+               new MappedClpIrFileReader(irPath, truncatedChunkFilters)) {
+        assertEquals(numKeptChunks + 1, truncatedReader.getNumSegments());
+        List<String> truncatedMatchedMessages = new ArrayList<>();
+        truncatedReader.search(subqueries, pool, logEvent -> {
+          truncatedMatchedMessages.add(logEvent.getMessageAsString());
+          return true;
+        });
+        assertEquals(expectedMessages, truncatedMatchedMessages);
+        assertEquals(numEvents, truncatedReader.decodeAll(pool, logEvent -> true));
+      }
+    } catch (IOException e) {
+      fail(e.getMessage());
+    } finally {
+      pool.shutdown();
+      if (null != irPath) {
+        try {
+          Files.deleteIfExists(irPath);
+        } catch (IOException e) {
+          // Ignore since the file is in a temporary directory
+        }
+      }
+    }
+  }
+
+  @Test
+  void testMappingCompressedFile () throws IOException {
+    Path irPath = Files.createTempFile("mapped-compressed-test", ".clp.zst");
+    try {
+      OutputStream outputStream = new ZstdFrameOutputStream(
+          Files.newOutputStream(irPath), 1024, ZstdFrameOutputStream.DEFAULT_COMPRESSION_LEVEL);
+      new EightByteClpIrOutputStream(TIMESTAMP_PATTERN, TIME_ZONE_ID, outputStream).close();
+      assertThrows(IOException.class, () -> new MappedClpIrFileReader(irPath));
+    } finally {
+      Files.deleteIfExists(irPath);
+    }
+  }
+
+  private Pattern wildcardQueryToPattern (String query) {
+    StringBuilder regex = new StringBuilder();
+    for (char c : query.toCharArray()) {
+      if ('*' == c) {
+        regex.append("(?s).*");
+      } else if ('?' == c) {
+        regex.append("(?s).");
+      } else {
+        regex.append(Pattern.quote(Character.toString(c)));
+      }
+    }
+    return Pattern.compile(regex.toString());
+  }
+
+  private String[] generateTokens (int numTokens) {
+    String[] tokens = new String[numTokens];
+    for (int i = 0; i < numTokens; ++i) {
+      tokens[i] = (0 == i % 2) ? ("var" + i) : Integer.toString(i);
+    }
+    return tokens;
+  }
+}
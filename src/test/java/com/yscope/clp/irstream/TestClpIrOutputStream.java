@@ -1,16 +1,31 @@
 package com.yscope.clp.irstream;
 
+import com.yscope.clp.compressorfrontend.FlattenedByteArray;
+import com.yscope.clp.compressorfrontend.FlattenedByteArrayFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -59,4 +74,386 @@ public class TestClpIrOutputStream {
       fail(e.getMessage());
     }
   }
+
+  @Test
+  void testWritingEightByteEncodedIrStreamInBatches () {
+    testWritingIrStreamInBatches(false);
+  }
+
+  @Test
+  void testWritingFourByteEncodedIrStreamInBatches () {
+    testWritingIrStreamInBatches(true);
+  }
+
+  /**
+   * Validates that writing log events in batches produces the same IR as
+   * writing them one at a time
+   * @param useFourByteEncoding
+   */
+  private void testWritingIrStreamInBatches (boolean useFourByteEncoding) {
+    String[] messages = {
+        " INFO Static text, dictVar1, 123, 456.7, dictVar2, 987, 654.3\n",
+        " INFO Static text only\n",
+        " WARN 1 encoded var\n"
+    };
+    FlattenedByteArray flattenedMessages = FlattenedByteArrayFactory.fromStrings(messages);
+    long[] timestamps = {1700000000000L, 1700000000005L, 1700000100000L};
+    String timestampPattern = "yyyy-MM-dd HH:mm:ss,SSS";
+    String timeZoneId = "UTC";
+
+    try {
+      ByteArrayOutputStream expectedIr = new ByteArrayOutputStream();
+      AbstractClpIrOutputStream clpIrOutputStream = createIrOutputStream(
+          useFourByteEncoding, timestampPattern, timeZoneId, expectedIr);
+      for (int batchIdx = 0; batchIdx < 2; ++batchIdx) {
+        for (int i = 0; i < messages.length; ++i) {
+          clpIrOutputStream.writeLogEvent(
+              timestamps[i] + batchIdx,
+              ByteBuffer.wrap(messages[i].getBytes(StandardCharsets.UTF_8)));
+        }
+      }
+      clpIrOutputStream.close();
+
+      ByteArrayOutputStream actualIr = new ByteArrayOutputStream();
+      clpIrOutputStream = createIrOutputStream(useFourByteEncoding, timestampPattern,
+                                               timeZoneId, actualIr);
+      clpIrOutputStream.writeLogEvents(timestamps, flattenedMessages);
+      long[] shiftedTimestamps = new long[timestamps.length];
+      for (int i = 0; i < timestamps.length; ++i) {
+        shiftedTimestamps[i] = timestamps[i] + 1;
+      }
+      clpIrOutputStream.writeLogEvents(shiftedTimestamps, flattenedMessages);
+      // Empty batches should be no-ops
+      clpIrOutputStream.writeLogEvents(new long[0], new byte[0], new int[0], 0);
+      clpIrOutputStream.close();
+
+      assertArrayEquals(expectedIr.toByteArray(), actualIr.toByteArray());
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+  }
+
+  @Test
+  void testWritingEightByteEncodedIrStreamToChannel () {
+    testWritingIrStreamToChannel(false);
+  }
+
+  @Test
+  void testWritingFourByteEncodedIrStreamToChannel () {
+    testWritingIrStreamToChannel(true);
+  }
+
+  /**
+   * Validates that messages in any kind of buffer are encoded correctly,
+   * whether they're written to an output stream or to a channel
+   * @param useFourByteEncoding
+   */
+  private void testWritingIrStreamToChannel (boolean useFourByteEncoding) {
+    String[] messages = {
+        " INFO Static text, dictVar1, 123, 456.7, dictVar2, 987, 654.3\n",
+        " INFO Static text only\n",
+        " WARN 1 encoded var\n",
+        // Larger than the output buffer used below
+        " ERROR " + String.join(", dictVar", generateTokens("123", 40)) + "\n"
+    };
+    String timestampPattern = "yyyy-MM-dd HH:mm:ss,SSS";
+    String timeZoneId = "UTC";
+    long firstTimestamp = 1700000000000L;
+    int numEvents = 20;
+
+    try {
+      ByteArrayOutputStream expectedIr = new ByteArrayOutputStream();
+      AbstractClpIrOutputStream clpIrOutputStream = createIrOutputStream(
+          useFourByteEncoding, timestampPattern, timeZoneId, expectedIr);
+      for (int i = 0; i < numEvents; ++i) {
+        byte[] message = messages[i % messages.length].getBytes(StandardCharsets.UTF_8);
+        clpIrOutputStream.writeLogEvent(firstTimestamp + i * 7L, ByteBuffer.wrap(message));
+      }
+      clpIrOutputStream.close();
+
+      // Write the same events to an output stream, using different kinds of
+      // buffers
+      ByteArrayOutputStream actualIr = new ByteArrayOutputStream();
+      clpIrOutputStream = createIrOutputStream(useFourByteEncoding, timestampPattern,
+                                               timeZoneId, actualIr);
+      for (int i = 0; i < numEvents; ++i) {
+        ByteBuffer message = createMessageBuffer(messages[i % messages.length],
+                                                 i / messages.length);
+        int position = message.position();
+        clpIrOutputStream.writeLogEvent(firstTimestamp + i * 7L, message);
+        assertEquals(position, message.position());
+      }
+      clpIrOutputStream.close();
+      assertArrayEquals(expectedIr.toByteArray(), actualIr.toByteArray());
+
+      // Write the same events to a channel, using an output buffer that's
+      // small enough to need draining
+      actualIr = new ByteArrayOutputStream();
+      ByteBuffer outputBuffer = ByteBuffer.allocateDirect(128);
+      if (useFourByteEncoding) {
+        clpIrOutputStream = new FourByteClpIrOutputStream(
+            timestampPattern, timeZoneId, Channels.newChannel(actualIr), outputBuffer);
+      } else {
+        clpIrOutputStream = new EightByteClpIrOutputStream(
+            timestampPattern, timeZoneId, Channels.newChannel(actualIr), outputBuffer);
+      }
+      for (int i = 0; i < numEvents; ++i) {
+        ByteBuffer message = createMessageBuffer(messages[i % messages.length],
+                                                 i / messages.length);
+        clpIrOutputStream.writeLogEvent(firstTimestamp + i * 7L, message);
+        if (0 == i % 5) {
+          clpIrOutputStream.flush();
+        }
+      }
+      clpIrOutputStream.close();
+      assertArrayEquals(expectedIr.toByteArray(), actualIr.toByteArray());
+    } catch (IOException e) {
+      fail(e.getMessage());
+    }
+  }
+
+  /**
+   * Creates a buffer containing the given message. The kind of buffer depends
+   * on {@code kind}.
+   * @param message
+   * @param kind
+   * @return The buffer
+   */
+  private ByteBuffer createMessageBuffer (String message, int kind) {
+    byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer buffer;
+    switch (kind % 4) {
+      case 0:
+        // Heap buffer with a non-zero array offset
+        buffer = ByteBuffer.allocate(messageBytes.length + 10);
+        buffer.position(10);
+        buffer = buffer.slice();
+        buffer.put(messageBytes);
+        buffer.flip();
+        return buffer;
+      case 1:
+        // Direct buffer with a non-zero position
+        buffer = ByteBuffer.allocateDirect(messageBytes.length + 3);
+        buffer.position(3);
+        buffer.put(messageBytes);
+        buffer.position(3);
+        return buffer;
+      case 2:
+        // Read-only buffer
+        return ByteBuffer.wrap(messageBytes).asReadOnlyBuffer();
+      default:
+        // Heap buffer with a non-zero position and trailing content
+        buffer = ByteBuffer.allocate(messageBytes.length + 8);
+        buffer.position(5);
+        buffer.put(messageBytes);
+        buffer.limit(buffer.position());
+        buffer.position(5);
+        return buffer;
+    }
+  }
+
+  private String[] generateTokens (String prefix, int numTokens) {
+    String[] tokens = new String[numTokens];
+    for (int i = 0; i < numTokens; ++i) {
+      tokens[i] = prefix + i;
+    }
+    return tokens;
+  }
+
+  @Test
+  void testWritingShardedIrStreams () {
+    int numShards = 4;
+    int numThreads = 8;
+    int numEventsPerThread = 500;
+    String timestampPattern = "yyyy-MM-dd HH:mm:ss,SSS";
+    String timeZoneId = "UTC";
+
+    ByteArrayOutputStream[] shardOutputs = new ByteArrayOutputStream[numShards];
+    AbstractClpIrOutputStream[] shards = new AbstractClpIrOutputStream[numShards];
+    for (int i = 0; i < numShards; ++i) {
+      shardOutputs[i] = new ByteArrayOutputStream();
+      shards[i] = createIrOutputStream(0 == i % 2, timestampPattern, timeZoneId,
+                                       shardOutputs[i]);
+    }
+    ShardedClpIrOutputStream shardedOutputStream = new ShardedClpIrOutputStream(shards);
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      // Half the threads write with a key (their index), the rest round-robin
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int t = 0; t < numThreads; ++t) {
+        final int threadIdx = t;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < numEventsPerThread; ++i) {
+            ByteBuffer message = ByteBuffer.wrap(
+                (" INFO thread " + threadIdx + " event " + i + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            long timestamp = 1700000000000L + i;
+            if (0 == threadIdx % 2) {
+              shardedOutputStream.writeLogEvent(threadIdx, timestamp, message);
+            } else {
+              shardedOutputStream.writeLogEvent(timestamp, message);
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+      shardedOutputStream.flush();
+      shardedOutputStream.close();
+      assertThrows(IOException.class, () -> shardedOutputStream.writeLogEvent(
+          0, ByteBuffer.wrap(new byte[] {'a'})));
+
+      // Validate that every event was written exactly once, and that keyed
+      // events were written in order to the shard for their key
+      int[] numEventsReadPerThread = new int[numThreads];
+      for (int i = 0; i < numShards; ++i) {
+        AbstractClpIrInputStream shardInputStream = ClpIrInputStreamFactory.fromInputStream(
+            new ByteArrayInputStream(shardOutputs[i].toByteArray()));
+        LogEvent logEvent = new LogEvent();
+        while (shardInputStream.readNextLogEvent(logEvent)) {
+          String[] tokens = logEvent.getMessageAsString().trim().split(" ");
+          int threadIdx = Integer.parseInt(tokens[2]);
+          int eventIdx = Integer.parseInt(tokens[4]);
+          if (0 == threadIdx % 2) {
+            assertEquals(threadIdx % numShards, i);
+            assertEquals(numEventsReadPerThread[threadIdx], eventIdx);
+          }
+          assertEquals(1700000000000L + eventIdx, logEvent.getTimestamp());
+          ++numEventsReadPerThread[threadIdx];
+        }
+        assertFalse(shardInputStream.readNextLogEvent(logEvent));
+        shardInputStream.close();
+      }
+      for (int t = 0; t < numThreads; ++t) {
+        assertEquals(numEventsPerThread, numEventsReadPerThread[t]);
+      }
+    } catch (Exception e) {
+      fail(e.getMessage());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void testWritingIrStreamAsynchronously () {
+    for (AsyncClpIrOutputStream.OverflowPolicy overflowPolicy
+        : AsyncClpIrOutputStream.OverflowPolicy.values())
+    {
+      testWritingIrStreamAsynchronously(overflowPolicy);
+    }
+  }
+
+  private void testWritingIrStreamAsynchronously (
+      AsyncClpIrOutputStream.OverflowPolicy overflowPolicy
+  ) {
+    int numThreads = 4;
+    int numEventsPerThread = 2000;
+    // Use a small queue and small slots so that the queue overflows and slots
+    // have to grow
+    int queueCapacity = 15;
+    int slotCapacity = 8;
+
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    AsyncClpIrOutputStream asyncOutputStream = new AsyncClpIrOutputStream(
+        createIrOutputStream(true, "yyyy-MM-dd HH:mm:ss,SSS", "UTC", output), queueCapacity,
+        slotCapacity, overflowPolicy);
+    assertEquals(16, asyncOutputStream.getQueueCapacity());
+    assertEquals(overflowPolicy, asyncOutputStream.getOverflowPolicy());
+
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    try {
+      // Half the threads write byte arrays, the rest write direct buffers
+      List<Future<Integer>> futures = new ArrayList<>();
+      for (int t = 0; t < numThreads; ++t) {
+        final int threadIdx = t;
+        futures.add(executor.submit(() -> {
+          int numEventsEnqueued = 0;
+          for (int i = 0; i < numEventsPerThread; ++i) {
+            byte[] message = (" INFO thread " + threadIdx + " event " + i + "\n")
+                .getBytes(StandardCharsets.UTF_8);
+            long timestamp = 1700000000000L + i;
+            boolean enqueued;
+            if (0 == threadIdx % 2) {
+              enqueued = asyncOutputStream.writeLogEvent(timestamp, message, 0,
+                                                         message.length);
+            } else {
+              enqueued = asyncOutputStream.writeLogEvent(timestamp,
+                                                         createMessageBuffer(message));
+            }
+            if (enqueued) {
+              ++numEventsEnqueued;
+            }
+          }
+          return numEventsEnqueued;
+        }));
+      }
+      int numEventsEnqueued = 0;
+      for (Future<Integer> future : futures) {
+        numEventsEnqueued += future.get();
+      }
+      asyncOutputStream.flush();
+
+      int numEvents = numThreads * numEventsPerThread;
+      assertEquals(0, asyncOutputStream.getQueueDepth());
+      assertTrue(asyncOutputStream.getMaxQueueDepth() <= asyncOutputStream.getQueueCapacity());
+      assertEquals(numEventsEnqueued, asyncOutputStream.getNumEventsWritten());
+      assertEquals(numEvents - numEventsEnqueued, asyncOutputStream.getNumEventsDropped());
+      if (AsyncClpIrOutputStream.OverflowPolicy.DROP != overflowPolicy) {
+        assertEquals(numEvents, numEventsEnqueued);
+      }
+      if (AsyncClpIrOutputStream.OverflowPolicy.SPILL != overflowPolicy) {
+        assertEquals(0, asyncOutputStream.getNumEventsSpilled());
+      }
+
+      asyncOutputStream.close();
+      assertThrows(IOException.class, () -> asyncOutputStream.writeLogEvent(
+          0, ByteBuffer.wrap(new byte[] {'a'})));
+
+      // Validate that each thread's events were written in order
+      AbstractClpIrInputStream inputStream = ClpIrInputStreamFactory.fromInputStream(
+          new ByteArrayInputStream(output.toByteArray()));
+      int[] lastEventIdxPerThread = new int[numThreads];
+      Arrays.fill(lastEventIdxPerThread, -1);
+      int numEventsRead = 0;
+      LogEvent logEvent = new LogEvent();
+      while (inputStream.readNextLogEvent(logEvent)) {
+        String[] tokens = logEvent.getMessageAsString().trim().split(" ");
+        int threadIdx = Integer.parseInt(tokens[2]);
+        int eventIdx = Integer.parseInt(tokens[4]);
+        assertTrue(eventIdx > lastEventIdxPerThread[threadIdx]);
+        lastEventIdxPerThread[threadIdx] = eventIdx;
+        assertEquals(1700000000000L + eventIdx, logEvent.getTimestamp());
+        ++numEventsRead;
+      }
+      inputStream.close();
+      assertEquals(numEventsEnqueued, numEventsRead);
+    } catch (Exception e) {
+      fail(e.getMessage());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private ByteBuffer createMessageBuffer (byte[] message) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(message.length);
+    buffer.put(message);
+    buffer.flip();
+    return buffer;
+  }
+
+  private AbstractClpIrOutputStream createIrOutputStream (
+      boolean useFourByteEncoding,
+      String timestampPattern,
+      String timeZoneId,
+      OutputStream outputStream
+  ) {
+    if (useFourByteEncoding) {
+      return new FourByteClpIrOutputStream(timestampPattern, timeZoneId, outputStream);
+    } else {
+      return new EightByteClpIrOutputStream(timestampPattern, timeZoneId, outputStream);
+    }
+  }
 }